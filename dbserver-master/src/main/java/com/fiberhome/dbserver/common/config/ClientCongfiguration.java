@@ -1,5 +1,6 @@
 package com.fiberhome.dbserver.common.config;
 
+import com.fiberhome.dbserver.protocol.common.GrpcConstants;
 import com.fiberhome.dbserver.tools.conf.BaseConfiguration;
 
 /**
@@ -79,6 +80,16 @@ public class ClientCongfiguration extends BaseConfiguration
         return getInt("dbserver.master.grpc.server.port", 10050);
     }
 
+    /**
+     * 获取Master服务的主机地址
+     *
+     * @return Master服务的主机地址
+     */
+    public String getMasterServiceHost()
+    {
+        return get("dbserver.master.grpc.server.host", "localhost");
+    }
+
     /**
      * 获取Slave服务的默认rpc端口
      *
@@ -89,4 +100,345 @@ public class ClientCongfiguration extends BaseConfiguration
         return getInt("dbserver.server.grpc.server.port", 10060);
     }
 
+    /**
+     * 获取客户端到每个主机:端口的链路数，取值范围[1, 16]
+     *
+     * @return 链路数
+     */
+    public int getGrpcChannelCount()
+    {
+        int channelCount = getInt("dbserver.client.grpc.channel.num", GrpcConstants.DEFAULT_CLIENT_CHANNEL_NUM);
+        return Math.max(1, Math.min(channelCount, GrpcConstants.MAX_CLIENT_CHANNEL_NUM));
+    }
+
+    /**
+     * 获取客户端共享业务线程池的最大线程数
+     *
+     * @return 最大线程数
+     */
+    public int getGrpcClientMaxThreads()
+    {
+        return Math.max(1, getInt("dbserver.client.grpc.max.threads",
+                Runtime.getRuntime().availableProcessors() * 2));
+    }
+
+    /**
+     * 获取共享Netty事件循环的worker线程数
+     *
+     * @return worker线程数
+     */
+    public int getNettyWorkerThreads()
+    {
+        return Math.max(1, getInt("dbserver.client.netty.worker.threads", Runtime.getRuntime().availableProcessors()));
+    }
+
+    /**
+     * 是否启用epoll本地传输，不可用时回退到nio
+     *
+     * @return 是否启用
+     */
+    public boolean isNettyEpollEnabled()
+    {
+        return getBoolean("dbserver.client.netty.epoll.enabled", true);
+    }
+
+    /**
+     * ByteBuf分配器是否优先分配直接内存
+     *
+     * @return 是否优先直接内存
+     */
+    public boolean isNettyDirectBufferPreferred()
+    {
+        return getBoolean("dbserver.client.netty.allocator.direct", true);
+    }
+
+    /**
+     * 获取Slave地址列表的刷新周期
+     *
+     * @return 刷新周期，单位毫秒
+     */
+    public long getSlaveResolverRefreshInterval()
+    {
+        return Math.max(100L, getLong("dbserver.client.slave.resolver.refresh.interval", 3000L));
+    }
+
+    /**
+     * 获取向Master查询Slave列表的超时时间
+     *
+     * @return 超时时间，单位毫秒
+     */
+    public long getSlaveResolverTimeout()
+    {
+        return getLong("dbserver.client.slave.resolver.timeout", 3000L);
+    }
+
+    /**
+     * 是否对块索引查询启用对冲请求
+     *
+     * @return 是否启用
+     */
+    public boolean isHedgeEnabled()
+    {
+        return getBoolean("dbserver.client.hedge.enabled", true);
+    }
+
+    /**
+     * 获取触发对冲请求的副本近期延迟百分位
+     *
+     * @return 百分位，取值(0, 1]
+     */
+    public double getHedgePercentile()
+    {
+        double percentile = getDouble("dbserver.client.hedge.percentile", 0.95D);
+        return percentile <= 0D || percentile > 1D ? 0.95D : percentile;
+    }
+
+    /**
+     * 获取每个副本保留的近期延迟样本数
+     *
+     * @return 样本数
+     */
+    public int getHedgeWindowSize()
+    {
+        return Math.max(16, getInt("dbserver.client.hedge.window.size", 128));
+    }
+
+    /**
+     * 获取对冲请求的最小等待时间
+     *
+     * @return 等待时间，单位毫秒
+     */
+    public long getHedgeMinDelay()
+    {
+        return Math.max(1L, getLong("dbserver.client.hedge.delay.min", 5L));
+    }
+
+    /**
+     * 获取副本延迟样本不足时的对冲等待时间
+     *
+     * @return 等待时间，单位毫秒
+     */
+    public long getHedgeDefaultDelay()
+    {
+        return Math.max(1L, getLong("dbserver.client.hedge.delay.default", 50L));
+    }
+
+    /**
+     * 获取客户端请求按方法配置的压缩编码，格式为"服务名/方法名:编码名"
+     *
+     * @return 方法压缩编码列表
+     */
+    public String[] getGrpcCompressionMethods()
+    {
+        return getTrimmedStrings("dbserver.client.grpc.compression.methods");
+    }
+
+    /**
+     * 获取客户端请求压缩阈值，序列化后小于该值的消息不压缩
+     *
+     * @return 压缩阈值，单位字节
+     */
+    public int getGrpcCompressionThreshold()
+    {
+        return getInt("dbserver.client.grpc.compression.threshold", 64 * 1024);
+    }
+
+    /**
+     * 获取链路keepalive间隔，无调用时也发送
+     *
+     * @return keepalive间隔，单位秒
+     */
+    public long getGrpcKeepAliveTime()
+    {
+        return Math.max(10L, getLong("dbserver.client.grpc.keepalive.time", GrpcConstants.KEEP_LIVE_TIME));
+    }
+
+    /**
+     * 获取keepalive应答超时时间，超时后关闭连接并重连
+     *
+     * @return 超时时间，单位秒
+     */
+    public long getGrpcKeepAliveTimeout()
+    {
+        return Math.max(1L, getLong("dbserver.client.grpc.keepalive.timeout", 20L));
+    }
+
+    /**
+     * 获取链路空闲超时时间，小于等于0时链路不进入空闲状态
+     *
+     * @return 空闲超时时间，单位秒
+     */
+    public long getGrpcIdleTimeout()
+    {
+        return getLong("dbserver.client.grpc.idle.timeout", 0L);
+    }
+
+    /**
+     * 创建链路时是否立即建立连接
+     *
+     * @return 是否预热
+     */
+    public boolean isGrpcChannelPrewarm()
+    {
+        return getBoolean("dbserver.client.grpc.prewarm", true);
+    }
+
+    /**
+     * 获取回调卸载线程池的线程数
+     *
+     * @return 线程数
+     */
+    public int getGrpcOffloadThreads()
+    {
+        return Math.max(1, getInt("dbserver.client.grpc.offload.threads", Runtime.getRuntime().availableProcessors()));
+    }
+
+    /**
+     * 获取回调卸载线程池的队列长度，队列满时由提交线程执行回调
+     *
+     * @return 队列长度
+     */
+    public int getGrpcOffloadQueueSize()
+    {
+        return Math.max(1, getInt("dbserver.client.grpc.offload.queue.size", 1024));
+    }
+
+    /**
+     * 是否对幂等方法启用自动重试
+     *
+     * @return 是否启用
+     */
+    public boolean isGrpcRetryEnabled()
+    {
+        return getBoolean("dbserver.client.grpc.retry.enabled", true);
+    }
+
+    /**
+     * 获取可自动重试的幂等方法，格式为"服务名/方法名"，方法名为*时表示整个服务
+     *
+     * @return 方法列表
+     */
+    public String[] getGrpcRetryMethods()
+    {
+        return getTrimmedStrings("dbserver.client.grpc.retry.methods", "RegionManagerService/getRegionSplitInfo",
+                "RegionManagerService/getRegionLocations", "RegionManagerService/getPartitionLocations",
+                "TableManagerService/getDatabaseNames", "TableManagerService/getTableIdentifiers",
+                "TableManagerService/getTableDescriptor", "TableManagerService/getProjectionDescriptor",
+                "TableManagerService/getPartitionDescriptor", "TableManagerService/getProjectionPartitionDescriptor",
+                "SlaveManagerService/getSlaves", "SlaveManagerService/getAllSlaves");
+    }
+
+    /**
+     * 获取服务的最大尝试次数(含首次调用)，未单独配置时使用全局配置，grpc限制最多5次
+     *
+     * @param service 服务名
+     * @return 最大尝试次数
+     */
+    public int getGrpcRetryMaxAttempts(String service)
+    {
+        int maxAttempts = getInt("dbserver.client.grpc.retry." + service + ".max.attempts",
+                getInt("dbserver.client.grpc.retry.max.attempts", 3));
+        return Math.max(2, Math.min(maxAttempts, 5));
+    }
+
+    /**
+     * 获取服务首次重试的退避时间
+     *
+     * @param service 服务名
+     * @return 退避时间，单位毫秒
+     */
+    public long getGrpcRetryInitialBackoff(String service)
+    {
+        return Math.max(1L, getLong("dbserver.client.grpc.retry." + service + ".initial.backoff",
+                getLong("dbserver.client.grpc.retry.initial.backoff", 100L)));
+    }
+
+    /**
+     * 获取服务重试的最大退避时间
+     *
+     * @param service 服务名
+     * @return 退避时间，单位毫秒
+     */
+    public long getGrpcRetryMaxBackoff(String service)
+    {
+        return Math.max(getGrpcRetryInitialBackoff(service), getLong(
+                "dbserver.client.grpc.retry." + service + ".max.backoff",
+                getLong("dbserver.client.grpc.retry.max.backoff", 2000L)));
+    }
+
+    /**
+     * 获取服务重试退避时间的增长倍数
+     *
+     * @param service 服务名
+     * @return 增长倍数
+     */
+    public double getGrpcRetryBackoffMultiplier(String service)
+    {
+        double multiplier = getDouble("dbserver.client.grpc.retry." + service + ".backoff.multiplier",
+                getDouble("dbserver.client.grpc.retry.backoff.multiplier", 2D));
+        return multiplier <= 0D ? 2D : multiplier;
+    }
+
+    /**
+     * 获取服务可重试的状态码
+     *
+     * @param service 服务名
+     * @return 状态码名称列表
+     */
+    public String[] getGrpcRetryableStatusCodes(String service)
+    {
+        String[] codes = getTrimmedStrings("dbserver.client.grpc.retry." + service + ".status.codes");
+        return codes.length > 0 ? codes : getTrimmedStrings("dbserver.client.grpc.retry.status.codes", "UNAVAILABLE");
+    }
+
+    /**
+     * 获取重试令牌桶容量，小于等于0时不限制重试
+     *
+     * @return 令牌桶容量
+     */
+    public int getGrpcRetryThrottlingMaxTokens()
+    {
+        return getInt("dbserver.client.grpc.retry.throttling.max.tokens", 10);
+    }
+
+    /**
+     * 获取每次成功调用归还的令牌数，失败调用消耗1个令牌，令牌不足一半时停止重试
+     *
+     * @return 令牌数
+     */
+    public double getGrpcRetryThrottlingTokenRatio()
+    {
+        double ratio = getDouble("dbserver.client.grpc.retry.throttling.token.ratio", 0.1D);
+        return ratio <= 0D ? 0.1D : ratio;
+    }
+
+    /**
+     * 访问本进程内的server时是否使用进程内传输
+     *
+     * @return 是否启用
+     */
+    public boolean isGrpcInProcessEnabled()
+    {
+        return getBoolean("dbserver.client.grpc.inprocess.enabled", true);
+    }
+
+    /**
+     * 访问本机server时是否优先使用unix域套接字，仅epoll传输可用且套接字文件存在时生效
+     *
+     * @return 是否启用
+     */
+    public boolean isGrpcDomainSocketEnabled()
+    {
+        return getBoolean("dbserver.client.grpc.domain.socket.enabled", true);
+    }
+
+    /**
+     * 获取server的unix域套接字文件目录，需与server端配置一致
+     *
+     * @return 目录
+     */
+    public String getGrpcDomainSocketDir()
+    {
+        return getTrimmed("dbserver.client.grpc.domain.socket.dir", "/tmp");
+    }
 }
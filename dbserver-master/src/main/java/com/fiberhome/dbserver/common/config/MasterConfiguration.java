@@ -1,5 +1,6 @@
 package com.fiberhome.dbserver.common.config;
 
+import com.fiberhome.dbserver.protocol.common.GrpcConstants;
 import com.fiberhome.dbserver.tools.conf.BaseConfiguration;
 
 
@@ -46,4 +47,304 @@ public class MasterConfiguration extends BaseConfiguration
         super(false);
         addResource("conf/dbmaster-site.xml");
     }
+
+    /**
+     * 获取共享Netty事件循环的worker线程数
+     *
+     * @return worker线程数
+     */
+    public int getNettyWorkerThreads()
+    {
+        return Math.max(1, getInt("dbserver.master.netty.worker.threads", Runtime.getRuntime().availableProcessors()));
+    }
+
+    /**
+     * 获取共享Netty事件循环的boss线程数
+     *
+     * @return boss线程数
+     */
+    public int getNettyBossThreads()
+    {
+        return Math.max(1, getInt("dbserver.master.netty.boss.threads", 1));
+    }
+
+    /**
+     * 是否启用epoll本地传输，不可用时回退到nio
+     *
+     * @return 是否启用
+     */
+    public boolean isNettyEpollEnabled()
+    {
+        return getBoolean("dbserver.master.netty.epoll.enabled", true);
+    }
+
+    /**
+     * ByteBuf分配器是否优先分配直接内存
+     *
+     * @return 是否优先直接内存
+     */
+    public boolean isNettyDirectBufferPreferred()
+    {
+        return getBoolean("dbserver.master.netty.allocator.direct", true);
+    }
+
+    /**
+     * 获取Netty分配器统计信息的输出周期，小于等于0时不输出
+     *
+     * @return 输出周期，单位毫秒
+     */
+    public long getNettyStatsReportInterval()
+    {
+        return getLong("dbserver.master.netty.stats.report.interval", 60000L);
+    }
+
+    /**
+     * 获取Master响应按方法配置的压缩编码，格式为"服务名/方法名:编码名"
+     *
+     * @return 方法压缩编码列表
+     */
+    public String[] getGrpcCompressionMethods()
+    {
+        return getTrimmedStrings("dbserver.master.grpc.compression.methods");
+    }
+
+    /**
+     * 获取Master响应压缩阈值，序列化后小于该值的消息不压缩
+     *
+     * @return 压缩阈值，单位字节
+     */
+    public int getGrpcCompressionThreshold()
+    {
+        return getInt("dbserver.master.grpc.compression.threshold", 64 * 1024);
+    }
+
+    /**
+     * 获取Master服务端向客户端发送keepalive的间隔
+     *
+     * @return keepalive间隔，单位秒
+     */
+    public long getGrpcKeepAliveTime()
+    {
+        return Math.max(10L, getLong("dbserver.master.grpc.keepalive.time", GrpcConstants.KEEP_LIVE_TIME));
+    }
+
+    /**
+     * 获取Master服务端允许客户端发送keepalive的最小间隔，需不大于客户端的keepalive间隔
+     *
+     * @return 最小间隔，单位秒
+     */
+    public long getGrpcPermitKeepAliveTime()
+    {
+        return Math.max(1L, getLong("dbserver.master.grpc.keepalive.permit.time", 30L));
+    }
+
+    /**
+     * 是否启用Master服务端自适应准入控制
+     *
+     * @return 是否启用
+     */
+    public boolean isGrpcAdmissionEnabled()
+    {
+        return getBoolean("dbserver.master.grpc.admission.enabled", true);
+    }
+
+    /**
+     * 获取Master服务端准入控制的初始并发上限
+     *
+     * @return 初始并发上限
+     */
+    public int getGrpcAdmissionInitialLimit()
+    {
+        return getInt("dbserver.master.grpc.admission.initial.limit", 100);
+    }
+
+    /**
+     * 获取Master服务端准入控制的最小并发上限
+     *
+     * @return 最小并发上限
+     */
+    public int getGrpcAdmissionMinLimit()
+    {
+        return Math.max(1, getInt("dbserver.master.grpc.admission.min.limit", 10));
+    }
+
+    /**
+     * 获取Master服务端准入控制的最大并发上限
+     *
+     * @return 最大并发上限
+     */
+    public int getGrpcAdmissionMaxLimit()
+    {
+        return Math.max(getGrpcAdmissionMinLimit(), getInt("dbserver.master.grpc.admission.max.limit", 1000));
+    }
+
+    /**
+     * 获取并发上限中为关键服务预留的比例，普通服务只能使用剩余部分
+     *
+     * @return 预留比例
+     */
+    public double getGrpcAdmissionReservedRatio()
+    {
+        return Math.max(0D, Math.min(0.9D, getDouble("dbserver.master.grpc.admission.reserved.ratio", 0.1D)));
+    }
+
+    /**
+     * 获取可以使用预留名额的服务名
+     *
+     * @return 服务名列表
+     */
+    public String[] getGrpcAdmissionReservedServices()
+    {
+        return getTrimmedStrings("dbserver.master.grpc.admission.reserved.services", "HeartBeatMangerService");
+    }
+
+    /**
+     * 获取请求以别名方式解析的服务名，请求中的bytes字段不再复制
+     *
+     * @return 服务名列表
+     */
+    public String[] getGrpcAliasingServices()
+    {
+        return getTrimmedStrings("dbserver.master.grpc.aliasing.services", "TableManagerService");
+    }
+
+    /**
+     * 获取grpc server下线时等待在途调用完成的最长时间
+     *
+     * @return 等待时间，单位毫秒
+     */
+    public long getGrpcDrainTimeout()
+    {
+        return Math.max(0L, getLong("dbserver.master.grpc.drain.timeout", 30000L));
+    }
+
+    /**
+     * 获取启动期间调用尚未注册的服务时，建议客户端的重试延时
+     *
+     * @return 重试延时，单位毫秒
+     */
+    public long getGrpcStartupRetryPushback()
+    {
+        return Math.max(0L, getLong("dbserver.master.grpc.startup.retry.pushback", 1000L));
+    }
+
+    /**
+     * 是否同时提供进程内server，同进程的客户端不经过网络访问
+     *
+     * @return 是否启用
+     */
+    public boolean isGrpcInProcessEnabled()
+    {
+        return getBoolean("dbserver.master.grpc.inprocess.enabled", true);
+    }
+
+    /**
+     * 是否同时监听unix域套接字，同主机的客户端不经过tcp协议栈，仅epoll传输可用时生效
+     *
+     * @return 是否启用
+     */
+    public boolean isGrpcDomainSocketEnabled()
+    {
+        return getBoolean("dbserver.master.grpc.domain.socket.enabled", false);
+    }
+
+    /**
+     * 获取unix域套接字文件目录，套接字文件按grpc端口命名
+     *
+     * @return 目录
+     */
+    public String getGrpcDomainSocketDir()
+    {
+        return getTrimmed("dbserver.master.grpc.domain.socket.dir", "/tmp");
+    }
+
+    /**
+     * 获取缓存元数据读请求响应的服务名
+     *
+     * @return 服务名列表
+     */
+    public String[] getGrpcResponseCacheServices()
+    {
+        return getTrimmedStrings("dbserver.master.grpc.response.cache.services", "TableManagerService");
+    }
+
+    /**
+     * 获取元数据响应缓存的最大条数，不大于0时不启用缓存
+     *
+     * @return 最大条数
+     */
+    public long getGrpcResponseCacheSize()
+    {
+        return getLong("dbserver.master.grpc.response.cache.size", 10000L);
+    }
+
+    /**
+     * 获取元数据响应缓存项的过期时间，用于兜底未经RPC发生的元数据修改，不大于0时不过期
+     *
+     * @return 过期时间，单位毫秒
+     */
+    public long getGrpcResponseCacheExpire()
+    {
+        return getLong("dbserver.master.grpc.response.cache.expire", 300000L);
+    }
+
+    /**
+     * 获取Slave超过多久未上报心跳视为可疑(SLAVE_DELAY)
+     *
+     * @return 超时时间，单位毫秒
+     */
+    public long getSlaveSuspectTimeout()
+    {
+        return Math.max(1L, getLong("dbserver.master.slave.suspect.timeout", 10000L));
+    }
+
+    /**
+     * 获取Slave超过多久未上报心跳判定死亡(SLAVE_DEAD)，不小于可疑超时
+     *
+     * @return 超时时间，单位毫秒
+     */
+    public long getSlaveDeadTimeout()
+    {
+        return Math.max(getSlaveSuspectTimeout(), getLong("dbserver.master.slave.dead.timeout", 30000L));
+    }
+
+    /**
+     * 获取Slave怀疑度phi的阈值，phi达到该值视为可疑(SLAVE_DELAY)，不大于0时按固定的可疑超时判定
+     *
+     * @return phi阈值
+     */
+    public double getSlavePhiThreshold()
+    {
+        return getDouble("dbserver.master.slave.phi.threshold", 8.0d);
+    }
+
+    /**
+     * 获取计算phi时保留的最近心跳间隔个数
+     *
+     * @return 间隔个数
+     */
+    public int getSlavePhiWindowSize()
+    {
+        return Math.max(2, getInt("dbserver.master.slave.phi.window.size", 100));
+    }
+
+    /**
+     * 获取计算phi时心跳间隔标准差的下限，避免心跳非常规律时轻微延迟即视为可疑
+     *
+     * @return 标准差下限，单位毫秒
+     */
+    public long getSlavePhiMinStdDev()
+    {
+        return Math.max(1L, getLong("dbserver.master.slave.phi.min.stddev", 500L));
+    }
+
+    /**
+     * 获取预估的Slave心跳间隔，尚未积累心跳间隔时用于计算phi
+     *
+     * @return 心跳间隔，单位毫秒
+     */
+    public long getSlaveHeartBeatInterval()
+    {
+        return Math.max(1L, getLong("dbserver.master.slave.heartbeat.interval", 3000L));
+    }
 }
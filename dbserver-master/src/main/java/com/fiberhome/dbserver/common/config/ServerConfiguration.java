@@ -1,5 +1,6 @@
 package com.fiberhome.dbserver.common.config;
 
+import com.fiberhome.dbserver.protocol.common.GrpcConstants;
 import com.fiberhome.dbserver.tools.conf.BaseConfiguration;
 
 
@@ -64,4 +65,275 @@ public class ServerConfiguration extends BaseConfiguration
     {
         return getInt("slave.query.index.cksize.max", 10000);
     }
+
+    /**
+     * 获取共享Netty事件循环的worker线程数
+     *
+     * @return worker线程数
+     */
+    public int getNettyWorkerThreads()
+    {
+        return Math.max(1, getInt("dbserver.slave.netty.worker.threads", Runtime.getRuntime().availableProcessors()));
+    }
+
+    /**
+     * 获取共享Netty事件循环的boss线程数
+     *
+     * @return boss线程数
+     */
+    public int getNettyBossThreads()
+    {
+        return Math.max(1, getInt("dbserver.slave.netty.boss.threads", 1));
+    }
+
+    /**
+     * 是否启用epoll本地传输，不可用时回退到nio
+     *
+     * @return 是否启用
+     */
+    public boolean isNettyEpollEnabled()
+    {
+        return getBoolean("dbserver.slave.netty.epoll.enabled", true);
+    }
+
+    /**
+     * ByteBuf分配器是否优先分配直接内存
+     *
+     * @return 是否优先直接内存
+     */
+    public boolean isNettyDirectBufferPreferred()
+    {
+        return getBoolean("dbserver.slave.netty.allocator.direct", true);
+    }
+
+    /**
+     * 获取Netty分配器统计信息的输出周期，小于等于0时不输出
+     *
+     * @return 输出周期，单位毫秒
+     */
+    public long getNettyStatsReportInterval()
+    {
+        return getLong("dbserver.slave.netty.stats.report.interval", 60000L);
+    }
+
+    /**
+     * 获取Slave响应按方法配置的压缩编码，格式为"服务名/方法名:编码名"
+     *
+     * @return 方法压缩编码列表
+     */
+    public String[] getGrpcCompressionMethods()
+    {
+        return getTrimmedStrings("dbserver.slave.grpc.compression.methods", "SlaveBlockletIndexService/query:deflate",
+                "SlaveBlockletIndexService/queryStream:deflate", "SlaveBlockletDataService/getBlocklets:deflate");
+    }
+
+    /**
+     * 获取Slave响应压缩阈值，序列化后小于该值的消息不压缩
+     *
+     * @return 压缩阈值，单位字节
+     */
+    public int getGrpcCompressionThreshold()
+    {
+        return getInt("dbserver.slave.grpc.compression.threshold", 64 * 1024);
+    }
+
+    /**
+     * 获取块索引流式查询每个分片的最大条数
+     *
+     * @return 分片最大条数
+     */
+    public int getGrpcStreamChunkSize()
+    {
+        return Math.max(1, getInt("dbserver.slave.grpc.stream.chunk.size", 1000));
+    }
+
+    /**
+     * 获取Slave服务端向客户端发送keepalive的间隔
+     *
+     * @return keepalive间隔，单位秒
+     */
+    public long getGrpcKeepAliveTime()
+    {
+        return Math.max(10L, getLong("dbserver.slave.grpc.keepalive.time", GrpcConstants.KEEP_LIVE_TIME));
+    }
+
+    /**
+     * 获取Slave服务端允许客户端发送keepalive的最小间隔，需不大于客户端的keepalive间隔
+     *
+     * @return 最小间隔，单位秒
+     */
+    public long getGrpcPermitKeepAliveTime()
+    {
+        return Math.max(1L, getLong("dbserver.slave.grpc.keepalive.permit.time", 30L));
+    }
+
+    /**
+     * 是否启用Slave服务端自适应准入控制
+     *
+     * @return 是否启用
+     */
+    public boolean isGrpcAdmissionEnabled()
+    {
+        return getBoolean("dbserver.slave.grpc.admission.enabled", true);
+    }
+
+    /**
+     * 获取Slave服务端准入控制的初始并发上限
+     *
+     * @return 初始并发上限
+     */
+    public int getGrpcAdmissionInitialLimit()
+    {
+        return getInt("dbserver.slave.grpc.admission.initial.limit", 200);
+    }
+
+    /**
+     * 获取Slave服务端准入控制的最小并发上限
+     *
+     * @return 最小并发上限
+     */
+    public int getGrpcAdmissionMinLimit()
+    {
+        return Math.max(1, getInt("dbserver.slave.grpc.admission.min.limit", 10));
+    }
+
+    /**
+     * 获取Slave服务端准入控制的最大并发上限
+     *
+     * @return 最大并发上限
+     */
+    public int getGrpcAdmissionMaxLimit()
+    {
+        return Math.max(getGrpcAdmissionMinLimit(), getInt("dbserver.slave.grpc.admission.max.limit", 2000));
+    }
+
+    /**
+     * 获取并发上限中为关键服务预留的比例，普通服务只能使用剩余部分
+     *
+     * @return 预留比例
+     */
+    public double getGrpcAdmissionReservedRatio()
+    {
+        return Math.max(0D, Math.min(0.9D, getDouble("dbserver.slave.grpc.admission.reserved.ratio", 0.1D)));
+    }
+
+    /**
+     * 获取可以使用预留名额的服务名
+     *
+     * @return 服务名列表
+     */
+    public String[] getGrpcAdmissionReservedServices()
+    {
+        return getTrimmedStrings("dbserver.slave.grpc.admission.reserved.services", "SlaveRegionMangerService");
+    }
+
+    /**
+     * 获取请求以别名方式解析的服务名，请求中的bytes字段不再复制
+     *
+     * @return 服务名列表
+     */
+    public String[] getGrpcAliasingServices()
+    {
+        return getTrimmedStrings("dbserver.slave.grpc.aliasing.services", "SlaveRegionMangerService");
+    }
+
+    /**
+     * 获取grpc server下线时等待在途调用完成的最长时间
+     *
+     * @return 等待时间，单位毫秒
+     */
+    public long getGrpcDrainTimeout()
+    {
+        return Math.max(0L, getLong("dbserver.slave.grpc.drain.timeout", 30000L));
+    }
+
+    /**
+     * 获取下线状态上报Master后、grpc server开始下线前的等待时间，应不小于客户端刷新Slave列表的周期
+     *
+     * @return 等待时间，单位毫秒
+     */
+    public long getGrpcDrainAdvertiseDelay()
+    {
+        return Math.max(0L, getLong("dbserver.slave.grpc.drain.advertise.delay", 3000L));
+    }
+
+    /**
+     * 获取启动期间调用尚未注册的服务时，建议客户端的重试延时
+     *
+     * @return 重试延时，单位毫秒
+     */
+    public long getGrpcStartupRetryPushback()
+    {
+        return Math.max(0L, getLong("dbserver.slave.grpc.startup.retry.pushback", 1000L));
+    }
+
+    /**
+     * 是否同时提供进程内server，同进程的客户端不经过网络访问
+     *
+     * @return 是否启用
+     */
+    public boolean isGrpcInProcessEnabled()
+    {
+        return getBoolean("dbserver.slave.grpc.inprocess.enabled", true);
+    }
+
+    /**
+     * 是否同时监听unix域套接字，同主机的客户端不经过tcp协议栈，仅epoll传输可用时生效
+     *
+     * @return 是否启用
+     */
+    public boolean isGrpcDomainSocketEnabled()
+    {
+        return getBoolean("dbserver.slave.grpc.domain.socket.enabled", true);
+    }
+
+    /**
+     * 获取unix域套接字文件目录，套接字文件按grpc端口命名
+     *
+     * @return 目录
+     */
+    public String getGrpcDomainSocketDir()
+    {
+        return getTrimmed("dbserver.slave.grpc.domain.socket.dir", "/tmp");
+    }
+
+    /**
+     * 是否经由双向流上报心跳，Master不支持心跳流时自动改用单次上报
+     *
+     * @return 是否启用
+     */
+    public boolean isHeartBeatStreamEnabled()
+    {
+        return getBoolean("server.heartbeat.stream.enabled", true);
+    }
+
+    /**
+     * 获取完整心跳的间隔次数，其余心跳只上报变化的部分，不大于1时每次都上报完整状态
+     *
+     * @return 间隔次数
+     */
+    public int getHeartBeatFullSyncBeats()
+    {
+        return getInt("server.heartbeat.full.sync.beats", 20);
+    }
+
+    /**
+     * 获取周期心跳随机延后的最大时间，使大量Slave的心跳错开，不大于0时不延后
+     *
+     * @return 最大延后时间，单位毫秒
+     */
+    public long getHeartBeatJitter()
+    {
+        return getLong("server.heartbeat.jitter", 500L);
+    }
+
+    /**
+     * 获取单次上报心跳的超时时间，超时未响应的心跳记为失败，期间触发的心跳合并到其完成后补发
+     *
+     * @return 超时时间，单位毫秒
+     */
+    public long getHeartBeatTimeout()
+    {
+        return Math.max(1L, getLong("server.heartbeat.timeout", 3000L));
+    }
 }
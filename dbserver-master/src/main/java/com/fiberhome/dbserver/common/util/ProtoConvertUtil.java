@@ -64,6 +64,20 @@ public class ProtoConvertUtil
         return serverNameBuider.build();
     }
 
+    /**
+     * <p>
+     * 将proto中的ServerNameProto对象转化成server端的ServerName对象
+     * </p>
+     *
+     * @param serverNameProto proto中的ServerNameProto对象
+     * @return server端的ServerName对象
+     */
+    public static ServerName toServerName(DBServerProtos.ServerNameProto serverNameProto)
+    {
+        return new ServerName(serverNameProto.getHostName(), serverNameProto.getIp(), serverNameProto.getPort(),
+                serverNameProto.getStartTime());
+    }
+
 
 
 
@@ -23,11 +23,13 @@ import com.fiberhome.dbserver.common.services.TaskMonitor;
 // import com.fiberhome.dbserver.master.archive.ArchiveManager;
 import com.fiberhome.dbserver.master.constants.MasterConstants;
 // import com.fiberhome.dbserver.master.region.RegionManager;
-// import com.fiberhome.dbserver.master.slave.SlaveManager;
+import com.fiberhome.dbserver.master.slave.SlaveManager;
 import com.fiberhome.dbserver.master.slave.heartbeatserver.HeartBeatManager;
 // import com.fiberhome.dbserver.master.table.TableManager;
 // import com.fiberhome.dbserver.master.zookeeper.MasterTrackerManager;
-// import com.fiberhome.dbserver.protocol.client.GrpcClientFactory;
+import com.fiberhome.dbserver.protocol.client.GrpcClientFactory;
+import com.fiberhome.dbserver.protocol.common.NettyEventLoops;
+import com.fiberhome.dbserver.protocol.common.NettyStatsReporter;
 import com.fiberhome.dbserver.protocol.server.GrpcServer;
 import com.fiberhome.dbserver.protocol.server.GrpcServiceRegistry;
 import com.fiberhome.dbserver.tools.conf.BaseConfiguration;
@@ -124,11 +126,11 @@ public class DBMaster extends HasThread implements DBMasterServices
     //  */
     // private ArchiveManager archiveManager;
     //
-    // /**
-    //  * Slave管理
-    //  */
-    // private SlaveManager slaveManager;
-    //
+    /**
+     * Slave管理
+     */
+    private SlaveManager slaveManager;
+
     // /**
     //  * Region管理
     //  */
@@ -239,11 +241,11 @@ public class DBMaster extends HasThread implements DBMasterServices
         //初始化GRPC注册器
         this.registry = GrpcServiceRegistry.getInstance();
 
+        // 启动GRPC，先绑定端口，子服务初始化完成后再注册
+        this.startGrpcService(status);
         // 启动子服务
         this.startSubService(status);
-        // 启动GRPC
-        this.startGrpcService(status);
-        // 初始化子服务
+        // 初始化子服务并注册rpc服务
         this.initSubService(status);
 
         // // 启动基于ZK的trackers
@@ -257,6 +259,8 @@ public class DBMaster extends HasThread implements DBMasterServices
         // //加载元数据
         // this.tableManager.init();
 
+        // 全部rpc服务已注册
+        this.grpcServer.finishRegistration();
         LOG.info("Initialization successful");
         this.masterFlag.setInitialized(true);
     }
@@ -271,8 +275,10 @@ public class DBMaster extends HasThread implements DBMasterServices
         LOG.info("start initSubService");
         status.setStatus("start initSubService");
         this.heartbeatManager.init();
+        this.heartbeatManager.registryRpcServer(registry);
         // this.tableManager.init();
-        // this.slaveManager.init();
+        this.slaveManager.init();
+        this.slaveManager.registryRpcServer(registry);
         // this.archiveManager.init();
         // this.regionManager.init();
         LOG.info("start initSubService done");
@@ -398,6 +404,13 @@ public class DBMaster extends HasThread implements DBMasterServices
         //初始化执行服务
         status.setStatus("Start the DBexecutor service.");
         this.executorService = DBExecutorManager.getInstance();
+        // 初始化共享Netty事件循环，需先于任何Grpc客户端与服务端
+        NettyEventLoops eventLoops = NettyEventLoops.init(ServerType.MASTER);
+        long statsInterval = MasterConfiguration.getMasterConf().getNettyStatsReportInterval();
+        if (statsInterval > 0)
+        {
+            this.executorService.submitCycleTask(new NettyStatsReporter(eventLoops, statsInterval));
+        }
 
         LOG.info("Initiated executor services finish");
         //监控信息
@@ -415,18 +428,16 @@ public class DBMaster extends HasThread implements DBMasterServices
 
         // 初始化心跳服务
         this.heartbeatManager = HeartBeatManager.getInstance();
-        this.heartbeatManager.registryRpcServer(registry);
 
         // // 初始化表管理
         // this.tableManager = TableManager.getInstance();
         // this.tableManager.registryRpcServer(registry);
         // LOG.info("Init meta manager service finish.");
         //
-        // // 初始化Slave管理
-        // this.slaveManager = SlaveManager.getInstance();
-        // this.slaveManager.registryRpcServer(registry);
-        // LOG.info("Init slave manager service finish.");
-        //
+        // 初始化Slave管理
+        this.slaveManager = SlaveManager.getInstance();
+        LOG.info("Init slave manager service finish.");
+
         // // 初始化归档管理
         // this.archiveManager = ArchiveManager.getInstance();
         // // this.archiveManager.registryRpcServer(registry);
@@ -505,24 +516,25 @@ public class DBMaster extends HasThread implements DBMasterServices
         //     this.regionManager.stop();
         // }
 
-        // // 停止心跳管理服务
-        // if (this.heartbeatManager != null)
-        // {
-        //     this.heartbeatManager.stop();
-        // }
-        //
-        // // 停止Slave管理服务
-        // if (this.slaveManager != null)
-        // {
-        //     this.slaveManager.stop();
-        // }
-        //
-        // // 关闭GRPC
-        // if (this.grpcServer != null)
-        // {
-        //     this.grpcServer.shutdown();
-        //     GrpcClientFactory.close();
-        // }
+        // 停止心跳管理服务，关闭心跳流后grpc server才能及时下线
+        if (this.heartbeatManager != null)
+        {
+            this.heartbeatManager.stop();
+        }
+
+        // 停止Slave管理服务
+        if (this.slaveManager != null)
+        {
+            this.slaveManager.stop();
+        }
+
+        // 关闭GRPC
+        if (this.grpcServer != null)
+        {
+            this.grpcServer.shutdown();
+            GrpcClientFactory.close();
+            NettyEventLoops.shutdown();
+        }
         //
         // // 关闭执行框架
         // if (this.executorService != null)
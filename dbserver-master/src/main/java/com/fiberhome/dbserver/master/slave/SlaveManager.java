@@ -0,0 +1,115 @@
+package com.fiberhome.dbserver.master.slave;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.fiberhome.dbserver.common.elements.server.ServerName;
+import com.fiberhome.dbserver.common.transport.protobuf.DBServerProtos.SlaveLoadProto;
+import com.fiberhome.dbserver.common.transport.protobuf.DBServerProtos.SlaveStatusProto;
+import com.fiberhome.dbserver.common.transport.protobuf.MasterServerProtos.TableElementProto;
+import com.fiberhome.dbserver.common.util.ProtoConvertUtil;
+import com.fiberhome.dbserver.master.constants.MasterConstants;
+import com.fiberhome.dbserver.master.slave.heartbeatserver.HeartBeatManager;
+import com.fiberhome.dbserver.protocol.common.GrpcConstants;
+import com.fiberhome.dbserver.protocol.registry.IRegistryService;
+import com.fiberhome.dbserver.protocol.server.GrpcServiceRegistry;
+
+/**
+ * Slave管理模块
+ * Slave的存活状态、负载与怀疑度均来自心跳管理模块，本模块负责对外提供查询
+ *
+ * @since 1.0.0
+ */
+public class SlaveManager implements IRegistryService
+{
+    private static final Logger LOGGER = LoggerFactory.getLogger(SlaveManager.class);
+
+    private static class Holder
+    {
+        private static final SlaveManager SINGLETON = new SlaveManager();
+    }
+
+    public static SlaveManager getInstance()
+    {
+        return Holder.SINGLETON;
+    }
+
+    private final SlaveManagerRpcProcessor slaveManagerRpcProcessor;
+
+    private final HeartBeatManager heartBeatManager;
+
+    private SlaveManager()
+    {
+        this.heartBeatManager = HeartBeatManager.getInstance();
+        this.slaveManagerRpcProcessor = new SlaveManagerRpcProcessor(this);
+    }
+
+    /**
+     * 接口初始化方法，Master启动时会调用该方法初始化各个模块
+     */
+    @Override
+    public void init()
+    {
+        LOGGER.info("slave manager initialized.");
+    }
+
+    /**
+     * 当前服务提供Rpc服务时，请注册对应的服务
+     *
+     * @param serviceRegistry rpc注册器
+     */
+    @Override
+    public void registryRpcServer(GrpcServiceRegistry serviceRegistry)
+    {
+        serviceRegistry.registryRpcService(GrpcConstants.SERVER_MANAGER_SERVICE, slaveManagerRpcProcessor,
+                MasterConstants.SLAVE_POOL_SIZE_CONF, MasterConstants.SLAVE_DEFAULT_POOL_SIZE);
+    }
+
+    /**
+     * 获取指定状态的Slave负载
+     *
+     * @param status 状态
+     * @return 负载 key:ServerName的字符表示
+     */
+    public Map<String, SlaveLoadProto> getSlaves(SlaveStatusProto status)
+    {
+        Map<String, SlaveLoadProto> slaves = new HashMap<>();
+        for (Map.Entry<ServerName, SlaveStatusProto> entry : heartBeatManager.getSlaveStatuses().entrySet())
+        {
+            if (entry.getValue() == status)
+            {
+                slaves.put(entry.getKey().toString(), heartBeatManager.getSlaveLoad(entry.getKey()));
+            }
+        }
+        return slaves;
+    }
+
+    /**
+     * 获取全部Slave的状态与负载
+     *
+     * @return Slave列表
+     */
+    public List<TableElementProto> getAllSlaves()
+    {
+        Map<ServerName, SlaveStatusProto> statuses = heartBeatManager.getSlaveStatuses();
+        List<TableElementProto> slaves = new ArrayList<>(statuses.size());
+        for (Map.Entry<ServerName, SlaveStatusProto> entry : statuses.entrySet())
+        {
+            slaves.add(TableElementProto.newBuilder().setSlaveStatus(entry.getValue())
+                    .setServerName(ProtoConvertUtil.toServerNameProto(entry.getKey()))
+                    .setSlaveLoad(heartBeatManager.getSlaveLoad(entry.getKey())).build());
+        }
+        return slaves;
+    }
+
+    @Override
+    public void stop()
+    {
+        LOGGER.info("slave manager stopped.");
+    }
+}
@@ -0,0 +1,65 @@
+package com.fiberhome.dbserver.master.slave;
+
+import com.fiberhome.dbserver.common.transport.protobuf.DBServerProtos.BaseRequestProto;
+import com.fiberhome.dbserver.common.transport.protobuf.DBServerProtos.BaseResponseProto;
+import com.fiberhome.dbserver.common.transport.protobuf.DBServerProtos.ResponseCode;
+import com.fiberhome.dbserver.common.transport.protobuf.MasterServerProtos.SlaveQueryRequest;
+import com.fiberhome.dbserver.common.transport.protobuf.MasterServerProtos.SlaveQueryResponse;
+import com.fiberhome.dbserver.common.transport.protobuf.MasterServerProtos.SlaveStatusRequest;
+import com.fiberhome.dbserver.common.transport.protobuf.MasterServerProtos.SlaveStatusResponse;
+import com.fiberhome.dbserver.common.transport.protobuf.SlaveManagerServiceGrpc;
+import io.grpc.stub.StreamObserver;
+
+/**
+ * Slave管理处理器
+ *
+ * @since 1.0.0
+ */
+public class SlaveManagerRpcProcessor extends SlaveManagerServiceGrpc.SlaveManagerServiceImplBase
+{
+    private final SlaveManager slaveManager;
+
+    SlaveManagerRpcProcessor(SlaveManager slaveManager)
+    {
+        this.slaveManager = slaveManager;
+    }
+
+    /**
+     * <pre>
+     * 获取指定状态的Slave，负载中附带Master对其的怀疑度phi
+     * </pre>
+     *
+     * @param request 请求
+     * @param responseObserver 响应
+     */
+    @Override
+    public void getSlaves(SlaveStatusRequest request, StreamObserver<SlaveStatusResponse> responseObserver)
+    {
+        responseObserver.onNext(SlaveStatusResponse.newBuilder()
+                .putAllSlaves(slaveManager.getSlaves(request.getSlaveStatus()))
+                .setBaseResponse(success(request.getBaseRequest())).build());
+        responseObserver.onCompleted();
+    }
+
+    /**
+     * <pre>
+     * 获取全部Slave
+     * </pre>
+     *
+     * @param request 请求
+     * @param responseObserver 响应
+     */
+    @Override
+    public void getAllSlaves(SlaveQueryRequest request, StreamObserver<SlaveQueryResponse> responseObserver)
+    {
+        responseObserver.onNext(SlaveQueryResponse.newBuilder().addAllTable(slaveManager.getAllSlaves())
+                .setBaseResponse(success(request.getBaseRequest())).build());
+        responseObserver.onCompleted();
+    }
+
+    private static BaseResponseProto success(BaseRequestProto request)
+    {
+        return BaseResponseProto.newBuilder().setResponseID(request.getRequestID())
+                .setResponseCode(ResponseCode.QUERY_SUCCESS).setTimestamp(System.currentTimeMillis()).build();
+    }
+}
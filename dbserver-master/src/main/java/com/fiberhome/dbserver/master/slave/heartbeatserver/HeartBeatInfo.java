@@ -5,6 +5,7 @@ import java.util.Set;
 
 // import com.fiberhome.dbserver.common.elements.region.RegionLoad;
 import com.fiberhome.dbserver.common.elements.server.ServerName;
+import com.fiberhome.dbserver.common.transport.protobuf.DBServerProtos.SlaveStatusProto;
 // import com.fiberhome.dbserver.common.metrics.JvmResource;
 // import com.fiberhome.dbserver.common.metrics.MemoryResource;
 
@@ -23,6 +24,7 @@ public class HeartBeatInfo
     // private JvmResource jvmResource; //虚拟机资源信息
     // private Set<RegionLoad> regionLoad; // Region负载信息
     private long reportTime; // 上报时间
+    private SlaveStatusProto slaveStatus = SlaveStatusProto.SLAVE_ALIVE; // Slave上报的状态
 
     /**
      * 心跳信息
@@ -42,6 +44,18 @@ public class HeartBeatInfo
         this.reportTime = reportTime;
     }
 
+    /**
+     * 心跳信息
+     * @param serverName Slave主机信息
+     * @param reportTime 上报时间
+     * @param slaveStatus Slave上报的状态
+     */
+    public HeartBeatInfo(ServerName serverName, long reportTime, SlaveStatusProto slaveStatus)
+    {
+        this(serverName, reportTime);
+        this.slaveStatus = slaveStatus;
+    }
+
     public ServerName getServerName()
     {
         return serverName;
@@ -92,6 +106,16 @@ public class HeartBeatInfo
         this.reportTime = reportTime;
     }
 
+    public SlaveStatusProto getSlaveStatus()
+    {
+        return slaveStatus;
+    }
+
+    public void setSlaveStatus(SlaveStatusProto slaveStatus)
+    {
+        this.slaveStatus = slaveStatus;
+    }
+
     @Override
     public boolean equals(Object o)
     {
@@ -1,5 +1,22 @@
 package com.fiberhome.dbserver.master.slave.heartbeatserver;
 
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.fiberhome.dbserver.common.elements.server.ServerName;
+import com.fiberhome.dbserver.common.config.MasterConfiguration;
+import com.fiberhome.dbserver.common.transport.protobuf.DBServerProtos;
+import com.fiberhome.dbserver.common.transport.protobuf.DBServerProtos.SlaveStatusProto;
+import com.fiberhome.dbserver.common.transport.protobuf.MasterServerProtos;
+import com.fiberhome.dbserver.common.util.ProtoConvertUtil;
+import com.fiberhome.dbserver.master.constants.MasterConstants;
 import com.fiberhome.dbserver.protocol.common.GrpcConstants;
 import com.fiberhome.dbserver.protocol.registry.IRegistryService;
 import com.fiberhome.dbserver.protocol.server.GrpcServiceRegistry;
@@ -13,6 +30,8 @@ import com.fiberhome.dbserver.protocol.server.GrpcServiceRegistry;
  */
 public class HeartBeatManager implements IRegistryService
 {
+    private static final Logger LOGGER = LoggerFactory.getLogger(HeartBeatManager.class);
+
     private static class Holder
     {
         private static final HeartBeatManager SINGLETON = new HeartBeatManager();
@@ -25,6 +44,26 @@ public class HeartBeatManager implements IRegistryService
 
     private HeartBeatRpcProcessor heartBeatRpcProcessor;
 
+    /**
+     * 已建立的Slave心跳流 key:Slave
+     */
+    private final ConcurrentMap<ServerName, SlaveHeartBeatStream> streams = new ConcurrentHashMap<>();
+
+    /**
+     * 由心跳重建的Slave负载 key:Slave
+     */
+    private final ConcurrentMap<ServerName, SlaveLoadView> loads = new ConcurrentHashMap<>();
+
+    /**
+     * 心跳监听
+     */
+    private final List<HeartbeatListener> listeners = new CopyOnWriteArrayList<>();
+
+    /**
+     * Slave存活状态跟踪，init后可用
+     */
+    private volatile SlaveLivenessTracker livenessTracker;
+
     private HeartBeatManager()
     {
         heartBeatRpcProcessor = new HeartBeatRpcProcessor(this);
@@ -36,7 +75,12 @@ public class HeartBeatManager implements IRegistryService
     @Override
     public void init()
     {
-        //TODO
+        MasterConfiguration conf = MasterConfiguration.getMasterConf();
+        livenessTracker = new SlaveLivenessTracker(conf.getSlaveSuspectTimeout(), conf.getSlaveDeadTimeout(),
+                SlaveLivenessTracker.DEFAULT_TICK_MILLIS, conf.getSlavePhiThreshold(), conf.getSlavePhiWindowSize(),
+                conf.getSlavePhiMinStdDev(), conf.getSlaveHeartBeatInterval(), this::statusChanged);
+        LOGGER.info("slave liveness tracker started, suspect timeout {} ms, dead timeout {} ms, phi threshold {}.",
+                conf.getSlaveSuspectTimeout(), conf.getSlaveDeadTimeout(), conf.getSlavePhiThreshold());
     }
 
     /**
@@ -47,7 +91,8 @@ public class HeartBeatManager implements IRegistryService
     @Override
     public void registryRpcServer(GrpcServiceRegistry serviceRegistry)
     {
-        serviceRegistry.registryRpcService(GrpcConstants.HEARTBEAT_MANAGER_SERVICE, heartBeatRpcProcessor);
+        serviceRegistry.registryRpcService(GrpcConstants.HEARTBEAT_MANAGER_SERVICE, heartBeatRpcProcessor,
+                MasterConstants.SLAVE_POOL_SIZE_CONF, MasterConstants.SLAVE_DEFAULT_POOL_SIZE);
     }
 
     /**
@@ -57,7 +102,132 @@ public class HeartBeatManager implements IRegistryService
      */
     public void receiveHeartbeat(HeartBeatInfo heartBeatInfo)
     {
-        // todo
+        SlaveLivenessTracker tracker = livenessTracker;
+        if (tracker != null)
+        {
+            tracker.heartbeat(heartBeatInfo.getServerName(), heartBeatInfo.getSlaveStatus());
+        }
+        for (HeartbeatListener listener : listeners)
+        {
+            listener.receiveHeartbeat(heartBeatInfo.getServerName());
+        }
+    }
+
+    /**
+     * 获取Slave存活状态
+     *
+     * @param slaveName Slave
+     * @return 状态，未上报心跳或已判定死亡并移除时返回null
+     */
+    public SlaveStatusProto getSlaveStatus(ServerName slaveName)
+    {
+        SlaveLivenessTracker tracker = livenessTracker;
+        return tracker == null ? null : tracker.getStatus(slaveName);
+    }
+
+    /**
+     * 获取全部Slave存活状态
+     *
+     * @return 状态 key:Slave
+     */
+    public Map<ServerName, SlaveStatusProto> getSlaveStatuses()
+    {
+        SlaveLivenessTracker tracker = livenessTracker;
+        return tracker == null ? Collections.emptyMap() : tracker.getStatuses();
+    }
+
+    /**
+     * 获取Slave的怀疑度phi，随未上报心跳的时间连续增长，phi为1时误判概率约10%，为2时约1%，依此类推
+     *
+     * @param slaveName Slave
+     * @return phi，未上报心跳或已判定死亡并移除时返回-1
+     */
+    public double getSuspicion(ServerName slaveName)
+    {
+        SlaveLivenessTracker tracker = livenessTracker;
+        return tracker == null ? -1.0d : tracker.getPhi(slaveName);
+    }
+
+    /**
+     * 获取Slave负载，附带当前怀疑度
+     *
+     * @param slaveName Slave
+     * @return 负载，未收到心跳时只有Slave名称与怀疑度
+     */
+    public DBServerProtos.SlaveLoadProto getSlaveLoad(ServerName slaveName)
+    {
+        DBServerProtos.SlaveLoadProto.Builder builder = DBServerProtos.SlaveLoadProto.newBuilder()
+                .setSlaveName(ProtoConvertUtil.toServerNameProto(slaveName)).setPhi(getSuspicion(slaveName));
+        SlaveLoadView view = loads.get(slaveName);
+        if (view != null)
+        {
+            builder.addAllRegionLoads(view.getRegionLoads().values());
+            DBServerProtos.MemoryResourceProto memResource = view.getMemResource();
+            if (memResource != null)
+            {
+                builder.setMemResource(memResource);
+            }
+            DBServerProtos.JvmResourceProto jvmResource = view.getJvmResource();
+            if (jvmResource != null)
+            {
+                builder.setJvmResource(jvmResource);
+            }
+        }
+        return builder.build();
+    }
+
+    /**
+     * Slave存活状态变化，判定死亡的Slave不再保留负载，并通知心跳监听
+     */
+    private void statusChanged(ServerName slaveName, SlaveStatusProto oldStatus, SlaveStatusProto newStatus)
+    {
+        if (newStatus == SlaveStatusProto.SLAVE_DEAD)
+        {
+            loads.remove(slaveName);
+            SlaveHeartBeatStream stream = streams.remove(slaveName);
+            if (stream != null)
+            {
+                stream.close();
+            }
+        }
+        for (HeartbeatListener listener : listeners)
+        {
+            listener.statusChanged(slaveName, oldStatus, newStatus);
+        }
+    }
+
+    /**
+     * 应用心跳中的负载信息，完整心跳替换、增量心跳合并到Slave负载
+     *
+     * @param slaveName Slave
+     * @param request   心跳
+     * @return 回复Slave的指令，增量无法应用时要求上报完整状态
+     */
+    MasterServerProtos.HeartBeatCommand applyLoad(ServerName slaveName, MasterServerProtos.HeartBeatRequest request)
+    {
+        SlaveLoadView view = loads.computeIfAbsent(slaveName, name -> new SlaveLoadView());
+        if (!view.apply(request))
+        {
+            LOGGER.info("heartbeat {} of slave {} is based on {}, but master has {}, request full state.",
+                    request.getSequence(), slaveName, request.getBaseSequence(), view.getSequence());
+            return MasterServerProtos.HeartBeatCommand.newBuilder()
+                    .setType(MasterServerProtos.HeartBeatCommandType.REPORT_FULL_STATE).build();
+        }
+        return MasterServerProtos.HeartBeatCommand.newBuilder()
+                .setType(MasterServerProtos.HeartBeatCommandType.HEARTBEAT_ACK).setAckedSequence(request.getSequence())
+                .build();
+    }
+
+    /**
+     * 获取Slave的region负载
+     *
+     * @param slaveName Slave
+     * @return region负载 key:regionID，未收到心跳时为空
+     */
+    public Map<String, DBServerProtos.RegionLoadProto> getRegionLoads(ServerName slaveName)
+    {
+        SlaveLoadView view = loads.get(slaveName);
+        return view == null ? Collections.emptyMap() : view.getRegionLoads();
     }
 
     /**
@@ -67,14 +237,87 @@ public class HeartBeatManager implements IRegistryService
      */
     public void addHeartbeatListener(HeartbeatListener listener)
     {
-        // todo
+        listeners.add(listener);
+    }
+
+    /**
+     * 经由心跳流向Slave下发指令
+     *
+     * @param slaveName Slave
+     * @param command   指令
+     * @return Slave未建立心跳流或流已断开时返回false
+     */
+    public boolean sendCommand(ServerName slaveName, MasterServerProtos.HeartBeatCommand command)
+    {
+        SlaveHeartBeatStream stream = streams.get(slaveName);
+        return stream != null && stream.send(command);
+    }
+
+    /**
+     * Slave是否已建立心跳流
+     *
+     * @param slaveName Slave
+     * @return 是否已建立
+     */
+    public boolean isStreamConnected(ServerName slaveName)
+    {
+        return streams.containsKey(slaveName);
+    }
+
+    /**
+     * Slave建立心跳流，同一Slave的旧流被替换并关闭
+     */
+    void streamOpened(ServerName slaveName, SlaveHeartBeatStream stream)
+    {
+        SlaveHeartBeatStream old = streams.put(slaveName, stream);
+        if (old != null && old != stream)
+        {
+            old.close();
+        }
+        LOGGER.info("slave {} opened heartbeat stream.", slaveName);
+    }
+
+    /**
+     * Slave心跳流关闭，异常断开时立即可见，无需等待心跳超时
+     */
+    void streamClosed(ServerName slaveName, SlaveHeartBeatStream stream, boolean broken, Throwable cause)
+    {
+        if (!streams.remove(slaveName, stream))
+        {
+            return;
+        }
+        if (broken)
+        {
+            LOGGER.warn("heartbeat stream of slave {} is broken.", slaveName, cause);
+            SlaveLivenessTracker tracker = livenessTracker;
+            if (tracker != null)
+            {
+                tracker.suspect(slaveName);
+            }
+        }
+        else
+        {
+            LOGGER.info("slave {} closed heartbeat stream.", slaveName);
+        }
     }
 
+    /**
+     * 关闭全部心跳流，grpc server下线时不必等待长连接超时
+     */
     @Override
     public void stop()
     {
-        // TODO Auto-generated method stub
-
+        for (SlaveHeartBeatStream stream : streams.values())
+        {
+            stream.close();
+        }
+        streams.clear();
+        SlaveLivenessTracker tracker = livenessTracker;
+        if (tracker != null)
+        {
+            livenessTracker = null;
+            tracker.stop();
+        }
     }
 
 }
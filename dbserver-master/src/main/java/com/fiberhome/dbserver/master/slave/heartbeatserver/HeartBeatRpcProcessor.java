@@ -3,8 +3,11 @@ package com.fiberhome.dbserver.master.slave.heartbeatserver;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import com.fiberhome.dbserver.common.elements.server.ServerName;
+import com.fiberhome.dbserver.common.transport.protobuf.DBServerProtos.SlaveStatusProto;
 import com.fiberhome.dbserver.common.transport.protobuf.HeartBeatMangerServiceGrpc;
 import com.fiberhome.dbserver.common.transport.protobuf.MasterServerProtos;
+import com.fiberhome.dbserver.common.util.ProtoConvertUtil;
 import io.grpc.stub.StreamObserver;
 
 /**
@@ -36,13 +39,45 @@ public class HeartBeatRpcProcessor extends HeartBeatMangerServiceGrpc.HeartBeatM
     public void reportHeartBeat(MasterServerProtos.HeartBeatRequest request,
                                 StreamObserver<MasterServerProtos.HeartBeatResponse> responseObserver)
     {
-        LOGGER.info("receive heartInfo: {}", request);
-        //获取ServerName
-        
-        //获取ServerLoad
-        
-        //SlaveManger 处理心跳信息
-        responseObserver.onNext(MasterServerProtos.HeartBeatResponse.newBuilder().build());
+        MasterServerProtos.HeartBeatCommand command = handleHeartBeat(request);
+        responseObserver.onNext(MasterServerProtos.HeartBeatResponse.newBuilder().setCommand(command).build());
         responseObserver.onCompleted();
     }
+
+    /**
+     * <pre>
+     * 心跳长连接
+     * </pre>
+     *
+     * @param responseObserver 下发指令
+     * @return 心跳接收
+     */
+    @Override
+    public StreamObserver<MasterServerProtos.HeartBeatRequest> heartBeatStream(
+            StreamObserver<MasterServerProtos.HeartBeatCommand> responseObserver)
+    {
+        return new SlaveHeartBeatStream(this, heartBeatManager, responseObserver);
+    }
+
+    /**
+     * 处理单次上报或心跳流上的心跳
+     *
+     * @param request 心跳信息
+     * @return 回复Slave的指令
+     */
+    MasterServerProtos.HeartBeatCommand handleHeartBeat(MasterServerProtos.HeartBeatRequest request)
+    {
+        LOGGER.debug("receive heartInfo: {}", request);
+        if (request.getSlaveStatus() == SlaveStatusProto.SLAVE_DRAINING)
+        {
+            LOGGER.info("slave {}:{} is draining.", request.getSlaveName().getHostName(),
+                    request.getSlaveName().getPort());
+        }
+        ServerName slaveName = ProtoConvertUtil.toServerName(request.getSlaveName());
+        MasterServerProtos.HeartBeatCommand command = heartBeatManager.applyLoad(slaveName, request);
+        //SlaveManger 处理心跳信息
+        heartBeatManager.receiveHeartbeat(new HeartBeatInfo(slaveName, request.getReportTime(),
+                request.getSlaveStatus()));
+        return command;
+    }
 }
@@ -1,6 +1,7 @@
 package com.fiberhome.dbserver.master.slave.heartbeatserver;
 
 import com.fiberhome.dbserver.common.elements.server.ServerName;
+import com.fiberhome.dbserver.common.transport.protobuf.DBServerProtos.SlaveStatusProto;
 // import com.fiberhome.dbserver.common.elements.server.SlaveLoad;
 
 /**
@@ -17,4 +18,15 @@ public interface HeartbeatListener
      // * @param serverLoad 心跳信息
      */
     void receiveHeartbeat(ServerName serverName/*, SlaveLoad serverLoad*/);
+
+    /**
+     * Slave存活状态变化，在心跳处理线程或超时检测线程上回调，不应阻塞
+     *
+     * @param serverName Slave
+     * @param oldStatus  原状态，首次上报心跳时为null
+     * @param newStatus  新状态，当前怀疑度可通过{@link HeartBeatManager#getSuspicion}获取
+     */
+    default void statusChanged(ServerName serverName, SlaveStatusProto oldStatus, SlaveStatusProto newStatus)
+    {
+    }
 }
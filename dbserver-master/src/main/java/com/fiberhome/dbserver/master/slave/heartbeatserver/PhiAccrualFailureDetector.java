@@ -0,0 +1,214 @@
+package com.fiberhome.dbserver.master.slave.heartbeatserver;
+
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * 单个Slave的phi累积故障检测
+ * 以最近若干次心跳到达间隔的均值与标准差估计下一次心跳的到达时间分布，
+ * phi = -log10(此刻之后才到达的概率)；phi为1表示误判概率约10%，phi为8约为1e-8。
+ * 间隔保存在定长的long数组中循环覆盖，均值与方差由累计和增量维护，记录与计算均为O(1)。
+ * 同一时刻只有一个线程记录心跳，并发到达的心跳直接丢弃（间隔近似为0，不含有效信息）；
+ * 每次记录后发布不可变的估计值，计算phi只读取该估计值，读写均不加锁
+ *
+ * @since 1.0.0
+ */
+final class PhiAccrualFailureDetector
+{
+    /*
+     * 反解phi阈值对应时间时的二分次数
+     */
+    private static final int SEARCH_ITERATIONS = 40;
+
+    private final long[] intervals;
+
+    private final double minStdDevMillis;
+
+    /*
+     * 窗口中间隔的个数、下一个写入位置、间隔之和与平方和，只在持有记录标记时读写
+     */
+    private int count;
+
+    private int next;
+
+    private double sum;
+
+    private double squaredSum;
+
+    /*
+     * 正在记录心跳的标记，保证窗口只有一个写线程
+     */
+    private final AtomicBoolean recording = new AtomicBoolean();
+
+    /*
+     * 最近一次发布的估计值
+     */
+    private volatile Estimate estimate;
+
+    /**
+     * 构造函数
+     *
+     * @param windowSize            保留的心跳间隔个数
+     * @param minStdDevMillis       标准差下限，避免间隔非常稳定时轻微延迟即判定可疑
+     * @param firstHeartbeatMillis  尚无历史时预估的心跳间隔
+     */
+    PhiAccrualFailureDetector(int windowSize, long minStdDevMillis, long firstHeartbeatMillis)
+    {
+        this.intervals = new long[Math.max(2, windowSize)];
+        this.minStdDevMillis = Math.max(1L, minStdDevMillis);
+        // 以预估间隔及其四分之一的标准差作为初始样本，首个间隔到达前也能计算phi
+        long stdDev = firstHeartbeatMillis / 4;
+        add(firstHeartbeatMillis - stdDev);
+        add(firstHeartbeatMillis + stdDev);
+        this.estimate = estimate(-1L);
+    }
+
+    /**
+     * 记录心跳到达
+     *
+     * @param nowMillis 到达时间
+     */
+    void heartbeat(long nowMillis)
+    {
+        if (!recording.compareAndSet(false, true))
+        {
+            return;
+        }
+        try
+        {
+            long lastHeartbeatMillis = estimate.lastHeartbeatMillis;
+            if (lastHeartbeatMillis >= 0L)
+            {
+                if (nowMillis <= lastHeartbeatMillis)
+                {
+                    return;
+                }
+                add(nowMillis - lastHeartbeatMillis);
+            }
+            estimate = estimate(nowMillis);
+        }
+        finally
+        {
+            recording.set(false);
+        }
+    }
+
+    /**
+     * 计算当前的phi
+     *
+     * @param nowMillis 当前时间
+     * @return phi，尚未收到心跳时为0
+     */
+    double phi(long nowMillis)
+    {
+        Estimate current = estimate;
+        if (current.lastHeartbeatMillis < 0L)
+        {
+            return 0.0d;
+        }
+        return phi(nowMillis - current.lastHeartbeatMillis, current.mean, current.stdDev);
+    }
+
+    /**
+     * 计算phi达到阈值时距最近一次心跳的时间
+     *
+     * @param threshold    phi阈值
+     * @param maxIdleMillis 查找上限
+     * @return 时间，单位毫秒，不超过查找上限
+     */
+    long idleMillisAt(double threshold, long maxIdleMillis)
+    {
+        Estimate current = estimate;
+        double mean = current.mean;
+        double stdDev = current.stdDev;
+        long low = 0L;
+        long high = maxIdleMillis;
+        // phi随时间单调递增，二分查找首次达到阈值的时间
+        for (int i = 0; i < SEARCH_ITERATIONS && low < high; i++)
+        {
+            long mid = (low + high) >>> 1;
+            if (phi(mid, mean, stdDev) >= threshold)
+            {
+                high = mid;
+            }
+            else
+            {
+                low = mid + 1;
+            }
+        }
+        return high;
+    }
+
+    double mean()
+    {
+        return estimate.mean;
+    }
+
+    double stdDev()
+    {
+        return estimate.stdDev;
+    }
+
+    /**
+     * 由当前窗口计算估计值，只在写线程中调用
+     */
+    private Estimate estimate(long lastHeartbeatMillis)
+    {
+        double mean = sum / count;
+        double variance = Math.max(0.0d, squaredSum / count - mean * mean);
+        return new Estimate(lastHeartbeatMillis, mean, Math.max(Math.sqrt(variance), minStdDevMillis));
+    }
+
+    private void add(long interval)
+    {
+        if (count == intervals.length)
+        {
+            long evicted = intervals[next];
+            sum -= evicted;
+            squaredSum -= (double) evicted * evicted;
+        }
+        else
+        {
+            count++;
+        }
+        intervals[next] = interval;
+        next = (next + 1) % intervals.length;
+        sum += interval;
+        squaredSum += (double) interval * interval;
+    }
+
+    /**
+     * 按正态分布的logistic近似计算phi，避免误差函数的计算
+     */
+    static double phi(long idleMillis, double mean, double stdDev)
+    {
+        double y = (idleMillis - mean) / stdDev;
+        double e = Math.exp(-y * (1.5976d + 0.070566d * y * y));
+        if (idleMillis > mean)
+        {
+            return -Math.log10(e / (1.0d + e));
+        }
+        return -Math.log10(1.0d - 1.0d / (1.0d + e));
+    }
+
+    /**
+     * 最近一次心跳的时间与间隔分布的估计值，不可变
+     */
+    private static final class Estimate
+    {
+        /*
+         * 最近一次心跳的时间，单位毫秒，尚未收到心跳时为-1
+         */
+        private final long lastHeartbeatMillis;
+
+        private final double mean;
+
+        private final double stdDev;
+
+        Estimate(long lastHeartbeatMillis, double mean, double stdDev)
+        {
+            this.lastHeartbeatMillis = lastHeartbeatMillis;
+            this.mean = mean;
+            this.stdDev = stdDev;
+        }
+    }
+}
@@ -0,0 +1,181 @@
+package com.fiberhome.dbserver.master.slave.heartbeatserver;
+
+import java.util.EnumMap;
+import java.util.Iterator;
+import java.util.Map;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.fiberhome.dbserver.common.elements.server.ServerName;
+import com.fiberhome.dbserver.common.transport.protobuf.MasterServerProtos;
+import com.fiberhome.dbserver.common.util.ProtoConvertUtil;
+import io.grpc.stub.ServerCallStreamObserver;
+import io.grpc.stub.StreamObserver;
+
+/**
+ * Master端的Slave心跳流
+ * 首条心跳确定所属Slave并登记到心跳管理模块，之后每条心跳回复确认或要求上报完整状态；心跳管理模块可随时经由本流向Slave下发指令；
+ * 流断开时立即通知心跳管理模块，无需等待心跳超时。
+ * 下发遵循流控：Slave接收缓慢时指令暂存，同类指令只保留最新一条(确认只需最新的序号)，流可写时再发送，待发指令数不超过指令类型数
+ *
+ * @since 1.0.0
+ */
+final class SlaveHeartBeatStream implements StreamObserver<MasterServerProtos.HeartBeatRequest>
+{
+    private static final Logger LOGGER = LoggerFactory.getLogger(SlaveHeartBeatStream.class);
+
+    private final HeartBeatRpcProcessor processor;
+
+    private final HeartBeatManager heartBeatManager;
+
+    private final ServerCallStreamObserver<MasterServerProtos.HeartBeatCommand> commandObserver;
+
+    /*
+     * 流所属的Slave，收到首条心跳前为null
+     */
+    private volatile ServerName slaveName;
+
+    /*
+     * 流是否已关闭，关闭后不再下发指令
+     */
+    private boolean closed;
+
+    /*
+     * 流不可写时暂存的指令，每种类型只保留最新一条
+     */
+    private final Map<MasterServerProtos.HeartBeatCommandType, MasterServerProtos.HeartBeatCommand> pending =
+            new EnumMap<>(MasterServerProtos.HeartBeatCommandType.class);
+
+    SlaveHeartBeatStream(HeartBeatRpcProcessor processor, HeartBeatManager heartBeatManager,
+            StreamObserver<MasterServerProtos.HeartBeatCommand> commandObserver)
+    {
+        this.processor = processor;
+        this.heartBeatManager = heartBeatManager;
+        this.commandObserver = (ServerCallStreamObserver<MasterServerProtos.HeartBeatCommand>) commandObserver;
+        // Slave取消或网络中断时回调，与onError不同，取消时不保证还会收到其他回调
+        this.commandObserver.setOnCancelHandler(() -> closeStream(null, true));
+        this.commandObserver.setOnReadyHandler(this::flush);
+    }
+
+    ServerName getSlaveName()
+    {
+        return slaveName;
+    }
+
+    @Override
+    public void onNext(MasterServerProtos.HeartBeatRequest request)
+    {
+        if (slaveName == null)
+        {
+            slaveName = ProtoConvertUtil.toServerName(request.getSlaveName());
+            heartBeatManager.streamOpened(slaveName, this);
+        }
+        send(processor.handleHeartBeat(request));
+    }
+
+    @Override
+    public void onError(Throwable t)
+    {
+        closeStream(t, true);
+    }
+
+    @Override
+    public void onCompleted()
+    {
+        closeStream(null, false);
+    }
+
+    /**
+     * 向Slave下发指令，流不可写时暂存并替换同类的未发指令
+     *
+     * @param command 指令
+     * @return 流已关闭时返回false
+     */
+    synchronized boolean send(MasterServerProtos.HeartBeatCommand command)
+    {
+        if (closed)
+        {
+            return false;
+        }
+        pending.put(command.getType(), command);
+        return flush();
+    }
+
+    /**
+     * 流可写时发送暂存的指令
+     *
+     * @return 发送失败时返回false
+     */
+    private synchronized boolean flush()
+    {
+        Iterator<MasterServerProtos.HeartBeatCommand> commands = pending.values().iterator();
+        while (!closed && commands.hasNext() && commandObserver.isReady())
+        {
+            MasterServerProtos.HeartBeatCommand command = commands.next();
+            commands.remove();
+            try
+            {
+                commandObserver.onNext(command);
+            }
+            catch (RuntimeException e)
+            {
+                LOGGER.warn("send heartbeat command to slave {} failed.", slaveName, e);
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Master主动关闭流，Slave收到后重新建立或改用单次心跳
+     */
+    void close()
+    {
+        if (markClosed())
+        {
+            try
+            {
+                commandObserver.onCompleted();
+            }
+            catch (RuntimeException e)
+            {
+                LOGGER.debug("heartbeat stream of slave {} is already closed.", slaveName, e);
+            }
+        }
+    }
+
+    private void closeStream(Throwable cause, boolean broken)
+    {
+        if (!markClosed())
+        {
+            return;
+        }
+        if (!broken)
+        {
+            try
+            {
+                commandObserver.onCompleted();
+            }
+            catch (RuntimeException e)
+            {
+                LOGGER.debug("heartbeat stream of slave {} is already closed.", slaveName, e);
+            }
+        }
+        if (slaveName != null)
+        {
+            heartBeatManager.streamClosed(slaveName, this, broken, cause);
+        }
+    }
+
+    private synchronized boolean markClosed()
+    {
+        if (closed)
+        {
+            return false;
+        }
+        closed = true;
+        pending.clear();
+        return true;
+    }
+}
@@ -0,0 +1,329 @@
+package com.fiberhome.dbserver.master.slave.heartbeatserver;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.fiberhome.dbserver.common.elements.server.ServerName;
+import com.fiberhome.dbserver.common.services.Threads;
+import com.fiberhome.dbserver.common.transport.protobuf.DBServerProtos.SlaveStatusProto;
+import io.netty.util.HashedWheelTimer;
+import io.netty.util.Timeout;
+import io.netty.util.TimerTask;
+
+/**
+ * Slave存活状态跟踪
+ * 心跳只更新Slave的最近上报时间与到达间隔，不操作定时器，单次心跳为O(1)；每个Slave在时间轮上只有一个到期任务，
+ * 到期时按最近上报时间判断：仍未可疑则按剩余时间重新挂到时间轮，否则依次转为SLAVE_DELAY、SLAVE_DEAD。
+ * 超时检测不扫描全部Slave，开销与Slave数无关。
+ * 启用phi累积检测时，以各Slave自身的心跳间隔分布计算怀疑度phi，phi达到阈值才转为SLAVE_DELAY，
+ * GC停顿或网络抖动较多的Slave可容忍更长的延迟；SLAVE_DEAD仍按固定超时判定
+ *
+ * @since 1.0.0
+ */
+final class SlaveLivenessTracker
+{
+    private static final Logger LOGGER = LoggerFactory.getLogger(SlaveLivenessTracker.class);
+
+    /*
+     * 时间轮每格时长与格数，每格时长即超时检测的精度
+     */
+    static final long DEFAULT_TICK_MILLIS = 100L;
+
+    private static final int TICKS_PER_WHEEL = 512;
+
+    /**
+     * 状态变化回调，在心跳处理线程或时间轮线程上执行，不应阻塞
+     */
+    interface StatusListener
+    {
+        /**
+         * 状态变化
+         *
+         * @param slaveName Slave
+         * @param oldStatus 原状态，首次上报时为null
+         * @param newStatus 新状态
+         */
+        void statusChanged(ServerName slaveName, SlaveStatusProto oldStatus, SlaveStatusProto newStatus);
+    }
+
+    private final ConcurrentMap<ServerName, Liveness> slaves = new ConcurrentHashMap<>();
+
+    private final HashedWheelTimer timer;
+
+    private final long suspectTimeoutNanos;
+
+    private final long deadTimeoutNanos;
+
+    private final StatusListener listener;
+
+    /*
+     * phi阈值，不大于0时不启用phi累积检测，按固定超时转为SLAVE_DELAY
+     */
+    private final double phiThreshold;
+
+    private final int phiWindowSize;
+
+    private final long phiMinStdDevMillis;
+
+    private final long expectedIntervalMillis;
+
+    /**
+     * 构造函数，按固定超时转为SLAVE_DELAY
+     *
+     * @param suspectTimeoutMillis 超过该时间未上报心跳转为SLAVE_DELAY
+     * @param deadTimeoutMillis    超过该时间未上报心跳转为SLAVE_DEAD并移除
+     * @param tickMillis           时间轮每格时长
+     * @param listener             状态变化回调
+     */
+    SlaveLivenessTracker(long suspectTimeoutMillis, long deadTimeoutMillis, long tickMillis, StatusListener listener)
+    {
+        this(suspectTimeoutMillis, deadTimeoutMillis, tickMillis, 0.0d, 2, 1L, suspectTimeoutMillis, listener);
+    }
+
+    /**
+     * 构造函数
+     *
+     * @param suspectTimeoutMillis   未启用phi累积检测时，超过该时间未上报心跳转为SLAVE_DELAY
+     * @param deadTimeoutMillis      超过该时间未上报心跳转为SLAVE_DEAD并移除
+     * @param tickMillis             时间轮每格时长
+     * @param phiThreshold           phi达到该值转为SLAVE_DELAY，不大于0时不启用
+     * @param phiWindowSize          phi累积检测保留的心跳间隔个数
+     * @param phiMinStdDevMillis     phi累积检测的心跳间隔标准差下限
+     * @param expectedIntervalMillis 尚无心跳间隔时预估的间隔
+     * @param listener               状态变化回调
+     */
+    SlaveLivenessTracker(long suspectTimeoutMillis, long deadTimeoutMillis, long tickMillis, double phiThreshold,
+            int phiWindowSize, long phiMinStdDevMillis, long expectedIntervalMillis, StatusListener listener)
+    {
+        this.suspectTimeoutNanos = TimeUnit.MILLISECONDS.toNanos(suspectTimeoutMillis);
+        this.deadTimeoutNanos = TimeUnit.MILLISECONDS.toNanos(Math.max(deadTimeoutMillis, suspectTimeoutMillis));
+        this.phiThreshold = phiThreshold;
+        this.phiWindowSize = phiWindowSize;
+        this.phiMinStdDevMillis = phiMinStdDevMillis;
+        this.expectedIntervalMillis = expectedIntervalMillis;
+        this.listener = listener;
+        this.timer = new HashedWheelTimer(Threads.getNamedThreadFactory("slave-liveness-"), tickMillis,
+                TimeUnit.MILLISECONDS, TICKS_PER_WHEEL);
+    }
+
+    /**
+     * 记录心跳
+     *
+     * @param slaveName Slave
+     * @param reported  Slave上报的状态
+     */
+    void heartbeat(ServerName slaveName, SlaveStatusProto reported)
+    {
+        SlaveStatusProto status = reported == SlaveStatusProto.SLAVE_DRAINING ? SlaveStatusProto.SLAVE_DRAINING
+                : SlaveStatusProto.SLAVE_ALIVE;
+        long now = System.nanoTime();
+        while (true)
+        {
+            Liveness liveness = slaves.get(slaveName);
+            if (liveness == null)
+            {
+                Liveness created = new Liveness(slaveName, status, now);
+                if (slaves.putIfAbsent(slaveName, created) == null)
+                {
+                    created.schedule(created.suspectAfter());
+                    publish(slaveName, null, status, 0.0d);
+                    return;
+                }
+                continue;
+            }
+            liveness.lastSeen = now;
+            liveness.detector.heartbeat(TimeUnit.NANOSECONDS.toMillis(now));
+            SlaveStatusProto current = liveness.status.get();
+            if (current == SlaveStatusProto.SLAVE_DEAD)
+            {
+                // 已判定死亡的记录即将移除，以新记录重新上线
+                slaves.remove(slaveName, liveness);
+                continue;
+            }
+            if (current != status && liveness.status.compareAndSet(current, status))
+            {
+                publish(slaveName, current, status, 0.0d);
+            }
+            return;
+        }
+    }
+
+    /**
+     * 心跳流异常断开等迹象表明Slave可能故障，不等超时立即转为SLAVE_DELAY；之后收到心跳即恢复
+     *
+     * @param slaveName Slave
+     */
+    void suspect(ServerName slaveName)
+    {
+        Liveness liveness = slaves.get(slaveName);
+        if (liveness != null && liveness.status.compareAndSet(SlaveStatusProto.SLAVE_ALIVE,
+                SlaveStatusProto.SLAVE_DELAY))
+        {
+            publish(slaveName, SlaveStatusProto.SLAVE_ALIVE, SlaveStatusProto.SLAVE_DELAY, liveness.phi());
+        }
+    }
+
+    /**
+     * 获取Slave状态
+     *
+     * @param slaveName Slave
+     * @return 状态，未上报心跳或已移除时返回null
+     */
+    SlaveStatusProto getStatus(ServerName slaveName)
+    {
+        Liveness liveness = slaves.get(slaveName);
+        return liveness == null ? null : liveness.status.get();
+    }
+
+    /**
+     * 获取全部Slave状态
+     *
+     * @return 状态 key:Slave
+     */
+    Map<ServerName, SlaveStatusProto> getStatuses()
+    {
+        Map<ServerName, SlaveStatusProto> statuses = new HashMap<>(slaves.size() * 2);
+        for (Map.Entry<ServerName, Liveness> entry : slaves.entrySet())
+        {
+            statuses.put(entry.getKey(), entry.getValue().status.get());
+        }
+        return statuses;
+    }
+
+    /**
+     * 获取Slave的怀疑度phi，随未上报心跳的时间连续增长，刚收到心跳时接近0
+     *
+     * @param slaveName Slave
+     * @return phi，未上报心跳或已移除时返回-1
+     */
+    double getPhi(ServerName slaveName)
+    {
+        Liveness liveness = slaves.get(slaveName);
+        return liveness == null ? -1.0d : liveness.phi();
+    }
+
+    /**
+     * 获取Slave距最近一次心跳的时间
+     *
+     * @param slaveName Slave
+     * @return 时间，单位毫秒，未上报心跳时返回-1
+     */
+    long getIdleMillis(ServerName slaveName)
+    {
+        Liveness liveness = slaves.get(slaveName);
+        return liveness == null ? -1L : TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - liveness.lastSeen);
+    }
+
+    void stop()
+    {
+        timer.stop();
+        slaves.clear();
+    }
+
+    private void publish(ServerName slaveName, SlaveStatusProto oldStatus, SlaveStatusProto newStatus, double phi)
+    {
+        LOGGER.info("slave {} status changed: {} -> {}, phi {}", slaveName, oldStatus, newStatus, phi);
+        try
+        {
+            listener.statusChanged(slaveName, oldStatus, newStatus);
+        }
+        catch (RuntimeException e)
+        {
+            LOGGER.warn("handle status change of slave {} failed.", slaveName, e);
+        }
+    }
+
+    /**
+     * 单个Slave的存活状态，同时是其在时间轮上的到期任务
+     */
+    private final class Liveness implements TimerTask
+    {
+        private final ServerName slaveName;
+
+        private final AtomicReference<SlaveStatusProto> status;
+
+        private final PhiAccrualFailureDetector detector;
+
+        /*
+         * 最近一次心跳的时间，System.nanoTime
+         */
+        private volatile long lastSeen;
+
+        Liveness(ServerName slaveName, SlaveStatusProto status, long lastSeen)
+        {
+            this.slaveName = slaveName;
+            this.status = new AtomicReference<>(status);
+            this.lastSeen = lastSeen;
+            this.detector = new PhiAccrualFailureDetector(phiWindowSize, phiMinStdDevMillis, expectedIntervalMillis);
+            this.detector.heartbeat(TimeUnit.NANOSECONDS.toMillis(lastSeen));
+        }
+
+        double phi()
+        {
+            return detector.phi(TimeUnit.NANOSECONDS.toMillis(System.nanoTime()));
+        }
+
+        /**
+         * 距最近一次心跳多久后转为SLAVE_DELAY，启用phi累积检测时按当前间隔分布反解phi阈值对应的时间
+         */
+        long suspectAfter()
+        {
+            if (phiThreshold <= 0.0d)
+            {
+                return suspectTimeoutNanos;
+            }
+            long deadMillis = TimeUnit.NANOSECONDS.toMillis(deadTimeoutNanos);
+            return TimeUnit.MILLISECONDS.toNanos(detector.idleMillisAt(phiThreshold, deadMillis));
+        }
+
+        void schedule(long delayNanos)
+        {
+            try
+            {
+                timer.newTimeout(this, Math.max(delayNanos, 0L), TimeUnit.NANOSECONDS);
+            }
+            catch (IllegalStateException e)
+            {
+                // 跟踪已停止
+                LOGGER.debug("liveness tracker is stopped, skip slave {}.", slaveName);
+            }
+        }
+
+        @Override
+        public void run(Timeout timeout)
+        {
+            long idle = System.nanoTime() - lastSeen;
+            if (idle >= deadTimeoutNanos)
+            {
+                SlaveStatusProto current = status.getAndSet(SlaveStatusProto.SLAVE_DEAD);
+                slaves.remove(slaveName, this);
+                if (current != SlaveStatusProto.SLAVE_DEAD)
+                {
+                    publish(slaveName, current, SlaveStatusProto.SLAVE_DEAD, phi());
+                }
+                return;
+            }
+            long suspectAfter = suspectAfter();
+            if (idle >= suspectAfter)
+            {
+                if (status.compareAndSet(SlaveStatusProto.SLAVE_ALIVE, SlaveStatusProto.SLAVE_DELAY))
+                {
+                    publish(slaveName, SlaveStatusProto.SLAVE_ALIVE, SlaveStatusProto.SLAVE_DELAY, phi());
+                }
+                schedule(deadTimeoutNanos - idle);
+            }
+            else
+            {
+                // 期间收到过心跳，按剩余时间重新挂到时间轮
+                schedule(suspectAfter - idle);
+            }
+        }
+    }
+}
@@ -0,0 +1,92 @@
+package com.fiberhome.dbserver.master.slave.heartbeatserver;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import com.fiberhome.dbserver.common.transport.protobuf.DBServerProtos;
+import com.fiberhome.dbserver.common.transport.protobuf.MasterServerProtos;
+
+/**
+ * Master端由心跳重建的Slave完整负载
+ * 完整心跳替换全部状态；增量心跳仅在基准序号与最近应用的序号一致时应用，
+ * 应用代价与变化的region数成正比，与Slave上的region总数无关
+ *
+ * @since 1.0.0
+ */
+final class SlaveLoadView
+{
+    /*
+     * 最近应用的心跳序号，尚未应用时为-1
+     */
+    private long sequence = -1L;
+
+    private final Map<String, DBServerProtos.RegionLoadProto> regionLoads = new HashMap<>();
+
+    private DBServerProtos.MemoryResourceProto memResource;
+
+    private DBServerProtos.JvmResourceProto jvmResource;
+
+    /**
+     * 应用心跳
+     *
+     * @param request 心跳
+     * @return 增量心跳的基准与当前状态不一致时返回false，需Slave上报完整心跳
+     */
+    synchronized boolean apply(MasterServerProtos.HeartBeatRequest request)
+    {
+        // 序号为0的Slave不支持增量，每次都是完整状态
+        if (request.getSequence() == 0L || request.getFullState())
+        {
+            if (request.getSequence() != 0L && request.getSequence() <= sequence)
+            {
+                // 乱序到达的旧心跳
+                return true;
+            }
+            regionLoads.clear();
+            memResource = null;
+            jvmResource = null;
+        }
+        else if (request.getBaseSequence() != sequence)
+        {
+            return false;
+        }
+        for (DBServerProtos.RegionLoadProto regionLoad : request.getRegionLoadsList())
+        {
+            regionLoads.put(regionLoad.getRegionID(), regionLoad);
+        }
+        for (String regionId : request.getRemovedRegionsList())
+        {
+            regionLoads.remove(regionId);
+        }
+        if (request.hasMemResource())
+        {
+            memResource = request.getMemResource();
+        }
+        if (request.hasJvmResource())
+        {
+            jvmResource = request.getJvmResource();
+        }
+        sequence = request.getSequence();
+        return true;
+    }
+
+    synchronized long getSequence()
+    {
+        return sequence;
+    }
+
+    synchronized Map<String, DBServerProtos.RegionLoadProto> getRegionLoads()
+    {
+        return new HashMap<>(regionLoads);
+    }
+
+    synchronized DBServerProtos.MemoryResourceProto getMemResource()
+    {
+        return memResource;
+    }
+
+    synchronized DBServerProtos.JvmResourceProto getJvmResource()
+    {
+        return jvmResource;
+    }
+}
@@ -0,0 +1,211 @@
+package com.fiberhome.dbserver.protocol.client;
+
+import java.util.Collections;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+import com.fiberhome.dbserver.protocol.common.LatencyHistogram;
+import io.grpc.Status;
+
+/**
+ * 客户端RPC指标
+ * 按方法统计延迟直方图、收发字节数、状态码计数与在途调用数，由{@link ClientMetricsInterceptor}在每条链路上记录
+ *
+ * @since 1.0.0
+ */
+public final class ClientMetrics
+{
+    private static final Status.Code[] CODES = Status.Code.values();
+
+    /*
+     * 方法指标 key:方法全名
+     */
+    private final ConcurrentMap<String, MethodMetrics> methods = new ConcurrentHashMap<>();
+
+    private static class ClientMetricsHolder
+    {
+        private static final ClientMetrics INSTANCE = new ClientMetrics();
+    }
+
+    ClientMetrics()
+    {
+    }
+
+    public static ClientMetrics getInstance()
+    {
+        return ClientMetricsHolder.INSTANCE;
+    }
+
+    /**
+     * 获取方法指标，首次获取时创建
+     *
+     * @param fullMethodName 方法全名
+     * @return 方法指标
+     */
+    MethodMetrics getMethodMetrics(String fullMethodName)
+    {
+        MethodMetrics metrics = methods.get(fullMethodName);
+        if (metrics == null)
+        {
+            metrics = methods.computeIfAbsent(fullMethodName, name -> new MethodMetrics());
+        }
+        return metrics;
+    }
+
+    /**
+     * 生成全部方法的指标快照
+     *
+     * @return key:方法全名 value:快照，按方法名排序
+     */
+    public Map<String, MethodSnapshot> snapshot()
+    {
+        Map<String, MethodSnapshot> snapshots = new TreeMap<>();
+        for (Map.Entry<String, MethodMetrics> entry : methods.entrySet())
+        {
+            snapshots.put(entry.getKey(), entry.getValue().snapshot());
+        }
+        return Collections.unmodifiableMap(snapshots);
+    }
+
+    /**
+     * 单个方法的指标，记录时不分配对象
+     */
+    static final class MethodMetrics
+    {
+        private final LatencyHistogram latency = new LatencyHistogram();
+
+        private final LongAdder bytesSent = new LongAdder();
+
+        private final LongAdder bytesReceived = new LongAdder();
+
+        private final AtomicInteger inFlight = new AtomicInteger();
+
+        /*
+         * 按状态码下标计数
+         */
+        private final AtomicLongArray statusCounts = new AtomicLongArray(CODES.length);
+
+        void callStarted()
+        {
+            inFlight.incrementAndGet();
+        }
+
+        void messageSent(int bytes)
+        {
+            bytesSent.add(bytes);
+        }
+
+        void messageReceived(int bytes)
+        {
+            bytesReceived.add(bytes);
+        }
+
+        void callClosed(Status.Code code, long latencyMicros)
+        {
+            inFlight.decrementAndGet();
+            statusCounts.incrementAndGet(code.ordinal());
+            latency.record(latencyMicros);
+        }
+
+        MethodSnapshot snapshot()
+        {
+            Map<Status.Code, Long> codes = new TreeMap<>();
+            for (int i = 0; i < CODES.length; i++)
+            {
+                long count = statusCounts.get(i);
+                if (count > 0)
+                {
+                    codes.put(CODES[i], count);
+                }
+            }
+            return new MethodSnapshot(latency.snapshot(), bytesSent.sum(), bytesReceived.sum(), inFlight.get(),
+                    Collections.unmodifiableMap(codes));
+        }
+    }
+
+    /**
+     * 单个方法的指标快照
+     */
+    public static final class MethodSnapshot
+    {
+        private final LatencyHistogram.Snapshot latency;
+
+        private final long bytesSent;
+
+        private final long bytesReceived;
+
+        private final int inFlight;
+
+        private final Map<Status.Code, Long> statusCounts;
+
+        MethodSnapshot(LatencyHistogram.Snapshot latency, long bytesSent, long bytesReceived, int inFlight,
+                Map<Status.Code, Long> statusCounts)
+        {
+            this.latency = latency;
+            this.bytesSent = bytesSent;
+            this.bytesReceived = bytesReceived;
+            this.inFlight = inFlight;
+            this.statusCounts = statusCounts;
+        }
+
+        public LatencyHistogram.Snapshot getLatency()
+        {
+            return latency;
+        }
+
+        public long getBytesSent()
+        {
+            return bytesSent;
+        }
+
+        public long getBytesReceived()
+        {
+            return bytesReceived;
+        }
+
+        public int getInFlight()
+        {
+            return inFlight;
+        }
+
+        /**
+         * 获取状态码计数
+         *
+         * @return key:状态码 value:次数，只包含出现过的状态码
+         */
+        public Map<Status.Code, Long> getStatusCounts()
+        {
+            return statusCounts;
+        }
+
+        /**
+         * 获取非OK状态的调用数
+         *
+         * @return 错误数
+         */
+        public long getErrors()
+        {
+            long errors = 0L;
+            for (Map.Entry<Status.Code, Long> entry : statusCounts.entrySet())
+            {
+                if (entry.getKey() != Status.Code.OK)
+                {
+                    errors += entry.getValue();
+                }
+            }
+            return errors;
+        }
+
+        @Override
+        public String toString()
+        {
+            return "[latency=" + latency + ", bytesSent=" + bytesSent + ", bytesReceived=" + bytesReceived
+                    + ", inFlight=" + inFlight + ", status=" + statusCounts + "]";
+        }
+    }
+}
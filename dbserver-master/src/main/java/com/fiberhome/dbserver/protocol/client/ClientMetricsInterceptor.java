@@ -0,0 +1,85 @@
+package com.fiberhome.dbserver.protocol.client;
+
+import java.util.concurrent.TimeUnit;
+
+import com.fiberhome.dbserver.protocol.client.ClientMetrics.MethodMetrics;
+import com.google.protobuf.MessageLite;
+import io.grpc.CallOptions;
+import io.grpc.Channel;
+import io.grpc.ClientCall;
+import io.grpc.ClientInterceptor;
+import io.grpc.ForwardingClientCall.SimpleForwardingClientCall;
+import io.grpc.ForwardingClientCallListener.SimpleForwardingClientCallListener;
+import io.grpc.Metadata;
+import io.grpc.MethodDescriptor;
+import io.grpc.Status;
+
+/**
+ * 客户端RPC指标拦截器
+ * 记录每次调用的延迟、状态码与消息序列化字节数(压缩前)，除调用本身的包装对象外不分配对象
+ *
+ * @since 1.0.0
+ */
+final class ClientMetricsInterceptor implements ClientInterceptor
+{
+    private final ClientMetrics metrics;
+
+    ClientMetricsInterceptor(ClientMetrics metrics)
+    {
+        this.metrics = metrics;
+    }
+
+    @Override
+    public <ReqT, RespT> ClientCall<ReqT, RespT> interceptCall(MethodDescriptor<ReqT, RespT> method,
+            CallOptions callOptions, Channel next)
+    {
+        MethodMetrics methodMetrics = metrics.getMethodMetrics(method.getFullMethodName());
+        return new SimpleForwardingClientCall<ReqT, RespT>(next.newCall(method, callOptions))
+        {
+            @Override
+            public void start(Listener<RespT> responseListener, Metadata headers)
+            {
+                long startNanos = System.nanoTime();
+                methodMetrics.callStarted();
+                try
+                {
+                    super.start(new SimpleForwardingClientCallListener<RespT>(responseListener)
+                    {
+                        @Override
+                        public void onMessage(RespT message)
+                        {
+                            methodMetrics.messageReceived(sizeOf(message));
+                            super.onMessage(message);
+                        }
+
+                        @Override
+                        public void onClose(Status status, Metadata trailers)
+                        {
+                            methodMetrics.callClosed(status.getCode(),
+                                    TimeUnit.NANOSECONDS.toMicros(System.nanoTime() - startNanos));
+                            super.onClose(status, trailers);
+                        }
+                    }, headers);
+                }
+                catch (RuntimeException e)
+                {
+                    methodMetrics.callClosed(Status.Code.INTERNAL,
+                            TimeUnit.NANOSECONDS.toMicros(System.nanoTime() - startNanos));
+                    throw e;
+                }
+            }
+
+            @Override
+            public void sendMessage(ReqT message)
+            {
+                methodMetrics.messageSent(sizeOf(message));
+                super.sendMessage(message);
+            }
+        };
+    }
+
+    private static int sizeOf(Object message)
+    {
+        return message instanceof MessageLite ? ((MessageLite) message).getSerializedSize() : 0;
+    }
+}
@@ -0,0 +1,63 @@
+package com.fiberhome.dbserver.protocol.client;
+
+import com.fiberhome.dbserver.common.config.ClientCongfiguration;
+import com.fiberhome.dbserver.protocol.common.CompressionPolicy;
+import io.grpc.CallOptions;
+import io.grpc.Channel;
+import io.grpc.ClientCall;
+import io.grpc.ClientInterceptor;
+import io.grpc.ForwardingClientCall.SimpleForwardingClientCall;
+import io.grpc.MethodDescriptor;
+
+/**
+ * 客户端请求压缩拦截器
+ * 按方法设置压缩编码，并逐条消息按序列化大小决定是否压缩
+ *
+ * @since 1.0.0
+ */
+final class CompressionClientInterceptor implements ClientInterceptor
+{
+    private final CompressionPolicy policy;
+
+    private static class CompressionClientInterceptorHolder
+    {
+        private static final CompressionClientInterceptor INSTANCE;
+
+        static
+        {
+            ClientCongfiguration conf = ClientCongfiguration.getClientConfiguration();
+            INSTANCE = new CompressionClientInterceptor(CompressionPolicy.parse(conf.getGrpcCompressionMethods(),
+                    conf.getGrpcCompressionThreshold()));
+        }
+    }
+
+    CompressionClientInterceptor(CompressionPolicy policy)
+    {
+        this.policy = policy;
+    }
+
+    static CompressionClientInterceptor getInstance()
+    {
+        return CompressionClientInterceptorHolder.INSTANCE;
+    }
+
+    @Override
+    public <ReqT, RespT> ClientCall<ReqT, RespT> interceptCall(MethodDescriptor<ReqT, RespT> method,
+            CallOptions callOptions, Channel next)
+    {
+        String codec = policy.codecFor(method.getFullMethodName());
+        if (codec == null)
+        {
+            return next.newCall(method, callOptions);
+        }
+        return new SimpleForwardingClientCall<ReqT, RespT>(next.newCall(method, callOptions.withCompression(codec)))
+        {
+            @Override
+            public void sendMessage(ReqT message)
+            {
+                delegate().setMessageCompression(policy.shouldCompress(message));
+                super.sendMessage(message);
+            }
+        };
+    }
+}
@@ -0,0 +1,152 @@
+package com.fiberhome.dbserver.protocol.client;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import io.grpc.CallOptions;
+import io.grpc.Channel;
+import io.grpc.ClientCall;
+import io.grpc.ClientInterceptor;
+import io.grpc.ConnectivityState;
+import io.grpc.ForwardingClientCall;
+import io.grpc.ForwardingClientCallListener;
+import io.grpc.ManagedChannel;
+import io.grpc.Metadata;
+import io.grpc.MethodDescriptor;
+import io.grpc.Status;
+
+/**
+ * 优先经由unix域套接字、失败时回退到tcp的链路创建方法
+ * 域套接字链路连接失败或调用返回UNAVAILABLE后，关闭全部域套接字链路，客户端重建链路时改用tcp，之后不再尝试域套接字
+ *
+ * @since 1.0.0
+ */
+final class DomainSocketChannelFactory implements Supplier<ManagedChannel>
+{
+    private static final Logger LOG = LoggerFactory.getLogger(DomainSocketChannelFactory.class);
+
+    private final String path;
+
+    private final Function<ClientInterceptor, ManagedChannel> domainSocketFactory;
+
+    private final Supplier<ManagedChannel> tcpFactory;
+
+    /*
+     * 已创建的域套接字链路，回退时全部关闭
+     */
+    private final List<ManagedChannel> domainSocketChannels = new CopyOnWriteArrayList<>();
+
+    private volatile boolean fallback;
+
+    /**
+     * 构造函数
+     *
+     * @param path                套接字文件路径
+     * @param domainSocketFactory 按指定拦截器创建域套接字链路
+     * @param tcpFactory          创建tcp链路
+     */
+    DomainSocketChannelFactory(String path, Function<ClientInterceptor, ManagedChannel> domainSocketFactory,
+            Supplier<ManagedChannel> tcpFactory)
+    {
+        this.path = path;
+        this.domainSocketFactory = domainSocketFactory;
+        this.tcpFactory = tcpFactory;
+    }
+
+    @Override
+    public ManagedChannel get()
+    {
+        if (fallback)
+        {
+            return tcpFactory.get();
+        }
+        ManagedChannel channel = domainSocketFactory.apply(new UnavailableInterceptor());
+        domainSocketChannels.add(channel);
+        // 创建期间已回退时立即关闭，由客户端重建为tcp链路
+        if (fallback)
+        {
+            channel.shutdown();
+        }
+        else
+        {
+            watch(channel, channel.getState(false));
+        }
+        return channel;
+    }
+
+    /**
+     * 是否已回退到tcp
+     *
+     * @return 是否回退
+     */
+    boolean isFallback()
+    {
+        return fallback;
+    }
+
+    private void watch(ManagedChannel channel, ConnectivityState current)
+    {
+        if (current == ConnectivityState.SHUTDOWN)
+        {
+            return;
+        }
+        if (current == ConnectivityState.TRANSIENT_FAILURE)
+        {
+            fallBack("connect failed");
+            return;
+        }
+        channel.notifyWhenStateChanged(current, () -> watch(channel, channel.getState(false)));
+    }
+
+    private void fallBack(String reason)
+    {
+        if (fallback)
+        {
+            return;
+        }
+        fallback = true;
+        LOG.warn("grpc domain socket {} {}, fall back to tcp.", path, reason);
+        for (ManagedChannel channel : domainSocketChannels)
+        {
+            channel.shutdown();
+        }
+        domainSocketChannels.clear();
+    }
+
+    /**
+     * 域套接字链路上的调用返回UNAVAILABLE时回退
+     */
+    private final class UnavailableInterceptor implements ClientInterceptor
+    {
+        @Override
+        public <ReqT, RespT> ClientCall<ReqT, RespT> interceptCall(MethodDescriptor<ReqT, RespT> method,
+                CallOptions callOptions, Channel next)
+        {
+            return new ForwardingClientCall.SimpleForwardingClientCall<ReqT, RespT>(next.newCall(method, callOptions))
+            {
+                @Override
+                public void start(Listener<RespT> responseListener, Metadata headers)
+                {
+                    super.start(new ForwardingClientCallListener.SimpleForwardingClientCallListener<RespT>(
+                            responseListener)
+                    {
+                        @Override
+                        public void onClose(Status status, Metadata trailers)
+                        {
+                            if (status.getCode() == Status.Code.UNAVAILABLE)
+                            {
+                                fallBack("is unavailable");
+                            }
+                            super.onClose(status, trailers);
+                        }
+                    }, headers);
+                }
+            };
+        }
+    }
+}
@@ -2,21 +2,32 @@ package com.fiberhome.dbserver.protocol.client;
 
 import static com.fiberhome.dbserver.protocol.common.GrpcConstants.MAX_MESSAGE_SIZE;
 
-import java.lang.reflect.Method;
 import java.net.InetSocketAddress;
+import java.util.Map;
+import java.util.concurrent.Executor;
 import java.util.concurrent.ExecutorService;
-import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.function.Supplier;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import com.fiberhome.dbserver.common.config.ClientCongfiguration;
+import com.fiberhome.dbserver.protocol.common.GrpcCompression;
+import com.fiberhome.dbserver.protocol.common.NettyEventLoops;
 import com.fiberhome.dbserver.tools.util.Addressing;
-import com.fiberhome.dbserver.tools.util.MathUtils;
 import com.fiberhome.dbserver.tools.util.PreconditionVerifier;
+import com.google.common.util.concurrent.MoreExecutors;
 import io.grpc.Channel;
+import io.grpc.ClientInterceptor;
+import io.grpc.ConnectivityState;
 import io.grpc.ManagedChannel;
+import io.grpc.inprocess.InProcessChannelBuilder;
 import io.grpc.netty.NettyChannelBuilder;
 import io.grpc.stub.AbstractStub;
+import io.netty.channel.unix.DomainSocketAddress;
 
 /**
  * GRPC客户端
@@ -29,19 +40,35 @@ public class GrpcClient
     private static final Logger LOG = LoggerFactory.getLogger(GrpcClient.class);
 
     /**
-     * 客户端通讯链路
+     * 所有链路共用的指标拦截器
      */
-    private ManagedChannel[] channels;
+    private static final ClientMetricsInterceptor METRICS_INTERCEPTOR = new ClientMetricsInterceptor(
+            ClientMetrics.getInstance());
 
     /**
-     * 通讯链路的数量
+     * 客户端通讯链路，失效链路通过CAS替换
      */
-    private int channelCount;
+    private final AtomicReferenceArray<PooledChannel> channels;
+
+    /**
+     * 底层链路的创建方法
+     */
+    private final Supplier<ManagedChannel> channelFactory;
+
+    /**
+     * 客户端是否已关闭，关闭后不再重建链路
+     */
+    private volatile boolean closed;
+
+    /**
+     * 是否在创建链路时立即建立连接
+     */
+    private final boolean prewarm;
 
     /**
-     * 使用通讯链路的计数器
+     * 通讯链路的数量
      */
-    private AtomicInteger channelCounter = new AtomicInteger();
+    private int channelCount;
 
     /**
      * 访问服务地址
@@ -54,15 +81,10 @@ public class GrpcClient
     private int transportPort;
 
     /**
-     * GRPC Client端业务线程池
+     * GRPC Client端业务线程池，由GrpcClientFactory统一创建，所有客户端共享
      */
     private ExecutorService pool;
 
-    /**
-     * 配置
-     */
-    private static final Object CHANNELMUTEX = new Object();
-
     /**
      * 构造客户端函数
      * 指定要连接的机器，端口号，客户端需要建立的连接数，rpc所用的线程池
@@ -70,7 +92,7 @@ public class GrpcClient
      * @param hostName 主机名称
      * @param port 端口名称
      * @param cachedChannelCount 客户端需要建立的连接数
-     * @param executor rpc所用的线程池
+     * @param executor rpc所用的线程池，由调用方负责关闭
      *
      */
     GrpcClient(String hostName, int port, int cachedChannelCount, ExecutorService executor)
@@ -80,12 +102,56 @@ public class GrpcClient
         this.transportPort = port;
         this.channelCount = cachedChannelCount;
         this.pool = executor;
+        this.channelFactory = this::createClientChannel;
+        this.channels = createChannels(cachedChannelCount, channelFactory);
+        this.prewarm = ClientCongfiguration.getClientConfiguration().isGrpcChannelPrewarm();
+        watchChannels();
+    }
+
+    /**
+     * 构造客户端函数
+     * 按目标地址创建链路，由名称解析器提供地址列表，由指定的负载均衡策略在地址间分发调用
+     *
+     * @param target 目标地址，如slaves://master主机:端口
+     * @param loadBalancingPolicy 负载均衡策略名
+     * @param cachedChannelCount 客户端需要建立的连接数
+     * @param executor rpc所用的线程池，由调用方负责关闭
+     */
+    GrpcClient(String target, String loadBalancingPolicy, int cachedChannelCount, ExecutorService executor)
+    {
+        this.channelCount = cachedChannelCount;
+        this.pool = executor;
+        this.channelFactory = () -> createTargetChannel(target, loadBalancingPolicy);
+        this.channels = createChannels(cachedChannelCount, channelFactory);
+        this.prewarm = ClientCongfiguration.getClientConfiguration().isGrpcChannelPrewarm();
+        watchChannels();
+    }
+
+    /**
+     * 构造客户端函数
+     * 使用指定方法创建底层链路
+     *
+     * @param cachedChannelCount 客户端需要建立的连接数
+     * @param channelFactory 底层链路的创建方法
+     */
+    GrpcClient(int cachedChannelCount, Supplier<ManagedChannel> channelFactory)
+    {
+        this.channelCount = cachedChannelCount;
+        this.channelFactory = channelFactory;
+        this.channels = createChannels(cachedChannelCount, channelFactory);
+        this.prewarm = true;
+        watchChannels();
+    }
+
+    private static AtomicReferenceArray<PooledChannel> createChannels(int count, Supplier<ManagedChannel> factory)
+    {
         //创建通信链路
-        channels = new ManagedChannel[channelCount];
-        for (int i = 0; i < channelCount; i++)
+        AtomicReferenceArray<PooledChannel> pooledChannels = new AtomicReferenceArray<>(count);
+        for (int i = 0; i < count; i++)
         {
-            channels[i] = createClientChannel();
+            pooledChannels.set(i, new PooledChannel(factory.get()));
         }
+        return pooledChannels;
     }
 
     /**
@@ -95,53 +161,266 @@ public class GrpcClient
      */
     private ManagedChannel createClientChannel()
     {
-        LOG.info("init client host: {} and port:{}", transportHost, transportPort);
-        NettyChannelBuilder builder = NettyChannelBuilder
-                .forAddress(new InetSocketAddress(transportHost, transportPort)).usePlaintext()
-                .maxInboundMessageSize(MAX_MESSAGE_SIZE).executor(this.pool);
-        return builder.build();
+        return createTcpChannel(transportHost, transportPort, this.pool);
     }
 
     /**
-     * 关闭通信的通道
+     * 创建经由tcp访问server的管道
+     *
+     * @param host 服务端地址
+     * @param port 服务端端口
+     * @param executor rpc所用的线程池
+     * @return 管道
      */
-    public void shutdown()
+    static ManagedChannel createTcpChannel(String host, int port, ExecutorService executor)
+    {
+        LOG.info("init client host: {} and port:{}", host, port);
+        NettyChannelBuilder builder = NettyChannelBuilder.forAddress(new InetSocketAddress(host, port))
+                .usePlaintext().maxInboundMessageSize(MAX_MESSAGE_SIZE).executor(executor);
+        NettyEventLoops.getInstance().configure(builder);
+        return configure(builder).build();
+    }
+
+    /**
+     * 创建按目标地址解析并负载均衡的管道
+     *
+     * @param target 目标地址
+     * @param loadBalancingPolicy 负载均衡策略名
+     * @return 管道
+     */
+    private ManagedChannel createTargetChannel(String target, String loadBalancingPolicy)
+    {
+        LOG.info("init client target: {} and policy:{}", target, loadBalancingPolicy);
+        NettyChannelBuilder builder = NettyChannelBuilder.forTarget(target).defaultLoadBalancingPolicy(
+                loadBalancingPolicy).usePlaintext().maxInboundMessageSize(MAX_MESSAGE_SIZE).executor(this.pool);
+        NettyEventLoops.getInstance().configure(builder);
+        return configure(builder).build();
+    }
+
+    /**
+     * 创建经由unix域套接字访问本机server的管道
+     *
+     * @param path 套接字文件路径
+     * @param authority 服务端地址，主机:端口
+     * @param executor rpc所用的线程池
+     * @param interceptor 附加的拦截器
+     * @return 管道
+     */
+    static ManagedChannel createDomainSocketChannel(String path, String authority, ExecutorService executor,
+            ClientInterceptor interceptor)
+    {
+        LOG.info("init client domain socket: {} for {}", path, authority);
+        NettyChannelBuilder builder = NettyChannelBuilder.forAddress(new DomainSocketAddress(path))
+                .overrideAuthority(authority).usePlaintext().maxInboundMessageSize(MAX_MESSAGE_SIZE)
+                .executor(executor);
+        NettyEventLoops.getInstance().configureDomainSocket(builder);
+        return configure(builder).intercept(interceptor).build();
+    }
+
+    /**
+     * 创建访问本进程内server的进程内管道，请求对象直接传递给服务端，不经过序列化与网络协议栈
+     *
+     * @param name 进程内server名
+     * @param executor rpc所用的线程池
+     * @return 管道
+     */
+    static ManagedChannel createInProcessChannel(String name, ExecutorService executor)
     {
-        if (channels != null)
+        LOG.info("init in-process client: {}", name);
+        InProcessChannelBuilder builder = InProcessChannelBuilder.forName(name).maxInboundMessageSize(
+                MAX_MESSAGE_SIZE).executor(executor);
+        Map<String, Object> serviceConfig = RetryServiceConfig.build(ClientCongfiguration.getClientConfiguration());
+        if (serviceConfig != null)
         {
-            for (ManagedChannel channel : channels)
-            {
+            builder.defaultServiceConfig(serviceConfig).enableRetry();
+        }
+        return builder.intercept(METRICS_INTERCEPTOR).build();
+    }
 
-                if (!channel.isShutdown())
-                {
-                    channel.shutdown();
-                }
+    /**
+     * 设置压缩编码、连接保活、幂等方法重试与调用指标，共享事件循环与传输类型由调用方设置
+     * 无调用时也发送keepalive，及时发现对端重启或网络中断；空闲超时未配置时链路不进入空闲状态
+     *
+     * @param builder 链路构造器
+     * @return 链路构造器
+     */
+    private static NettyChannelBuilder configure(NettyChannelBuilder builder)
+    {
+        ClientCongfiguration conf = ClientCongfiguration.getClientConfiguration();
+        builder.keepAliveTime(conf.getGrpcKeepAliveTime(), TimeUnit.SECONDS)
+                .keepAliveTimeout(conf.getGrpcKeepAliveTimeout(), TimeUnit.SECONDS).keepAliveWithoutCalls(true);
+        long idleTimeout = conf.getGrpcIdleTimeout();
+        if (idleTimeout > 0)
+        {
+            builder.idleTimeout(idleTimeout, TimeUnit.SECONDS);
+        }
+        else
+        {
+            // 超过30天即关闭空闲模式
+            builder.idleTimeout(TimeUnit.DAYS.toSeconds(31), TimeUnit.SECONDS);
+        }
+        Map<String, Object> serviceConfig = RetryServiceConfig.build(conf);
+        if (serviceConfig != null)
+        {
+            builder.defaultServiceConfig(serviceConfig).enableRetry();
+        }
+        return GrpcCompression.configure(builder).intercept(CompressionClientInterceptor.getInstance(),
+                METRICS_INTERCEPTOR);
+    }
+
+    /**
+     * 监听全部链路的连接状态，开启预热时立即建立连接
+     */
+    private void watchChannels()
+    {
+        for (int i = 0; i < channelCount; i++)
+        {
+            watch(channels.get(i).getManagedChannel(), prewarm);
+        }
+    }
+
+    /**
+     * 监听链路连接状态，链路因空闲或对端断开进入IDLE后在后台重新建立连接，
+     * 使下一次调用不在请求路径上承担TCP与HTTP/2建连开销；TRANSIENT_FAILURE由grpc按退避策略重连
+     *
+     * @param channel 链路
+     * @param connect IDLE时是否建立连接
+     */
+    private void watch(ManagedChannel channel, boolean connect)
+    {
+        if (closed)
+        {
+            return;
+        }
+        ConnectivityState state = channel.getState(false);
+        if (state == ConnectivityState.SHUTDOWN)
+        {
+            return;
+        }
+        if (state == ConnectivityState.IDLE && connect)
+        {
+            state = channel.getState(true);
+        }
+        final ConnectivityState current = state;
+        channel.notifyWhenStateChanged(current, () ->
+        {
+            ConnectivityState next = channel.getState(false);
+            if (next == ConnectivityState.TRANSIENT_FAILURE || current == ConnectivityState.TRANSIENT_FAILURE)
+            {
+                LOG.info("grpc channel to {} changed from {} to {}", channel.authority(), current, next);
             }
+            // 首次连接成功后，之后的IDLE一律重连
+            watch(channel, connect || next == ConnectivityState.READY);
+        });
+    }
+
+    /**
+     * 立即为全部链路建立连接，用于启动时预热或对端恢复后主动重连
+     */
+    public void connect()
+    {
+        for (int i = 0; i < channelCount; i++)
+        {
+            channels.get(i).getManagedChannel().getState(true);
         }
-        if (this.pool != null)
+    }
+
+    /**
+     * 关闭通信的通道，共享的业务线程池由GrpcClientFactory关闭
+     */
+    public void shutdown()
+    {
+        closed = true;
+        for (int i = 0; i < channelCount; i++)
         {
-            this.pool.shutdownNow();
+            PooledChannel pooledChannel = channels.get(i);
+            // 释放缓存的存根，不再持有已关闭的回调线程池
+            pooledChannel.clearStubs();
+            ManagedChannel channel = pooledChannel.getManagedChannel();
+            if (!channel.isShutdown())
+            {
+                channel.shutdown();
+            }
         }
     }
 
     public ManagedChannel[] getChannels()
     {
-        return channels;
+        ManagedChannel[] managedChannels = new ManagedChannel[channelCount];
+        for (int i = 0; i < channelCount; i++)
+        {
+            managedChannels[i] = channels.get(i).getManagedChannel();
+        }
+        return managedChannels;
     }
 
     public AbstractStub getServiceAsyncStub(String serviceName)
     {
-        return (AbstractStub) getRpcStub(transportHost, this.transportPort, serviceName, ClientStubType.ASYNCSTUB);
+        return getStub(serviceName, ClientStubType.ASYNCSTUB);
     }
 
     public AbstractStub getServiceBlockStub(String serviceName)
     {
-        return (AbstractStub) getRpcStub(transportHost, this.transportPort, serviceName, ClientStubType.BLOCKSTUB);
+        return getStub(serviceName, ClientStubType.BLOCKSTUB);
     }
 
     public AbstractStub getServiceFutureStub(String serviceName)
     {
-        return (AbstractStub) getRpcStub(transportHost, this.transportPort, serviceName, ClientStubType.FUTURESTUB);
+        return getStub(serviceName, ClientStubType.FUTURESTUB);
+    }
+
+    /**
+     * 获取指定回调执行方式的异步存根
+     *
+     * @param serviceName      服务名
+     * @param callbackExecutor 回调执行方式
+     * @return 存根
+     */
+    public AbstractStub getServiceAsyncStub(String serviceName, CallbackExecutor callbackExecutor)
+    {
+        return getStub(serviceName, ClientStubType.ASYNCSTUB, callbackExecutor);
+    }
+
+    /**
+     * 获取指定回调执行方式的Future存根，DIRECT方式下Future的监听器若未指定线程池也会在事件循环线程中执行
+     *
+     * @param serviceName      服务名
+     * @param callbackExecutor 回调执行方式
+     * @return 存根
+     */
+    public AbstractStub getServiceFutureStub(String serviceName, CallbackExecutor callbackExecutor)
+    {
+        return getStub(serviceName, ClientStubType.FUTURESTUB, callbackExecutor);
+    }
+
+    /**
+     * 在当前负载最低的链路上获取存根，存根按链路缓存，可在线程间共享
+     *
+     * @param serviceName 服务名
+     * @param stubType 根类别
+     * @param <S> 存根类型
+     * @return 存根
+     */
+    @SuppressWarnings("unchecked")
+    public <S extends AbstractStub<S>> S getStub(String serviceName, ClientStubType stubType)
+    {
+        return (S) selectChannel().getStub(serviceName, stubType);
+    }
+
+    /**
+     * 在当前负载最低的链路上获取指定回调执行方式的存根
+     *
+     * @param serviceName 服务名
+     * @param stubType 根类别
+     * @param callbackExecutor 回调执行方式，阻塞存根始终在调用线程中等待结果，不受该参数影响
+     * @param <S> 存根类型
+     * @return 存根
+     */
+    @SuppressWarnings("unchecked")
+    public <S extends AbstractStub<S>> S getStub(String serviceName, ClientStubType stubType,
+            CallbackExecutor callbackExecutor)
+    {
+        return (S) selectChannel().getStub(serviceName, stubType, callbackExecutor);
     }
 
     /**
@@ -154,30 +433,7 @@ public class GrpcClient
      */
     public static Object getRpcStub(String host, int port, String serviceName, ClientStubType stubType)
     {
-        try
-        {
-            Class<?> rpcClass = Class.forName(serviceName);
-            Method stubMethod = null;
-
-            switch (stubType)
-            {
-                case ASYNCSTUB:
-                case BLOCKSTUB:
-                case FUTURESTUB:
-                    stubMethod = rpcClass.getDeclaredMethod(stubType.getMethod(), Channel.class);
-                    stubMethod.setAccessible(true);
-                    break;
-                default:
-                    throw new IllegalArgumentException("Unknown stubType: " + stubType);
-            }
-            ManagedChannel channel = GrpcClientFactory.getGrpcClient(host, port).getChannel();
-            return stubMethod.invoke(rpcClass, channel);
-        }
-        catch (Exception e)
-        {
-            LOG.error("Failed to get rpcStub.", e);
-            throw new IllegalStateException(e);
-        }
+        return GrpcClientFactory.getGrpcClient(host, port).getStub(serviceName, stubType);
     }
 
     /**
@@ -205,31 +461,98 @@ public class GrpcClient
     }
 
     /**
-     * 随机获取链路
-     *
-     * @return 轮询数组中的通信链路
+     * 响应回调的执行方式
      */
-    public ManagedChannel getChannel()
+    public enum CallbackExecutor
     {
-        int random = MathUtils.mod(channelCounter.incrementAndGet(), channelCount);
-        if (channels[random] != null && !channels[random].isShutdown() && !channels[random].isTerminated())
+        // 在客户端共享业务线程池中执行
+        DEFAULT,
+        // 直接在Netty事件循环线程中执行，省去一次线程切换，回调中不得阻塞或执行耗时操作
+        DIRECT,
+        // 在有界的回调卸载线程池中执行，队列满时由提交线程执行
+        OFFLOAD;
+
+        /**
+         * 获取回调线程池
+         *
+         * @return 线程池，DEFAULT时返回null即沿用链路的业务线程池
+         */
+        Executor getExecutor()
         {
-            return channels[random];
+            switch (this)
+            {
+                case DIRECT:
+                    return MoreExecutors.directExecutor();
+                case OFFLOAD:
+                    return GrpcClientFactory.getOffloadExecutor();
+                default:
+                    return null;
+            }
         }
-        else
+    }
+
+    /**
+     * 获取未完成调用数最少的链路，调用数相同时从随机位置开始选择，避免集中到第一条链路
+     *
+     * @return 通信链路
+     */
+    public Channel getChannel()
+    {
+        return selectChannel().getChannel();
+    }
+
+    /**
+     * 选择未完成调用数最少的链路，遇到失效链路时就地重建
+     *
+     * @return 链路
+     */
+    PooledChannel selectChannel()
+    {
+        int start = channelCount == 1 ? 0 : ThreadLocalRandom.current().nextInt(channelCount);
+        PooledChannel selected = null;
+        int minOutstanding = Integer.MAX_VALUE;
+        for (int i = 0; i < channelCount; i++)
         {
-            synchronized (CHANNELMUTEX)
+            int index = (start + i) % channelCount;
+            PooledChannel candidate = channels.get(index);
+            if (!candidate.isUsable())
             {
-                if (channels[random] != null && !channels[random].isShutdown() && !channels[random].isTerminated())
-                {
-                    return channels[random];
-                }
-                else
+                candidate = replaceChannel(index, candidate);
+            }
+            int outstanding = candidate.getOutstandingCalls();
+            if (outstanding < minOutstanding)
+            {
+                minOutstanding = outstanding;
+                selected = candidate;
+                if (outstanding == 0)
                 {
-                    channels[random] = createClientChannel();
-                    return channels[random];
+                    break;
                 }
             }
         }
+        return selected;
+    }
+
+    /**
+     * 重建失效的链路，并发重建时只有一方替换成功，失败的一方关闭自己创建的链路
+     *
+     * @param index 链路下标
+     * @param dead  失效的链路
+     * @return 替换后的链路
+     */
+    private PooledChannel replaceChannel(int index, PooledChannel dead)
+    {
+        if (closed)
+        {
+            return dead;
+        }
+        PooledChannel rebuilt = new PooledChannel(channelFactory.get());
+        if (channels.compareAndSet(index, dead, rebuilt))
+        {
+            watch(rebuilt.getManagedChannel(), true);
+            return rebuilt;
+        }
+        rebuilt.getManagedChannel().shutdownNow();
+        return channels.get(index);
     }
 }
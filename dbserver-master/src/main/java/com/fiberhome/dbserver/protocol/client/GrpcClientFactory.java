@@ -1,14 +1,26 @@
 package com.fiberhome.dbserver.protocol.client;
 
-import java.util.Map;
-import java.util.concurrent.Executors;
-import java.util.concurrent.atomic.AtomicInteger;
+import java.io.File;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
 
-import com.fiberhome.dbserver.tools.util.MathUtils;
-import com.google.common.collect.Maps;
+import com.fiberhome.dbserver.common.config.ClientCongfiguration;
+import com.fiberhome.dbserver.common.services.Threads;
+import com.fiberhome.dbserver.protocol.client.balancer.SlaveBalancing;
+import com.fiberhome.dbserver.protocol.common.DomainSockets;
+import com.fiberhome.dbserver.protocol.common.GrpcConstants;
+import com.fiberhome.dbserver.protocol.common.InProcessServers;
+import com.fiberhome.dbserver.protocol.common.NettyEventLoops;
+import com.fiberhome.dbserver.tools.util.Addressing;
 
 /**
  * 用于获取GrpcClient
+ * 每个主机:端口对应一个客户端，客户端内的链路数由配置决定，所有客户端共享一个业务线程池；
+ * 目标server在本进程内时使用进程内传输，在本机时优先使用unix域套接字，域套接字不可用时回退到tcp
  *
  * @author fuyuanyuan, 2020/10/20
  * @since 1.0.0
@@ -16,71 +28,184 @@ import com.google.common.collect.Maps;
 public class GrpcClientFactory
 {
     /*
-     * 客户端缓存数
+     * 客户端业务线程空闲存活时间，单位秒
      */
-    private static final int CLIENT_SIZE = 10;
+    private static final long CLIENT_THREAD_KEEP_ALIVE_SECONDS = 60L;
 
     /*
-     * Server客户端缓存, 主机名及主机对应的客户端
+     * Server客户端缓存, key:主机名:端口或目标地址 value:客户端
      */
-    private static Map<String, GrpcClient[]> serverGrpcClientCache = Maps.newHashMap();
+    private static final ConcurrentMap<String, GrpcClient> GRPC_CLIENT_CACHE = new ConcurrentHashMap<>();
 
     /*
-     * 计数器 key:主机名称 value:计数器
+     * 所有客户端共享的业务线程池
      */
-    private static Map<String, AtomicInteger> serverCounters = Maps.newHashMap();
+    private static ExecutorService sharedExecutor;
 
     /*
-     * 获取Server客户端锁
+     * 有界的回调卸载线程池，见GrpcClient.CallbackExecutor.OFFLOAD
      */
-    private static final Object SERVERLOCK = new Object();
+    private static ExecutorService offloadExecutor;
 
     /**
-     * 获取访问masterGrpc的客户端
+     * 获取访问指定主机端口的客户端
      *
-     * @param hostName master地址
-     * @param port     master端口
+     * @param hostName 主机地址
+     * @param port     端口
      * @return 客户端
      */
     public static GrpcClient getGrpcClient(String hostName, int port)
     {
-        if (!serverGrpcClientCache.containsKey(hostName))
+        String key = Addressing.createHostAndPortStr(hostName, port);
+        GrpcClient client = GRPC_CLIENT_CACHE.get(key);
+        if (client != null)
         {
-            synchronized (SERVERLOCK)
+            return client;
+        }
+        // 创建与关闭持有同一把锁，避免关闭过程中创建出持有已关闭线程池的客户端
+        synchronized (GrpcClientFactory.class)
+        {
+            client = GRPC_CLIENT_CACHE.get(key);
+            if (client == null)
             {
-                if (!serverGrpcClientCache.containsKey(hostName))
+                ClientCongfiguration conf = ClientCongfiguration.getClientConfiguration();
+                ExecutorService executor = getSharedExecutor(conf);
+                String inProcessName = InProcessServers.name(Addressing.getHostIpFromInetAddress(hostName), port);
+                if (conf.isGrpcInProcessEnabled() && InProcessServers.isLocal(inProcessName))
+                {
+                    // server在本进程内，一条进程内链路即可
+                    client = new GrpcClient(1, () -> GrpcClient.createInProcessChannel(inProcessName, executor));
+                }
+                else if (isDomainSocketPreferred(conf, hostName, port))
+                {
+                    // 域套接字连接失败或不可用时回退到tcp
+                    String path = DomainSockets.path(conf.getGrpcDomainSocketDir(), port);
+                    String ip = Addressing.getHostIpFromInetAddress(hostName);
+                    client = new GrpcClient(conf.getGrpcChannelCount(), new DomainSocketChannelFactory(path,
+                            interceptor -> GrpcClient.createDomainSocketChannel(path, key, executor, interceptor),
+                            () -> GrpcClient.createTcpChannel(ip, port, executor)));
+                }
+                else
                 {
-                    GrpcClient[] clients = new GrpcClient[CLIENT_SIZE];
-                    for (int i = 0; i < CLIENT_SIZE; i++)
-                    {
-                        // TODO 线程池信息和缓存信息需要从客户端读取
-                        clients[i] = new GrpcClient(hostName, port, 4, Executors.newCachedThreadPool());
-                    }
-                    serverGrpcClientCache.put(hostName, clients);
-                    serverCounters.put(hostName, new AtomicInteger());
+                    client = new GrpcClient(hostName, port, conf.getGrpcChannelCount(), executor);
                 }
+                GRPC_CLIENT_CACHE.put(key, client);
             }
+            return client;
         }
-        int random = MathUtils.mod(serverCounters.get(hostName).incrementAndGet(), CLIENT_SIZE);
-        return serverGrpcClientCache.get(hostName)[random];
     }
 
     /**
-     * 关闭客户端
+     * 目标server在本机且其unix域套接字文件存在时，优先经由域套接字访问
+     *
+     * @param conf     客户端配置
+     * @param hostName 主机地址
+     * @param port     端口
+     * @return 是否使用域套接字
+     */
+    static boolean isDomainSocketPreferred(ClientCongfiguration conf, String hostName, int port)
+    {
+        return conf.isGrpcDomainSocketEnabled() && NettyEventLoops.getInstance().isDomainSocketAvailable()
+                && Addressing.isLocalAddress(hostName)
+                && new File(DomainSockets.path(conf.getGrpcDomainSocketDir(), port)).exists();
+    }
+
+    /**
+     * 获取在全部存活Slave间负载均衡的客户端
+     * Slave列表来自指定Master的Slave视图，调用按P2C策略分发到在途调用少、读负载低的Slave，
+     * 无副本分区的块索引查询经由该客户端发往SlaveCoordinateService，见HedgedIndexClient
+     *
+     * @param masterHost Master主机地址
+     * @param masterPort Master端口
+     * @return 客户端
      */
-    public static void close()
+    public static GrpcClient getSlaveBalancedClient(String masterHost, int masterPort)
+    {
+        String target = SlaveBalancing.target(masterHost, masterPort);
+        GrpcClient client = GRPC_CLIENT_CACHE.get(target);
+        if (client != null)
+        {
+            return client;
+        }
+        synchronized (GrpcClientFactory.class)
+        {
+            client = GRPC_CLIENT_CACHE.get(target);
+            if (client == null)
+            {
+                SlaveBalancing.register();
+                ClientCongfiguration conf = ClientCongfiguration.getClientConfiguration();
+                // 负载均衡器为每个Slave维护独立的子链路，一条链路即可
+                client = new GrpcClient(target, SlaveBalancing.POLICY_NAME, 1, getSharedExecutor(conf));
+                GRPC_CLIENT_CACHE.put(target, client);
+            }
+            return client;
+        }
+    }
+
+    /**
+     * 获取共享业务线程池，关闭后再次获取时重新创建，调用方需持有GrpcClientFactory类锁
+     *
+     * @param conf 客户端配置
+     * @return 业务线程池
+     */
+    private static ExecutorService getSharedExecutor(ClientCongfiguration conf)
+    {
+        if (sharedExecutor == null || sharedExecutor.isShutdown())
+        {
+            sharedExecutor = Threads.getBoundedCachedThreadPool(conf.getGrpcClientMaxThreads(),
+                    CLIENT_THREAD_KEEP_ALIVE_SECONDS, TimeUnit.SECONDS,
+                    Threads.newDaemonThreadFactory(GrpcConstants.GRPC_CLIENT_THREAD_PREFIX));
+        }
+        return sharedExecutor;
+    }
+
+    /**
+     * 获取回调卸载线程池，关闭后再次获取时重新创建
+     * 线程数与队列长度均有界，队列满或线程池已关闭时由提交回调的线程执行，
+     * 关闭后仍被调用方持有的OFFLOAD存根的回调也不会被丢弃
+     *
+     * @return 回调线程池
+     */
+    static synchronized ExecutorService getOffloadExecutor()
+    {
+        if (offloadExecutor == null || offloadExecutor.isShutdown())
+        {
+            ClientCongfiguration conf = ClientCongfiguration.getClientConfiguration();
+            int threads = conf.getGrpcOffloadThreads();
+            ThreadPoolExecutor executor = new ThreadPoolExecutor(threads, threads, CLIENT_THREAD_KEEP_ALIVE_SECONDS,
+                    TimeUnit.SECONDS, new ArrayBlockingQueue<>(conf.getGrpcOffloadQueueSize()),
+                    Threads.newDaemonThreadFactory(GrpcConstants.GRPC_CLIENT_OFFLOAD_THREAD_PREFIX),
+                    (task, pool) -> task.run());
+            executor.allowCoreThreadTimeOut(true);
+            offloadExecutor = executor;
+        }
+        return offloadExecutor;
+    }
+
+    /**
+     * 关闭客户端，与客户端创建互斥
+     */
+    public static synchronized void close()
     {
         // 关闭Grpc链接
-        if (!serverGrpcClientCache.isEmpty())
+        for (String key : GRPC_CLIENT_CACHE.keySet())
         {
-            for (GrpcClient[] grpcClients : serverGrpcClientCache.values())
+            GrpcClient client = GRPC_CLIENT_CACHE.remove(key);
+            if (client != null)
             {
-                for (GrpcClient client : grpcClients)
-                {
-                    client.shutdown();
-                }
+                client.shutdown();
             }
-            serverGrpcClientCache.clear();
+        }
+        if (sharedExecutor != null)
+        {
+            sharedExecutor.shutdownNow();
+            sharedExecutor = null;
+        }
+        if (offloadExecutor != null)
+        {
+            // 已排队的回调继续执行完毕，不丢弃
+            offloadExecutor.shutdown();
+            offloadExecutor = null;
         }
     }
 }
@@ -0,0 +1,165 @@
+package com.fiberhome.dbserver.protocol.client;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.function.Function;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.fiberhome.dbserver.common.transport.protobuf.HeartBeatMangerServiceGrpc;
+import com.fiberhome.dbserver.protocol.client.GrpcClient.ClientStubType;
+import com.fiberhome.dbserver.protocol.common.GrpcConstants;
+import io.grpc.Channel;
+import io.grpc.stub.AbstractStub;
+
+/**
+ * 存根工厂注册器
+ * 每个服务名只解析一次生成类的newStub/newBlockingStub/newFutureStub方法，之后直接通过工厂创建存根，
+ * 避免每次获取存根时的反射查找与调用；工厂集合按服务名整体替换，已发布的工厂不再修改
+ *
+ * @since 1.0.0
+ */
+public final class GrpcStubRegistry
+{
+    private static final Logger LOG = LoggerFactory.getLogger(GrpcStubRegistry.class);
+
+    /*
+     * 生成类中存根工厂方法的统一签名
+     */
+    private static final MethodType STUB_FACTORY_TYPE = MethodType.methodType(AbstractStub.class, Channel.class);
+
+    /*
+     * 存根工厂集合 key:服务名 value:按存根类型组织的工厂
+     */
+    private static final ConcurrentMap<String, ServiceStubFactories> FACTORIES = new ConcurrentHashMap<>();
+
+    static
+    {
+        register(GrpcConstants.HEARTBEAT_MANAGER_SERVICE, HeartBeatMangerServiceGrpc::newStub,
+                HeartBeatMangerServiceGrpc::newBlockingStub, HeartBeatMangerServiceGrpc::newFutureStub);
+    }
+
+    private GrpcStubRegistry()
+    {
+    }
+
+    /**
+     * 注册生成类的全部存根工厂，注册后不再通过MethodHandle解析
+     *
+     * @param serviceName    服务名，即生成的Grpc类全名
+     * @param asyncFactory   异步存根工厂，如HeartBeatMangerServiceGrpc::newStub
+     * @param blockFactory   阻塞存根工厂，如HeartBeatMangerServiceGrpc::newBlockingStub
+     * @param futureFactory  Future存根工厂，如HeartBeatMangerServiceGrpc::newFutureStub
+     */
+    public static void register(String serviceName, Function<Channel, ? extends AbstractStub<?>> asyncFactory,
+            Function<Channel, ? extends AbstractStub<?>> blockFactory,
+            Function<Channel, ? extends AbstractStub<?>> futureFactory)
+    {
+        Function<Channel, ? extends AbstractStub<?>>[] factories = newFactoryArray();
+        factories[ClientStubType.ASYNCSTUB.ordinal()] = asyncFactory;
+        factories[ClientStubType.BLOCKSTUB.ordinal()] = blockFactory;
+        factories[ClientStubType.FUTURESTUB.ordinal()] = futureFactory;
+        FACTORIES.put(serviceName, new ServiceStubFactories(serviceName, factories));
+    }
+
+    /**
+     * 注册生成类的单个存根工厂，其余类型沿用已有工厂或通过MethodHandle解析
+     *
+     * @param serviceName 服务名，即生成的Grpc类全名
+     * @param stubType    存根类型
+     * @param factory     存根工厂，如HeartBeatMangerServiceGrpc::newFutureStub
+     */
+    public static void register(String serviceName, ClientStubType stubType,
+            Function<Channel, ? extends AbstractStub<?>> factory)
+    {
+        FACTORIES.compute(serviceName, (name, old) ->
+        {
+            Function<Channel, ? extends AbstractStub<?>>[] factories = newFactoryArray();
+            if (old != null)
+            {
+                System.arraycopy(old.factories, 0, factories, 0, factories.length);
+            }
+            factories[stubType.ordinal()] = factory;
+            return new ServiceStubFactories(name, factories);
+        });
+    }
+
+    /**
+     * 在指定链路上创建存根
+     *
+     * @param serviceName 服务名，即生成的Grpc类全名
+     * @param stubType    存根类型
+     * @param channel     通信链路
+     * @return 存根
+     */
+    static AbstractStub<?> newStub(String serviceName, ClientStubType stubType, Channel channel)
+    {
+        ServiceStubFactories factories = FACTORIES.get(serviceName);
+        if (factories == null)
+        {
+            // 首次使用时在compute中一次性解析全部类型，保证每个服务名只解析一次
+            factories = FACTORIES.computeIfAbsent(serviceName,
+                    name -> new ServiceStubFactories(name, newFactoryArray()));
+        }
+        return factories.factories[stubType.ordinal()].apply(channel);
+    }
+
+    @SuppressWarnings("unchecked")
+    private static Function<Channel, ? extends AbstractStub<?>>[] newFactoryArray()
+    {
+        return new Function[ClientStubType.values().length];
+    }
+
+    /**
+     * 单个服务的存根工厂，构造时将未注册的存根类型解析为MethodHandle，构造后不再修改
+     */
+    private static final class ServiceStubFactories
+    {
+        private final Function<Channel, ? extends AbstractStub<?>>[] factories;
+
+        ServiceStubFactories(String serviceName, Function<Channel, ? extends AbstractStub<?>>[] factories)
+        {
+            for (ClientStubType stubType : ClientStubType.values())
+            {
+                if (factories[stubType.ordinal()] == null)
+                {
+                    factories[stubType.ordinal()] = resolve(serviceName, stubType);
+                }
+            }
+            this.factories = factories;
+        }
+
+        private static Function<Channel, AbstractStub<?>> resolve(String serviceName, ClientStubType stubType)
+        {
+            final MethodHandle handle;
+            try
+            {
+                Class<?> rpcClass = Class.forName(serviceName);
+                handle = MethodHandles.publicLookup()
+                        .unreflect(rpcClass.getMethod(stubType.getMethod(), Channel.class))
+                        .asType(STUB_FACTORY_TYPE);
+            }
+            catch (ReflectiveOperationException e)
+            {
+                LOG.error("Failed to resolve stub factory {} of {}.", stubType, serviceName, e);
+                throw new IllegalStateException(e);
+            }
+            return channel ->
+            {
+                try
+                {
+                    return (AbstractStub<?>) handle.invokeExact(channel);
+                }
+                catch (Throwable e)
+                {
+                    LOG.error("Failed to create {} of {}.", stubType, serviceName, e);
+                    throw new IllegalStateException(e);
+                }
+            };
+        }
+    }
+}
@@ -0,0 +1,403 @@
+package com.fiberhome.dbserver.protocol.client;
+
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+import org.apache.commons.lang.StringUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.fiberhome.dbserver.common.config.ClientCongfiguration;
+import com.fiberhome.dbserver.common.executor.DBExecutorManager;
+import com.fiberhome.dbserver.common.transport.protobuf.DBServerProtos.PartitionLocationElementProto;
+import com.fiberhome.dbserver.common.transport.protobuf.DBServerProtos.ServerNameProto;
+import com.fiberhome.dbserver.common.transport.protobuf.SlaveBlockletIndexServiceGrpc.SlaveBlockletIndexServiceFutureStub;
+import com.fiberhome.dbserver.common.transport.protobuf.SlaveCoordinateServiceGrpc.SlaveCoordinateServiceFutureStub;
+import com.fiberhome.dbserver.common.transport.protobuf.SlaveServerProtos.IndexCountRequest;
+import com.fiberhome.dbserver.common.transport.protobuf.SlaveServerProtos.IndexCountResponse;
+import com.fiberhome.dbserver.common.transport.protobuf.SlaveServerProtos.IndexSearchRequest;
+import com.fiberhome.dbserver.common.transport.protobuf.SlaveServerProtos.IndexSearchResponse;
+import com.fiberhome.dbserver.protocol.common.GrpcConstants;
+import com.google.common.util.concurrent.FutureCallback;
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.MoreExecutors;
+import com.google.common.util.concurrent.SettableFuture;
+
+/**
+ * 块索引对冲查询客户端
+ * 先向分区的首个副本发送请求，若在该副本近期延迟的指定百分位内未返回，再向近期最快的其他副本发送一次请求，
+ * 采用先返回的结果并取消另一个请求；首个副本提前失败时立即发送对冲请求
+ * 分区尚无副本时，经由Slave负载均衡客户端发往任一Slave的协调服务
+ *
+ * @since 1.0.0
+ */
+public final class HedgedIndexClient
+{
+    private static final Logger LOG = LoggerFactory.getLogger(HedgedIndexClient.class);
+
+    /*
+     * 按百分位计算对冲等待时间所需的最少样本数
+     */
+    private static final int MIN_SAMPLES = 16;
+
+    /*
+     * 副本延迟窗口 key:ip:port
+     */
+    private final ConcurrentMap<String, LatencyWindow> latencies = new ConcurrentHashMap<>();
+
+    /*
+     * 按副本获取存根
+     */
+    private final Function<ServerNameProto, SlaveBlockletIndexServiceFutureStub> stubProvider;
+
+    /*
+     * 获取负载均衡的协调服务存根
+     */
+    private final Supplier<SlaveCoordinateServiceFutureStub> coordinatorProvider;
+
+    /*
+     * 对冲定时器
+     */
+    private final ScheduledExecutorService scheduler;
+
+    private final boolean enabled;
+
+    private final double percentile;
+
+    private final int windowSize;
+
+    private final long minDelayMicros;
+
+    private final long defaultDelayMicros;
+
+    private static class HedgedIndexClientHolder
+    {
+        private static final HedgedIndexClient INSTANCE = new HedgedIndexClient(
+                ClientCongfiguration.getClientConfiguration(), HedgedIndexClient::newStub,
+                HedgedIndexClient::newCoordinatorStub, DBExecutorManager.getInstance().getScheduledThreadPool());
+    }
+
+    HedgedIndexClient(ClientCongfiguration conf,
+            Function<ServerNameProto, SlaveBlockletIndexServiceFutureStub> stubProvider,
+            Supplier<SlaveCoordinateServiceFutureStub> coordinatorProvider, ScheduledExecutorService scheduler)
+    {
+        this.stubProvider = stubProvider;
+        this.coordinatorProvider = coordinatorProvider;
+        this.scheduler = scheduler;
+        this.enabled = conf.isHedgeEnabled();
+        this.percentile = conf.getHedgePercentile();
+        this.windowSize = conf.getHedgeWindowSize();
+        this.minDelayMicros = TimeUnit.MILLISECONDS.toMicros(conf.getHedgeMinDelay());
+        this.defaultDelayMicros = TimeUnit.MILLISECONDS.toMicros(conf.getHedgeDefaultDelay());
+    }
+
+    public static HedgedIndexClient getInstance()
+    {
+        return HedgedIndexClientHolder.INSTANCE;
+    }
+
+    /**
+     * 块索引查询
+     *
+     * @param location  分区分布，首个副本优先
+     * @param request   查询请求
+     * @param timeoutMs 每个副本请求的超时时间，单位毫秒
+     * @return 查询响应
+     */
+    public ListenableFuture<IndexSearchResponse> query(PartitionLocationElementProto location,
+            IndexSearchRequest request, long timeoutMs)
+    {
+        return query(location.getServerNameList(), request, timeoutMs);
+    }
+
+    /**
+     * 块索引查询
+     *
+     * @param replicas  副本列表，首个副本优先，为空时发往任一Slave的协调服务
+     * @param request   查询请求
+     * @param timeoutMs 每个副本请求的超时时间，单位毫秒
+     * @return 查询响应
+     */
+    public ListenableFuture<IndexSearchResponse> query(List<ServerNameProto> replicas, IndexSearchRequest request,
+            long timeoutMs)
+    {
+        if (replicas.isEmpty())
+        {
+            return coordinate(stub -> stub.withDeadlineAfter(timeoutMs, TimeUnit.MILLISECONDS).query(request));
+        }
+        return hedge(replicas, stub -> stub.withDeadlineAfter(timeoutMs, TimeUnit.MILLISECONDS).query(request));
+    }
+
+    /**
+     * 块索引统计
+     *
+     * @param location  分区分布，首个副本优先
+     * @param request   统计请求
+     * @param timeoutMs 每个副本请求的超时时间，单位毫秒
+     * @return 统计响应
+     */
+    public ListenableFuture<IndexCountResponse> count(PartitionLocationElementProto location,
+            IndexCountRequest request, long timeoutMs)
+    {
+        return count(location.getServerNameList(), request, timeoutMs);
+    }
+
+    /**
+     * 块索引统计
+     *
+     * @param replicas  副本列表，首个副本优先，为空时发往任一Slave的协调服务
+     * @param request   统计请求
+     * @param timeoutMs 每个副本请求的超时时间，单位毫秒
+     * @return 统计响应
+     */
+    public ListenableFuture<IndexCountResponse> count(List<ServerNameProto> replicas, IndexCountRequest request,
+            long timeoutMs)
+    {
+        if (replicas.isEmpty())
+        {
+            return coordinate(stub -> stub.withDeadlineAfter(timeoutMs, TimeUnit.MILLISECONDS).count(request));
+        }
+        return hedge(replicas, stub -> stub.withDeadlineAfter(timeoutMs, TimeUnit.MILLISECONDS).count(request));
+    }
+
+    private <T> ListenableFuture<T> hedge(List<ServerNameProto> replicas,
+            Function<SlaveBlockletIndexServiceFutureStub, ListenableFuture<T>> call)
+    {
+        ServerNameProto primary = replicas.get(0);
+        ServerNameProto backup = enabled ? selectBackup(replicas) : null;
+        HedgedCall<T> hedgedCall = new HedgedCall<>(call, backup);
+        hedgedCall.send(primary);
+        if (backup != null && !hedgedCall.result.isDone())
+        {
+            hedgedCall.scheduleHedge(hedgeDelayMicros(primary));
+        }
+        return hedgedCall.result;
+    }
+
+    /**
+     * 经由负载均衡客户端调用任一Slave的协调服务，由Slave负责定位分区
+     */
+    private <T> ListenableFuture<T> coordinate(
+            Function<SlaveCoordinateServiceFutureStub, ListenableFuture<T>> call)
+    {
+        try
+        {
+            return call.apply(coordinatorProvider.get());
+        }
+        catch (RuntimeException e)
+        {
+            return Futures.immediateFailedFuture(e);
+        }
+    }
+
+    /**
+     * 在首个副本之外选择近期延迟最低的副本，无样本的副本优先
+     */
+    private ServerNameProto selectBackup(List<ServerNameProto> replicas)
+    {
+        ServerNameProto backup = null;
+        long best = Long.MAX_VALUE;
+        for (int i = 1; i < replicas.size(); i++)
+        {
+            long latency = window(replicas.get(i)).percentile(0.5D, 1);
+            if (latency < best)
+            {
+                best = latency;
+                backup = replicas.get(i);
+            }
+        }
+        return backup;
+    }
+
+    /**
+     * 对冲等待时间，样本不足时使用默认值
+     */
+    long hedgeDelayMicros(ServerNameProto replica)
+    {
+        long latency = window(replica).percentile(percentile, MIN_SAMPLES);
+        return latency < 0 ? defaultDelayMicros : Math.max(minDelayMicros, latency);
+    }
+
+    LatencyWindow window(ServerNameProto replica)
+    {
+        String key = address(replica) + ":" + replica.getPort();
+        LatencyWindow window = latencies.get(key);
+        if (window == null)
+        {
+            window = latencies.computeIfAbsent(key, k -> new LatencyWindow(windowSize));
+        }
+        return window;
+    }
+
+    private static String address(ServerNameProto replica)
+    {
+        return StringUtils.isEmpty(replica.getIp()) ? replica.getHostName() : replica.getIp();
+    }
+
+    private static SlaveBlockletIndexServiceFutureStub newStub(ServerNameProto replica)
+    {
+        return (SlaveBlockletIndexServiceFutureStub) GrpcClientFactory
+                .getGrpcClient(address(replica), replica.getPort())
+                .getServiceFutureStub(GrpcConstants.SLAVE_BLOCKINDEX_MANAGER_SERVICE);
+    }
+
+    private static SlaveCoordinateServiceFutureStub newCoordinatorStub()
+    {
+        ClientCongfiguration conf = ClientCongfiguration.getClientConfiguration();
+        return (SlaveCoordinateServiceFutureStub) GrpcClientFactory
+                .getSlaveBalancedClient(conf.getMasterServiceHost(), conf.getMasterServiceRpcPort())
+                .getServiceFutureStub(GrpcConstants.SLAVA_COORDINATESERVICE_MANAGER_SERVICE);
+    }
+
+    /**
+     * 一次对冲调用，最多向两个副本发送请求
+     */
+    private final class HedgedCall<T>
+    {
+        private final SettableFuture<T> result = SettableFuture.create();
+
+        private final Function<SlaveBlockletIndexServiceFutureStub, ListenableFuture<T>> call;
+
+        private final ServerNameProto backup;
+
+        private final List<Attempt> attempts = new CopyOnWriteArrayList<>();
+
+        /*
+         * 尚未结束的请求数，对冲请求在创建时即预留
+         */
+        private final AtomicInteger pending;
+
+        private final AtomicBoolean hedged = new AtomicBoolean();
+
+        private volatile ScheduledFuture<?> hedgeTimer;
+
+        HedgedCall(Function<SlaveBlockletIndexServiceFutureStub, ListenableFuture<T>> call, ServerNameProto backup)
+        {
+            this.call = call;
+            this.backup = backup;
+            this.pending = new AtomicInteger(backup == null ? 1 : 2);
+            // 结果完成或调用方取消时，取消定时器与其余请求
+            result.addListener(this::cancelAll, MoreExecutors.directExecutor());
+        }
+
+        void scheduleHedge(long delayMicros)
+        {
+            hedgeTimer = scheduler.schedule(this::hedge, delayMicros, TimeUnit.MICROSECONDS);
+            if (result.isDone())
+            {
+                hedgeTimer.cancel(false);
+            }
+        }
+
+        /**
+         * 向备用副本发送请求，只执行一次
+         */
+        void hedge()
+        {
+            if (!result.isDone() && hedged.compareAndSet(false, true))
+            {
+                LOG.debug("send hedged index request to {}:{}", address(backup), backup.getPort());
+                send(backup);
+            }
+        }
+
+        void send(ServerNameProto replica)
+        {
+            Attempt attempt = new Attempt(window(replica));
+            ListenableFuture<T> future;
+            try
+            {
+                future = call.apply(stubProvider.apply(replica));
+            }
+            catch (RuntimeException e)
+            {
+                future = Futures.immediateFailedFuture(e);
+            }
+            attempt.future = future;
+            attempts.add(attempt);
+            if (result.isDone())
+            {
+                future.cancel(true);
+                return;
+            }
+            Futures.addCallback(future, new FutureCallback<T>()
+            {
+                @Override
+                public void onSuccess(T response)
+                {
+                    attempt.finish();
+                    result.set(response);
+                }
+
+                @Override
+                public void onFailure(Throwable t)
+                {
+                    if (result.isDone())
+                    {
+                        return;
+                    }
+                    LOG.warn("index request to {}:{} failed.", address(replica), replica.getPort(), t);
+                    if (backup != null && replica != backup)
+                    {
+                        // 首个副本失败，不再等待对冲时间
+                        hedge();
+                    }
+                    if (pending.decrementAndGet() == 0)
+                    {
+                        result.setException(t);
+                    }
+                }
+            }, MoreExecutors.directExecutor());
+        }
+
+        private void cancelAll()
+        {
+            ScheduledFuture<?> timer = hedgeTimer;
+            if (timer != null)
+            {
+                timer.cancel(false);
+            }
+            for (Attempt attempt : attempts)
+            {
+                if (!attempt.future.isDone())
+                {
+                    // 落败副本的已耗时作为延迟下限计入窗口，避免慢副本的百分位长期偏低
+                    attempt.finish();
+                    attempt.future.cancel(true);
+                }
+            }
+        }
+
+        /**
+         * 单个副本上的请求
+         */
+        private final class Attempt
+        {
+            private final LatencyWindow window;
+
+            private final long startNanos = System.nanoTime();
+
+            private volatile ListenableFuture<T> future;
+
+            Attempt(LatencyWindow window)
+            {
+                this.window = window;
+            }
+
+            void finish()
+            {
+                window.record(TimeUnit.NANOSECONDS.toMicros(System.nanoTime() - startNanos));
+            }
+        }
+    }
+}
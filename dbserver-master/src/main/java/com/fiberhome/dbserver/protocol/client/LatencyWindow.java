@@ -0,0 +1,77 @@
+package com.fiberhome.dbserver.protocol.client;
+
+import java.util.Arrays;
+
+/**
+ * 单个副本的近期延迟窗口
+ * 固定长度的环形数组保存最近的延迟样本，按需计算百分位，记录与计算均不分配对象
+ *
+ * @since 1.0.0
+ */
+final class LatencyWindow
+{
+    /*
+     * 延迟样本，单位微秒
+     */
+    private final long[] samples;
+
+    /*
+     * 计算百分位时的排序缓冲
+     */
+    private final long[] sorted;
+
+    /*
+     * 下一个写入位置
+     */
+    private int next;
+
+    /*
+     * 已记录的样本数，不超过窗口长度
+     */
+    private int count;
+
+    LatencyWindow(int size)
+    {
+        this.samples = new long[size];
+        this.sorted = new long[size];
+    }
+
+    /**
+     * 记录一次延迟
+     *
+     * @param latencyMicros 延迟，单位微秒
+     */
+    synchronized void record(long latencyMicros)
+    {
+        samples[next] = latencyMicros;
+        next = (next + 1) % samples.length;
+        if (count < samples.length)
+        {
+            count++;
+        }
+    }
+
+    /**
+     * 计算近期延迟的百分位
+     *
+     * @param percentile 百分位，取值(0, 1]
+     * @param minSamples 最少样本数
+     * @return 延迟，单位微秒；样本不足时返回-1
+     */
+    synchronized long percentile(double percentile, int minSamples)
+    {
+        if (count == 0 || count < minSamples)
+        {
+            return -1L;
+        }
+        System.arraycopy(samples, 0, sorted, 0, count);
+        Arrays.sort(sorted, 0, count);
+        int index = (int) Math.ceil(percentile * count) - 1;
+        return sorted[Math.max(0, Math.min(index, count - 1))];
+    }
+
+    synchronized int size()
+    {
+        return count;
+    }
+}
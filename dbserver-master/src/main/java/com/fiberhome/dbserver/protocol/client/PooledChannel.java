@@ -0,0 +1,186 @@
+package com.fiberhome.dbserver.protocol.client;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import com.fiberhome.dbserver.protocol.client.GrpcClient.CallbackExecutor;
+import com.fiberhome.dbserver.protocol.client.GrpcClient.ClientStubType;
+import io.grpc.CallOptions;
+import io.grpc.Channel;
+import io.grpc.ClientCall;
+import io.grpc.ClientInterceptor;
+import io.grpc.ClientInterceptors;
+import io.grpc.ForwardingClientCall;
+import io.grpc.ForwardingClientCallListener;
+import io.grpc.ManagedChannel;
+import io.grpc.Metadata;
+import io.grpc.MethodDescriptor;
+import io.grpc.Status;
+import io.grpc.stub.AbstractStub;
+
+/**
+ * 连接池中的单条通信链路
+ * 记录链路上未完成的调用数，供客户端按最少未完成调用选择链路
+ *
+ * @since 1.0.0
+ */
+final class PooledChannel
+{
+    /*
+     * 底层通信链路
+     */
+    private final ManagedChannel managedChannel;
+
+    /*
+     * 带调用计数拦截的通信链路，存根均基于该链路创建
+     */
+    private final Channel channel;
+
+    /*
+     * 未完成的调用数
+     */
+    private final AtomicInteger outstandingCalls = new AtomicInteger();
+
+    /*
+     * 链路上的存根缓存，按存根类型、回调执行方式下标组织 key:服务名 value:存根
+     * 存根不可变，可在线程间共享
+     */
+    private final ConcurrentMap<String, AbstractStub<?>>[][] stubCache;
+
+    /**
+     * 构造函数
+     *
+     * @param managedChannel 底层通信链路
+     */
+    @SuppressWarnings("unchecked")
+    PooledChannel(ManagedChannel managedChannel)
+    {
+        this.managedChannel = managedChannel;
+        this.channel = ClientInterceptors.intercept(managedChannel, new OutstandingCallInterceptor());
+        this.stubCache = new ConcurrentMap[ClientStubType.values().length][CallbackExecutor.values().length];
+        for (ConcurrentMap<String, AbstractStub<?>>[] stubs : stubCache)
+        {
+            for (int i = 0; i < stubs.length; i++)
+            {
+                stubs[i] = new ConcurrentHashMap<>();
+            }
+        }
+    }
+
+    /**
+     * 获取链路上的存根，首次获取时创建并缓存
+     *
+     * @param serviceName 服务名
+     * @param stubType    存根类型
+     * @return 存根
+     */
+    AbstractStub<?> getStub(String serviceName, ClientStubType stubType)
+    {
+        return getStub(serviceName, stubType, CallbackExecutor.DEFAULT);
+    }
+
+    /**
+     * 获取链路上指定回调执行方式的存根，首次获取时创建并缓存
+     *
+     * @param serviceName      服务名
+     * @param stubType         存根类型
+     * @param callbackExecutor 回调执行方式
+     * @return 存根
+     */
+    AbstractStub<?> getStub(String serviceName, ClientStubType stubType, CallbackExecutor callbackExecutor)
+    {
+        ConcurrentMap<String, AbstractStub<?>> stubs = stubCache[stubType.ordinal()][callbackExecutor.ordinal()];
+        AbstractStub<?> stub = stubs.get(serviceName);
+        if (stub == null)
+        {
+            stub = stubs.computeIfAbsent(serviceName, name -> newStub(name, stubType, callbackExecutor));
+        }
+        return stub;
+    }
+
+    private AbstractStub<?> newStub(String serviceName, ClientStubType stubType, CallbackExecutor callbackExecutor)
+    {
+        AbstractStub<?> stub = GrpcStubRegistry.newStub(serviceName, stubType, channel);
+        Executor executor = callbackExecutor.getExecutor();
+        return executor == null ? stub : stub.withExecutor(executor);
+    }
+
+    /**
+     * 清空存根缓存
+     */
+    void clearStubs()
+    {
+        for (ConcurrentMap<String, AbstractStub<?>>[] stubs : stubCache)
+        {
+            for (ConcurrentMap<String, AbstractStub<?>> stub : stubs)
+            {
+                stub.clear();
+            }
+        }
+    }
+
+    ManagedChannel getManagedChannel()
+    {
+        return managedChannel;
+    }
+
+    Channel getChannel()
+    {
+        return channel;
+    }
+
+    int getOutstandingCalls()
+    {
+        return outstandingCalls.get();
+    }
+
+    /**
+     * 链路是否可用
+     *
+     * @return 未关闭且未终止时返回true
+     */
+    boolean isUsable()
+    {
+        return !managedChannel.isShutdown() && !managedChannel.isTerminated();
+    }
+
+    /**
+     * 统计未完成调用数的拦截器，调用开始时加一，调用关闭时减一
+     */
+    private final class OutstandingCallInterceptor implements ClientInterceptor
+    {
+        @Override
+        public <ReqT, RespT> ClientCall<ReqT, RespT> interceptCall(MethodDescriptor<ReqT, RespT> method,
+                CallOptions callOptions, Channel next)
+        {
+            return new ForwardingClientCall.SimpleForwardingClientCall<ReqT, RespT>(next.newCall(method, callOptions))
+            {
+                @Override
+                public void start(Listener<RespT> responseListener, Metadata headers)
+                {
+                    outstandingCalls.incrementAndGet();
+                    try
+                    {
+                        super.start(new ForwardingClientCallListener.SimpleForwardingClientCallListener<RespT>(
+                                responseListener)
+                        {
+                            @Override
+                            public void onClose(Status status, Metadata trailers)
+                            {
+                                outstandingCalls.decrementAndGet();
+                                super.onClose(status, trailers);
+                            }
+                        }, headers);
+                    }
+                    catch (RuntimeException e)
+                    {
+                        outstandingCalls.decrementAndGet();
+                        throw e;
+                    }
+                }
+            };
+        }
+    }
+}
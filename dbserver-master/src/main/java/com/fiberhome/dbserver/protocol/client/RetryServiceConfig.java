@@ -0,0 +1,109 @@
+package com.fiberhome.dbserver.protocol.client;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+import com.fiberhome.dbserver.common.config.ClientCongfiguration;
+
+/**
+ * 幂等方法的重试策略
+ * 按服务生成grpc service config中的retryPolicy，并配置全局重试令牌桶(retryThrottling)，
+ * 失败率升高时令牌耗尽，重试自动停止，避免重试放大过载；退避时间由grpc在[0, 当前退避]内随机抖动
+ *
+ * @since 1.0.0
+ */
+final class RetryServiceConfig
+{
+    private static final String ALL_METHODS = "*";
+
+    private RetryServiceConfig()
+    {
+    }
+
+    /**
+     * 按客户端配置生成service config
+     *
+     * @param conf 客户端配置
+     * @return service config，未启用重试或未配置方法时返回null
+     */
+    static Map<String, Object> build(ClientCongfiguration conf)
+    {
+        if (!conf.isGrpcRetryEnabled())
+        {
+            return null;
+        }
+        // key:服务名 value:方法名列表，方法名为*时表示整个服务
+        Map<String, List<String>> services = new LinkedHashMap<>();
+        for (String entry : conf.getGrpcRetryMethods())
+        {
+            int split = entry.indexOf('/');
+            if (split <= 0 || split == entry.length() - 1)
+            {
+                throw new IllegalArgumentException("invalid grpc retry method: " + entry);
+            }
+            services.computeIfAbsent(entry.substring(0, split), k -> new ArrayList<>())
+                    .add(entry.substring(split + 1));
+        }
+        if (services.isEmpty())
+        {
+            return null;
+        }
+        List<Object> methodConfigs = new ArrayList<>();
+        for (Map.Entry<String, List<String>> service : services.entrySet())
+        {
+            List<Object> names = new ArrayList<>();
+            for (String method : service.getValue())
+            {
+                Map<String, Object> name = new HashMap<>();
+                name.put("service", service.getKey());
+                if (!ALL_METHODS.equals(method))
+                {
+                    name.put("method", method);
+                }
+                names.add(name);
+            }
+            Map<String, Object> methodConfig = new HashMap<>();
+            methodConfig.put("name", names);
+            methodConfig.put("retryPolicy", retryPolicy(conf, service.getKey()));
+            methodConfigs.add(methodConfig);
+        }
+        Map<String, Object> serviceConfig = new HashMap<>();
+        serviceConfig.put("methodConfig", methodConfigs);
+        int maxTokens = conf.getGrpcRetryThrottlingMaxTokens();
+        if (maxTokens > 0)
+        {
+            Map<String, Object> throttling = new HashMap<>();
+            throttling.put("maxTokens", (double) maxTokens);
+            throttling.put("tokenRatio", conf.getGrpcRetryThrottlingTokenRatio());
+            serviceConfig.put("retryThrottling", throttling);
+        }
+        return serviceConfig;
+    }
+
+    private static Map<String, Object> retryPolicy(ClientCongfiguration conf, String service)
+    {
+        List<Object> codes = new ArrayList<>();
+        for (String code : conf.getGrpcRetryableStatusCodes(service))
+        {
+            codes.add(code.toUpperCase(Locale.ROOT));
+        }
+        Map<String, Object> policy = new HashMap<>();
+        // service config中的数值均为double
+        policy.put("maxAttempts", (double) conf.getGrpcRetryMaxAttempts(service));
+        policy.put("initialBackoff", seconds(conf.getGrpcRetryInitialBackoff(service)));
+        policy.put("maxBackoff", seconds(conf.getGrpcRetryMaxBackoff(service)));
+        policy.put("backoffMultiplier", conf.getGrpcRetryBackoffMultiplier(service));
+        policy.put("retryableStatusCodes", Collections.unmodifiableList(codes));
+        return policy;
+    }
+
+    private static String seconds(long millis)
+    {
+        return String.format(Locale.ROOT, "%.3fs", millis / 1000D);
+    }
+}
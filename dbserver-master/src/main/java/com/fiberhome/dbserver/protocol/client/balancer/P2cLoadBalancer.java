@@ -0,0 +1,288 @@
+package com.fiberhome.dbserver.protocol.client.balancer;
+
+import static io.grpc.ConnectivityState.CONNECTING;
+import static io.grpc.ConnectivityState.IDLE;
+import static io.grpc.ConnectivityState.READY;
+import static io.grpc.ConnectivityState.TRANSIENT_FAILURE;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import io.grpc.ClientStreamTracer;
+import io.grpc.ConnectivityState;
+import io.grpc.ConnectivityStateInfo;
+import io.grpc.EquivalentAddressGroup;
+import io.grpc.LoadBalancer;
+import io.grpc.Metadata;
+import io.grpc.Status;
+
+/**
+ * Power-of-two-choices负载均衡器
+ * 每次随机取两个就绪的Slave，选择代价较低的一个，代价由在途调用数与Slave上报的读请求数共同决定：
+ * cost = (inflight + 1) * (1 + reads / (meanReads + 1))
+ * 除Picker外的状态只在SynchronizationContext中访问
+ *
+ * @since 1.0.0
+ */
+final class P2cLoadBalancer extends LoadBalancer
+{
+    private final Helper helper;
+
+    /*
+     * 子链路 key:不带属性的地址 value:子链路状态
+     */
+    private final Map<EquivalentAddressGroup, SlaveSubchannel> subchannels = new HashMap<>();
+
+    private ConnectivityState currentState;
+
+    P2cLoadBalancer(Helper helper)
+    {
+        this.helper = helper;
+    }
+
+    @Override
+    public void handleResolvedAddresses(ResolvedAddresses resolvedAddresses)
+    {
+        Map<EquivalentAddressGroup, Long> latest = new HashMap<>();
+        for (EquivalentAddressGroup eag : resolvedAddresses.getAddresses())
+        {
+            Long reads = eag.getAttributes().get(SlaveBalancing.READ_REQUEST_COUNT);
+            latest.put(new EquivalentAddressGroup(eag.getAddresses()), reads == null ? 0L : reads);
+        }
+        // 下线已移除的Slave
+        Iterator<Map.Entry<EquivalentAddressGroup, SlaveSubchannel>> it = subchannels.entrySet().iterator();
+        while (it.hasNext())
+        {
+            Map.Entry<EquivalentAddressGroup, SlaveSubchannel> entry = it.next();
+            if (!latest.containsKey(entry.getKey()))
+            {
+                entry.getValue().subchannel.shutdown();
+                it.remove();
+            }
+        }
+        // 新增Slave并刷新读请求数
+        for (Map.Entry<EquivalentAddressGroup, Long> entry : latest.entrySet())
+        {
+            SlaveSubchannel slave = subchannels.get(entry.getKey());
+            if (slave == null)
+            {
+                Subchannel subchannel = helper.createSubchannel(
+                        CreateSubchannelArgs.newBuilder().setAddresses(entry.getKey()).build());
+                slave = new SlaveSubchannel(subchannel);
+                subchannels.put(entry.getKey(), slave);
+                final SlaveSubchannel started = slave;
+                subchannel.start(stateInfo -> processStateChange(started, stateInfo));
+                subchannel.requestConnection();
+            }
+            slave.setReadRequestCount(entry.getValue());
+        }
+        updateBalancingState();
+    }
+
+    @Override
+    public void handleNameResolutionError(Status error)
+    {
+        if (currentState != READY)
+        {
+            currentState = TRANSIENT_FAILURE;
+            helper.updateBalancingState(TRANSIENT_FAILURE, new ErrorPicker(error));
+        }
+    }
+
+    @Override
+    public void shutdown()
+    {
+        for (SlaveSubchannel slave : subchannels.values())
+        {
+            slave.subchannel.shutdown();
+        }
+        subchannels.clear();
+    }
+
+    private void processStateChange(SlaveSubchannel slave, ConnectivityStateInfo stateInfo)
+    {
+        if (subchannels.get(new EquivalentAddressGroup(slave.subchannel.getAddresses().getAddresses())) != slave)
+        {
+            return;
+        }
+        if (stateInfo.getState() == IDLE)
+        {
+            slave.subchannel.requestConnection();
+        }
+        slave.state = stateInfo;
+        updateBalancingState();
+    }
+
+    private void updateBalancingState()
+    {
+        List<SlaveSubchannel> ready = new ArrayList<>();
+        boolean connecting = false;
+        Status lastError = Status.UNAVAILABLE.withDescription("no slave is available");
+        for (SlaveSubchannel slave : subchannels.values())
+        {
+            ConnectivityState state = slave.state.getState();
+            if (state == READY)
+            {
+                ready.add(slave);
+            }
+            else if (state == CONNECTING || state == IDLE)
+            {
+                connecting = true;
+            }
+            else if (state == TRANSIENT_FAILURE)
+            {
+                lastError = slave.state.getStatus();
+            }
+        }
+        if (!ready.isEmpty())
+        {
+            currentState = READY;
+            helper.updateBalancingState(READY, new P2cPicker(ready));
+        }
+        else if (connecting)
+        {
+            currentState = CONNECTING;
+            helper.updateBalancingState(CONNECTING, new EmptyPicker());
+        }
+        else
+        {
+            currentState = TRANSIENT_FAILURE;
+            helper.updateBalancingState(TRANSIENT_FAILURE, new ErrorPicker(lastError));
+        }
+    }
+
+    /**
+     * 单个Slave的子链路状态
+     */
+    static final class SlaveSubchannel
+    {
+        private final Subchannel subchannel;
+
+        /*
+         * 在途调用数，由流跟踪器在流创建和关闭时维护
+         */
+        private final AtomicInteger inflight = new AtomicInteger();
+
+        private final ClientStreamTracer.Factory tracerFactory = new ClientStreamTracer.Factory()
+        {
+            @Override
+            public ClientStreamTracer newClientStreamTracer(ClientStreamTracer.StreamInfo info, Metadata headers)
+            {
+                inflight.incrementAndGet();
+                return new ClientStreamTracer()
+                {
+                    @Override
+                    public void streamClosed(Status status)
+                    {
+                        inflight.decrementAndGet();
+                    }
+                };
+            }
+        };
+
+        /*
+         * Slave上报的读请求数
+         */
+        private volatile long readRequestCount;
+
+        private ConnectivityStateInfo state = ConnectivityStateInfo.forNonError(IDLE);
+
+        SlaveSubchannel(Subchannel subchannel)
+        {
+            this.subchannel = subchannel;
+        }
+
+        void setReadRequestCount(long readRequestCount)
+        {
+            this.readRequestCount = readRequestCount;
+        }
+    }
+
+    /**
+     * P2C选择器，读请求均值在创建时计算，在途调用数实时读取
+     */
+    static final class P2cPicker extends SubchannelPicker
+    {
+        private final List<SlaveSubchannel> ready;
+
+        private final double meanReads;
+
+        P2cPicker(List<SlaveSubchannel> ready)
+        {
+            this.ready = ready;
+            long total = 0;
+            for (SlaveSubchannel slave : ready)
+            {
+                total += slave.readRequestCount;
+            }
+            this.meanReads = (double) total / ready.size();
+        }
+
+        @Override
+        public PickResult pickSubchannel(PickSubchannelArgs args)
+        {
+            SlaveSubchannel selected = select();
+            return PickResult.withSubchannel(selected.subchannel, selected.tracerFactory);
+        }
+
+        SlaveSubchannel select()
+        {
+            int size = ready.size();
+            if (size == 1)
+            {
+                return ready.get(0);
+            }
+            ThreadLocalRandom random = ThreadLocalRandom.current();
+            int first = random.nextInt(size);
+            int second = random.nextInt(size - 1);
+            if (second >= first)
+            {
+                second++;
+            }
+            SlaveSubchannel a = ready.get(first);
+            SlaveSubchannel b = ready.get(second);
+            return cost(a) <= cost(b) ? a : b;
+        }
+
+        double cost(SlaveSubchannel slave)
+        {
+            return (slave.inflight.get() + 1) * (1 + slave.readRequestCount / (meanReads + 1));
+        }
+    }
+
+    /**
+     * 连接建立中，调用等待
+     */
+    private static final class EmptyPicker extends SubchannelPicker
+    {
+        @Override
+        public PickResult pickSubchannel(PickSubchannelArgs args)
+        {
+            return PickResult.withNoResult();
+        }
+    }
+
+    /**
+     * 无可用Slave，调用直接失败
+     */
+    private static final class ErrorPicker extends SubchannelPicker
+    {
+        private final PickResult result;
+
+        ErrorPicker(Status error)
+        {
+            this.result = PickResult.withError(error);
+        }
+
+        @Override
+        public PickResult pickSubchannel(PickSubchannelArgs args)
+        {
+            return result;
+        }
+    }
+}
@@ -0,0 +1,36 @@
+package com.fiberhome.dbserver.protocol.client.balancer;
+
+import io.grpc.LoadBalancer;
+import io.grpc.LoadBalancerProvider;
+
+/**
+ * P2C负载均衡器工厂
+ *
+ * @since 1.0.0
+ */
+public class P2cLoadBalancerProvider extends LoadBalancerProvider
+{
+    @Override
+    public boolean isAvailable()
+    {
+        return true;
+    }
+
+    @Override
+    public int getPriority()
+    {
+        return 5;
+    }
+
+    @Override
+    public String getPolicyName()
+    {
+        return SlaveBalancing.POLICY_NAME;
+    }
+
+    @Override
+    public LoadBalancer newLoadBalancer(LoadBalancer.Helper helper)
+    {
+        return new P2cLoadBalancer(helper);
+    }
+}
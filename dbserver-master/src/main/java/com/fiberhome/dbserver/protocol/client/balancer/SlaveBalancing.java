@@ -0,0 +1,61 @@
+package com.fiberhome.dbserver.protocol.client.balancer;
+
+import com.fiberhome.dbserver.tools.util.Addressing;
+import io.grpc.Attributes;
+import io.grpc.LoadBalancerRegistry;
+import io.grpc.NameResolverRegistry;
+
+/**
+ * Slave负载均衡的公共定义
+ * 目标地址形如slaves://master主机:端口，地址列表来自Master的Slave视图，按P2C策略选择Slave
+ *
+ * @since 1.0.0
+ */
+public final class SlaveBalancing
+{
+    /*
+     * Slave地址解析的scheme
+     */
+    public static final String SCHEME = "slaves";
+
+    /*
+     * 负载均衡策略名
+     */
+    public static final String POLICY_NAME = "dbserver_p2c";
+
+    /*
+     * 地址属性：Slave上报的Region读请求总数
+     */
+    public static final Attributes.Key<Long> READ_REQUEST_COUNT = Attributes.Key.create("dbserver.slave.reads");
+
+    private static boolean registered = false;
+
+    private SlaveBalancing()
+    {
+    }
+
+    /**
+     * 向默认注册器注册地址解析器与负载均衡器，重复调用无副作用
+     */
+    public static synchronized void register()
+    {
+        if (!registered)
+        {
+            NameResolverRegistry.getDefaultRegistry().register(new SlaveNameResolverProvider());
+            LoadBalancerRegistry.getDefaultRegistry().register(new P2cLoadBalancerProvider());
+            registered = true;
+        }
+    }
+
+    /**
+     * 构造通过指定Master解析Slave列表的目标地址
+     *
+     * @param masterHost Master主机
+     * @param masterPort Master端口
+     * @return 目标地址
+     */
+    public static String target(String masterHost, int masterPort)
+    {
+        return SCHEME + "://" + Addressing.createHostAndPortStr(masterHost, masterPort);
+    }
+}
@@ -0,0 +1,195 @@
+package com.fiberhome.dbserver.protocol.client.balancer;
+
+import java.net.InetSocketAddress;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.commons.lang.StringUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.fiberhome.dbserver.common.transport.protobuf.DBServerProtos.RegionLoadProto;
+import com.fiberhome.dbserver.common.transport.protobuf.DBServerProtos.ServerNameProto;
+import com.fiberhome.dbserver.common.transport.protobuf.DBServerProtos.SlaveStatusProto;
+import com.fiberhome.dbserver.common.transport.protobuf.MasterServerProtos.SlaveQueryRequest;
+import com.fiberhome.dbserver.common.transport.protobuf.MasterServerProtos.SlaveQueryResponse;
+import com.fiberhome.dbserver.common.transport.protobuf.MasterServerProtos.TableElementProto;
+import com.fiberhome.dbserver.common.transport.protobuf.SlaveManagerServiceGrpc;
+import com.fiberhome.dbserver.protocol.client.GrpcClientFactory;
+import com.fiberhome.dbserver.tools.util.Addressing;
+import com.google.common.util.concurrent.FutureCallback;
+import com.google.common.util.concurrent.Futures;
+import io.grpc.Attributes;
+import io.grpc.EquivalentAddressGroup;
+import io.grpc.NameResolver;
+import io.grpc.Status;
+import io.grpc.SynchronizationContext;
+
+/**
+ * Slave地址解析器
+ * 周期向Master查询全部Slave，存活的Slave作为地址列表，上报的Region读请求数作为地址属性供负载均衡使用
+ * 所有状态只在SynchronizationContext中访问
+ *
+ * @since 1.0.0
+ */
+final class SlaveNameResolver extends NameResolver
+{
+    private static final Logger LOG = LoggerFactory.getLogger(SlaveNameResolver.class);
+
+    private final String masterHost;
+
+    private final int masterPort;
+
+    /*
+     * 刷新周期，单位毫秒
+     */
+    private final long refreshInterval;
+
+    /*
+     * 查询Master的超时时间，单位毫秒
+     */
+    private final long timeout;
+
+    private final SynchronizationContext syncContext;
+
+    private final ScheduledExecutorService scheduler;
+
+    private Listener2 listener;
+
+    private SynchronizationContext.ScheduledHandle refreshHandle;
+
+    private boolean resolving;
+
+    private boolean shutdown;
+
+    SlaveNameResolver(String masterHost, int masterPort, long refreshInterval, long timeout, Args args)
+    {
+        this.masterHost = masterHost;
+        this.masterPort = masterPort;
+        this.refreshInterval = refreshInterval;
+        this.timeout = timeout;
+        this.syncContext = args.getSynchronizationContext();
+        this.scheduler = args.getScheduledExecutorService();
+    }
+
+    @Override
+    public String getServiceAuthority()
+    {
+        return Addressing.createHostAndPortStr(masterHost, masterPort);
+    }
+
+    @Override
+    public void start(Listener2 listener)
+    {
+        this.listener = listener;
+        resolve();
+    }
+
+    @Override
+    public void refresh()
+    {
+        resolve();
+    }
+
+    @Override
+    public void shutdown()
+    {
+        shutdown = true;
+        if (refreshHandle != null)
+        {
+            refreshHandle.cancel();
+            refreshHandle = null;
+        }
+    }
+
+    private void resolve()
+    {
+        if (resolving || shutdown)
+        {
+            return;
+        }
+        resolving = true;
+        if (refreshHandle != null)
+        {
+            refreshHandle.cancel();
+            refreshHandle = null;
+        }
+        SlaveManagerServiceGrpc.SlaveManagerServiceFutureStub stub = SlaveManagerServiceGrpc
+                .newFutureStub(GrpcClientFactory.getGrpcClient(masterHost, masterPort).getChannel())
+                .withDeadlineAfter(timeout, TimeUnit.MILLISECONDS);
+        Futures.addCallback(stub.getAllSlaves(SlaveQueryRequest.getDefaultInstance()),
+                new FutureCallback<SlaveQueryResponse>()
+                {
+                    @Override
+                    public void onSuccess(SlaveQueryResponse response)
+                    {
+                        resolving = false;
+                        if (shutdown)
+                        {
+                            return;
+                        }
+                        List<EquivalentAddressGroup> addresses = toAddresses(response);
+                        if (addresses.isEmpty())
+                        {
+                            listener.onError(Status.UNAVAILABLE
+                                    .withDescription("no alive slave reported by master " + getServiceAuthority()));
+                        }
+                        else
+                        {
+                            listener.onResult(ResolutionResult.newBuilder().setAddresses(addresses).build());
+                        }
+                        scheduleRefresh();
+                    }
+
+                    @Override
+                    public void onFailure(Throwable t)
+                    {
+                        resolving = false;
+                        if (shutdown)
+                        {
+                            return;
+                        }
+                        LOG.warn("Failed to get slaves from master {}.", getServiceAuthority(), t);
+                        listener.onError(Status.fromThrowable(t)
+                                .augmentDescription("failed to get slaves from master " + getServiceAuthority()));
+                        scheduleRefresh();
+                    }
+                }, syncContext);
+    }
+
+    private void scheduleRefresh()
+    {
+        refreshHandle = syncContext.schedule(this::resolve, refreshInterval, TimeUnit.MILLISECONDS, scheduler);
+    }
+
+    /**
+     * 将Master的Slave视图转换为地址列表，只保留存活的Slave
+     *
+     * @param response Master响应
+     * @return 地址列表
+     */
+    static List<EquivalentAddressGroup> toAddresses(SlaveQueryResponse response)
+    {
+        List<EquivalentAddressGroup> addresses = new ArrayList<>(response.getTableCount());
+        for (TableElementProto element : response.getTableList())
+        {
+            if (element.getSlaveStatus() != SlaveStatusProto.SLAVE_ALIVE)
+            {
+                continue;
+            }
+            ServerNameProto name = element.getServerName();
+            String host = StringUtils.isEmpty(name.getIp()) ? name.getHostName() : name.getIp();
+            long readRequestCount = 0;
+            for (RegionLoadProto regionLoad : element.getSlaveLoad().getRegionLoadsList())
+            {
+                readRequestCount += regionLoad.getReadRequestCount();
+            }
+            Attributes attributes = Attributes.newBuilder().set(SlaveBalancing.READ_REQUEST_COUNT, readRequestCount)
+                    .build();
+            addresses.add(new EquivalentAddressGroup(new InetSocketAddress(host, name.getPort()), attributes));
+        }
+        return addresses;
+    }
+}
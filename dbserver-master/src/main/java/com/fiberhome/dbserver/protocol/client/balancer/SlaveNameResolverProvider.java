@@ -0,0 +1,51 @@
+package com.fiberhome.dbserver.protocol.client.balancer;
+
+import java.net.URI;
+
+import com.fiberhome.dbserver.common.config.ClientCongfiguration;
+import com.google.common.base.Preconditions;
+import io.grpc.NameResolver;
+import io.grpc.NameResolverProvider;
+
+/**
+ * slaves://master主机:端口 目标地址的解析器工厂
+ *
+ * @since 1.0.0
+ */
+public class SlaveNameResolverProvider extends NameResolverProvider
+{
+    @Override
+    protected boolean isAvailable()
+    {
+        return true;
+    }
+
+    /**
+     * 低于dns解析器的优先级，不作为无scheme目标地址的默认解析器，只解析slaves://目标地址
+     */
+    @Override
+    protected int priority()
+    {
+        return 1;
+    }
+
+    @Override
+    public NameResolver newNameResolver(URI targetUri, NameResolver.Args args)
+    {
+        if (!SlaveBalancing.SCHEME.equals(targetUri.getScheme()))
+        {
+            return null;
+        }
+        Preconditions.checkArgument(targetUri.getHost() != null && targetUri.getPort() > 0,
+                "master host and port are required in target: %s", targetUri);
+        ClientCongfiguration conf = ClientCongfiguration.getClientConfiguration();
+        return new SlaveNameResolver(targetUri.getHost(), targetUri.getPort(),
+                conf.getSlaveResolverRefreshInterval(), conf.getSlaveResolverTimeout(), args);
+    }
+
+    @Override
+    public String getDefaultScheme()
+    {
+        return SlaveBalancing.SCHEME;
+    }
+}
@@ -0,0 +1,157 @@
+package com.fiberhome.dbserver.protocol.common;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.List;
+
+import com.google.common.io.ByteStreams;
+import com.google.protobuf.ByteString;
+import com.google.protobuf.CodedInputStream;
+import com.google.protobuf.InvalidProtocolBufferException;
+import com.google.protobuf.MessageLite;
+import com.google.protobuf.Parser;
+import com.google.protobuf.UnsafeByteOperations;
+import io.grpc.KnownLength;
+import io.grpc.MethodDescriptor;
+import io.grpc.MethodDescriptor.PrototypeMarshaller;
+import io.grpc.ServerMethodDefinition;
+import io.grpc.ServerServiceDefinition;
+import io.grpc.ServiceDescriptor;
+import io.grpc.Status;
+
+/**
+ * 别名解析的protobuf反序列化器
+ * 请求只从传输层读取一次到数组中，以{@link CodedInputStream#enableAliasing(boolean)}解析，bytes字段直接引用该数组，
+ * 不再复制；bytes字段中嵌套的序列化对象(如serialized_request、serialized_filter)只有在业务读取时才通过
+ * {@link #parseNested(ByteString, Parser)}解析，同样不复制。bytes字段存活期间整个请求数组不会被回收
+ *
+ * @param <T> 消息类型
+ * @since 1.0.0
+ */
+public final class AliasingMarshaller<T> implements PrototypeMarshaller<T>
+{
+    private final PrototypeMarshaller<T> delegate;
+
+    private final Parser<T> parser;
+
+    private AliasingMarshaller(PrototypeMarshaller<T> delegate, Parser<T> parser)
+    {
+        this.delegate = delegate;
+        this.parser = parser;
+    }
+
+    /**
+     * 将服务中全部方法的请求反序列化改为别名解析，响应序列化不变
+     *
+     * @param service 服务定义
+     * @return 新的服务定义
+     */
+    public static ServerServiceDefinition wrap(ServerServiceDefinition service)
+    {
+        ServiceDescriptor descriptor = service.getServiceDescriptor();
+        ServiceDescriptor.Builder descriptorBuilder = ServiceDescriptor.newBuilder(descriptor.getName())
+                .setSchemaDescriptor(descriptor.getSchemaDescriptor());
+        List<ServerMethodDefinition<?, ?>> methods = new ArrayList<>();
+        for (ServerMethodDefinition<?, ?> method : service.getMethods())
+        {
+            ServerMethodDefinition<?, ?> wrapped = wrap(method);
+            descriptorBuilder.addMethod(wrapped.getMethodDescriptor());
+            methods.add(wrapped);
+        }
+        ServerServiceDefinition.Builder builder = ServerServiceDefinition.builder(descriptorBuilder.build());
+        for (ServerMethodDefinition<?, ?> method : methods)
+        {
+            builder.addMethod(method);
+        }
+        return builder.build();
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <ReqT, RespT> ServerMethodDefinition<ReqT, RespT> wrap(ServerMethodDefinition<ReqT, RespT> method)
+    {
+        MethodDescriptor<ReqT, RespT> descriptor = method.getMethodDescriptor();
+        if (!(descriptor.getRequestMarshaller() instanceof PrototypeMarshaller))
+        {
+            return method;
+        }
+        PrototypeMarshaller<ReqT> marshaller = (PrototypeMarshaller<ReqT>) descriptor.getRequestMarshaller();
+        if (!(marshaller.getMessagePrototype() instanceof MessageLite))
+        {
+            return method;
+        }
+        Parser<ReqT> parser = (Parser<ReqT>) ((MessageLite) marshaller.getMessagePrototype()).getParserForType();
+        return ServerMethodDefinition.create(descriptor.toBuilder(new AliasingMarshaller<>(marshaller, parser),
+                descriptor.getResponseMarshaller()).build(), method.getServerCallHandler());
+    }
+
+    /**
+     * 解析bytes字段中嵌套的序列化对象，结果中的bytes字段同样引用原数组
+     *
+     * @param bytes  bytes字段
+     * @param parser 嵌套对象的解析器
+     * @param <M>    嵌套对象类型
+     * @return 嵌套对象
+     * @throws InvalidProtocolBufferException 数据格式错误
+     */
+    public static <M> M parseNested(ByteString bytes, Parser<M> parser) throws InvalidProtocolBufferException
+    {
+        CodedInputStream input = bytes.newCodedInput();
+        input.enableAliasing(true);
+        return parser.parseFrom(input);
+    }
+
+    @Override
+    public InputStream stream(T value)
+    {
+        return delegate.stream(value);
+    }
+
+    @Override
+    public T parse(InputStream stream)
+    {
+        try
+        {
+            // 只有声明为不可变的数组才允许别名引用
+            CodedInputStream input = UnsafeByteOperations.unsafeWrap(readFully(stream)).newCodedInput();
+            input.enableAliasing(true);
+            return parser.parseFrom(input);
+        }
+        catch (IOException e)
+        {
+            throw Status.INTERNAL.withDescription("Invalid protobuf byte sequence").withCause(e)
+                    .asRuntimeException();
+        }
+    }
+
+    /**
+     * 读取完整消息，长度已知时只分配一次
+     */
+    private static byte[] readFully(InputStream stream) throws IOException
+    {
+        if (stream instanceof KnownLength)
+        {
+            int size = stream.available();
+            byte[] bytes = new byte[size];
+            ByteStreams.readFully(stream, bytes);
+            if (stream.read() == -1)
+            {
+                return bytes;
+            }
+            throw new IOException("stream is longer than its known length " + size);
+        }
+        return ByteStreams.toByteArray(stream);
+    }
+
+    @Override
+    public T getMessagePrototype()
+    {
+        return delegate.getMessagePrototype();
+    }
+
+    @Override
+    public Class<T> getMessageClass()
+    {
+        return delegate.getMessageClass();
+    }
+}
@@ -0,0 +1,119 @@
+package com.fiberhome.dbserver.protocol.common;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+import com.google.protobuf.MessageLite;
+
+/**
+ * 按方法配置的压缩策略
+ * 配置项格式为"服务名/方法名:编码名"，方法名为*时匹配服务下全部方法；
+ * 只有序列化后大小不小于阈值的消息才压缩，未配置的方法(如心跳)不经过任何编码
+ *
+ * @since 1.0.0
+ */
+public final class CompressionPolicy
+{
+    private static final String ALL_METHODS = "*";
+
+    /*
+     * 方法压缩编码 key:服务名/方法名 或 服务名/*
+     */
+    private final Map<String, String> codecs;
+
+    /*
+     * 压缩阈值，单位字节
+     */
+    private final int threshold;
+
+    private CompressionPolicy(Map<String, String> codecs, int threshold)
+    {
+        this.codecs = codecs;
+        this.threshold = threshold;
+    }
+
+    /**
+     * 解析压缩策略，编码未注册或格式错误时抛出异常
+     *
+     * @param entries   配置项，如SlaveBlockletIndexService/query:deflate
+     * @param threshold 压缩阈值，单位字节
+     * @return 压缩策略
+     */
+    public static CompressionPolicy parse(String[] entries, int threshold)
+    {
+        Map<String, String> codecs = new HashMap<>();
+        for (String entry : entries)
+        {
+            if (entry.isEmpty())
+            {
+                continue;
+            }
+            int split = entry.lastIndexOf(':');
+            if (split <= 0 || split == entry.length() - 1 || entry.indexOf('/') <= 0)
+            {
+                throw new IllegalArgumentException("invalid grpc compression entry: " + entry);
+            }
+            String codec = entry.substring(split + 1).trim();
+            if (!GrpcCompression.isSupported(codec))
+            {
+                throw new IllegalArgumentException("unsupported grpc compression codec: " + entry);
+            }
+            codecs.put(entry.substring(0, split).trim(), codec);
+        }
+        return new CompressionPolicy(codecs.isEmpty() ? Collections.emptyMap() : codecs, Math.max(0, threshold));
+    }
+
+    /**
+     * 是否没有配置任何方法
+     *
+     * @return 是否为空
+     */
+    public boolean isEmpty()
+    {
+        return codecs.isEmpty();
+    }
+
+    /**
+     * 获取方法的压缩编码
+     *
+     * @param fullMethodName 方法全名，如SlaveBlockletIndexService/query
+     * @return 编码名，未配置时返回null
+     */
+    public String codecFor(String fullMethodName)
+    {
+        if (codecs.isEmpty())
+        {
+            return null;
+        }
+        String codec = codecs.get(fullMethodName);
+        if (codec == null)
+        {
+            int split = fullMethodName.indexOf('/');
+            codec = codecs.get(fullMethodName.substring(0, split + 1) + ALL_METHODS);
+        }
+        return codec;
+    }
+
+    /**
+     * 消息是否需要压缩，protobuf会缓存序列化大小，此处计算不会重复序列化
+     *
+     * @param message 消息
+     * @return 是否压缩
+     */
+    public boolean shouldCompress(Object message)
+    {
+        return message instanceof MessageLite && ((MessageLite) message).getSerializedSize() >= threshold;
+    }
+
+    public int getThreshold()
+    {
+        return threshold;
+    }
+
+    @Override
+    public String toString()
+    {
+        return "[codecs=" + codecs + ", threshold=" + threshold + "]";
+    }
+}
@@ -0,0 +1,67 @@
+package com.fiberhome.dbserver.protocol.common;
+
+import java.io.File;
+
+import io.netty.bootstrap.Bootstrap;
+import io.netty.channel.ChannelFuture;
+import io.netty.channel.ChannelInboundHandlerAdapter;
+import io.netty.channel.epoll.EpollDomainSocketChannel;
+import io.netty.channel.unix.DomainSocketAddress;
+
+/**
+ * grpc unix域套接字路径
+ * 服务端在配置的目录下按监听端口创建套接字文件，同主机客户端按相同规则找到对应服务端
+ *
+ * @since 1.0.0
+ */
+public final class DomainSockets
+{
+    /*
+     * 套接字文件名前缀与后缀
+     */
+    private static final String FILE_PREFIX = "dbserver-grpc-";
+
+    private static final String FILE_SUFFIX = ".sock";
+
+    /*
+     * 探测套接字是否有进程监听的连接超时，单位毫秒
+     */
+    private static final long PROBE_TIMEOUT_MILLIS = 1000L;
+
+    private DomainSockets()
+    {
+    }
+
+    /**
+     * 获取监听端口对应的套接字文件路径
+     *
+     * @param dir  套接字文件目录
+     * @param port 监听端口
+     * @return 套接字文件路径
+     */
+    public static String path(String dir, int port)
+    {
+        return new File(dir, FILE_PREFIX + port + FILE_SUFFIX).getPath();
+    }
+
+    /**
+     * 套接字文件上是否有进程在监听，能够建立连接即认为仍在使用；不能在Netty事件循环线程中调用
+     *
+     * @param path 套接字文件路径
+     * @return 是否仍在使用
+     */
+    public static boolean isLive(String path)
+    {
+        NettyEventLoops eventLoops = NettyEventLoops.getInstance();
+        if (!eventLoops.isDomainSocketAvailable() || !new File(path).exists())
+        {
+            return false;
+        }
+        ChannelFuture connect = new Bootstrap().group(eventLoops.getWorkerGroup())
+                .channel(EpollDomainSocketChannel.class).handler(new ChannelInboundHandlerAdapter())
+                .connect(new DomainSocketAddress(path));
+        boolean live = connect.awaitUninterruptibly(PROBE_TIMEOUT_MILLIS) && connect.isSuccess();
+        connect.channel().close();
+        return live;
+    }
+}
@@ -0,0 +1,373 @@
+package com.fiberhome.dbserver.protocol.common;
+
+import java.io.FilterInputStream;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.InflaterInputStream;
+
+import io.grpc.Codec;
+import io.grpc.CompressorRegistry;
+import io.grpc.DecompressorRegistry;
+import io.grpc.ManagedChannelBuilder;
+import io.grpc.ServerBuilder;
+
+/**
+ * grpc压缩编码
+ * 在gzip之外注册最快压缩级别的deflate编码，所有编码均统计压缩前后字节数与压缩、解压耗费的CPU时间
+ * 客户端链路与服务端需通过{@link #configure}使用同一组编码，压缩策略见{@link CompressionPolicy}
+ *
+ * @since 1.0.0
+ */
+public final class GrpcCompression
+{
+    /*
+     * gzip编码名
+     */
+    public static final String GZIP = "gzip";
+
+    /*
+     * 最快压缩级别的deflate编码名
+     */
+    public static final String DEFLATE = "deflate";
+
+    private static final ThreadMXBean THREAD_MX_BEAN = ManagementFactory.getThreadMXBean();
+
+    private static final boolean CPU_TIME_SUPPORTED = THREAD_MX_BEAN.isCurrentThreadCpuTimeSupported();
+
+    /*
+     * 带统计的编码 key:编码名
+     */
+    private static final Map<String, MeteredCodec> CODECS = new LinkedHashMap<>();
+
+    private static final CompressorRegistry COMPRESSORS = CompressorRegistry.newEmptyInstance();
+
+    private static final DecompressorRegistry DECOMPRESSORS;
+
+    static
+    {
+        CODECS.put(GZIP, new MeteredCodec(new Codec.Gzip()));
+        CODECS.put(DEFLATE, new MeteredCodec(new FastDeflateCodec()));
+        DecompressorRegistry decompressors = DecompressorRegistry.emptyInstance().with(Codec.Identity.NONE, false);
+        COMPRESSORS.register(Codec.Identity.NONE);
+        for (MeteredCodec codec : CODECS.values())
+        {
+            COMPRESSORS.register(codec);
+            decompressors = decompressors.with(codec, true);
+        }
+        DECOMPRESSORS = decompressors;
+    }
+
+    private GrpcCompression()
+    {
+    }
+
+    /**
+     * 是否为已注册的压缩编码
+     *
+     * @param codec 编码名
+     * @return 是否已注册
+     */
+    public static boolean isSupported(String codec)
+    {
+        return CODECS.containsKey(codec);
+    }
+
+    /**
+     * 为客户端链路设置压缩编码
+     *
+     * @param builder 链路构造器
+     * @param <T>     构造器类型
+     * @return 链路构造器
+     */
+    public static <T extends ManagedChannelBuilder<T>> T configure(T builder)
+    {
+        return builder.compressorRegistry(COMPRESSORS).decompressorRegistry(DECOMPRESSORS);
+    }
+
+    /**
+     * 为服务端设置压缩编码
+     *
+     * @param builder 服务构造器
+     * @param <T>     构造器类型
+     * @return 服务构造器
+     */
+    public static <T extends ServerBuilder<T>> T configure(T builder)
+    {
+        return builder.compressorRegistry(COMPRESSORS).decompressorRegistry(DECOMPRESSORS);
+    }
+
+    /**
+     * 各编码的压缩率与CPU耗时统计
+     *
+     * @return 统计信息
+     */
+    public static String getStats()
+    {
+        StringBuilder stats = new StringBuilder();
+        for (Map.Entry<String, MeteredCodec> entry : CODECS.entrySet())
+        {
+            if (stats.length() > 0)
+            {
+                stats.append(", ");
+            }
+            stats.append(entry.getKey()).append(entry.getValue());
+        }
+        return stats.toString();
+    }
+
+    static MeteredCodec getCodec(String codec)
+    {
+        return CODECS.get(codec);
+    }
+
+    private static long cpuTime()
+    {
+        return CPU_TIME_SUPPORTED ? THREAD_MX_BEAN.getCurrentThreadCpuTime() : System.nanoTime();
+    }
+
+    /**
+     * 最快压缩级别的deflate编码，压缩率略低于gzip，CPU开销明显更低
+     */
+    static final class FastDeflateCodec implements Codec
+    {
+        @Override
+        public String getMessageEncoding()
+        {
+            return DEFLATE;
+        }
+
+        @Override
+        public OutputStream compress(OutputStream os)
+        {
+            return new DeflaterOutputStream(os, new Deflater(Deflater.BEST_SPEED))
+            {
+                @Override
+                public void close() throws IOException
+                {
+                    try
+                    {
+                        super.close();
+                    }
+                    finally
+                    {
+                        def.end();
+                    }
+                }
+            };
+        }
+
+        @Override
+        public InputStream decompress(InputStream is)
+        {
+            return new InflaterInputStream(is);
+        }
+    }
+
+    /**
+     * 带统计的编码
+     */
+    static final class MeteredCodec implements Codec
+    {
+        private final Codec delegate;
+
+        private final LongAdder compressedMessages = new LongAdder();
+
+        /*
+         * 压缩前后的字节数
+         */
+        private final LongAdder rawBytesOut = new LongAdder();
+
+        private final LongAdder compressedBytesOut = new LongAdder();
+
+        private final LongAdder compressNanos = new LongAdder();
+
+        private final LongAdder compressedBytesIn = new LongAdder();
+
+        private final LongAdder rawBytesIn = new LongAdder();
+
+        private final LongAdder decompressNanos = new LongAdder();
+
+        MeteredCodec(Codec delegate)
+        {
+            this.delegate = delegate;
+        }
+
+        @Override
+        public String getMessageEncoding()
+        {
+            return delegate.getMessageEncoding();
+        }
+
+        @Override
+        public OutputStream compress(OutputStream os) throws IOException
+        {
+            CountingOutputStream compressed = new CountingOutputStream(os);
+            long start = cpuTime();
+            OutputStream compressing = delegate.compress(compressed);
+            compressNanos.add(cpuTime() - start);
+            return new FilterOutputStream(compressing)
+            {
+                private long raw;
+
+                @Override
+                public void write(int b) throws IOException
+                {
+                    write(new byte[] {(byte) b}, 0, 1);
+                }
+
+                @Override
+                public void write(byte[] b, int off, int len) throws IOException
+                {
+                    long begin = cpuTime();
+                    out.write(b, off, len);
+                    compressNanos.add(cpuTime() - begin);
+                    raw += len;
+                }
+
+                @Override
+                public void close() throws IOException
+                {
+                    long begin = cpuTime();
+                    super.close();
+                    compressNanos.add(cpuTime() - begin);
+                    compressedMessages.increment();
+                    rawBytesOut.add(raw);
+                    compressedBytesOut.add(compressed.count);
+                }
+            };
+        }
+
+        @Override
+        public InputStream decompress(InputStream is) throws IOException
+        {
+            CountingInputStream compressed = new CountingInputStream(is);
+            return new FilterInputStream(delegate.decompress(compressed))
+            {
+                @Override
+                public int read() throws IOException
+                {
+                    byte[] one = new byte[1];
+                    return read(one, 0, 1) < 0 ? -1 : one[0] & 0xFF;
+                }
+
+                @Override
+                public int read(byte[] b, int off, int len) throws IOException
+                {
+                    long begin = cpuTime();
+                    int n = in.read(b, off, len);
+                    decompressNanos.add(cpuTime() - begin);
+                    if (n > 0)
+                    {
+                        rawBytesIn.add(n);
+                    }
+                    return n;
+                }
+
+                @Override
+                public void close() throws IOException
+                {
+                    super.close();
+                    compressedBytesIn.add(compressed.count);
+                }
+            };
+        }
+
+        long getCompressedMessages()
+        {
+            return compressedMessages.sum();
+        }
+
+        long getRawBytesOut()
+        {
+            return rawBytesOut.sum();
+        }
+
+        long getCompressedBytesOut()
+        {
+            return compressedBytesOut.sum();
+        }
+
+        @Override
+        public String toString()
+        {
+            long raw = rawBytesOut.sum();
+            long compressed = compressedBytesOut.sum();
+            return "[messages=" + compressedMessages.sum() + ", rawBytes=" + raw + ", compressedBytes=" + compressed
+                    + ", ratio=" + (compressed == 0 ? 0D : (double) raw / compressed) + ", compressCpuMs="
+                    + compressNanos.sum() / 1000000L + ", decompressedBytes=" + rawBytesIn.sum()
+                    + ", decompressInputBytes=" + compressedBytesIn.sum() + ", decompressCpuMs="
+                    + decompressNanos.sum() / 1000000L + "]";
+        }
+    }
+
+    /**
+     * 统计写出字节数
+     */
+    private static final class CountingOutputStream extends FilterOutputStream
+    {
+        private long count;
+
+        CountingOutputStream(OutputStream out)
+        {
+            super(out);
+        }
+
+        @Override
+        public void write(int b) throws IOException
+        {
+            out.write(b);
+            count++;
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException
+        {
+            out.write(b, off, len);
+            count += len;
+        }
+    }
+
+    /**
+     * 统计读入字节数
+     */
+    private static final class CountingInputStream extends FilterInputStream
+    {
+        private long count;
+
+        CountingInputStream(InputStream in)
+        {
+            super(in);
+        }
+
+        @Override
+        public int read() throws IOException
+        {
+            int b = in.read();
+            if (b >= 0)
+            {
+                count++;
+            }
+            return b;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException
+        {
+            int n = in.read(b, off, len);
+            if (n > 0)
+            {
+                count += n;
+            }
+            return n;
+        }
+    }
+}
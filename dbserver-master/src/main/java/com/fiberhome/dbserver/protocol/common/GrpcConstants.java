@@ -4,9 +4,10 @@ package com.fiberhome.dbserver.protocol.common;
 import com.fiberhome.dbserver.common.transport.protobuf.HeartBeatMangerServiceGrpc;
 // import com.fiberhome.dbserver.common.transport.protobuf.RegionManagerServiceGrpc;
 // import com.fiberhome.dbserver.common.transport.protobuf.SlaveBlockletDataServiceGrpc;
-// import com.fiberhome.dbserver.common.transport.protobuf.SlaveBlockletIndexServiceGrpc;
-// import com.fiberhome.dbserver.common.transport.protobuf.SlaveCoordinateServiceGrpc;
-// import com.fiberhome.dbserver.common.transport.protobuf.SlaveManagerServiceGrpc;
+import com.fiberhome.dbserver.common.transport.protobuf.ServerAdminServiceGrpc;
+import com.fiberhome.dbserver.common.transport.protobuf.SlaveBlockletIndexServiceGrpc;
+import com.fiberhome.dbserver.common.transport.protobuf.SlaveCoordinateServiceGrpc;
+import com.fiberhome.dbserver.common.transport.protobuf.SlaveManagerServiceGrpc;
 // import com.fiberhome.dbserver.common.transport.protobuf.SlaveRegionMangerServiceGrpc;
 // import com.fiberhome.dbserver.common.transport.protobuf.TableManagerServiceGrpc;
 
@@ -47,10 +48,30 @@ public class GrpcConstants
     public static final int MAX_FLOWWINDOW_SIZE = 80 * 1024 * 1024;
 
     /*
-     * 线程存活时间
+     * 连接keepalive默认间隔，单位秒
      */
     public static final int KEEP_LIVE_TIME = 60;
 
+    /*
+     * 客户端到每个主机:端口的默认链路数
+     */
+    public static final int DEFAULT_CLIENT_CHANNEL_NUM = 4;
+
+    /*
+     * 客户端到每个主机:端口的最大链路数
+     */
+    public static final int MAX_CLIENT_CHANNEL_NUM = 16;
+
+    /*
+     * GRPC客户端线程名前缀
+     */
+    public static final String GRPC_CLIENT_THREAD_PREFIX = "grpc-client-";
+
+    /*
+     * GRPC客户端回调卸载线程名前缀
+     */
+    public static final String GRPC_CLIENT_OFFLOAD_THREAD_PREFIX = "grpc-client-offload-";
+
     /*
      * 分隔符：点号
      */
@@ -72,10 +93,10 @@ public class GrpcConstants
     // Region管理服务
     //  */
     // public static final String REGION_MANAGER_SERVICE = RegionManagerServiceGrpc.class.getName();
-    // /*
-    // Server管理服务
-    //  */
-    // public static final String SERVER_MANAGER_SERVICE = SlaveManagerServiceGrpc.class.getName();
+    /*
+    Server管理服务
+     */
+    public static final String SERVER_MANAGER_SERVICE = SlaveManagerServiceGrpc.class.getName();
     // /*
     // 表管理服务
     //  */
@@ -89,18 +110,22 @@ public class GrpcConstants
     // Slave Region管理
     //  */
     // public static final String SLAVE_REGION_MANAGER_SERVICE = SlaveRegionMangerServiceGrpc.class.getName();
-    // /*
-    // Slave BlockIndex管理
-    //  */
-    // public static final String SLAVE_BLOCKINDEX_MANAGER_SERVICE = SlaveBlockletIndexServiceGrpc.class.getName();
+    /*
+    Slave BlockIndex管理
+     */
+    public static final String SLAVE_BLOCKINDEX_MANAGER_SERVICE = SlaveBlockletIndexServiceGrpc.class.getName();
     // /*
     // Slave BLOCKDATA管理
     //  */
     // public static final String SLAVA_BLOCKDATA_MANAGER_SERVICE = SlaveBlockletDataServiceGrpc.class.getName();
-    // /*
-    // Slave COORDINATESERVICE管理
-    //  */
-    // public static final String SLAVA_COORDINATESERVICE_MANAGER_SERVICE = SlaveCoordinateServiceGrpc.class.getName();
+    /*
+    Slave COORDINATESERVICE管理
+     */
+    public static final String SLAVA_COORDINATESERVICE_MANAGER_SERVICE = SlaveCoordinateServiceGrpc.class.getName();
+    /*
+    服务端管理服务
+     */
+    public static final String SERVER_ADMIN_SERVICE = ServerAdminServiceGrpc.class.getName();
 
     /**
      * 私有构造
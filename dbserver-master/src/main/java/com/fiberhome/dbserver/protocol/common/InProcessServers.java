@@ -0,0 +1,73 @@
+package com.fiberhome.dbserver.protocol.common;
+
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+import com.fiberhome.dbserver.tools.util.Addressing;
+
+/**
+ * 本进程内启动的grpc进程内服务
+ * GrpcServer启动时按监听地址登记进程内服务名，客户端访问的地址在本进程内时直接使用进程内传输，
+ * 请求不经过序列化与网络协议栈，用于Master/Slave同进程部署与业务处理耗时的基准测试
+ *
+ * @since 1.0.0
+ */
+public final class InProcessServers
+{
+    /*
+     * 进程内服务名前缀
+     */
+    private static final String NAME_PREFIX = "dbserver-inprocess-";
+
+    /*
+     * 已启动的进程内服务名
+     */
+    private static final Set<String> NAMES = ConcurrentHashMap.newKeySet();
+
+    private InProcessServers()
+    {
+    }
+
+    /**
+     * 获取监听地址对应的进程内服务名
+     *
+     * @param hostIp 监听ip
+     * @param port   监听端口
+     * @return 进程内服务名
+     */
+    public static String name(String hostIp, int port)
+    {
+        return NAME_PREFIX + Addressing.createHostAndPortStr(hostIp, port);
+    }
+
+    /**
+     * 登记已启动的进程内服务
+     *
+     * @param name 进程内服务名
+     */
+    public static void register(String name)
+    {
+        NAMES.add(name);
+    }
+
+    /**
+     * 注销进程内服务
+     *
+     * @param name 进程内服务名
+     */
+    public static void unregister(String name)
+    {
+        NAMES.remove(name);
+    }
+
+    /**
+     * 进程内服务是否在本进程中
+     *
+     * @param name 进程内服务名
+     * @return 是否已登记
+     */
+    public static boolean isLocal(String name)
+    {
+        return NAMES.contains(name);
+    }
+}
@@ -0,0 +1,182 @@
+package com.fiberhome.dbserver.protocol.common;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 延迟直方图
+ * 按微秒记录，小于16微秒时每微秒一个桶，之后每个2的幂区间再均分为16个桶，相对误差不超过6.25%；
+ * 记录只做原子累加，不分配对象，可在调用路径上使用
+ *
+ * @since 1.0.0
+ */
+public final class LatencyHistogram
+{
+    /*
+     * 每个2的幂区间的子桶数为2^SUB_BUCKET_BITS
+     */
+    private static final int SUB_BUCKET_BITS = 4;
+
+    private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+
+    /*
+     * 桶数，可覆盖到2^63微秒
+     */
+    private static final int BUCKETS = SUB_BUCKETS + (Long.SIZE - 1 - SUB_BUCKET_BITS) * SUB_BUCKETS;
+
+    private final AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+
+    private final LongAdder count = new LongAdder();
+
+    private final LongAdder sum = new LongAdder();
+
+    private final AtomicLong max = new AtomicLong();
+
+    /**
+     * 记录一次延迟
+     *
+     * @param latencyMicros 延迟，单位微秒
+     */
+    public void record(long latencyMicros)
+    {
+        long value = Math.max(0L, latencyMicros);
+        counts.incrementAndGet(bucketOf(value));
+        count.increment();
+        sum.add(value);
+        long current = max.get();
+        while (value > current && !max.compareAndSet(current, value))
+        {
+            current = max.get();
+        }
+    }
+
+    /**
+     * 生成快照，快照期间的并发记录可能只部分计入
+     *
+     * @return 快照
+     */
+    public Snapshot snapshot()
+    {
+        long[] buckets = new long[BUCKETS];
+        long total = 0L;
+        for (int i = 0; i < BUCKETS; i++)
+        {
+            buckets[i] = counts.get(i);
+            total += buckets[i];
+        }
+        long maxValue = max.get();
+        return new Snapshot(total, total == 0 ? 0D : (double) sum.sum() / total, valueAt(buckets, total, 0.5D),
+                valueAt(buckets, total, 0.99D), valueAt(buckets, total, 0.999D), maxValue);
+    }
+
+    static int bucketOf(long value)
+    {
+        if (value < SUB_BUCKETS)
+        {
+            return (int) value;
+        }
+        int exponent = Long.SIZE - 1 - Long.numberOfLeadingZeros(value);
+        int shift = exponent - SUB_BUCKET_BITS;
+        int sub = (int) (value >>> shift) & (SUB_BUCKETS - 1);
+        return SUB_BUCKETS + shift * SUB_BUCKETS + sub;
+    }
+
+    /**
+     * 桶的上界
+     */
+    static long upperBoundOf(int bucket)
+    {
+        if (bucket < SUB_BUCKETS)
+        {
+            return bucket;
+        }
+        int shift = (bucket - SUB_BUCKETS) / SUB_BUCKETS;
+        int sub = (bucket - SUB_BUCKETS) % SUB_BUCKETS;
+        return ((long) (SUB_BUCKETS + sub + 1) << shift) - 1;
+    }
+
+    private static long valueAt(long[] buckets, long total, double percentile)
+    {
+        if (total == 0)
+        {
+            return 0L;
+        }
+        long rank = (long) Math.ceil(percentile * total);
+        long seen = 0L;
+        for (int i = 0; i < buckets.length; i++)
+        {
+            seen += buckets[i];
+            if (seen >= rank)
+            {
+                return upperBoundOf(i);
+            }
+        }
+        return upperBoundOf(buckets.length - 1);
+    }
+
+    /**
+     * 直方图快照，延迟单位均为微秒
+     */
+    public static final class Snapshot
+    {
+        private final long count;
+
+        private final double mean;
+
+        private final long p50;
+
+        private final long p99;
+
+        private final long p999;
+
+        private final long max;
+
+        Snapshot(long count, double mean, long p50, long p99, long p999, long max)
+        {
+            this.count = count;
+            this.mean = mean;
+            this.p50 = p50;
+            this.p99 = p99;
+            this.p999 = p999;
+            this.max = max;
+        }
+
+        public long getCount()
+        {
+            return count;
+        }
+
+        public double getMean()
+        {
+            return mean;
+        }
+
+        public long getP50()
+        {
+            return p50;
+        }
+
+        public long getP99()
+        {
+            return p99;
+        }
+
+        public long getP999()
+        {
+            return p999;
+        }
+
+        public long getMax()
+        {
+            return max;
+        }
+
+        @Override
+        public String toString()
+        {
+            return "[count=" + count + ", meanUs=" + (long) mean + ", p50Us=" + p50 + ", p99Us=" + p99 + ", p999Us="
+                    + p999 + ", maxUs=" + max + "]";
+        }
+    }
+}
@@ -0,0 +1,369 @@
+package com.fiberhome.dbserver.protocol.common;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.fiberhome.dbserver.common.common.ServerType;
+import com.fiberhome.dbserver.common.config.ClientCongfiguration;
+import com.fiberhome.dbserver.common.config.MasterConfiguration;
+import com.fiberhome.dbserver.common.config.ServerConfiguration;
+import com.fiberhome.dbserver.common.services.Threads;
+import io.grpc.netty.NettyChannelBuilder;
+import io.grpc.netty.NettyServerBuilder;
+import io.netty.buffer.PooledByteBufAllocator;
+import io.netty.buffer.PooledByteBufAllocatorMetric;
+import io.netty.channel.ChannelOption;
+import io.netty.channel.EventLoopGroup;
+import io.netty.channel.epoll.Epoll;
+import io.netty.channel.epoll.EpollDomainSocketChannel;
+import io.netty.channel.epoll.EpollEventLoopGroup;
+import io.netty.channel.epoll.EpollServerDomainSocketChannel;
+import io.netty.channel.epoll.EpollServerSocketChannel;
+import io.netty.channel.epoll.EpollSocketChannel;
+import io.netty.channel.nio.NioEventLoopGroup;
+import io.netty.channel.socket.ServerSocketChannel;
+import io.netty.channel.socket.SocketChannel;
+import io.netty.channel.socket.nio.NioServerSocketChannel;
+import io.netty.channel.socket.nio.NioSocketChannel;
+
+/**
+ * 进程内共享的Netty事件循环
+ * 客户端链路与服务端共用同一组worker线程，可用时使用epoll本地传输，并统一使用池化的ByteBuf分配器
+ * Master/Slave进程启动时需先调用{@link #init(ServerType)}，仅作为客户端的进程在首次使用时按客户端配置初始化
+ *
+ * @since 1.0.0
+ */
+public final class NettyEventLoops
+{
+    private static final Logger LOG = LoggerFactory.getLogger(NettyEventLoops.class);
+
+    /*
+     * 线程名前缀
+     */
+    private static final String WORKER_THREAD_PREFIX = "grpc-netty-worker-";
+
+    private static final String BOSS_THREAD_PREFIX = "grpc-netty-boss-";
+
+    private static NettyEventLoops instance;
+
+    /*
+     * 初始化参数
+     */
+    private final Settings settings;
+
+    /*
+     * 是否使用epoll传输
+     */
+    private final boolean epoll;
+
+    private final EventLoopGroup bossGroup;
+
+    private final EventLoopGroup workerGroup;
+
+    private final Class<? extends SocketChannel> channelType;
+
+    private final Class<? extends ServerSocketChannel> serverChannelType;
+
+    private final PooledByteBufAllocator allocator;
+
+    /*
+     * 是否已关闭
+     */
+    private volatile boolean shutdown;
+
+    private NettyEventLoops(Settings settings)
+    {
+        this.settings = settings;
+        int workerThreads = settings.workerThreads;
+        int bossThreads = settings.bossThreads;
+        boolean preferDirect = settings.preferDirect;
+        this.epoll = settings.epollEnabled && Epoll.isAvailable();
+        if (epoll)
+        {
+            this.bossGroup = new EpollEventLoopGroup(bossThreads, Threads.newDaemonThreadFactory(BOSS_THREAD_PREFIX));
+            this.workerGroup = new EpollEventLoopGroup(workerThreads,
+                    Threads.newDaemonThreadFactory(WORKER_THREAD_PREFIX));
+            this.channelType = EpollSocketChannel.class;
+            this.serverChannelType = EpollServerSocketChannel.class;
+        }
+        else
+        {
+            if (settings.epollEnabled)
+            {
+                LOG.warn("Native epoll transport is unavailable, fall back to nio.", Epoll.unavailabilityCause());
+            }
+            this.bossGroup = new NioEventLoopGroup(bossThreads, Threads.newDaemonThreadFactory(BOSS_THREAD_PREFIX));
+            this.workerGroup = new NioEventLoopGroup(workerThreads,
+                    Threads.newDaemonThreadFactory(WORKER_THREAD_PREFIX));
+            this.channelType = NioSocketChannel.class;
+            this.serverChannelType = NioServerSocketChannel.class;
+        }
+        // 每个worker线程一个arena，减少arena竞争
+        this.allocator = new PooledByteBufAllocator(preferDirect, PooledByteBufAllocator.defaultNumHeapArena(),
+                preferDirect ? workerThreads : 0, PooledByteBufAllocator.defaultPageSize(),
+                PooledByteBufAllocator.defaultMaxOrder());
+        LOG.info("init netty event loops, transport:{}, worker threads:{}, boss threads:{}, prefer direct:{}",
+                epoll ? "epoll" : "nio", workerThreads, bossThreads, preferDirect);
+    }
+
+    /**
+     * 按Master或Slave配置初始化，进程启动时调用
+     *
+     * @param type 服务类型
+     * @return 共享事件循环
+     */
+    public static NettyEventLoops init(ServerType type)
+    {
+        switch (type)
+        {
+            case MASTER:
+                MasterConfiguration masterConf = MasterConfiguration.getMasterConf();
+                return init(new Settings(masterConf.getNettyWorkerThreads(), masterConf.getNettyBossThreads(),
+                        masterConf.isNettyEpollEnabled(), masterConf.isNettyDirectBufferPreferred()));
+            case SERVER:
+                ServerConfiguration serverConf = ServerConfiguration.getServerConf();
+                return init(new Settings(serverConf.getNettyWorkerThreads(), serverConf.getNettyBossThreads(),
+                        serverConf.isNettyEpollEnabled(), serverConf.isNettyDirectBufferPreferred()));
+            default:
+                throw new IllegalArgumentException("this ServerType is not support. type:" + type);
+        }
+    }
+
+    /**
+     * 按指定参数初始化，已按相同参数初始化时直接返回，参数不一致时抛出异常
+     *
+     * @param settings 初始化参数
+     * @return 共享事件循环
+     */
+    public static synchronized NettyEventLoops init(Settings settings)
+    {
+        if (instance == null)
+        {
+            instance = new NettyEventLoops(settings);
+        }
+        else if (!instance.settings.equals(settings))
+        {
+            LOG.error("netty event loops has been initialized with {}, conflict with {}", instance.settings,
+                    settings);
+            throw new IllegalStateException(
+                    "netty event loops has been initialized with " + instance.settings + ", conflict with " + settings);
+        }
+        return instance;
+    }
+
+    /**
+     * 获取共享事件循环，未初始化时按客户端配置初始化
+     *
+     * @return 共享事件循环
+     */
+    public static synchronized NettyEventLoops getInstance()
+    {
+        if (instance == null)
+        {
+            ClientCongfiguration conf = ClientCongfiguration.getClientConfiguration();
+            instance = new NettyEventLoops(new Settings(conf.getNettyWorkerThreads(), 1, conf.isNettyEpollEnabled(),
+                    conf.isNettyDirectBufferPreferred()));
+        }
+        return instance;
+    }
+
+    /**
+     * 获取已初始化的共享事件循环，不触发初始化
+     *
+     * @return 共享事件循环，未初始化时返回null
+     */
+    public static synchronized NettyEventLoops getIfInitialized()
+    {
+        return instance;
+    }
+
+    /**
+     * 关闭共享事件循环，需在所有客户端与服务端关闭后调用
+     */
+    public static synchronized void shutdown()
+    {
+        if (instance != null)
+        {
+            instance.shutdown = true;
+            instance.bossGroup.shutdownGracefully();
+            instance.workerGroup.shutdownGracefully();
+            instance = null;
+        }
+    }
+
+    /**
+     * 为客户端链路设置共享事件循环、传输类型与分配器
+     *
+     * @param builder 链路构造器
+     * @return 链路构造器
+     */
+    public NettyChannelBuilder configure(NettyChannelBuilder builder)
+    {
+        return builder.eventLoopGroup(workerGroup).channelType(channelType)
+                .withOption(ChannelOption.ALLOCATOR, allocator);
+    }
+
+    /**
+     * 为服务端设置共享事件循环、传输类型与分配器
+     *
+     * @param builder 服务构造器
+     * @return 服务构造器
+     */
+    public NettyServerBuilder configure(NettyServerBuilder builder)
+    {
+        return builder.bossEventLoopGroup(bossGroup).workerEventLoopGroup(workerGroup)
+                .channelType(serverChannelType).withOption(ChannelOption.ALLOCATOR, allocator)
+                .withChildOption(ChannelOption.ALLOCATOR, allocator);
+    }
+
+    /**
+     * 为客户端链路设置unix域套接字传输，仅epoll传输可用时支持
+     *
+     * @param builder 链路构造器
+     * @return 链路构造器
+     */
+    public NettyChannelBuilder configureDomainSocket(NettyChannelBuilder builder)
+    {
+        checkDomainSocket();
+        return builder.eventLoopGroup(workerGroup).channelType(EpollDomainSocketChannel.class)
+                .withOption(ChannelOption.ALLOCATOR, allocator);
+    }
+
+    /**
+     * 为服务端设置unix域套接字传输，仅epoll传输可用时支持
+     *
+     * @param builder 服务构造器
+     * @return 服务构造器
+     */
+    public NettyServerBuilder configureDomainSocket(NettyServerBuilder builder)
+    {
+        checkDomainSocket();
+        return builder.bossEventLoopGroup(bossGroup).workerEventLoopGroup(workerGroup)
+                .channelType(EpollServerDomainSocketChannel.class).withOption(ChannelOption.ALLOCATOR, allocator)
+                .withChildOption(ChannelOption.ALLOCATOR, allocator);
+    }
+
+    private void checkDomainSocket()
+    {
+        if (!epoll)
+        {
+            throw new IllegalStateException("unix domain socket requires the native epoll transport.");
+        }
+    }
+
+    /**
+     * 是否支持unix域套接字传输
+     *
+     * @return 使用epoll传输时支持
+     */
+    public boolean isDomainSocketAvailable()
+    {
+        return epoll;
+    }
+
+    public boolean isEpoll()
+    {
+        return epoll;
+    }
+
+    public boolean isShutdown()
+    {
+        return shutdown;
+    }
+
+    public Settings getSettings()
+    {
+        return settings;
+    }
+
+    public EventLoopGroup getWorkerGroup()
+    {
+        return workerGroup;
+    }
+
+    public PooledByteBufAllocator getAllocator()
+    {
+        return allocator;
+    }
+
+    public PooledByteBufAllocatorMetric getAllocatorMetric()
+    {
+        return allocator.metric();
+    }
+
+    /**
+     * 分配器arena统计信息
+     *
+     * @return 统计信息
+     */
+    public String getAllocatorStats()
+    {
+        PooledByteBufAllocatorMetric metric = allocator.metric();
+        return "directArenas=" + metric.numDirectArenas() + ", heapArenas=" + metric.numHeapArenas()
+                + ", usedDirectMemory=" + metric.usedDirectMemory() + ", usedHeapMemory=" + metric.usedHeapMemory()
+                + ", threadLocalCaches=" + metric.numThreadLocalCaches() + ", chunkSize=" + metric.chunkSize();
+    }
+
+    /**
+     * 共享事件循环的初始化参数
+     */
+    public static final class Settings
+    {
+        private final int workerThreads;
+
+        private final int bossThreads;
+
+        private final boolean epollEnabled;
+
+        private final boolean preferDirect;
+
+        /**
+         * 构造函数
+         *
+         * @param workerThreads worker线程数
+         * @param bossThreads   boss线程数
+         * @param epollEnabled  是否启用epoll
+         * @param preferDirect  是否优先分配直接内存
+         */
+        public Settings(int workerThreads, int bossThreads, boolean epollEnabled, boolean preferDirect)
+        {
+            this.workerThreads = workerThreads;
+            this.bossThreads = bossThreads;
+            this.epollEnabled = epollEnabled;
+            this.preferDirect = preferDirect;
+        }
+
+        @Override
+        public boolean equals(Object o)
+        {
+            if (this == o)
+            {
+                return true;
+            }
+            if (!(o instanceof Settings))
+            {
+                return false;
+            }
+            Settings other = (Settings) o;
+            return workerThreads == other.workerThreads && bossThreads == other.bossThreads
+                    && epollEnabled == other.epollEnabled && preferDirect == other.preferDirect;
+        }
+
+        @Override
+        public int hashCode()
+        {
+            int result = workerThreads;
+            result = 31 * result + bossThreads;
+            result = 31 * result + (epollEnabled ? 1 : 0);
+            result = 31 * result + (preferDirect ? 1 : 0);
+            return result;
+        }
+
+        @Override
+        public String toString()
+        {
+            return "[workerThreads=" + workerThreads + ", bossThreads=" + bossThreads + ", epollEnabled="
+                    + epollEnabled + ", preferDirect=" + preferDirect + "]";
+        }
+    }
+}
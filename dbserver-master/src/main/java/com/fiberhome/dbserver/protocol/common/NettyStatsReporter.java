@@ -0,0 +1,56 @@
+package com.fiberhome.dbserver.protocol.common;
+
+import java.util.Map;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.fiberhome.dbserver.common.executor.payload.CyclePayload;
+import com.fiberhome.dbserver.protocol.client.ClientMetrics;
+import com.fiberhome.dbserver.protocol.client.ClientMetrics.MethodSnapshot;
+import com.fiberhome.dbserver.protocol.server.ServerMetrics;
+
+/**
+ * 周期输出共享Netty事件循环的传输类型、ByteBuf分配器arena统计、grpc压缩统计与客户端、服务端调用指标
+ *
+ * @since 1.0.0
+ */
+public class NettyStatsReporter extends CyclePayload
+{
+    private static final Logger LOG = LoggerFactory.getLogger(NettyStatsReporter.class);
+
+    private final NettyEventLoops eventLoops;
+
+    /**
+     * 构造函数
+     *
+     * @param eventLoops 共享事件循环
+     * @param period     输出周期，单位毫秒
+     */
+    public NettyStatsReporter(NettyEventLoops eventLoops, long period)
+    {
+        super(false, period, period);
+        this.eventLoops = eventLoops;
+    }
+
+    @Override
+    protected void process()
+    {
+        if (eventLoops.isShutdown())
+        {
+            return;
+        }
+        LOG.info("netty transport:{}, allocator:{}", eventLoops.isEpoll() ? "epoll" : "nio",
+                eventLoops.getAllocatorStats());
+        LOG.info("grpc compression:{}", GrpcCompression.getStats());
+        for (Map.Entry<String, MethodSnapshot> entry : ClientMetrics.getInstance().snapshot().entrySet())
+        {
+            LOG.info("grpc client method:{}, metrics:{}", entry.getKey(), entry.getValue());
+        }
+        for (Map.Entry<String, ServerMetrics.MethodSnapshot> entry : ServerMetrics.getInstance().snapshot()
+                .entrySet())
+        {
+            LOG.info("grpc server method:{}, metrics:{}", entry.getKey(), entry.getValue());
+        }
+    }
+}
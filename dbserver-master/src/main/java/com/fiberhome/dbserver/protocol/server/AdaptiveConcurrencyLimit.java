@@ -0,0 +1,143 @@
+package com.fiberhome.dbserver.protocol.server;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 自适应并发上限
+ * 采用梯度算法：以长期平均延迟与短期平均延迟之比作为梯度，延迟升高时按比例收缩上限，
+ * 延迟平稳时每次增加sqrt(limit)；上限的一部分预留给心跳等关键服务，普通调用只能使用剩余部分
+ *
+ * @since 1.0.0
+ */
+final class AdaptiveConcurrencyLimit
+{
+    /*
+     * 短期延迟平滑系数
+     */
+    private static final double SHORT_ALPHA = 0.1D;
+
+    /*
+     * 长期延迟平滑系数
+     */
+    private static final double LONG_ALPHA = 0.01D;
+
+    /*
+     * 允许短期延迟超过长期延迟的比例，超过后才收缩上限
+     */
+    private static final double TOLERANCE = 1.5D;
+
+    /*
+     * 单次调整最多收缩一半
+     */
+    private static final double MIN_GRADIENT = 0.5D;
+
+    /*
+     * 上限调整平滑系数
+     */
+    private static final double SMOOTHING = 0.2D;
+
+    private final int minLimit;
+
+    private final int maxLimit;
+
+    private final double reservedRatio;
+
+    private final AtomicInteger inFlight = new AtomicInteger();
+
+    /*
+     * 当前上限，只在synchronized的onSample中修改
+     */
+    private volatile double limit;
+
+    private double shortRtt;
+
+    private double longRtt;
+
+    /**
+     * 构造函数
+     *
+     * @param initialLimit  初始上限
+     * @param minLimit      最小上限
+     * @param maxLimit      最大上限
+     * @param reservedRatio 为关键服务预留的上限比例
+     */
+    AdaptiveConcurrencyLimit(int initialLimit, int minLimit, int maxLimit, double reservedRatio)
+    {
+        this.minLimit = Math.max(1, minLimit);
+        this.maxLimit = Math.max(this.minLimit, maxLimit);
+        this.reservedRatio = Math.max(0D, Math.min(0.9D, reservedRatio));
+        this.limit = Math.max(this.minLimit, Math.min(this.maxLimit, initialLimit));
+    }
+
+    /**
+     * 尝试占用一个并发名额
+     *
+     * @param reserved 是否可以使用预留名额
+     * @return 占用成功时返回占用前的在途数，失败返回-1
+     */
+    int tryAcquire(boolean reserved)
+    {
+        int available = reserved ? (int) limit : Math.max(1, (int) (limit * (1D - reservedRatio)));
+        while (true)
+        {
+            int current = inFlight.get();
+            if (current >= available)
+            {
+                return -1;
+            }
+            if (inFlight.compareAndSet(current, current + 1))
+            {
+                return current;
+            }
+        }
+    }
+
+    /**
+     * 释放名额并记录本次调用的延迟
+     *
+     * @param latencyMicros     调用延迟，单位微秒
+     * @param inFlightAtAcquire 占用时的在途数
+     */
+    void release(long latencyMicros, int inFlightAtAcquire)
+    {
+        inFlight.decrementAndGet();
+        onSample(Math.max(1L, latencyMicros), inFlightAtAcquire);
+    }
+
+    private synchronized void onSample(long rtt, int inFlightAtAcquire)
+    {
+        if (longRtt == 0D)
+        {
+            shortRtt = rtt;
+            longRtt = rtt;
+            return;
+        }
+        shortRtt = shortRtt * (1D - SHORT_ALPHA) + rtt * SHORT_ALPHA;
+        longRtt = longRtt * (1D - LONG_ALPHA) + rtt * LONG_ALPHA;
+        // 负载回落后长期延迟偏高，加速回落，避免上限长时间不收缩
+        if (longRtt > shortRtt * 2D)
+        {
+            longRtt *= 0.95D;
+        }
+        // 在途数远低于上限时延迟不能反映上限是否合适，不调整
+        double current = limit;
+        if (inFlightAtAcquire < current / 2D)
+        {
+            return;
+        }
+        double gradient = Math.max(MIN_GRADIENT, Math.min(1D, TOLERANCE * longRtt / shortRtt));
+        double newLimit = current * gradient + Math.sqrt(current);
+        newLimit = current * (1D - SMOOTHING) + newLimit * SMOOTHING;
+        limit = Math.max(minLimit, Math.min(maxLimit, newLimit));
+    }
+
+    int getLimit()
+    {
+        return (int) limit;
+    }
+
+    int getInFlight()
+    {
+        return inFlight.get();
+    }
+}
@@ -0,0 +1,162 @@
+package com.fiberhome.dbserver.protocol.server;
+
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import io.grpc.ForwardingServerCall.SimpleForwardingServerCall;
+import io.grpc.ForwardingServerCallListener.SimpleForwardingServerCallListener;
+import io.grpc.Metadata;
+import io.grpc.MethodDescriptor;
+import io.grpc.ServerCall;
+import io.grpc.ServerCallHandler;
+import io.grpc.ServerInterceptor;
+import io.grpc.Status;
+
+/**
+ * 准入控制拦截器
+ * 按{@link AdaptiveConcurrencyLimit}限制整个server的在途调用数，超过上限的调用立即以RESOURCE_EXHAUSTED失败，
+ * 而不是排队到客户端超时；预留服务(如心跳)可以使用预留名额
+ *
+ * @since 1.0.0
+ */
+final class AdmissionControlInterceptor implements ServerInterceptor
+{
+    private static final Logger LOG = LoggerFactory.getLogger(AdmissionControlInterceptor.class);
+
+    private final AdaptiveConcurrencyLimit limit;
+
+    /*
+     * 可使用预留名额的服务名
+     */
+    private final Set<String> reservedServices;
+
+    private final LongAdder rejected = new LongAdder();
+
+    AdmissionControlInterceptor(AdaptiveConcurrencyLimit limit, String... reservedServices)
+    {
+        this.limit = limit;
+        this.reservedServices = new HashSet<>(Arrays.asList(reservedServices));
+    }
+
+    @Override
+    public <ReqT, RespT> ServerCall.Listener<ReqT> interceptCall(ServerCall<ReqT, RespT> call, Metadata headers,
+            ServerCallHandler<ReqT, RespT> next)
+    {
+        // 流式调用(如心跳流、流式查询)的时长取决于消息数与客户端消费速度，既不应长期占用并发名额，
+        // 也不应以流的时长参与上限调整；流上的各条消息仍由服务线程池限制
+        if (call.getMethodDescriptor().getType() != MethodDescriptor.MethodType.UNARY)
+        {
+            return next.startCall(call, headers);
+        }
+        String fullMethodName = call.getMethodDescriptor().getFullMethodName();
+        boolean reserved = reservedServices.contains(MethodDescriptor.extractFullServiceName(fullMethodName));
+        int inFlight = limit.tryAcquire(reserved);
+        if (inFlight < 0)
+        {
+            rejected.increment();
+            LOG.debug("reject call {}, in flight reaches limit {}", fullMethodName, limit.getLimit());
+            call.close(Status.RESOURCE_EXHAUSTED.withDescription("server is overloaded, concurrency limit "
+                    + limit.getLimit()), new Metadata());
+            return new ServerCall.Listener<ReqT>()
+            {
+            };
+        }
+        Permit permit = new Permit(inFlight);
+        ServerCall.Listener<ReqT> listener;
+        try
+        {
+            listener = next.startCall(new SimpleForwardingServerCall<ReqT, RespT>(call)
+            {
+                @Override
+                public void close(Status status, Metadata trailers)
+                {
+                    permit.release();
+                    super.close(status, trailers);
+                }
+            }, headers);
+        }
+        catch (RuntimeException e)
+        {
+            permit.release();
+            throw e;
+        }
+        return new SimpleForwardingServerCallListener<ReqT>(listener)
+        {
+            @Override
+            public void onCancel()
+            {
+                permit.release();
+                super.onCancel();
+            }
+
+            @Override
+            public void onComplete()
+            {
+                permit.release();
+                super.onComplete();
+            }
+        };
+    }
+
+    /**
+     * 获取当前并发上限
+     *
+     * @return 并发上限
+     */
+    int getLimit()
+    {
+        return limit.getLimit();
+    }
+
+    /**
+     * 获取当前在途调用数
+     *
+     * @return 在途调用数
+     */
+    int getInFlight()
+    {
+        return limit.getInFlight();
+    }
+
+    /**
+     * 获取累计拒绝的调用数
+     *
+     * @return 拒绝数
+     */
+    long getRejected()
+    {
+        return rejected.sum();
+    }
+
+    /**
+     * 一次调用占用的名额，只释放一次
+     */
+    private final class Permit
+    {
+        private final long startNanos = System.nanoTime();
+
+        private final int inFlightAtAcquire;
+
+        private final AtomicBoolean released = new AtomicBoolean();
+
+        Permit(int inFlightAtAcquire)
+        {
+            this.inFlightAtAcquire = inFlightAtAcquire;
+        }
+
+        void release()
+        {
+            if (released.compareAndSet(false, true))
+            {
+                limit.release(TimeUnit.NANOSECONDS.toMicros(System.nanoTime() - startNanos), inFlightAtAcquire);
+            }
+        }
+    }
+}
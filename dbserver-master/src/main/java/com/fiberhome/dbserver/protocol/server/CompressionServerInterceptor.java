@@ -0,0 +1,52 @@
+package com.fiberhome.dbserver.protocol.server;
+
+import com.fiberhome.dbserver.protocol.common.CompressionPolicy;
+import io.grpc.ForwardingServerCall.SimpleForwardingServerCall;
+import io.grpc.Metadata;
+import io.grpc.ServerCall;
+import io.grpc.ServerCallHandler;
+import io.grpc.ServerInterceptor;
+
+/**
+ * 服务端响应压缩拦截器
+ * 按方法设置压缩编码，并逐条消息按序列化大小决定是否压缩；客户端不支持该编码时grpc自动不压缩
+ *
+ * @since 1.0.0
+ */
+final class CompressionServerInterceptor implements ServerInterceptor
+{
+    private final CompressionPolicy policy;
+
+    CompressionServerInterceptor(CompressionPolicy policy)
+    {
+        this.policy = policy;
+    }
+
+    @Override
+    public <ReqT, RespT> ServerCall.Listener<ReqT> interceptCall(ServerCall<ReqT, RespT> call, Metadata headers,
+            ServerCallHandler<ReqT, RespT> next)
+    {
+        String codec = policy.codecFor(call.getMethodDescriptor().getFullMethodName());
+        if (codec == null)
+        {
+            return next.startCall(call, headers);
+        }
+        return next.startCall(new SimpleForwardingServerCall<ReqT, RespT>(call)
+        {
+            @Override
+            public void sendHeaders(Metadata responseHeaders)
+            {
+                // 编码需在响应头发出前设置
+                delegate().setCompression(codec);
+                super.sendHeaders(responseHeaders);
+            }
+
+            @Override
+            public void sendMessage(RespT message)
+            {
+                delegate().setMessageCompression(policy.shouldCompress(message));
+                super.sendMessage(message);
+            }
+        }, headers);
+    }
+}
@@ -0,0 +1,171 @@
+package com.fiberhome.dbserver.protocol.server;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.fiberhome.dbserver.common.services.MonitoredTask;
+import io.grpc.Server;
+
+/**
+ * grpc server优雅下线
+ * 先调用{@link Server#shutdown()}向客户端发送GOAWAY并拒绝新调用，在截止时间内等待在途调用完成，
+ * 期间周期性通过{@link MonitoredTask}汇报各服务的在途调用数；超时后才强制关闭连接并中断业务线程
+ *
+ * @since 1.0.0
+ */
+final class GracefulDrain
+{
+    private static final Logger LOG = LoggerFactory.getLogger(GracefulDrain.class);
+
+    /*
+     * 在途调用数汇报间隔，单位毫秒
+     */
+    private static final long REPORT_INTERVAL = 1000L;
+
+    private GracefulDrain()
+    {
+    }
+
+    /**
+     * 下线server并关闭业务线程池
+     *
+     * @param server        grpc server
+     * @param pools         服务业务线程池 key:服务名
+     * @param timeoutMillis 等待在途调用完成的最长时间，单位毫秒
+     * @param task          状态监控器，可为null
+     * @return 在途调用是否在截止时间内全部完成
+     */
+    static boolean drain(Server server, Map<String, ThreadPoolExecutor> pools, long timeoutMillis,
+            MonitoredTask task)
+    {
+        return drain(Collections.singletonList(server), pools, timeoutMillis, task);
+    }
+
+    /**
+     * 下线共用业务线程池的多个server并关闭业务线程池，如同一服务的网络server与进程内server
+     *
+     * @param servers       grpc server列表
+     * @param pools         服务业务线程池 key:服务名
+     * @param timeoutMillis 等待在途调用完成的最长时间，单位毫秒
+     * @param task          状态监控器，可为null
+     * @return 在途调用是否在截止时间内全部完成
+     */
+    static boolean drain(List<Server> servers, Map<String, ThreadPoolExecutor> pools, long timeoutMillis,
+            MonitoredTask task)
+    {
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(Math.max(0L, timeoutMillis));
+        for (Server server : servers)
+        {
+            server.shutdown();
+        }
+        boolean terminated = false;
+        try
+        {
+            while (true)
+            {
+                long remaining = TimeUnit.NANOSECONDS.toMillis(deadline - System.nanoTime());
+                if (remaining <= 0L)
+                {
+                    terminated = isTerminated(servers);
+                    break;
+                }
+                if (awaitTermination(servers, Math.min(REPORT_INTERVAL, remaining)))
+                {
+                    terminated = true;
+                    break;
+                }
+                report(pools, remaining, task);
+            }
+        }
+        catch (InterruptedException e)
+        {
+            LOG.warn("interrupted while draining grpc server.");
+            Thread.currentThread().interrupt();
+        }
+        if (!terminated)
+        {
+            LOG.warn("grpc server is not drained in {} ms, force shutdown. in flight: {}", timeoutMillis,
+                    inFlight(pools));
+            for (Server server : servers)
+            {
+                server.shutdownNow();
+            }
+        }
+        for (ThreadPoolExecutor pool : pools.values())
+        {
+            // 在途调用已结束时线程池为空闲状态，正常关闭即可；超时后中断仍在执行的业务
+            if (terminated)
+            {
+                pool.shutdown();
+            }
+            else
+            {
+                pool.shutdownNow();
+            }
+        }
+        if (task != null)
+        {
+            task.setStatus(terminated ? "grpc server drained." : "grpc server drain timeout, forced shutdown.");
+        }
+        return terminated;
+    }
+
+    private static boolean awaitTermination(List<Server> servers, long timeoutMillis) throws InterruptedException
+    {
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeoutMillis);
+        for (Server server : servers)
+        {
+            if (!server.awaitTermination(deadline - System.nanoTime(), TimeUnit.NANOSECONDS))
+            {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static boolean isTerminated(List<Server> servers)
+    {
+        for (Server server : servers)
+        {
+            if (!server.isTerminated())
+            {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static void report(Map<String, ThreadPoolExecutor> pools, long remaining, MonitoredTask task)
+    {
+        String status = "draining grpc server, in flight: " + inFlight(pools) + ", remaining " + remaining + " ms";
+        LOG.info(status);
+        if (task != null)
+        {
+            task.setStatus(status);
+        }
+    }
+
+    /**
+     * 各服务的在途调用数，包括执行中与排队中的调用
+     */
+    static Map<String, Integer> inFlight(Map<String, ThreadPoolExecutor> pools)
+    {
+        Map<String, Integer> inFlight = new TreeMap<>();
+        for (Map.Entry<String, ThreadPoolExecutor> entry : pools.entrySet())
+        {
+            int count = entry.getValue().getActiveCount() + entry.getValue().getQueue().size();
+            if (count > 0)
+            {
+                inFlight.put(entry.getKey(), count);
+            }
+        }
+        return inFlight;
+    }
+}
@@ -3,13 +3,20 @@ package com.fiberhome.dbserver.protocol.server;
 import static com.fiberhome.dbserver.protocol.common.GrpcConstants.MAX_FLOWWINDOW_SIZE;
 import static com.fiberhome.dbserver.protocol.common.GrpcConstants.MAX_MESSAGE_SIZE;
 
+import java.io.File;
 import java.io.IOException;
 import java.net.InetSocketAddress;
+import java.net.SocketAddress;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashSet;
+import java.util.List;
 import java.util.Map;
 import java.util.Set;
-import java.util.concurrent.Executors;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -17,12 +24,26 @@ import org.slf4j.LoggerFactory;
 import com.fiberhome.dbserver.common.common.ServerType;
 import com.fiberhome.dbserver.common.config.MasterConfiguration;
 import com.fiberhome.dbserver.common.config.ServerConfiguration;
+import com.fiberhome.dbserver.common.services.MonitoredTask;
 import com.fiberhome.dbserver.common.services.Threads;
+import com.fiberhome.dbserver.protocol.common.AliasingMarshaller;
+import com.fiberhome.dbserver.protocol.common.CompressionPolicy;
+import com.fiberhome.dbserver.protocol.common.DomainSockets;
+import com.fiberhome.dbserver.protocol.common.GrpcCompression;
+import com.fiberhome.dbserver.protocol.common.GrpcConstants;
+import com.fiberhome.dbserver.protocol.common.InProcessServers;
+import com.fiberhome.dbserver.protocol.common.NettyEventLoops;
+import com.fiberhome.dbserver.tools.conf.BaseConfiguration;
 import com.fiberhome.dbserver.tools.util.Addressing;
 import com.fiberhome.dbserver.tools.util.PreconditionVerifier;
 import io.grpc.BindableService;
 import io.grpc.Server;
+import io.grpc.ServerInterceptor;
+import io.grpc.ServerInterceptors;
+import io.grpc.ServerServiceDefinition;
+import io.grpc.inprocess.InProcessServerBuilder;
 import io.grpc.netty.NettyServerBuilder;
+import io.netty.channel.unix.DomainSocketAddress;
 
 /**
  * grpcServer
@@ -49,25 +70,67 @@ public class GrpcServer
      */
     private Server rpcServer;
 
+    /*
+     * 进程内server，同进程的客户端经由进程内传输访问，未启用时为null
+     */
+    private Server inProcessServer;
+
+    /*
+     * 进程内server名
+     */
+    private String inProcessName;
+
+    /*
+     * unix域套接字server，同主机的客户端经由域套接字访问，未启用时为null
+     */
+    private Server domainSocketServer;
+
+    /*
+     * unix域套接字文件路径
+     */
+    private String domainSocketPath;
+
     /*
      * 当前执行grpcServer的name
      */
     private ServerType name;
 
     /*
-     * grpc server 业务线程池中最大线程数
+     * 未指定线程池大小配置的服务使用的业务线程数
      */
     private int maxThreads;
 
+    /*
+     * 每个服务业务线程池的队列长度
+     */
+    private int queueSize;
+
     /*
      * 注册的服务名称列表
      */
-    private Set<String> services = new HashSet<>();
+    private Set<String> services = ConcurrentHashMap.newKeySet();
+
+    /*
+     * grpc server端业务线程池，每个服务独立 key:服务名
+     */
+    private Map<String, ThreadPoolExecutor> pools = new ConcurrentHashMap<>();
+
+    /*
+     * 网络server(tcp与域套接字)与进程内server的服务注册表，server启动后注册的服务也经由注册表提供
+     */
+    private LazyHandlerRegistry networkRegistry;
+
+    private LazyHandlerRegistry inProcessRegistry;
+
+    /*
+     * 监听server启动后注册的服务
+     */
+    private final GrpcServiceRegistry.RegistrationListener registrationListener = this::addService;
 
     /*
-     * grpc server端业务线程池
+     * 读取线程池大小的配置
      */
-    private ThreadPoolExecutor pool;
+    private BaseConfiguration conf;
     /*
     服务端口
      */
@@ -80,6 +143,56 @@ public class GrpcServer
      本机处理器数量，用于配置默认线程数
      */
     private int numberOfProcessors;
+    /*
+     响应压缩策略
+     */
+    private CompressionPolicy compressionPolicy;
+    /*
+     keepalive间隔与允许客户端keepalive的最小间隔，单位秒
+     */
+    private long keepAliveTime;
+
+    private long permitKeepAliveTime;
+    /*
+     准入控制，未启用时为null
+     */
+    private AdmissionControlInterceptor admissionInterceptor;
+    /*
+     请求以别名方式解析的服务名
+     */
+    private Set<String> aliasingServices = new HashSet<>();
+    /*
+     下线时等待在途调用完成的最长时间，单位毫秒
+     */
+    private long drainTimeout;
+    /*
+     元数据响应缓存，未启用时为null，及启用缓存的服务名
+     */
+    private MetadataResponseCache responseCache;
+
+    private Set<String> responseCacheServices = new HashSet<>();
+    /*
+     是否同时提供进程内server
+     */
+    private boolean inProcessEnabled;
+    /*
+     是否同时监听unix域套接字，及套接字文件目录
+     */
+    private boolean domainSocketEnabled;
+
+    private String domainSocketDir;
+    /*
+     启动期间调用未就绪服务时建议客户端的重试延时，单位毫秒
+     */
+    private long startupRetryPushback;
+    /*
+     各服务共用的拦截器，未启用的为null
+     */
+    private ServerMetricsInterceptor metricsInterceptor;
+
+    private CompressionServerInterceptor compressionInterceptor;
+
+    private MetadataCacheInterceptor cacheInterceptor;
 
     /**
      * 构造函数
@@ -100,11 +213,55 @@ public class GrpcServer
         {
             case MASTER:
                 masterConf = MasterConfiguration.getMasterConf();
+                this.conf = masterConf;
                 this.maxThreads = masterConf.getInt("dbserver.master.grpc.max.threads", numberOfProcessors * 2);
+                this.queueSize = masterConf.getInt("dbserver.master.grpc.queue.size", 2000);
+                this.compressionPolicy = CompressionPolicy.parse(masterConf.getGrpcCompressionMethods(),
+                        masterConf.getGrpcCompressionThreshold());
+                this.keepAliveTime = masterConf.getGrpcKeepAliveTime();
+                this.permitKeepAliveTime = masterConf.getGrpcPermitKeepAliveTime();
+                this.aliasingServices.addAll(Arrays.asList(masterConf.getGrpcAliasingServices()));
+                this.drainTimeout = masterConf.getGrpcDrainTimeout();
+                this.startupRetryPushback = masterConf.getGrpcStartupRetryPushback();
+                if (masterConf.getGrpcResponseCacheSize() > 0)
+                {
+                    this.responseCache = new MetadataResponseCache(masterConf.getGrpcResponseCacheSize(),
+                            masterConf.getGrpcResponseCacheExpire());
+                    this.responseCacheServices.addAll(Arrays.asList(masterConf.getGrpcResponseCacheServices()));
+                }
+                this.inProcessEnabled = masterConf.isGrpcInProcessEnabled();
+                this.domainSocketEnabled = masterConf.isGrpcDomainSocketEnabled();
+                this.domainSocketDir = masterConf.getGrpcDomainSocketDir();
+                if (masterConf.isGrpcAdmissionEnabled())
+                {
+                    this.admissionInterceptor = new AdmissionControlInterceptor(new AdaptiveConcurrencyLimit(
+                            masterConf.getGrpcAdmissionInitialLimit(), masterConf.getGrpcAdmissionMinLimit(),
+                            masterConf.getGrpcAdmissionMaxLimit(), masterConf.getGrpcAdmissionReservedRatio()),
+                            masterConf.getGrpcAdmissionReservedServices());
+                }
                 break;
             case SERVER:
                 ServerConfiguration serverConf = ServerConfiguration.getServerConf();
+                this.conf = serverConf;
                 this.maxThreads = serverConf.getInt("dbserver.slave.grpc.max.threads", numberOfProcessors * 2);
+                this.queueSize = serverConf.getInt("dbserver.slave.grpc.queue.size", 5000);
+                this.compressionPolicy = CompressionPolicy.parse(serverConf.getGrpcCompressionMethods(),
+                        serverConf.getGrpcCompressionThreshold());
+                this.keepAliveTime = serverConf.getGrpcKeepAliveTime();
+                this.permitKeepAliveTime = serverConf.getGrpcPermitKeepAliveTime();
+                this.aliasingServices.addAll(Arrays.asList(serverConf.getGrpcAliasingServices()));
+                this.drainTimeout = serverConf.getGrpcDrainTimeout();
+                this.startupRetryPushback = serverConf.getGrpcStartupRetryPushback();
+                this.inProcessEnabled = serverConf.isGrpcInProcessEnabled();
+                this.domainSocketEnabled = serverConf.isGrpcDomainSocketEnabled();
+                this.domainSocketDir = serverConf.getGrpcDomainSocketDir();
+                if (serverConf.isGrpcAdmissionEnabled())
+                {
+                    this.admissionInterceptor = new AdmissionControlInterceptor(new AdaptiveConcurrencyLimit(
+                            serverConf.getGrpcAdmissionInitialLimit(), serverConf.getGrpcAdmissionMinLimit(),
+                            serverConf.getGrpcAdmissionMaxLimit(), serverConf.getGrpcAdmissionReservedRatio()),
+                            serverConf.getGrpcAdmissionReservedServices());
+                }
                 break;
             default:
                 LOG.error("build grpcServer type error. type {}", type);
@@ -112,24 +269,168 @@ public class GrpcServer
 
 
         }
-        // 线程池
-        this.pool = (ThreadPoolExecutor) Executors.newFixedThreadPool(maxThreads,
-                Threads.getNamedThreadFactory("grpcserver-" + name.toString().toLowerCase() + "-"));
+        // 每个server进程提供一个管理服务
+        serviceRegistry.registryRpcServiceIfAbsent(GrpcConstants.SERVER_ADMIN_SERVICE,
+                new ServerAdminRpcProcessor(ServerMetrics.getInstance()));
         initServers();
     }
 
     private void initServers()
     {
         LOG.info("init server host: {} and port:{}", transportHost, port);
-        NettyServerBuilder builder = NettyServerBuilder.forAddress(new InetSocketAddress(transportHost, port))
-                .flowControlWindow(MAX_FLOWWINDOW_SIZE).maxInboundMessageSize(MAX_MESSAGE_SIZE);
-        for (Map.Entry<String, BindableService> bindableServiceEntry : serviceRegistry.getRpcService().entrySet())
+        NettyEventLoops eventLoops = NettyEventLoops.init(name);
+        NettyServerBuilder builder = eventLoops.configure(newNettyBuilder(new InetSocketAddress(transportHost, port)));
+        NettyServerBuilder domainSocketBuilder = null;
+        if (domainSocketEnabled)
+        {
+            if (eventLoops.isDomainSocketAvailable())
+            {
+                domainSocketPath = DomainSockets.path(domainSocketDir, port);
+                domainSocketBuilder = eventLoops.configureDomainSocket(newNettyBuilder(new DomainSocketAddress(
+                        domainSocketPath)));
+                LOG.info("grpc domain socket server enabled, path: {}", domainSocketPath);
+            }
+            else
+            {
+                LOG.warn("grpc domain socket requires the native epoll transport, only listen on tcp.");
+            }
+        }
+        LOG.info("grpc response compression policy: {}", compressionPolicy);
+        metricsInterceptor = new ServerMetricsInterceptor(ServerMetrics.getInstance());
+        if (admissionInterceptor != null)
+        {
+            ServerMetrics.getInstance().setAdmission(admissionInterceptor);
+            LOG.info("grpc admission control enabled, initial concurrency limit: {}", admissionInterceptor.getLimit());
+        }
+        compressionInterceptor = compressionPolicy.isEmpty() ? null
+                : new CompressionServerInterceptor(compressionPolicy);
+        if (responseCache != null)
+        {
+            ServerMetrics.getInstance().setResponseCache(responseCache);
+            cacheInterceptor = new MetadataCacheInterceptor(responseCache,
+                    MetadataCacheInterceptor.DEFAULT_READ_METHODS);
+        }
+        // 服务全部经由注册表提供，server可先于服务注册绑定端口
+        networkRegistry = new LazyHandlerRegistry(startupRetryPushback);
+        // 回调由ServiceExecutorInterceptor分发到各服务线程池，不再经过公共线程池
+        rpcServer = builder.fallbackHandlerRegistry(networkRegistry).directExecutor().build();
+        if (domainSocketBuilder != null)
+        {
+            domainSocketServer = domainSocketBuilder.fallbackHandlerRegistry(networkRegistry).directExecutor().build();
+        }
+        if (inProcessEnabled)
+        {
+            inProcessName = InProcessServers.name(transportHost, port);
+            inProcessRegistry = new LazyHandlerRegistry(startupRetryPushback);
+            inProcessServer = InProcessServerBuilder.forName(inProcessName).maxInboundMessageSize(MAX_MESSAGE_SIZE)
+                    .fallbackHandlerRegistry(inProcessRegistry).directExecutor().build();
+            LOG.info("grpc in-process server enabled, name: {}", inProcessName);
+        }
+        // 已注册的服务立即加入，之后注册的服务经由监听器加入
+        serviceRegistry.addListener(registrationListener);
+    }
+
+    /**
+     * 向server添加服务，创建服务独立的业务线程池并加上各拦截器；server启动后添加的服务对新调用立即可见
+     *
+     * @param serviceName  服务名
+     * @param service      服务方法
+     * @param executorConf 服务业务线程池大小配置，为null时使用server的最大线程数
+     */
+    private synchronized void addService(String serviceName, BindableService service,
+            GrpcServiceRegistry.ExecutorConf executorConf)
+    {
+        if (services.contains(serviceName))
+        {
+            return;
+        }
+        ServerServiceDefinition plainDefinition = service.bindService();
+        ServerServiceDefinition definition = plainDefinition;
+        boolean cached = cacheInterceptor != null
+                && responseCacheServices.contains(definition.getServiceDescriptor().getName());
+        if (cached)
+        {
+            LOG.info("grpc service {} caches metadata read responses.", serviceName);
+            definition = MetadataCacheInterceptor.wrap(definition, MetadataCacheInterceptor.DEFAULT_READ_METHODS);
+        }
+        ThreadPoolExecutor pool = newServicePool(serviceName, definition.getServiceDescriptor().getName(),
+                executorConf);
+        pools.put(serviceName, pool);
+        ServerMetrics.getInstance().registerExecutor(serviceName, pool);
+        // 最后一个拦截器最先执行
+        List<ServerInterceptor> interceptors = new ArrayList<>();
+        // 缓存命中时跳过业务处理，仍计入指标
+        if (cached)
+        {
+            interceptors.add(cacheInterceptor);
+        }
+        // 指标在服务线程池内层记录，才能区分排队等待与业务处理
+        interceptors.add(metricsInterceptor);
+        if (compressionInterceptor != null)
+        {
+            interceptors.add(compressionInterceptor);
+        }
+        interceptors.add(new ServiceExecutorInterceptor(serviceName, pool));
+        // 准入控制在传输线程上最先执行，超限调用不进入服务线程池
+        if (admissionInterceptor != null)
+        {
+            interceptors.add(admissionInterceptor);
+        }
+        ServerServiceDefinition networkDefinition = definition;
+        if (aliasingServices.contains(definition.getServiceDescriptor().getName()))
+        {
+            LOG.info("grpc service {} parses requests with aliasing.", serviceName);
+            networkDefinition = AliasingMarshaller.wrap(definition);
+        }
+        networkRegistry.addService(ServerInterceptors.intercept(networkDefinition, interceptors));
+        // 进程内传输直接传递请求与响应对象，不经过别名解析，读方法也不使用序列化的响应缓存；
+        // 与网络server共用服务线程池与拦截器，修改仍使缓存失效
+        if (inProcessRegistry != null)
+        {
+            inProcessRegistry.addService(ServerInterceptors.intercept(plainDefinition, interceptors));
+        }
+        services.add(serviceName);
+        LOG.info("grpc service {} is ready.", serviceName);
+    }
+
+    /**
+     * 全部服务注册完成，之后访问未注册的服务返回UNIMPLEMENTED，不再提示客户端重试
+     */
+    public void finishRegistration()
+    {
+        networkRegistry.finishStartup();
+        if (inProcessRegistry != null)
         {
-            builder.addService(bindableServiceEntry.getValue());
-            services.add(bindableServiceEntry.getKey());
+            inProcessRegistry.finishStartup();
         }
-        builder.executor(this.pool);
-        rpcServer = builder.build();
+        LOG.info("grpc server {}:{} registration finished, services: {}", transportHost, port, services);
+    }
+
+    /**
+     * 创建监听指定地址的netty server构造器，设置流控窗口、消息大小、keepalive与压缩编码
+     */
+    private NettyServerBuilder newNettyBuilder(SocketAddress address)
+    {
+        NettyServerBuilder builder = NettyServerBuilder.forAddress(address).flowControlWindow(MAX_FLOWWINDOW_SIZE)
+                .maxInboundMessageSize(MAX_MESSAGE_SIZE).keepAliveTime(keepAliveTime, TimeUnit.SECONDS)
+                .permitKeepAliveTime(permitKeepAliveTime, TimeUnit.SECONDS).permitKeepAliveWithoutCalls(true);
+        GrpcCompression.configure(builder);
+        return builder;
+    }
+
+    /**
+     * 创建服务独立的业务线程池，线程数取注册时指定的配置项，队列有界，队列满时拒绝调用
+     */
+    private ThreadPoolExecutor newServicePool(String serviceName, String simpleName,
+            GrpcServiceRegistry.ExecutorConf executorConf)
+    {
+        int poolSize = executorConf == null ? maxThreads
+                : conf.getInt(executorConf.getPoolSizeConf(), executorConf.getDefaultPoolSize());
+        poolSize = Math.max(1, poolSize);
+        LOG.info("grpc service {} executor pool size: {}, queue size: {}", serviceName, poolSize, queueSize);
+        return new ThreadPoolExecutor(poolSize, poolSize, 0L, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(Math.max(1, queueSize)), Threads.getNamedThreadFactory(
+                        "grpcserver-" + name.toString().toLowerCase() + "-" + simpleName + "-"));
     }
 
     /**
@@ -140,6 +441,12 @@ public class GrpcServer
         try
         {
             rpcServer.start();
+            startDomainSocketServer();
+            if (inProcessServer != null)
+            {
+                inProcessServer.start();
+                InProcessServers.register(inProcessName);
+            }
         }
         catch (IOException e)
         {
@@ -149,22 +456,99 @@ public class GrpcServer
     }
 
     /**
-     * 停止server
+     * 启动unix域套接字server，套接字文件仍有进程监听时放弃绑定，残留文件来自已退出的进程时先删除再绑定；
+     * 绑定失败不影响tcp服务
+     */
+    private void startDomainSocketServer()
+    {
+        if (domainSocketServer == null)
+        {
+            return;
+        }
+        File socketFile = new File(domainSocketPath);
+        if (DomainSockets.isLive(domainSocketPath))
+        {
+            LOG.warn("grpc domain socket {} is in use by another process, only listen on tcp.", domainSocketPath);
+            domainSocketServer.shutdownNow();
+            domainSocketServer = null;
+            return;
+        }
+        if (socketFile.exists() && !socketFile.delete())
+        {
+            LOG.warn("failed to delete stale grpc domain socket {}", domainSocketPath);
+        }
+        try
+        {
+            domainSocketServer.start();
+        }
+        catch (IOException e)
+        {
+            LOG.warn("grpc domain socket server started failed, only listen on tcp. path: " + domainSocketPath, e);
+            domainSocketServer = null;
+        }
+    }
+
+    /**
+     * 停止server，在配置的截止时间内等待在途调用完成
      */
     public void shutdown()
     {
-        shutdownServers();
+        drain(drainTimeout, null);
     }
 
-    private void shutdownServers()
+    /**
+     * 优雅下线server
+     * 发送GOAWAY后不再接受新调用，在途调用完成或超时后才关闭业务线程池
+     *
+     * @param timeoutMillis 等待在途调用完成的最长时间，单位毫秒
+     * @param task          状态监控器，用于汇报在途调用数，可为null
+     * @return 在途调用是否在截止时间内全部完成
+     */
+    public boolean drain(long timeoutMillis, MonitoredTask task)
     {
-        if (rpcServer != null && !rpcServer.isShutdown())
+        serviceRegistry.removeListener(registrationListener);
+        if (inProcessName != null)
+        {
+            InProcessServers.unregister(inProcessName);
+        }
+        List<Server> servers = new ArrayList<>();
+        if (rpcServer != null && !rpcServer.isTerminated())
+        {
+            servers.add(rpcServer);
+        }
+        if (domainSocketServer != null && !domainSocketServer.isTerminated())
+        {
+            servers.add(domainSocketServer);
+        }
+        if (inProcessServer != null && !inProcessServer.isTerminated())
+        {
+            servers.add(inProcessServer);
+        }
+        if (servers.isEmpty())
+        {
+            unregisterExecutors();
+            return true;
+        }
+        LOG.info("draining grpc server {}:{}, timeout {} ms.", transportHost, port, timeoutMillis);
+        boolean drained = GracefulDrain.drain(servers, pools, timeoutMillis, task);
+        unregisterExecutors();
+        if (domainSocketServer != null && !new File(domainSocketPath).delete())
         {
-            rpcServer.shutdown();
+            LOG.debug("grpc domain socket {} is already removed.", domainSocketPath);
         }
-        if (this.pool != null && !this.pool.isShutdown())
+        return drained;
+    }
+
+    private void unregisterExecutors()
+    {
+        for (Map.Entry<String, ThreadPoolExecutor> entry : pools.entrySet())
         {
-            this.pool.shutdownNow();
+            ThreadPoolExecutor pool = entry.getValue();
+            ServerMetrics.getInstance().unregisterExecutor(entry.getKey(), pool);
+            if (!pool.isShutdown())
+            {
+                pool.shutdownNow();
+            }
         }
     }
 }
@@ -1,7 +1,10 @@
 package com.fiberhome.dbserver.protocol.server;
 
+import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -23,6 +26,17 @@ public class GrpcServiceRegistry
      */
     private final Map<String, BindableService> servicesMap;
 
+    /**
+     * 服务业务线程池大小配置:服务名---线程池大小配置项与默认值
+     */
+    private final Map<String, ExecutorConf> executorConfs;
+
+    /**
+     * 服务注册监听器，server启动后注册的服务经由监听器加入server；监听器均在注册表锁外回调，
+     * 回调中可再访问注册表或持有自己的锁，不会与注册线程互相等待
+     */
+    private final List<RegistrationListener> listeners = new CopyOnWriteArrayList<>();
+
     private static class Holder
     {
         private static final GrpcServiceRegistry REGISTRY = new GrpcServiceRegistry();
@@ -36,6 +50,7 @@ public class GrpcServiceRegistry
     private GrpcServiceRegistry()
     {
         this.servicesMap = new HashMap<>();
+        this.executorConfs = new HashMap<>();
     }
 
 
@@ -50,21 +65,143 @@ public class GrpcServiceRegistry
     }
 
     /**
-     * 注册rpc服务
+     * 添加服务注册监听器，添加时已注册的服务立即回调；之后注册的服务在注册时回调，每个服务只回调一次
+     *
+     * @param listener 监听器
+     */
+    public void addListener(RegistrationListener listener)
+    {
+        Map<String, BindableService> registered;
+        Map<String, ExecutorConf> confs;
+        synchronized (this)
+        {
+            listeners.add(listener);
+            registered = new HashMap<>(servicesMap);
+            confs = new HashMap<>(executorConfs);
+        }
+        for (Map.Entry<String, BindableService> entry : registered.entrySet())
+        {
+            listener.onRegistered(entry.getKey(), entry.getValue(), confs.get(entry.getKey()));
+        }
+    }
+
+    /**
+     * 移除服务注册监听器
+     *
+     * @param listener 监听器
+     */
+    public void removeListener(RegistrationListener listener)
+    {
+        listeners.remove(listener);
+    }
+
+    /**
+     * 注册rpc服务，服务使用独立的业务线程池
+     *
+     * @param serviceName     服务名
+     * @param service         服务方法
+     * @param poolSizeConf    线程池大小配置项
+     * @param defaultPoolSize 线程池默认大小
+     */
+    public void registryRpcService(String serviceName, BindableService service, String poolSizeConf,
+            int defaultPoolSize)
+    {
+        register(serviceName, service, new ExecutorConf(poolSizeConf, defaultPoolSize), true);
+    }
+
+    /**
+     * 服务未注册时注册rpc服务
      *
      * @param serviceName 服务名
      * @param service     服务方法
+     * @return 是否注册
      */
-    public synchronized void registryRpcService(String serviceName, BindableService service)
+    public boolean registryRpcServiceIfAbsent(String serviceName, BindableService service)
+    {
+        return register(serviceName, service, null, false);
+    }
+
+    /**
+     * 注册rpc服务，服务业务线程池大小使用grpc server的最大线程数
+     *
+     * @param serviceName 服务名
+     * @param service     服务方法
+     */
+    public void registryRpcService(String serviceName, BindableService service)
+    {
+        register(serviceName, service, null, true);
+    }
+
+    /**
+     * 在锁内登记服务并取得监听器快照，锁外回调监听器
+     */
+    private boolean register(String serviceName, BindableService service, ExecutorConf executorConf,
+            boolean failIfPresent)
     {
         LOGGER.info("{} try registry.", serviceName);
-        if (servicesMap.containsKey(serviceName))
+        List<RegistrationListener> notified;
+        synchronized (this)
         {
-            throw new IllegalArgumentException(serviceName + " has registried");
+            if (servicesMap.containsKey(serviceName))
+            {
+                if (failIfPresent)
+                {
+                    throw new IllegalArgumentException(serviceName + " has registried");
+                }
+                return false;
+            }
+            servicesMap.put(serviceName, service);
+            if (executorConf != null)
+            {
+                executorConfs.put(serviceName, executorConf);
+            }
+            notified = new ArrayList<>(listeners);
         }
-        else
+        for (RegistrationListener listener : notified)
         {
-            servicesMap.put(serviceName, service);
+            listener.onRegistered(serviceName, service, executorConf);
+        }
+        return true;
+    }
+
+    /**
+     * 服务注册监听器
+     */
+    public interface RegistrationListener
+    {
+        /**
+         * 服务注册后回调
+         *
+         * @param serviceName  服务名
+         * @param service      服务方法
+         * @param executorConf 服务业务线程池大小配置，注册时未指定则为null
+         */
+        void onRegistered(String serviceName, BindableService service, ExecutorConf executorConf);
+    }
+
+    /**
+     * 服务业务线程池大小配置
+     */
+    public static final class ExecutorConf
+    {
+        private final String poolSizeConf;
+
+        private final int defaultPoolSize;
+
+        ExecutorConf(String poolSizeConf, int defaultPoolSize)
+        {
+            this.poolSizeConf = poolSizeConf;
+            this.defaultPoolSize = defaultPoolSize;
+        }
+
+        public String getPoolSizeConf()
+        {
+            return poolSizeConf;
+        }
+
+        public int getDefaultPoolSize()
+        {
+            return defaultPoolSize;
         }
     }
 }
@@ -0,0 +1,208 @@
+package com.fiberhome.dbserver.protocol.server;
+
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.fiberhome.dbserver.common.transport.protobuf.DBServerProtos.CKValueProto;
+import com.fiberhome.dbserver.common.transport.protobuf.SlaveServerProtos.IndexSearchChunk;
+import io.grpc.Status;
+import io.grpc.stub.ServerCallStreamObserver;
+
+/**
+ * 块索引流式查询的响应写出器
+ * 按分区顺序从结果迭代器中取数据，每片最多chunkSize条，只在{@link ServerCallStreamObserver#isReady()}时写出，
+ * 传输缓冲满时暂停，等待onReady回调后继续；达到limit、全部写完或客户端取消后结束，并关闭实现了
+ * {@link AutoCloseable}的迭代器，内存占用只与分片大小有关
+ *
+ * @since 1.0.0
+ */
+public final class IndexSearchStreamWriter
+{
+    private static final Logger LOG = LoggerFactory.getLogger(IndexSearchStreamWriter.class);
+
+    private final ServerCallStreamObserver<IndexSearchChunk> observer;
+
+    /*
+     * 分区结果 key:分区 value:该分区结果迭代器，按迭代顺序写出
+     */
+    private final Iterator<? extends Map.Entry<String, ? extends Iterator<CKValueProto>>> partitions;
+
+    private final int chunkSize;
+
+    /*
+     * 剩余可写条数，小于0表示不限
+     */
+    private long remaining;
+
+    /*
+     * 写出调度计数，保证同一时刻只有一个线程写出且不丢失onReady信号
+     */
+    private final AtomicInteger wip = new AtomicInteger();
+
+    private String partition;
+
+    private Iterator<CKValueProto> current;
+
+    private volatile boolean cancelled;
+
+    private boolean finished;
+
+    /**
+     * 构造函数
+     *
+     * @param observer   服务端响应流
+     * @param partitions 分区结果，迭代器按需读取
+     * @param limit      最多返回的条数，小于等于0表示不限
+     * @param chunkSize  每片最多条数
+     */
+    public IndexSearchStreamWriter(ServerCallStreamObserver<IndexSearchChunk> observer,
+            Map<String, ? extends Iterator<CKValueProto>> partitions, int limit, int chunkSize)
+    {
+        this.observer = observer;
+        this.partitions = partitions.entrySet().iterator();
+        this.remaining = limit > 0 ? limit : -1L;
+        this.chunkSize = Math.max(1, chunkSize);
+    }
+
+    /**
+     * 注册流控与取消回调并开始写出，需在服务方法返回前调用
+     */
+    public void start()
+    {
+        observer.setOnCancelHandler(() ->
+        {
+            cancelled = true;
+            drain();
+        });
+        observer.setOnReadyHandler(this::drain);
+        drain();
+    }
+
+    private void drain()
+    {
+        if (wip.getAndIncrement() != 0)
+        {
+            return;
+        }
+        int missed = 1;
+        do
+        {
+            writeWhileReady();
+            missed = wip.addAndGet(-missed);
+        }
+        while (missed != 0);
+    }
+
+    private void writeWhileReady()
+    {
+        if (finished)
+        {
+            return;
+        }
+        if (cancelled)
+        {
+            LOG.debug("index search stream is cancelled by client.");
+            finish();
+            return;
+        }
+        try
+        {
+            while (observer.isReady())
+            {
+                IndexSearchChunk chunk = nextChunk();
+                if (chunk == null)
+                {
+                    finish();
+                    observer.onCompleted();
+                    return;
+                }
+                observer.onNext(chunk);
+                if (cancelled)
+                {
+                    finish();
+                    return;
+                }
+            }
+        }
+        catch (RuntimeException e)
+        {
+            LOG.error("write index search stream failed.", e);
+            finish();
+            observer.onError(Status.INTERNAL.withDescription(e.getMessage()).withCause(e).asRuntimeException());
+        }
+    }
+
+    /**
+     * 取下一片数据
+     *
+     * @return 分片，没有更多数据时返回null
+     */
+    private IndexSearchChunk nextChunk()
+    {
+        if (remaining == 0L)
+        {
+            return null;
+        }
+        if (current == null)
+        {
+            if (!partitions.hasNext())
+            {
+                return null;
+            }
+            Map.Entry<String, ? extends Iterator<CKValueProto>> entry = partitions.next();
+            partition = entry.getKey();
+            current = entry.getValue();
+        }
+        IndexSearchChunk.Builder builder = IndexSearchChunk.newBuilder().setPartition(partition);
+        int size = remaining < 0L ? chunkSize : (int) Math.min(chunkSize, remaining);
+        while (builder.getCkValuesCount() < size && current.hasNext())
+        {
+            builder.addCkValues(current.next());
+        }
+        if (remaining > 0L)
+        {
+            remaining -= builder.getCkValuesCount();
+        }
+        if (!current.hasNext())
+        {
+            builder.setPartitionEnd(true);
+            close(current);
+            current = null;
+        }
+        return builder.build();
+    }
+
+    private void finish()
+    {
+        finished = true;
+        if (current != null)
+        {
+            close(current);
+            current = null;
+        }
+        // 未读取的分区也需要释放
+        while (partitions.hasNext())
+        {
+            close(partitions.next().getValue());
+        }
+    }
+
+    private static void close(Iterator<CKValueProto> iterator)
+    {
+        if (iterator instanceof AutoCloseable)
+        {
+            try
+            {
+                ((AutoCloseable) iterator).close();
+            }
+            catch (Exception e)
+            {
+                LOG.warn("close index search iterator failed.", e);
+            }
+        }
+    }
+}
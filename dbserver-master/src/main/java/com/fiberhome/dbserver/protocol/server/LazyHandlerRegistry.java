@@ -0,0 +1,164 @@
+package com.fiberhome.dbserver.protocol.server;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import com.google.common.io.ByteStreams;
+import io.grpc.HandlerRegistry;
+import io.grpc.Metadata;
+import io.grpc.MethodDescriptor;
+import io.grpc.ServerCall;
+import io.grpc.ServerCallHandler;
+import io.grpc.ServerMethodDefinition;
+import io.grpc.ServerServiceDefinition;
+import io.grpc.Status;
+
+/**
+ * 可在server启动后注册服务的方法注册表
+ * server先绑定端口，各子服务初始化完成后再注册；启动期间访问尚未注册的服务时立即返回UNAVAILABLE，
+ * 并在trailer中携带grpc-retry-pushback-ms，客户端按重试策略在该时间后重试；启动完成后未注册的服务返回UNIMPLEMENTED
+ *
+ * @since 1.0.0
+ */
+final class LazyHandlerRegistry extends HandlerRegistry
+{
+    /*
+     * grpc重试策略识别的服务端重试延时
+     */
+    static final Metadata.Key<String> RETRY_PUSHBACK_KEY = Metadata.Key.of("grpc-retry-pushback-ms",
+            Metadata.ASCII_STRING_MARSHALLER);
+
+    /*
+     * 已注册的服务 key:服务描述名
+     */
+    private final ConcurrentMap<String, ServerServiceDefinition> services = new ConcurrentHashMap<>();
+
+    /*
+     * 服务未就绪时建议客户端的重试延时，单位毫秒
+     */
+    private final long retryPushbackMillis;
+
+    /*
+     * 是否仍在启动，启动期间未注册的服务视为未就绪
+     */
+    private volatile boolean starting = true;
+
+    LazyHandlerRegistry(long retryPushbackMillis)
+    {
+        this.retryPushbackMillis = retryPushbackMillis;
+    }
+
+    /**
+     * 注册服务，注册后新调用立即可见
+     *
+     * @param service 服务定义
+     */
+    void addService(ServerServiceDefinition service)
+    {
+        services.put(service.getServiceDescriptor().getName(), service);
+    }
+
+    /**
+     * 启动完成，之后未注册的服务不再视为未就绪
+     */
+    void finishStartup()
+    {
+        starting = false;
+    }
+
+    boolean isStarting()
+    {
+        return starting;
+    }
+
+    @Override
+    public List<ServerServiceDefinition> getServices()
+    {
+        return new ArrayList<>(services.values());
+    }
+
+    @Override
+    public ServerMethodDefinition<?, ?> lookupMethod(String methodName, String authority)
+    {
+        String serviceName = MethodDescriptor.extractFullServiceName(methodName);
+        if (serviceName == null)
+        {
+            return null;
+        }
+        ServerServiceDefinition service = services.get(serviceName);
+        if (service != null)
+        {
+            return service.getMethod(methodName);
+        }
+        return starting ? unavailable(methodName) : null;
+    }
+
+    /**
+     * 未就绪服务的方法定义，不解析请求，直接以UNAVAILABLE关闭调用
+     */
+    private ServerMethodDefinition<InputStream, InputStream> unavailable(String methodName)
+    {
+        MethodDescriptor<InputStream, InputStream> descriptor = MethodDescriptor
+                .<InputStream, InputStream>newBuilder().setType(MethodDescriptor.MethodType.UNKNOWN)
+                .setFullMethodName(methodName).setRequestMarshaller(DiscardMarshaller.INSTANCE)
+                .setResponseMarshaller(DiscardMarshaller.INSTANCE).build();
+        return ServerMethodDefinition.create(descriptor, new UnavailableHandler(retryPushbackMillis));
+    }
+
+    private static final class UnavailableHandler implements ServerCallHandler<InputStream, InputStream>
+    {
+        private final long retryPushbackMillis;
+
+        UnavailableHandler(long retryPushbackMillis)
+        {
+            this.retryPushbackMillis = retryPushbackMillis;
+        }
+
+        @Override
+        public ServerCall.Listener<InputStream> startCall(ServerCall<InputStream, InputStream> call,
+                Metadata headers)
+        {
+            String serviceName = MethodDescriptor.extractFullServiceName(
+                    call.getMethodDescriptor().getFullMethodName());
+            Metadata trailers = new Metadata();
+            trailers.put(RETRY_PUSHBACK_KEY, String.valueOf(retryPushbackMillis));
+            call.close(Status.UNAVAILABLE.withDescription("service " + serviceName + " is starting"), trailers);
+            return new ServerCall.Listener<InputStream>()
+            {
+            };
+        }
+    }
+
+    /**
+     * 丢弃请求内容的序列化器
+     */
+    private static final class DiscardMarshaller implements MethodDescriptor.Marshaller<InputStream>
+    {
+        private static final DiscardMarshaller INSTANCE = new DiscardMarshaller();
+
+        @Override
+        public InputStream stream(InputStream value)
+        {
+            return value;
+        }
+
+        @Override
+        public InputStream parse(InputStream stream)
+        {
+            try
+            {
+                ByteStreams.exhaust(stream);
+            }
+            catch (IOException e)
+            {
+                throw Status.INTERNAL.withCause(e).asRuntimeException();
+            }
+            return new ByteArrayInputStream(new byte[0]);
+        }
+    }
+}
@@ -0,0 +1,454 @@
+package com.fiberhome.dbserver.protocol.server;
+
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import com.fiberhome.dbserver.common.transport.protobuf.DBServerProtos.BaseResponseProto;
+import com.fiberhome.dbserver.common.transport.protobuf.DBServerProtos.ResponseCode;
+import com.fiberhome.dbserver.common.transport.protobuf.DBServerProtos.TableIdentifierProto;
+import com.fiberhome.dbserver.common.transport.protobuf.MasterServerProtos.TableIdentifiersGetRequest;
+import com.fiberhome.dbserver.protocol.server.MetadataResponseCache.Key;
+import com.fiberhome.dbserver.protocol.server.MetadataResponseCache.Stamp;
+import com.google.protobuf.Descriptors.FieldDescriptor;
+import com.google.protobuf.Message;
+import com.google.protobuf.MessageLite;
+import io.grpc.ForwardingServerCall.SimpleForwardingServerCall;
+import io.grpc.ForwardingServerCallListener.SimpleForwardingServerCallListener;
+import io.grpc.KnownLength;
+import io.grpc.Metadata;
+import io.grpc.MethodDescriptor;
+import io.grpc.ServerCall;
+import io.grpc.ServerCallHandler;
+import io.grpc.ServerInterceptor;
+import io.grpc.ServerMethodDefinition;
+import io.grpc.ServerServiceDefinition;
+import io.grpc.ServiceDescriptor;
+import io.grpc.Status;
+
+/**
+ * 元数据服务的响应缓存拦截器
+ * 读方法的请求去除baseRequest后作为缓存键，命中时直接发送缓存的序列化响应，不调用业务处理也不再序列化；
+ * 其余方法视为修改，按请求中出现的表名使对应缓存项失效，增删改名表时同时使库与目录范围失效，
+ * 请求中没有表名(如创建库)时全部失效。修改在业务处理前后各失效一次，处理期间生成的读缓存不会被保留，
+ * 删除或改名表在处理后移出涉及范围的版本号。
+ * 未经wrap改写的读方法(如进程内传输)不使用缓存，响应对象直接传递，修改仍使缓存失效
+ * 服务定义需先经{@link #wrap(ServerServiceDefinition, Set)}改写读方法的响应序列化器，
+ * 拦截器需放在{@link ServiceExecutorInterceptor}内层
+ *
+ * @since 1.0.0
+ */
+final class MetadataCacheInterceptor implements ServerInterceptor
+{
+    /*
+     * 默认缓存的读方法
+     */
+    static final Set<String> DEFAULT_READ_METHODS = Collections.unmodifiableSet(new HashSet<>(Arrays.asList(
+            "getDatabaseNames", "getTableIdentifiers", "getTableDescriptor", "getPartitionDescriptor",
+            "getProjectionDescriptor", "getProjectionPartitionDescriptor")));
+
+    /*
+     * 改变库中表集合的修改方法
+     */
+    private static final Set<String> STRUCTURE_METHODS = Collections.unmodifiableSet(new HashSet<>(Arrays.asList(
+            "createTable", "dropTable", "renameTable")));
+
+    /*
+     * 处理后原表名不再有效的修改方法
+     */
+    private static final Set<String> RETIRE_METHODS = Collections.unmodifiableSet(new HashSet<>(Arrays.asList(
+            "dropTable", "renameTable")));
+
+    private static final String BASE_REQUEST_FIELD = "baseRequest";
+
+    private static final String BASE_RESPONSE_FIELD = "baseResponse";
+
+    private final MetadataResponseCache cache;
+
+    private final Set<String> readMethods;
+
+    MetadataCacheInterceptor(MetadataResponseCache cache, Set<String> readMethods)
+    {
+        this.cache = cache;
+        this.readMethods = readMethods;
+    }
+
+    /**
+     * 将读方法的响应序列化器改为同时接受序列化后的响应，缓存命中时直接发送
+     *
+     * @param service     服务定义
+     * @param readMethods 缓存的读方法名
+     * @return 新的服务定义
+     */
+    static ServerServiceDefinition wrap(ServerServiceDefinition service, Set<String> readMethods)
+    {
+        ServiceDescriptor descriptor = service.getServiceDescriptor();
+        ServiceDescriptor.Builder descriptorBuilder = ServiceDescriptor.newBuilder(descriptor.getName())
+                .setSchemaDescriptor(descriptor.getSchemaDescriptor());
+        List<ServerMethodDefinition<?, ?>> methods = new ArrayList<>();
+        for (ServerMethodDefinition<?, ?> method : service.getMethods())
+        {
+            ServerMethodDefinition<?, ?> wrapped = method;
+            MethodDescriptor<?, ?> methodDescriptor = method.getMethodDescriptor();
+            if (methodDescriptor.getType() == MethodDescriptor.MethodType.UNARY
+                    && readMethods.contains(bareName(methodDescriptor)))
+            {
+                wrapped = wrap(method);
+            }
+            descriptorBuilder.addMethod(wrapped.getMethodDescriptor());
+            methods.add(wrapped);
+        }
+        ServerServiceDefinition.Builder builder = ServerServiceDefinition.builder(descriptorBuilder.build());
+        for (ServerMethodDefinition<?, ?> method : methods)
+        {
+            builder.addMethod(method);
+        }
+        return builder.build();
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <ReqT, RespT> ServerMethodDefinition<ReqT, RespT> wrap(ServerMethodDefinition<ReqT, RespT> method)
+    {
+        MethodDescriptor<ReqT, RespT> descriptor = method.getMethodDescriptor();
+        MethodDescriptor.Marshaller<Object> marshaller = new SerializedMarshaller(
+                (MethodDescriptor.Marshaller<Object>) descriptor.getResponseMarshaller());
+        return ServerMethodDefinition.create(descriptor.toBuilder(descriptor.getRequestMarshaller(),
+                (MethodDescriptor.Marshaller<RespT>) (MethodDescriptor.Marshaller<?>) marshaller).build(),
+                method.getServerCallHandler());
+    }
+
+    private static String bareName(MethodDescriptor<?, ?> descriptor)
+    {
+        String fullMethodName = descriptor.getFullMethodName();
+        return fullMethodName.substring(fullMethodName.lastIndexOf('/') + 1);
+    }
+
+    @Override
+    public <ReqT, RespT> ServerCall.Listener<ReqT> interceptCall(ServerCall<ReqT, RespT> call, Metadata headers,
+            ServerCallHandler<ReqT, RespT> next)
+    {
+        MethodDescriptor<ReqT, RespT> descriptor = call.getMethodDescriptor();
+        String method = bareName(descriptor);
+        if (readMethods.contains(method))
+        {
+            if (descriptor.getResponseMarshaller() instanceof SerializedMarshaller)
+            {
+                return new CachedRead<>(call, headers, next, method).listener;
+            }
+            return next.startCall(call, headers);
+        }
+        return new Mutation<>(call, headers, next, method).listener;
+    }
+
+    /**
+     * 读方法依赖的范围
+     */
+    private static List<String> readScopes(Object request)
+    {
+        if (request instanceof TableIdentifiersGetRequest)
+        {
+            String database = ((TableIdentifiersGetRequest) request).getDataBaseName();
+            return Collections.singletonList(database.isEmpty() ? MetadataResponseCache.CATALOG_SCOPE
+                    : MetadataResponseCache.databaseScope(database));
+        }
+        Set<TableIdentifierProto> tables = tablesOf(request);
+        if (tables.isEmpty())
+        {
+            return Collections.singletonList(MetadataResponseCache.CATALOG_SCOPE);
+        }
+        List<String> scopes = new ArrayList<>(tables.size());
+        for (TableIdentifierProto table : tables)
+        {
+            scopes.add(MetadataResponseCache.tableScope(table));
+        }
+        return scopes;
+    }
+
+    /**
+     * 修改方法影响的范围，返回null表示全部失效
+     */
+    private static List<String> writeScopes(String method, Object request)
+    {
+        Set<TableIdentifierProto> tables = tablesOf(request);
+        if (tables.isEmpty())
+        {
+            return null;
+        }
+        Set<String> scopes = new LinkedHashSet<>();
+        for (TableIdentifierProto table : tables)
+        {
+            scopes.add(MetadataResponseCache.tableScope(table));
+            if (STRUCTURE_METHODS.contains(method))
+            {
+                scopes.add(MetadataResponseCache.databaseScope(table.getDatabaseName()));
+                scopes.add(MetadataResponseCache.CATALOG_SCOPE);
+            }
+        }
+        return new ArrayList<>(scopes);
+    }
+
+    /**
+     * 收集请求中出现的全部表名，包括projection等嵌套消息中的表名
+     */
+    static Set<TableIdentifierProto> tablesOf(Object request)
+    {
+        Set<TableIdentifierProto> tables = new LinkedHashSet<>();
+        if (request instanceof Message)
+        {
+            collectTables((Message) request, tables);
+        }
+        return tables;
+    }
+
+    private static void collectTables(Message message, Set<TableIdentifierProto> tables)
+    {
+        if (message instanceof TableIdentifierProto)
+        {
+            tables.add((TableIdentifierProto) message);
+            return;
+        }
+        for (Map.Entry<FieldDescriptor, Object> field : message.getAllFields().entrySet())
+        {
+            if (field.getKey().getJavaType() != FieldDescriptor.JavaType.MESSAGE)
+            {
+                continue;
+            }
+            if (field.getKey().isRepeated())
+            {
+                for (Object element : (List<?>) field.getValue())
+                {
+                    collectTables((Message) element, tables);
+                }
+            }
+            else
+            {
+                collectTables((Message) field.getValue(), tables);
+            }
+        }
+    }
+
+    /**
+     * 去除baseRequest后的序列化请求
+     */
+    private static Key keyOf(String method, Object request)
+    {
+        Message message = (Message) request;
+        FieldDescriptor baseRequest = message.getDescriptorForType().findFieldByName(BASE_REQUEST_FIELD);
+        if (baseRequest != null && message.hasField(baseRequest))
+        {
+            message = message.toBuilder().clearField(baseRequest).build();
+        }
+        return new Key(method, message.toByteString());
+    }
+
+    /**
+     * 只缓存成功的响应
+     */
+    private static boolean isSuccess(Object response)
+    {
+        if (!(response instanceof Message))
+        {
+            return false;
+        }
+        Message message = (Message) response;
+        FieldDescriptor baseResponse = message.getDescriptorForType().findFieldByName(BASE_RESPONSE_FIELD);
+        if (baseResponse == null || !message.hasField(baseResponse))
+        {
+            return true;
+        }
+        ResponseCode code = ((BaseResponseProto) message.getField(baseResponse)).getResponseCode();
+        return code == ResponseCode.QUERY_SUCCESS || code == ResponseCode.WRITE_SUCCESS;
+    }
+
+    /**
+     * 读方法的单次调用，回调在同一调用内串行执行
+     */
+    private final class CachedRead<ReqT, RespT>
+    {
+        private final ServerCall<ReqT, RespT> call;
+
+        private final String method;
+
+        private final ServerCall.Listener<ReqT> listener;
+
+        private Key key;
+
+        private Stamp stamp;
+
+        private byte[] cached;
+
+        CachedRead(ServerCall<ReqT, RespT> call, Metadata headers, ServerCallHandler<ReqT, RespT> next,
+                String method)
+        {
+            this.call = call;
+            this.method = method;
+            ServerCall.Listener<ReqT> delegate = next.startCall(new SimpleForwardingServerCall<ReqT, RespT>(call)
+            {
+                @Override
+                @SuppressWarnings("unchecked")
+                public void sendMessage(RespT message)
+                {
+                    if (stamp == null || !(message instanceof MessageLite))
+                    {
+                        super.sendMessage(message);
+                        return;
+                    }
+                    // 只序列化一次，缓存与发送共用
+                    byte[] response = ((MessageLite) message).toByteArray();
+                    if (isSuccess(message))
+                    {
+                        cache.put(key, stamp, response);
+                    }
+                    super.sendMessage((RespT) response);
+                }
+            }, headers);
+            this.listener = new SimpleForwardingServerCallListener<ReqT>(delegate)
+            {
+                @Override
+                public void onMessage(ReqT message)
+                {
+                    onRequest(message, delegate);
+                }
+
+                @Override
+                public void onHalfClose()
+                {
+                    if (cached == null)
+                    {
+                        super.onHalfClose();
+                        return;
+                    }
+                    sendCached();
+                }
+            };
+        }
+
+        private void onRequest(ReqT message, ServerCall.Listener<ReqT> delegate)
+        {
+            if (message instanceof Message)
+            {
+                key = keyOf(method, message);
+                cached = cache.get(key);
+                if (cached != null)
+                {
+                    return;
+                }
+                stamp = cache.stamp(readScopes(message));
+            }
+            delegate.onMessage(message);
+        }
+
+        @SuppressWarnings("unchecked")
+        private void sendCached()
+        {
+            call.sendHeaders(new Metadata());
+            call.sendMessage((RespT) cached);
+            call.close(Status.OK, new Metadata());
+        }
+    }
+
+    /**
+     * 修改方法的单次调用
+     */
+    private final class Mutation<ReqT, RespT>
+    {
+        private final ServerCall.Listener<ReqT> listener;
+
+        /*
+         * 影响的范围，null表示全部
+         */
+        private List<String> scopes;
+
+        private boolean received;
+
+        Mutation(ServerCall<ReqT, RespT> call, Metadata headers, ServerCallHandler<ReqT, RespT> next, String method)
+        {
+            ServerCall.Listener<ReqT> delegate = next.startCall(new SimpleForwardingServerCall<ReqT, RespT>(call)
+            {
+                @Override
+                public void close(Status status, Metadata trailers)
+                {
+                    if (received && scopes != null && RETIRE_METHODS.contains(method))
+                    {
+                        cache.retire(scopes);
+                    }
+                    else if (received)
+                    {
+                        invalidate();
+                    }
+                    super.close(status, trailers);
+                }
+            }, headers);
+            this.listener = new SimpleForwardingServerCallListener<ReqT>(delegate)
+            {
+                @Override
+                public void onMessage(ReqT message)
+                {
+                    scopes = writeScopes(method, message);
+                    received = true;
+                    invalidate();
+                    super.onMessage(message);
+                }
+            };
+        }
+
+        private void invalidate()
+        {
+            if (scopes == null)
+            {
+                cache.invalidateAll();
+            }
+            else
+            {
+                cache.invalidate(scopes);
+            }
+        }
+    }
+
+    /**
+     * 长度已知的序列化响应，传输层可直接按长度写出帧
+     */
+    private static final class SerializedStream extends ByteArrayInputStream implements KnownLength
+    {
+        SerializedStream(byte[] bytes)
+        {
+            super(bytes);
+        }
+    }
+
+    /**
+     * 同时接受响应对象与序列化后响应的序列化器
+     */
+    static final class SerializedMarshaller implements MethodDescriptor.Marshaller<Object>
+    {
+        private final MethodDescriptor.Marshaller<Object> delegate;
+
+        SerializedMarshaller(MethodDescriptor.Marshaller<Object> delegate)
+        {
+            this.delegate = delegate;
+        }
+
+        @Override
+        public InputStream stream(Object value)
+        {
+            if (value instanceof byte[])
+            {
+                return new SerializedStream((byte[]) value);
+            }
+            return delegate.stream(value);
+        }
+
+        @Override
+        public Object parse(InputStream stream)
+        {
+            return delegate.parse(stream);
+        }
+    }
+}
@@ -0,0 +1,338 @@
+package com.fiberhome.dbserver.protocol.server;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+import com.fiberhome.dbserver.common.transport.protobuf.DBServerProtos.TableIdentifierProto;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.protobuf.ByteString;
+
+/**
+ * 元数据读请求的序列化响应缓存
+ * 缓存项记录生成时所依赖范围(整个目录、库、表)的版本号，修改类请求递增对应范围的版本号，
+ * 版本号不一致的缓存项视为失效；失效不依赖删除缓存项，因此不会与并发的读请求产生竞争。
+ * 表删除或改名后其版本号作废并移出，版本号个数超过上限时全部作废，版本号表不会无限增长
+ *
+ * @since 1.0.0
+ */
+final class MetadataResponseCache
+{
+    /*
+     * 目录范围，库的增删与表的增删改名都会修改
+     */
+    static final String CATALOG_SCOPE = "catalog";
+
+    /*
+     * 作废的版本号，记录到该值的缓存项始终失效
+     */
+    private static final long RETIRED = -1L;
+
+    private final Cache<Key, Entry> entries;
+
+    /*
+     * 各范围的版本号 key:范围
+     */
+    private final ConcurrentMap<String, AtomicLong> generations = new ConcurrentHashMap<>();
+
+    /*
+     * 版本号个数上限，为缓存项数上限的2倍
+     */
+    private final long maxScopes;
+
+    /*
+     * 全局版本号，递增后全部缓存项失效
+     */
+    private final AtomicLong epoch = new AtomicLong();
+
+    private final LongAdder hits = new LongAdder();
+
+    private final LongAdder misses = new LongAdder();
+
+    private final LongAdder invalidations = new LongAdder();
+
+    /**
+     * 构造函数
+     *
+     * @param maxSize      最大缓存项数
+     * @param expireMillis 缓存项写入后的过期时间，单位毫秒，不大于0时不过期
+     */
+    MetadataResponseCache(long maxSize, long expireMillis)
+    {
+        CacheBuilder<Object, Object> builder = CacheBuilder.newBuilder().maximumSize(maxSize);
+        if (expireMillis > 0)
+        {
+            builder.expireAfterWrite(expireMillis, TimeUnit.MILLISECONDS);
+        }
+        this.entries = builder.build();
+        this.maxScopes = Math.max(16L, maxSize * 2L);
+    }
+
+    static String databaseScope(String databaseName)
+    {
+        return "db:" + databaseName;
+    }
+
+    static String tableScope(TableIdentifierProto table)
+    {
+        return "table:" + table.getDatabaseName() + "." + table.getTableName();
+    }
+
+    /**
+     * 获取有效的缓存响应
+     *
+     * @param key 请求
+     * @return 序列化响应，未命中或已失效时返回null
+     */
+    byte[] get(Key key)
+    {
+        Entry entry = entries.getIfPresent(key);
+        if (entry != null && entry.isValid())
+        {
+            hits.increment();
+            return entry.response;
+        }
+        misses.increment();
+        return null;
+    }
+
+    /**
+     * 在调用业务处理前记录所依赖范围的当前版本号
+     *
+     * @param scopes 依赖的范围
+     * @return 版本号
+     */
+    Stamp stamp(List<String> scopes)
+    {
+        if (generations.size() > maxScopes)
+        {
+            retireAll();
+        }
+        long currentEpoch = epoch.get();
+        AtomicLong[] counters = new AtomicLong[scopes.size()];
+        long[] values = new long[scopes.size()];
+        for (int i = 0; i < counters.length; i++)
+        {
+            counters[i] = generations.computeIfAbsent(scopes.get(i), scope -> new AtomicLong());
+            values[i] = counters[i].get();
+        }
+        return new Stamp(currentEpoch, counters, values);
+    }
+
+    /**
+     * 缓存响应，版本号在业务处理期间已变化时不缓存
+     *
+     * @param key      请求
+     * @param stamp    业务处理前记录的版本号
+     * @param response 序列化响应
+     */
+    void put(Key key, Stamp stamp, byte[] response)
+    {
+        Entry entry = new Entry(stamp, response);
+        if (entry.isValid())
+        {
+            entries.put(key, entry);
+        }
+    }
+
+    /**
+     * 使依赖指定范围的缓存项失效
+     *
+     * @param scopes 范围
+     */
+    void invalidate(Collection<String> scopes)
+    {
+        for (String scope : scopes)
+        {
+            generations.computeIfAbsent(scope, s -> new AtomicLong()).updateAndGet(MetadataResponseCache::next);
+        }
+        invalidations.increment();
+    }
+
+    /**
+     * 使依赖指定范围的缓存项失效并移出其版本号，用于表删除、改名等之后不再访问的范围
+     *
+     * @param scopes 范围
+     */
+    void retire(Collection<String> scopes)
+    {
+        for (String scope : scopes)
+        {
+            retire(scope);
+        }
+        invalidations.increment();
+    }
+
+    private void retire(String scope)
+    {
+        // 先移出再作废，之后的读请求使用新的版本号；持有旧版本号的缓存项始终失效
+        AtomicLong counter = generations.remove(scope);
+        if (counter != null)
+        {
+            counter.set(RETIRED);
+        }
+    }
+
+    private void retireAll()
+    {
+        epoch.incrementAndGet();
+        for (String scope : generations.keySet())
+        {
+            retire(scope);
+        }
+    }
+
+    private static long next(long generation)
+    {
+        return generation == RETIRED ? RETIRED : generation + 1L;
+    }
+
+    /**
+     * 当前的版本号个数
+     *
+     * @return 版本号个数
+     */
+    int scopeCount()
+    {
+        return generations.size();
+    }
+
+    /**
+     * 使全部缓存项失效
+     */
+    void invalidateAll()
+    {
+        epoch.incrementAndGet();
+        entries.invalidateAll();
+        invalidations.increment();
+    }
+
+    long getHits()
+    {
+        return hits.sum();
+    }
+
+    long getMisses()
+    {
+        return misses.sum();
+    }
+
+    long getInvalidations()
+    {
+        return invalidations.sum();
+    }
+
+    long size()
+    {
+        return entries.size();
+    }
+
+    @Override
+    public String toString()
+    {
+        return "[size=" + size() + ", hits=" + getHits() + ", misses=" + getMisses() + ", invalidations="
+                + getInvalidations() + "]";
+    }
+
+    /**
+     * 缓存键，方法名与去除baseRequest后的序列化请求
+     */
+    static final class Key
+    {
+        private final String method;
+
+        private final ByteString request;
+
+        Key(String method, ByteString request)
+        {
+            this.method = method;
+            this.request = request;
+        }
+
+        @Override
+        public boolean equals(Object o)
+        {
+            if (this == o)
+            {
+                return true;
+            }
+            if (!(o instanceof Key))
+            {
+                return false;
+            }
+            Key other = (Key) o;
+            return method.equals(other.method) && request.equals(other.request);
+        }
+
+        @Override
+        public int hashCode()
+        {
+            return 31 * method.hashCode() + request.hashCode();
+        }
+    }
+
+    /**
+     * 业务处理前记录的依赖范围版本号
+     */
+    final class Stamp
+    {
+        private final long epochValue;
+
+        private final AtomicLong[] counters;
+
+        private final long[] values;
+
+        private Stamp(long epochValue, AtomicLong[] counters, long[] values)
+        {
+            this.epochValue = epochValue;
+            this.counters = counters;
+            this.values = values;
+        }
+
+        boolean isCurrent()
+        {
+            if (epoch.get() != epochValue)
+            {
+                return false;
+            }
+            for (int i = 0; i < counters.length; i++)
+            {
+                if (values[i] == RETIRED || counters[i].get() != values[i])
+                {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        @Override
+        public String toString()
+        {
+            return "[epoch=" + epochValue + ", generations=" + Arrays.toString(values) + "]";
+        }
+    }
+
+    private static final class Entry
+    {
+        private final Stamp stamp;
+
+        private final byte[] response;
+
+        Entry(Stamp stamp, byte[] response)
+        {
+            this.stamp = stamp;
+            this.response = response;
+        }
+
+        boolean isValid()
+        {
+            return stamp.isCurrent();
+        }
+    }
+}
@@ -0,0 +1,91 @@
+package com.fiberhome.dbserver.protocol.server;
+
+import java.util.Map;
+import java.util.concurrent.ThreadPoolExecutor;
+
+import com.fiberhome.dbserver.common.transport.protobuf.DBServerProtos.ExecutorMetricsProto;
+import com.fiberhome.dbserver.common.transport.protobuf.DBServerProtos.LatencyProto;
+import com.fiberhome.dbserver.common.transport.protobuf.DBServerProtos.MethodMetricsProto;
+import com.fiberhome.dbserver.common.transport.protobuf.DBServerProtos.ResponseCacheMetricsProto;
+import com.fiberhome.dbserver.common.transport.protobuf.DBServerProtos.ServerMetricsRequest;
+import com.fiberhome.dbserver.common.transport.protobuf.DBServerProtos.ServerMetricsResponse;
+import com.fiberhome.dbserver.common.transport.protobuf.ServerAdminServiceGrpc;
+import com.fiberhome.dbserver.protocol.common.LatencyHistogram;
+import com.fiberhome.dbserver.protocol.common.NettyEventLoops;
+import com.fiberhome.dbserver.protocol.server.ServerMetrics.MethodSnapshot;
+import io.grpc.Status;
+import io.grpc.stub.StreamObserver;
+
+/**
+ * 服务端管理服务，提供{@link ServerMetrics}的查询
+ *
+ * @since 1.0.0
+ */
+class ServerAdminRpcProcessor extends ServerAdminServiceGrpc.ServerAdminServiceImplBase
+{
+    private final ServerMetrics metrics;
+
+    ServerAdminRpcProcessor(ServerMetrics metrics)
+    {
+        this.metrics = metrics;
+    }
+
+    @Override
+    public void getServerMetrics(ServerMetricsRequest request, StreamObserver<ServerMetricsResponse> observer)
+    {
+        ServerMetricsResponse.Builder response = ServerMetricsResponse.newBuilder();
+        for (Map.Entry<String, MethodSnapshot> entry : metrics.snapshot().entrySet())
+        {
+            if (!entry.getKey().startsWith(request.getMethodPrefix()))
+            {
+                continue;
+            }
+            MethodSnapshot snapshot = entry.getValue();
+            MethodMetricsProto.Builder method = MethodMetricsProto.newBuilder().setMethod(entry.getKey())
+                    .setQueueWait(toProto(snapshot.getQueueWait())).setHandler(toProto(snapshot.getHandler()))
+                    .setTotal(toProto(snapshot.getTotal())).setBytesReceived(snapshot.getBytesReceived())
+                    .setBytesSent(snapshot.getBytesSent()).setInFlight(snapshot.getInFlight());
+            for (Map.Entry<Status.Code, Long> code : snapshot.getStatusCounts().entrySet())
+            {
+                method.putStatusCounts(code.getKey().name(), code.getValue());
+            }
+            response.addMethods(method);
+        }
+        for (Map.Entry<String, ThreadPoolExecutor> entry : metrics.getExecutors().entrySet())
+        {
+            ThreadPoolExecutor executor = entry.getValue();
+            response.addExecutors(ExecutorMetricsProto.newBuilder().setService(entry.getKey())
+                    .setPoolSize(executor.getPoolSize()).setActiveThreads(executor.getActiveCount())
+                    .setQueuedTasks(executor.getQueue().size())
+                    .setQueueRemaining(executor.getQueue().remainingCapacity())
+                    .setCompletedTasks(executor.getCompletedTaskCount()));
+        }
+        AdmissionControlInterceptor admission = metrics.getAdmission();
+        if (admission != null)
+        {
+            response.setConcurrencyLimit(admission.getLimit()).setAdmissionInFlight(admission.getInFlight())
+                    .setAdmissionRejected(admission.getRejected());
+        }
+        MetadataResponseCache responseCache = metrics.getResponseCache();
+        if (responseCache != null)
+        {
+            response.setResponseCache(ResponseCacheMetricsProto.newBuilder().setSize(responseCache.size())
+                    .setHits(responseCache.getHits()).setMisses(responseCache.getMisses())
+                    .setInvalidations(responseCache.getInvalidations()));
+        }
+        NettyEventLoops eventLoops = NettyEventLoops.getIfInitialized();
+        if (eventLoops != null)
+        {
+            response.setAllocatorStats(eventLoops.getAllocatorStats());
+        }
+        observer.onNext(response.build());
+        observer.onCompleted();
+    }
+
+    private static LatencyProto toProto(LatencyHistogram.Snapshot snapshot)
+    {
+        return LatencyProto.newBuilder().setCount(snapshot.getCount()).setMean(snapshot.getMean())
+                .setP50(snapshot.getP50()).setP99(snapshot.getP99()).setP999(snapshot.getP999())
+                .setMax(snapshot.getMax()).build();
+    }
+}
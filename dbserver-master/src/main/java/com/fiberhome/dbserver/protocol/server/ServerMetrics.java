@@ -0,0 +1,273 @@
+package com.fiberhome.dbserver.protocol.server;
+
+import java.util.Collections;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+import com.fiberhome.dbserver.protocol.common.LatencyHistogram;
+import io.grpc.Status;
+
+/**
+ * 服务端RPC指标
+ * 按方法统计排队等待时间(到达到进入业务处理)、业务处理时间、总时间、收发字节数、状态码与在途调用数，
+ * 由{@link ServerMetricsInterceptor}记录；同时登记各服务的业务线程池与准入控制，用于区分线程池饱和与业务处理慢，
+ * 以及元数据响应缓存的命中情况
+ *
+ * @since 1.0.0
+ */
+public final class ServerMetrics
+{
+    private static final Status.Code[] CODES = Status.Code.values();
+
+    /*
+     * 方法指标 key:方法全名
+     */
+    private final ConcurrentMap<String, MethodMetrics> methods = new ConcurrentHashMap<>();
+
+    /*
+     * 服务业务线程池 key:服务名
+     */
+    private final ConcurrentMap<String, ThreadPoolExecutor> executors = new ConcurrentHashMap<>();
+
+    private volatile AdmissionControlInterceptor admission;
+
+    private volatile MetadataResponseCache responseCache;
+
+    private static class ServerMetricsHolder
+    {
+        private static final ServerMetrics INSTANCE = new ServerMetrics();
+    }
+
+    ServerMetrics()
+    {
+    }
+
+    public static ServerMetrics getInstance()
+    {
+        return ServerMetricsHolder.INSTANCE;
+    }
+
+    /**
+     * 获取方法指标，首次获取时创建
+     *
+     * @param fullMethodName 方法全名
+     * @return 方法指标
+     */
+    MethodMetrics getMethodMetrics(String fullMethodName)
+    {
+        MethodMetrics metrics = methods.get(fullMethodName);
+        if (metrics == null)
+        {
+            metrics = methods.computeIfAbsent(fullMethodName, name -> new MethodMetrics());
+        }
+        return metrics;
+    }
+
+    void registerExecutor(String serviceName, ThreadPoolExecutor executor)
+    {
+        executors.put(serviceName, executor);
+    }
+
+    void unregisterExecutor(String serviceName, ThreadPoolExecutor executor)
+    {
+        executors.remove(serviceName, executor);
+    }
+
+    void setAdmission(AdmissionControlInterceptor admission)
+    {
+        this.admission = admission;
+    }
+
+    AdmissionControlInterceptor getAdmission()
+    {
+        return admission;
+    }
+
+    void setResponseCache(MetadataResponseCache responseCache)
+    {
+        this.responseCache = responseCache;
+    }
+
+    MetadataResponseCache getResponseCache()
+    {
+        return responseCache;
+    }
+
+    /**
+     * 获取登记的服务业务线程池
+     *
+     * @return key:服务名 value:线程池，按服务名排序
+     */
+    Map<String, ThreadPoolExecutor> getExecutors()
+    {
+        return Collections.unmodifiableMap(new TreeMap<>(executors));
+    }
+
+    /**
+     * 生成全部方法的指标快照
+     *
+     * @return key:方法全名 value:快照，按方法名排序
+     */
+    public Map<String, MethodSnapshot> snapshot()
+    {
+        Map<String, MethodSnapshot> snapshots = new TreeMap<>();
+        for (Map.Entry<String, MethodMetrics> entry : methods.entrySet())
+        {
+            snapshots.put(entry.getKey(), entry.getValue().snapshot());
+        }
+        return Collections.unmodifiableMap(snapshots);
+    }
+
+    /**
+     * 单个方法的指标，记录时不分配对象
+     */
+    static final class MethodMetrics
+    {
+        private final LatencyHistogram queueWait = new LatencyHistogram();
+
+        private final LatencyHistogram handler = new LatencyHistogram();
+
+        private final LatencyHistogram total = new LatencyHistogram();
+
+        private final LongAdder bytesReceived = new LongAdder();
+
+        private final LongAdder bytesSent = new LongAdder();
+
+        private final AtomicInteger inFlight = new AtomicInteger();
+
+        /*
+         * 按状态码下标计数
+         */
+        private final AtomicLongArray statusCounts = new AtomicLongArray(CODES.length);
+
+        void callStarted()
+        {
+            inFlight.incrementAndGet();
+        }
+
+        void handlerStarted(long queueWaitMicros)
+        {
+            queueWait.record(queueWaitMicros);
+        }
+
+        void messageReceived(int bytes)
+        {
+            bytesReceived.add(bytes);
+        }
+
+        void messageSent(int bytes)
+        {
+            bytesSent.add(bytes);
+        }
+
+        void callClosed(Status.Code code, long handlerMicros, long totalMicros)
+        {
+            inFlight.decrementAndGet();
+            statusCounts.incrementAndGet(code.ordinal());
+            handler.record(handlerMicros);
+            total.record(totalMicros);
+        }
+
+        MethodSnapshot snapshot()
+        {
+            Map<Status.Code, Long> codes = new TreeMap<>();
+            for (int i = 0; i < CODES.length; i++)
+            {
+                long count = statusCounts.get(i);
+                if (count > 0)
+                {
+                    codes.put(CODES[i], count);
+                }
+            }
+            return new MethodSnapshot(queueWait.snapshot(), handler.snapshot(), total.snapshot(),
+                    bytesReceived.sum(), bytesSent.sum(), inFlight.get(), Collections.unmodifiableMap(codes));
+        }
+    }
+
+    /**
+     * 单个方法的指标快照
+     */
+    public static final class MethodSnapshot
+    {
+        private final LatencyHistogram.Snapshot queueWait;
+
+        private final LatencyHistogram.Snapshot handler;
+
+        private final LatencyHistogram.Snapshot total;
+
+        private final long bytesReceived;
+
+        private final long bytesSent;
+
+        private final int inFlight;
+
+        private final Map<Status.Code, Long> statusCounts;
+
+        MethodSnapshot(LatencyHistogram.Snapshot queueWait, LatencyHistogram.Snapshot handler,
+                LatencyHistogram.Snapshot total, long bytesReceived, long bytesSent, int inFlight,
+                Map<Status.Code, Long> statusCounts)
+        {
+            this.queueWait = queueWait;
+            this.handler = handler;
+            this.total = total;
+            this.bytesReceived = bytesReceived;
+            this.bytesSent = bytesSent;
+            this.inFlight = inFlight;
+            this.statusCounts = statusCounts;
+        }
+
+        public LatencyHistogram.Snapshot getQueueWait()
+        {
+            return queueWait;
+        }
+
+        public LatencyHistogram.Snapshot getHandler()
+        {
+            return handler;
+        }
+
+        public LatencyHistogram.Snapshot getTotal()
+        {
+            return total;
+        }
+
+        public long getBytesReceived()
+        {
+            return bytesReceived;
+        }
+
+        public long getBytesSent()
+        {
+            return bytesSent;
+        }
+
+        public int getInFlight()
+        {
+            return inFlight;
+        }
+
+        /**
+         * 获取状态码计数
+         *
+         * @return key:状态码 value:次数，只包含出现过的状态码
+         */
+        public Map<Status.Code, Long> getStatusCounts()
+        {
+            return statusCounts;
+        }
+
+        @Override
+        public String toString()
+        {
+            return "[queueWait=" + queueWait + ", handler=" + handler + ", total=" + total + ", bytesReceived="
+                    + bytesReceived + ", bytesSent=" + bytesSent + ", inFlight=" + inFlight + ", status="
+                    + statusCounts + "]";
+        }
+    }
+}
@@ -0,0 +1,189 @@
+package com.fiberhome.dbserver.protocol.server;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import com.fiberhome.dbserver.protocol.server.ServerMetrics.MethodMetrics;
+import com.google.protobuf.MessageLite;
+import io.grpc.ForwardingServerCall.SimpleForwardingServerCall;
+import io.grpc.ForwardingServerCallListener.SimpleForwardingServerCallListener;
+import io.grpc.Metadata;
+import io.grpc.ServerCall;
+import io.grpc.ServerCallHandler;
+import io.grpc.ServerInterceptor;
+import io.grpc.Status;
+
+/**
+ * 服务端RPC指标拦截器
+ * 需放在{@link ServiceExecutorInterceptor}内层：到达时间取拦截时刻，业务处理时间为在服务线程池中执行
+ * onMessage/onHalfClose回调的累计时间，首个回调开始前的时间计为排队等待
+ *
+ * @since 1.0.0
+ */
+final class ServerMetricsInterceptor implements ServerInterceptor
+{
+    private final ServerMetrics metrics;
+
+    ServerMetricsInterceptor(ServerMetrics metrics)
+    {
+        this.metrics = metrics;
+    }
+
+    @Override
+    public <ReqT, RespT> ServerCall.Listener<ReqT> interceptCall(ServerCall<ReqT, RespT> call, Metadata headers,
+            ServerCallHandler<ReqT, RespT> next)
+    {
+        CallMetrics callMetrics = new CallMetrics(metrics.getMethodMetrics(
+                call.getMethodDescriptor().getFullMethodName()));
+        ServerCall.Listener<ReqT> listener;
+        try
+        {
+            listener = next.startCall(new SimpleForwardingServerCall<ReqT, RespT>(call)
+            {
+                @Override
+                public void sendMessage(RespT message)
+                {
+                    callMetrics.methodMetrics.messageSent(sizeOf(message));
+                    super.sendMessage(message);
+                }
+
+                @Override
+                public void close(Status status, Metadata trailers)
+                {
+                    callMetrics.closed(status.getCode());
+                    super.close(status, trailers);
+                }
+            }, headers);
+        }
+        catch (RuntimeException e)
+        {
+            callMetrics.closed(Status.Code.INTERNAL);
+            throw e;
+        }
+        return new SimpleForwardingServerCallListener<ReqT>(listener)
+        {
+            @Override
+            public void onMessage(ReqT message)
+            {
+                callMetrics.methodMetrics.messageReceived(sizeOf(message));
+                long start = callMetrics.handlerStarted();
+                try
+                {
+                    super.onMessage(message);
+                }
+                finally
+                {
+                    callMetrics.handlerFinished(start);
+                }
+            }
+
+            @Override
+            public void onHalfClose()
+            {
+                long start = callMetrics.handlerStarted();
+                try
+                {
+                    super.onHalfClose();
+                }
+                finally
+                {
+                    callMetrics.handlerFinished(start);
+                }
+            }
+
+            @Override
+            public void onCancel()
+            {
+                callMetrics.closed(Status.Code.CANCELLED);
+                super.onCancel();
+            }
+        };
+    }
+
+    private static int sizeOf(Object message)
+    {
+        if (message instanceof byte[])
+        {
+            // 已序列化的响应，见MetadataCacheInterceptor
+            return ((byte[]) message).length;
+        }
+        return message instanceof MessageLite ? ((MessageLite) message).getSerializedSize() : 0;
+    }
+
+    /**
+     * 单次调用的计时，调用关闭且业务回调全部结束后记录一次
+     */
+    private static final class CallMetrics
+    {
+        private final MethodMetrics methodMetrics;
+
+        private final long arrivalNanos = System.nanoTime();
+
+        /*
+         * 正在执行的业务回调数
+         */
+        private final AtomicInteger active = new AtomicInteger();
+
+        private final AtomicBoolean recorded = new AtomicBoolean();
+
+        private volatile boolean started;
+
+        private volatile long handlerNanos;
+
+        private volatile long closedNanos;
+
+        private volatile Status.Code code;
+
+        CallMetrics(MethodMetrics methodMetrics)
+        {
+            this.methodMetrics = methodMetrics;
+            methodMetrics.callStarted();
+        }
+
+        long handlerStarted()
+        {
+            long start = System.nanoTime();
+            if (!started)
+            {
+                started = true;
+                methodMetrics.handlerStarted(TimeUnit.NANOSECONDS.toMicros(start - arrivalNanos));
+            }
+            active.incrementAndGet();
+            return start;
+        }
+
+        void handlerFinished(long start)
+        {
+            // 同一调用的回调串行执行，此处无并发累加
+            handlerNanos += System.nanoTime() - start;
+            if (active.decrementAndGet() == 0 && code != null)
+            {
+                record();
+            }
+        }
+
+        void closed(Status.Code closeCode)
+        {
+            if (code != null)
+            {
+                return;
+            }
+            closedNanos = System.nanoTime();
+            code = closeCode;
+            if (active.get() == 0)
+            {
+                record();
+            }
+        }
+
+        private void record()
+        {
+            if (recorded.compareAndSet(false, true))
+            {
+                methodMetrics.callClosed(code, TimeUnit.NANOSECONDS.toMicros(handlerNanos),
+                        TimeUnit.NANOSECONDS.toMicros(closedNanos - arrivalNanos));
+            }
+        }
+    }
+}
@@ -0,0 +1,176 @@
+package com.fiberhome.dbserver.protocol.server;
+
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.util.concurrent.MoreExecutors;
+import io.grpc.ForwardingServerCallListener.SimpleForwardingServerCallListener;
+import io.grpc.Metadata;
+import io.grpc.ServerCall;
+import io.grpc.ServerCallHandler;
+import io.grpc.ServerInterceptor;
+import io.grpc.Status;
+
+/**
+ * 服务独立线程池拦截器
+ * 服务端使用directExecutor，本拦截器将调用的全部回调按顺序转到所属服务的线程池中执行，
+ * 使慢服务只占用自己的线程与队列；线程池队列满时以RESOURCE_EXHAUSTED拒绝调用，
+ * 拒绝后丢弃调用的消息回调，onCancel与onComplete仍会送达，保证下游监听器完成清理
+ *
+ * @since 1.0.0
+ */
+final class ServiceExecutorInterceptor implements ServerInterceptor
+{
+    private static final Logger LOG = LoggerFactory.getLogger(ServiceExecutorInterceptor.class);
+
+    private final String serviceName;
+
+    private final ThreadPoolExecutor executor;
+
+    ServiceExecutorInterceptor(String serviceName, ThreadPoolExecutor executor)
+    {
+        this.serviceName = serviceName;
+        this.executor = executor;
+    }
+
+    @Override
+    public <ReqT, RespT> ServerCall.Listener<ReqT> interceptCall(ServerCall<ReqT, RespT> call, Metadata headers,
+            ServerCallHandler<ReqT, RespT> next)
+    {
+        return new ExecutorListener<>(call, next.startCall(call, headers));
+    }
+
+    /**
+     * 在服务线程池中顺序执行回调的监听器
+     */
+    private final class ExecutorListener<ReqT, RespT> extends SimpleForwardingServerCallListener<ReqT>
+    {
+        private final ServerCall<ReqT, RespT> call;
+
+        /*
+         * 同一调用的回调串行执行
+         */
+        private final Executor sequential = MoreExecutors.newSequentialExecutor(executor);
+
+        /*
+         * 已提交未执行完的回调数
+         */
+        private final AtomicInteger pending = new AtomicInteger();
+
+        private volatile boolean rejected;
+
+        private final AtomicBoolean closed = new AtomicBoolean();
+
+        ExecutorListener(ServerCall<ReqT, RespT> call, ServerCall.Listener<ReqT> delegate)
+        {
+            super(delegate);
+            this.call = call;
+        }
+
+        @Override
+        public void onMessage(ReqT message)
+        {
+            dispatch(() -> super.onMessage(message), false);
+        }
+
+        @Override
+        public void onHalfClose()
+        {
+            dispatch(super::onHalfClose, false);
+        }
+
+        @Override
+        public void onCancel()
+        {
+            dispatch(super::onCancel, true);
+        }
+
+        @Override
+        public void onComplete()
+        {
+            dispatch(super::onComplete, true);
+        }
+
+        @Override
+        public void onReady()
+        {
+            dispatch(super::onReady, false);
+        }
+
+        /**
+         * 提交回调到服务线程池
+         *
+         * @param callback 回调
+         * @param terminal 是否为onCancel、onComplete等结束回调，结束回调在拒绝后仍需执行
+         */
+        private void dispatch(Runnable callback, boolean terminal)
+        {
+            if (rejected && !terminal)
+            {
+                return;
+            }
+            pending.incrementAndGet();
+            try
+            {
+                sequential.execute(() ->
+                {
+                    try
+                    {
+                        if (terminal || !rejected)
+                        {
+                            callback.run();
+                        }
+                    }
+                    finally
+                    {
+                        // 拒绝发生时仍有回调在执行，由最后一个回调关闭调用，保证ServerCall不被并发访问
+                        if (pending.decrementAndGet() == 0 && rejected)
+                        {
+                            reject();
+                        }
+                    }
+                });
+            }
+            catch (RejectedExecutionException e)
+            {
+                rejected = true;
+                if (pending.decrementAndGet() == 0)
+                {
+                    reject();
+                }
+                // 线程池拒绝说明没有该调用的回调在执行，结束回调直接在当前线程执行
+                if (terminal)
+                {
+                    callback.run();
+                }
+            }
+        }
+
+        private void reject()
+        {
+            if (!closed.compareAndSet(false, true))
+            {
+                return;
+            }
+            LOG.warn("executor of {} is exhausted, reject call {}. active:{}, queued:{}", serviceName,
+                    call.getMethodDescriptor().getFullMethodName(), executor.getActiveCount(),
+                    executor.getQueue().size());
+            try
+            {
+                call.close(Status.RESOURCE_EXHAUSTED.withDescription(serviceName + " executor is exhausted"),
+                        new Metadata());
+            }
+            catch (IllegalStateException e)
+            {
+                // 调用已关闭
+                LOG.debug("call of {} has been closed.", serviceName, e);
+            }
+        }
+    }
+}
@@ -18,8 +18,11 @@ import com.fiberhome.dbserver.common.services.HasThread;
 import com.fiberhome.dbserver.common.services.MonitoredTask;
 import com.fiberhome.dbserver.common.services.Sleeper;
 import com.fiberhome.dbserver.common.services.TaskMonitor;
+import com.fiberhome.dbserver.common.services.Threads;
 // import com.fiberhome.dbserver.common.zookeeper.ZooKeeperWatcher;
 import com.fiberhome.dbserver.protocol.client.GrpcClientFactory;
+import com.fiberhome.dbserver.protocol.common.NettyEventLoops;
+import com.fiberhome.dbserver.protocol.common.NettyStatsReporter;
 import com.fiberhome.dbserver.protocol.server.GrpcServer;
 import com.fiberhome.dbserver.protocol.server.GrpcServiceRegistry;
 // import com.fiberhome.dbserver.slave.blockletdata.BlockletDataMangerService;
@@ -185,14 +188,17 @@ public class DBSlave extends HasThread implements DBSlaveServices, SignalHandler
         // 启动执行服务
         this.startExecutorService(status);
 
+        // 启动GRPC，先绑定端口，子服务初始化完成后再注册
+        this.startGrpcService(status);
+
         // 初始化Slave各个子服务
         this.initSubServices(status);
 
-        // 启动Slave各个子服务
+        // 启动Slave各个子服务并注册rpc服务
         this.startSubServices(status);
 
-        // 启动GRPC
-        this.startGrpcService(status);
+        // 全部rpc服务已注册
+        this.grpcServer.finishRegistration();
 
         // // 写入ServerName到zk中
         // try
@@ -234,6 +240,13 @@ public class DBSlave extends HasThread implements DBSlaveServices, SignalHandler
         // 初始化执行服务
         task.setStatus("Start the DBexecutor service.");
         this.executorService = DBExecutorManager.getInstance();
+        // 初始化共享Netty事件循环，需先于任何Grpc客户端与服务端
+        NettyEventLoops eventLoops = NettyEventLoops.init(ServerType.SERVER);
+        long statsInterval = config.getNettyStatsReportInterval();
+        if (statsInterval > 0)
+        {
+            this.executorService.submitCycleTask(new NettyStatsReporter(eventLoops, statsInterval));
+        }
         LOG.info("start execute service finish.");
         // 监控信息
         task.setDescription("start execute service finish.");
@@ -321,6 +334,25 @@ public class DBSlave extends HasThread implements DBSlaveServices, SignalHandler
         //     this.compactService.stop();
         // }
 
+        // 心跳上报下线状态并等待Master确认，Master与客户端停止向本节点路由新请求后再关闭GRPC
+        if (this.heartBeatService != null)
+        {
+            this.heartBeatService.markDraining(config.getHeartBeatTimeout());
+            // 下线状态经Master的Slave视图传播到客户端需要一个刷新周期，期间仍正常处理新请求
+            long advertiseDelay = config.getGrpcDrainAdvertiseDelay();
+            if (advertiseDelay > 0L)
+            {
+                LOG.info("Wait {} ms for clients to observe draining state.", advertiseDelay);
+                Threads.sleepWithoutInterrupt(advertiseDelay);
+            }
+        }
+
+        // 等待在途请求完成后再关闭GRPC
+        if (this.grpcServer != null)
+        {
+            this.grpcServer.drain(config.getGrpcDrainTimeout(), task);
+        }
+
         // 停止心跳管理服务
         if (this.heartBeatService != null)
         {
@@ -342,9 +374,8 @@ public class DBSlave extends HasThread implements DBSlaveServices, SignalHandler
         // 关闭GRPC
         if (this.grpcServer != null)
         {
-
-            this.grpcServer.shutdown();
             GrpcClientFactory.close();
+            NettyEventLoops.shutdown();
         }
 
         // 关闭执行框架
@@ -554,15 +585,15 @@ public class DBSlave extends HasThread implements DBSlaveServices, SignalHandler
     public void close()
     {
         MonitoredTask closeStatus = TaskMonitor.get().createStatus("DBSlave close");
-        // try
-        // {
-        //     this.zooKeeper.close();
-        //     stopServiceThreads(closeStatus);
-        // }
-        // catch (Exception e)
-        // {
-        //     LOG.warn("stop service is faild.", e);
-        // }
+        try
+        {
+            // this.zooKeeper.close();
+            stopServiceThreads(closeStatus);
+        }
+        catch (Exception e)
+        {
+            LOG.warn("stop service is faild.", e);
+        }
 
         // 打印关闭日志
         closeStatus.setDescription(printCloseMessage());
@@ -0,0 +1,182 @@
+package com.fiberhome.dbserver.slave.heartbeat;
+
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Objects;
+
+import com.fiberhome.dbserver.common.transport.protobuf.DBServerProtos;
+import com.fiberhome.dbserver.common.transport.protobuf.MasterServerProtos;
+
+/**
+ * 增量心跳编码
+ * 心跳只携带相对最近一次被Master确认的心跳发生变化的region与资源信息；首次心跳、每隔指定次数、
+ * 或Master要求时发送完整心跳。Master仅在增量的基准序号与其最近应用的序号一致时应用增量，否则要求完整心跳
+ *
+ * @since 1.0.0
+ */
+final class HeartBeatDeltaEncoder
+{
+    /*
+     * 保留的未确认心跳状态数，超过时丢弃最早的
+     */
+    private static final int MAX_UNACKED = 16;
+
+    /*
+     * 每隔多少次心跳发送一次完整心跳，不大于1时每次都发送完整心跳
+     */
+    private final int fullSyncBeats;
+
+    private long nextSequence = 1L;
+
+    /*
+     * 最近被确认的心跳序号及其状态，尚无确认时为0与null
+     */
+    private long ackedSequence;
+
+    private State acked;
+
+    /*
+     * 已发送未确认的心跳状态 key:心跳序号
+     */
+    private final LinkedHashMap<Long, State> unacked = new LinkedHashMap<>();
+
+    /*
+     * 距上次完整心跳的心跳次数
+     */
+    private int beatsSinceFull;
+
+    private boolean fullStateRequested;
+
+    HeartBeatDeltaEncoder(int fullSyncBeats)
+    {
+        this.fullSyncBeats = fullSyncBeats;
+    }
+
+    /**
+     * 按当前状态填充心跳
+     *
+     * @param request     心跳
+     * @param regionLoads 当前全部region负载
+     * @param memResource 内存资源，未知时为null
+     * @param jvmResource 虚拟机资源，未知时为null
+     * @return 是否为完整心跳
+     */
+    synchronized boolean encode(MasterServerProtos.HeartBeatRequest.Builder request,
+            Collection<DBServerProtos.RegionLoadProto> regionLoads, DBServerProtos.MemoryResourceProto memResource,
+            DBServerProtos.JvmResourceProto jvmResource)
+    {
+        State current = new State(regionLoads, memResource, jvmResource);
+        long sequence = nextSequence++;
+        boolean full = acked == null || fullStateRequested || beatsSinceFull + 1 >= fullSyncBeats;
+        request.setSequence(sequence).setFullState(full);
+        if (full)
+        {
+            request.addAllRegionLoads(current.regions.values());
+            setResources(request, current.memResource, current.jvmResource);
+            fullStateRequested = false;
+            beatsSinceFull = 0;
+        }
+        else
+        {
+            request.setBaseSequence(ackedSequence);
+            for (DBServerProtos.RegionLoadProto regionLoad : current.regions.values())
+            {
+                if (!regionLoad.equals(acked.regions.get(regionLoad.getRegionID())))
+                {
+                    request.addRegionLoads(regionLoad);
+                }
+            }
+            for (String regionId : acked.regions.keySet())
+            {
+                if (!current.regions.containsKey(regionId))
+                {
+                    request.addRemovedRegions(regionId);
+                }
+            }
+            setResources(request,
+                    Objects.equals(current.memResource, acked.memResource) ? null : current.memResource,
+                    Objects.equals(current.jvmResource, acked.jvmResource) ? null : current.jvmResource);
+            beatsSinceFull++;
+        }
+        unacked.put(sequence, current);
+        if (unacked.size() > MAX_UNACKED)
+        {
+            unacked.remove(unacked.keySet().iterator().next());
+        }
+        return full;
+    }
+
+    /**
+     * Master确认心跳，之后的增量以该心跳为基准
+     *
+     * @param sequence 确认的心跳序号
+     */
+    synchronized void onAck(long sequence)
+    {
+        State state = unacked.get(sequence);
+        if (state == null || sequence <= ackedSequence)
+        {
+            return;
+        }
+        acked = state;
+        ackedSequence = sequence;
+        Iterator<Long> it = unacked.keySet().iterator();
+        while (it.hasNext() && it.next() <= sequence)
+        {
+            it.remove();
+        }
+    }
+
+    /**
+     * 下次发送完整心跳
+     */
+    synchronized void requestFullState()
+    {
+        fullStateRequested = true;
+    }
+
+    synchronized long getAckedSequence()
+    {
+        return ackedSequence;
+    }
+
+    private static void setResources(MasterServerProtos.HeartBeatRequest.Builder request,
+            DBServerProtos.MemoryResourceProto memResource, DBServerProtos.JvmResourceProto jvmResource)
+    {
+        if (memResource != null)
+        {
+            request.setMemResource(memResource);
+        }
+        if (jvmResource != null)
+        {
+            request.setJvmResource(jvmResource);
+        }
+    }
+
+    /**
+     * 一次心跳时的状态
+     */
+    private static final class State
+    {
+        private final Map<String, DBServerProtos.RegionLoadProto> regions;
+
+        private final DBServerProtos.MemoryResourceProto memResource;
+
+        private final DBServerProtos.JvmResourceProto jvmResource;
+
+        State(Collection<DBServerProtos.RegionLoadProto> regionLoads, DBServerProtos.MemoryResourceProto memResource,
+                DBServerProtos.JvmResourceProto jvmResource)
+        {
+            this.regions = new HashMap<>(regionLoads.size() * 2);
+            for (DBServerProtos.RegionLoadProto regionLoad : regionLoads)
+            {
+                regions.put(regionLoad.getRegionID(), regionLoad);
+            }
+            this.memResource = memResource;
+            this.jvmResource = jvmResource;
+        }
+    }
+}
@@ -0,0 +1,202 @@
+package com.fiberhome.dbserver.slave.heartbeat;
+
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.function.Predicate;
+import java.util.function.Supplier;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.fiberhome.dbserver.common.transport.protobuf.MasterServerProtos;
+import com.google.common.util.concurrent.FutureCallback;
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.MoreExecutors;
+
+/**
+ * 非阻塞心跳发送
+ * 单次上报以回调处理响应，不占用调度线程等待Master；同一时刻最多一个单次上报未完成，
+ * 期间触发的心跳合并为一次，在上报完成后立即补发，补发时重新构建请求以携带最新状态。
+ * 周期心跳在[0, jitter]内随机延后发送，避免大量Slave同时上报。
+ * 需要确认送达的心跳(如下线通知)通过{@link #report()}直接单次上报，不参与合并
+ *
+ * @since 1.0.0
+ */
+final class HeartBeatSender
+{
+    private static final Logger LOG = LoggerFactory.getLogger(HeartBeatSender.class);
+
+    private final Supplier<MasterServerProtos.HeartBeatRequest> requestBuilder;
+
+    private final Predicate<MasterServerProtos.HeartBeatRequest> streamSender;
+
+    private final Function<MasterServerProtos.HeartBeatRequest,
+            ListenableFuture<MasterServerProtos.HeartBeatResponse>> reporter;
+
+    private final Consumer<MasterServerProtos.HeartBeatCommand> commandHandler;
+
+    private final long jitterMillis;
+
+    /*
+     * 是否有未完成的单次上报，以及期间是否有心跳被合并
+     */
+    private boolean outstanding;
+
+    private boolean coalesced;
+
+    /**
+     * 构造函数
+     *
+     * @param requestBuilder 构建心跳请求，与发送在同一锁内执行，保证增量心跳的序号按发送顺序递增
+     * @param streamSender   在心跳流上推送，返回false时改用单次上报
+     * @param reporter       单次上报，返回的future应已设置超时
+     * @param commandHandler 处理单次上报响应中的指令
+     * @param jitterMillis   周期心跳随机延后的最大时间，不大于0时不延后
+     */
+    HeartBeatSender(Supplier<MasterServerProtos.HeartBeatRequest> requestBuilder,
+            Predicate<MasterServerProtos.HeartBeatRequest> streamSender,
+            Function<MasterServerProtos.HeartBeatRequest, ListenableFuture<MasterServerProtos.HeartBeatResponse>>
+                    reporter,
+            Consumer<MasterServerProtos.HeartBeatCommand> commandHandler, long jitterMillis)
+    {
+        this.requestBuilder = requestBuilder;
+        this.streamSender = streamSender;
+        this.reporter = reporter;
+        this.commandHandler = commandHandler;
+        this.jitterMillis = jitterMillis;
+    }
+
+    /**
+     * 周期心跳，随机延后后发送
+     *
+     * @param scheduler 延后发送的调度器
+     */
+    void schedule(ScheduledExecutorService scheduler)
+    {
+        long delay = jitterMillis > 0L ? ThreadLocalRandom.current().nextLong(jitterMillis + 1L) : 0L;
+        if (delay == 0L)
+        {
+            sendQuietly();
+            return;
+        }
+        scheduler.schedule(this::sendQuietly, delay, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * 立即发送心跳，不等待响应
+     *
+     * @return 上一次单次上报未完成、本次被合并时返回false
+     */
+    boolean send()
+    {
+        ListenableFuture<MasterServerProtos.HeartBeatResponse> future;
+        synchronized (this)
+        {
+            if (outstanding)
+            {
+                coalesced = true;
+                LOG.debug("previous heartbeat is still outstanding, coalesce this one.");
+                return false;
+            }
+            MasterServerProtos.HeartBeatRequest request = requestBuilder.get();
+            // 优先在心跳流上推送，Master不支持时改用单次上报
+            if (streamSender.test(request))
+            {
+                LOG.debug("Sent heartbeat to master on stream.");
+                return true;
+            }
+            future = reporter.apply(request);
+            outstanding = true;
+        }
+        Futures.addCallback(future, new FutureCallback<MasterServerProtos.HeartBeatResponse>()
+        {
+            @Override
+            public void onSuccess(MasterServerProtos.HeartBeatResponse response)
+            {
+                LOG.debug("heartBeatResponse is [{}]", response);
+                try
+                {
+                    if (response.hasCommand())
+                    {
+                        commandHandler.accept(response.getCommand());
+                    }
+                }
+                finally
+                {
+                    complete();
+                }
+            }
+
+            @Override
+            public void onFailure(Throwable t)
+            {
+                LOG.warn("Send heartbeat to master failed.", t);
+                complete();
+            }
+        }, MoreExecutors.directExecutor());
+        return true;
+    }
+
+    /**
+     * 立即单次上报心跳，不与其他心跳合并，调用方可等待Master确认
+     *
+     * @return Master的响应，响应中的指令已交由指令处理
+     */
+    ListenableFuture<MasterServerProtos.HeartBeatResponse> report()
+    {
+        ListenableFuture<MasterServerProtos.HeartBeatResponse> future;
+        synchronized (this)
+        {
+            future = reporter.apply(requestBuilder.get());
+        }
+        return Futures.transform(future, response ->
+        {
+            if (response.hasCommand())
+            {
+                commandHandler.accept(response.getCommand());
+            }
+            return response;
+        }, MoreExecutors.directExecutor());
+    }
+
+    /**
+     * 是否有未完成的单次上报
+     *
+     * @return 是否未完成
+     */
+    synchronized boolean isOutstanding()
+    {
+        return outstanding;
+    }
+
+    private void complete()
+    {
+        boolean resend;
+        synchronized (this)
+        {
+            outstanding = false;
+            resend = coalesced;
+            coalesced = false;
+        }
+        if (resend)
+        {
+            sendQuietly();
+        }
+    }
+
+    private void sendQuietly()
+    {
+        try
+        {
+            send();
+        }
+        catch (RuntimeException e)
+        {
+            LOG.warn("Send heartbeat to master failed.", e);
+        }
+    }
+}
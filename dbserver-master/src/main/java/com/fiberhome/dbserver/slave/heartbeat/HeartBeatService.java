@@ -1,6 +1,6 @@
 package com.fiberhome.dbserver.slave.heartbeat;
 
-import java.util.List;
+import java.util.Collections;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.TimeoutException;
@@ -11,12 +11,10 @@ import org.slf4j.LoggerFactory;
 import com.fiberhome.dbserver.common.config.ClientCongfiguration;
 import com.fiberhome.dbserver.common.config.MasterConfiguration;
 import com.fiberhome.dbserver.common.config.ServerConfiguration;
-// import com.fiberhome.dbserver.common.elements.region.RegionLoad;
 import com.fiberhome.dbserver.common.elements.server.ServerName;
 import com.fiberhome.dbserver.common.executor.DBExecutorManager;
 import com.fiberhome.dbserver.common.executor.payload.CyclePayload;
-// import com.fiberhome.dbserver.common.metrics.JvmResource;
-// import com.fiberhome.dbserver.common.metrics.MemoryResource;
+import com.fiberhome.dbserver.common.transport.protobuf.DBServerProtos;
 import com.fiberhome.dbserver.common.transport.protobuf.HeartBeatMangerServiceGrpc;
 import com.fiberhome.dbserver.common.transport.protobuf.MasterServerProtos;
 import com.fiberhome.dbserver.common.util.ProtoConvertUtil;
@@ -24,10 +22,7 @@ import com.fiberhome.dbserver.common.util.ProtoConvertUtil;
 import com.fiberhome.dbserver.protocol.client.GrpcClientFactory;
 import com.fiberhome.dbserver.protocol.common.GrpcConstants;
 import com.fiberhome.dbserver.slave.DBSlave;
-// import com.fiberhome.dbserver.slave.resource.ServerResourceCache;
 import com.fiberhome.dbserver.tools.util.TimeValue;
-import com.google.common.collect.Lists;
-import com.google.common.util.concurrent.ListenableFuture;
 
 
 /**
@@ -58,6 +53,16 @@ public class HeartBeatService extends CyclePayload
      */
     private boolean clusterState = true;
 
+    /**
+     * 心跳上报的Slave状态，下线时为SLAVE_DRAINING
+     */
+    private volatile DBServerProtos.SlaveStatusProto slaveStatus = DBServerProtos.SlaveStatusProto.SLAVE_ALIVE;
+
+    /**
+     * 心跳服务是否已停止
+     */
+    private volatile boolean stopped = false;
+
     /**
      * master是否重启标识
      */
@@ -99,15 +104,24 @@ public class HeartBeatService extends CyclePayload
     private HeartBeatMangerServiceGrpc.HeartBeatMangerServiceFutureStub heartBeatStub;
 
     /**
-     * Server节点ServerName
+     * 心跳流，未启用时为null
      */
-    private ServerName serverName;
+    private HeartBeatStream heartBeatStream;
 
     /**
-     * Server缓存管理
-     *
+     * 增量心跳编码
+     */
+    private HeartBeatDeltaEncoder deltaEncoder;
+
+    /**
+     * 非阻塞心跳发送
      */
-    // private ServerResourceCache resourceCacheMgr;
+    private HeartBeatSender heartBeatSender;
+
+    /**
+     * Server节点ServerName
+     */
+    private ServerName serverName;
 
     /**
      * 私有构造函数
@@ -135,6 +149,8 @@ public class HeartBeatService extends CyclePayload
         // 最大重试次数 600s/3s = 200次
         this.maxRetryNumber = (int) (this.masterRestartTimeOut.getMillis() / this.heartBeatInterval.getMillis());
 
+        this.deltaEncoder = new HeartBeatDeltaEncoder(conf.getHeartBeatFullSyncBeats());
+
         // Server的ServerName对象
         serverName = DBSlave.getDBServer().getServerName();
 
@@ -145,13 +161,23 @@ public class HeartBeatService extends CyclePayload
         //todo sjj
         master = new ServerName("SW", "192.168.85.1", 10051, System.currentTimeMillis());
 
-        // 初始化缓存
-        // resourceCacheMgr = ServerResourceCache.getInstance();
-
         int heartPort = ClientCongfiguration.getClientConfiguration().getMasterServiceRpcPort();
         this.heartBeatStub = (HeartBeatMangerServiceGrpc.HeartBeatMangerServiceFutureStub) GrpcClientFactory
                 .getGrpcClient(master.getHostName(), heartPort)
                 .getServiceFutureStub(GrpcConstants.HEARTBEAT_MANAGER_SERVICE);
+        if (conf.isHeartBeatStreamEnabled())
+        {
+            this.heartBeatStream = new HeartBeatStream((HeartBeatMangerServiceGrpc.HeartBeatMangerServiceStub)
+                    GrpcClientFactory.getGrpcClient(master.getHostName(), heartPort)
+                            .getServiceAsyncStub(GrpcConstants.HEARTBEAT_MANAGER_SERVICE), this::handleCommand);
+        }
+        // 单次上报的超时时间 默认3s
+        long heartBeatTimeout = conf.getHeartBeatTimeout();
+        this.heartBeatSender = new HeartBeatSender(this::buildHeartBeatRequest,
+                request -> heartBeatStream != null && heartBeatStream.send(request),
+                request -> heartBeatStub.withDeadlineAfter(heartBeatTimeout, TimeUnit.MILLISECONDS)
+                        .reportHeartBeat(request),
+                this::handleCommand, conf.getHeartBeatJitter());
 
         // 开始执行心跳线程
         LOG.info("Start HeartBeat service, interval is " + heartBeatInterval.getSeconds() + " s.");
@@ -236,49 +262,11 @@ public class HeartBeatService extends CyclePayload
 
 
     /**
-     * 发送心跳
+     * 发送心跳，不等待Master响应；上一次单次上报未完成时本次合并到其完成后补发
      */
     private void sendHeartBeat()
     {
-        // 向Master发送心跳
-        ListenableFuture<MasterServerProtos.HeartBeatResponse> future = heartBeatStub
-                .reportHeartBeat(buildHeartBeatRequest());
-        LOG.info("Sent heartbeat to master, wait for response..."); // todo 改回debug
-        // 获取心跳响应，如果3s内没有获取到结果，则打印WARN日志
-        try
-        {
-            MasterServerProtos.HeartBeatResponse heartBeatResponse = future.get(3000L, TimeUnit.MILLISECONDS);
-            LOG.info("heartBeatResponse is [{}]", heartBeatResponse);
-        }
-        catch (InterruptedException | ExecutionException | TimeoutException e)
-        {
-            LOG.error("error", e);
-            // // zk中存在master地址,发送失败,网络问题或者zk失联
-            // ServerName newMaster = masterAddressTracker.getMasterAddress(true);
-            //
-            // if (null != newMaster)
-            // {
-            //     LOG.warn("send heartbeat failed, retry report heartbeat, causing:", e);
-            //     // 判断从ZK中获取的Master地址与之前的地址是否一致，如果不一致，可能存在master切换
-            //     if (!ServerName.isSameHostnameAndPort(master, newMaster) || (master.getStartTime() != newMaster
-            //             .getStartTime()))
-            //     {
-            //         LOG.warn("master has changed, old master is {}, new master is {}.", master, newMaster);
-            //         master = newMaster;
-            //         // 重新构造masterStub
-            //         int heartPort = ClientCongfiguration.getClientConfiguration()
-            //                 .getMasterServiceRpcPort();
-            //         this.heartBeatStub = (HeartBeatMangerServiceGrpc.HeartBeatMangerServiceFutureStub) GrpcClientFactory
-            //                 .getGrpcClient(master.getHostName(), heartPort)
-            //                 .getServiceFutureStub(GrpcConstants.HEARTBEAT_MANAGER_SERVICE);
-            //     }
-            // }
-            // else
-            // {
-            //     LOG.warn("can not get master from zookeeper, master has exit.");
-            //     clusterState = false;
-            // }
-        }
+        heartBeatSender.send();
     }
 
     // /**
@@ -369,30 +357,13 @@ public class HeartBeatService extends CyclePayload
      */
     private MasterServerProtos.HeartBeatRequest buildHeartBeatRequest()
     {
-        // JvmResource jvmResource = null;
-        // MemoryResource memoryResource = null;
-        // List<RegionLoad> regionLoadList = Lists.newArrayList();
-        //
-        // // 从cache中获取对应的资源信息
-        // try
-        // {
-        //     jvmResource = resourceCacheMgr.getJvmCache().get(serverName);
-        //     memoryResource = resourceCacheMgr.getMemroyCache().get(serverName);
-        //     regionLoadList = resourceCacheMgr.getRegionCache().get(serverName);
-        // }
-        // catch (ExecutionException e)
-        // {
-        //     LOG.warn("Get server resource form cache error. " + e);
-        // }
-
         // 构建ReportHeartBeatRequest
         MasterServerProtos.HeartBeatRequest.Builder request = MasterServerProtos.HeartBeatRequest.newBuilder();
-
-
-        // request.setJvmResource(ProtoConvertUtil.toJvmResourceProto(jvmResource));
-        // request.setMemResource(ProtoConvertUtil.toMemoryResourceProto(memoryResource));
-        // request.addAllRegionLoads(ProtoConvertUtil.toRegionLoadProtoList(regionLoadList));
         request.setSlaveName(ProtoConvertUtil.toServerNameProto(serverName));
+        request.setSlaveStatus(slaveStatus);
+        // 只上报相对最近一次确认变化的region与资源，周期性或Master要求时上报完整状态；
+        // Slave尚无region管理与资源采集，region列表为空、资源不上报
+        deltaEncoder.encode(request, Collections.emptyList(), null, null);
         LOG.debug("Finish build HeartBeatRequest");
         String str = request.toString();
         LOG.debug("BaseRequest is : {}", str);
@@ -402,6 +373,10 @@ public class HeartBeatService extends CyclePayload
     @Override
     protected void process() throws Exception
     {
+        if (stopped)
+        {
+            return;
+        }
         try
         {
             // 集群状态正常
@@ -410,8 +385,8 @@ public class HeartBeatService extends CyclePayload
                 // master没重启
                 if (!masterRestart)
                 {
-                    // 常规处理
-                    sendHeartBeat();
+                    // 常规处理，随机延后发送，避免大量Slave同时上报
+                    heartBeatSender.schedule(DBExecutorManager.getInstance().getScheduledThreadPool());
                 }
                 // else
                 // {
@@ -428,7 +403,7 @@ public class HeartBeatService extends CyclePayload
         }
         catch (Exception e)
         {
-
+            LOG.warn("Heart beat thread found exception.", e);
         }
         // catch (InterruptedException e)
         // {
@@ -443,12 +418,71 @@ public class HeartBeatService extends CyclePayload
         // }
     }
 
+    /**
+     * 处理Master经由心跳流下发的指令
+     *
+     * @param command 指令
+     */
+    private void handleCommand(MasterServerProtos.HeartBeatCommand command)
+    {
+        switch (command.getType())
+        {
+            case HEARTBEAT_ACK:
+                LOG.debug("heartbeat {} acked by master.", command.getAckedSequence());
+                deltaEncoder.onAck(command.getAckedSequence());
+                break;
+            case REPORT_FULL_STATE:
+                LOG.info("master requests full state report.");
+                deltaEncoder.requestFullState();
+                break;
+            default:
+                LOG.warn("unknown heartbeat command {}", command.getType());
+                break;
+        }
+    }
+
+    /**
+     * 标记Slave正在下线，并立即上报一次心跳，等待Master确认后返回，使Master尽快停止向本节点路由请求
+     *
+     * @param timeoutMillis 等待Master确认的最长时间
+     * @return Master是否在超时前确认
+     */
+    public boolean markDraining(long timeoutMillis)
+    {
+        slaveStatus = DBServerProtos.SlaveStatusProto.SLAVE_DRAINING;
+        LOG.info("Slave {} is draining, report to master.", serverName);
+        if (stopped)
+        {
+            return false;
+        }
+        try
+        {
+            heartBeatSender.report().get(timeoutMillis, TimeUnit.MILLISECONDS);
+            return true;
+        }
+        catch (InterruptedException e)
+        {
+            Thread.currentThread().interrupt();
+            LOG.warn("Interrupted while waiting master to ack draining of slave {}.", serverName);
+        }
+        catch (ExecutionException | TimeoutException | RuntimeException e)
+        {
+            LOG.warn("Master did not ack draining of slave {} in {} ms.", serverName, timeoutMillis, e);
+        }
+        return false;
+    }
+
     /**
      * stop方法
      */
     public void stop()
     {
-        //todo
+        stopped = true;
+        if (heartBeatStream != null)
+        {
+            heartBeatStream.close();
+        }
+        LOG.info("Stop HeartBeat service.");
     }
 
 }
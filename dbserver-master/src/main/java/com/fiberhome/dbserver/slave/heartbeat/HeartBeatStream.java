@@ -0,0 +1,150 @@
+package com.fiberhome.dbserver.slave.heartbeat;
+
+import java.util.function.Consumer;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.fiberhome.dbserver.common.transport.protobuf.HeartBeatMangerServiceGrpc;
+import com.fiberhome.dbserver.common.transport.protobuf.MasterServerProtos;
+import io.grpc.Status;
+import io.grpc.stub.StreamObserver;
+
+/**
+ * Slave到Master的心跳流
+ * 首次发送时建立长连接，之后的心跳都在同一流上推送，Master下发的指令交给指令处理器；
+ * 流断开后在下次发送时重新建立；Master不支持心跳流时返回false，由调用方改用单次上报
+ *
+ * @since 1.0.0
+ */
+final class HeartBeatStream
+{
+    private static final Logger LOG = LoggerFactory.getLogger(HeartBeatStream.class);
+
+    private final HeartBeatMangerServiceGrpc.HeartBeatMangerServiceStub stub;
+
+    private final Consumer<MasterServerProtos.HeartBeatCommand> commandHandler;
+
+    /*
+     * 当前流，未建立或已断开时为null
+     */
+    private CommandObserver current;
+
+    /*
+     * Master是否不支持心跳流
+     */
+    private volatile boolean unsupported;
+
+    HeartBeatStream(HeartBeatMangerServiceGrpc.HeartBeatMangerServiceStub stub,
+            Consumer<MasterServerProtos.HeartBeatCommand> commandHandler)
+    {
+        this.stub = stub;
+        this.commandHandler = commandHandler;
+    }
+
+    /**
+     * 在流上推送心跳，流未建立或已断开时先建立
+     *
+     * @param request 心跳
+     * @return Master不支持心跳流时返回false
+     */
+    synchronized boolean send(MasterServerProtos.HeartBeatRequest request)
+    {
+        if (unsupported)
+        {
+            return false;
+        }
+        CommandObserver stream = current;
+        if (stream == null)
+        {
+            LOG.info("open heartbeat stream to master.");
+            stream = new CommandObserver();
+            current = stream;
+            stream.requestObserver = stub.heartBeatStream(stream);
+        }
+        // 流已断开时推送无效，下次发送重新建立
+        stream.requestObserver.onNext(request);
+        return !unsupported;
+    }
+
+    /**
+     * 流是否已建立
+     *
+     * @return 是否已建立
+     */
+    synchronized boolean isOpen()
+    {
+        return current != null;
+    }
+
+    boolean isUnsupported()
+    {
+        return unsupported;
+    }
+
+    /**
+     * 正常关闭流，Master据此区分Slave下线与流异常断开
+     */
+    synchronized void close()
+    {
+        if (current != null)
+        {
+            current.requestObserver.onCompleted();
+            current = null;
+        }
+    }
+
+    private synchronized void closed(CommandObserver observer)
+    {
+        if (current == observer)
+        {
+            current = null;
+        }
+    }
+
+    /**
+     * 接收Master指令，每个流一个实例，旧流的回调不影响新流
+     */
+    private final class CommandObserver implements StreamObserver<MasterServerProtos.HeartBeatCommand>
+    {
+        /*
+         * 流的请求端，建立流后赋值
+         */
+        private StreamObserver<MasterServerProtos.HeartBeatRequest> requestObserver;
+
+        @Override
+        public void onNext(MasterServerProtos.HeartBeatCommand command)
+        {
+            try
+            {
+                commandHandler.accept(command);
+            }
+            catch (RuntimeException e)
+            {
+                LOG.warn("handle heartbeat command {} failed.", command.getType(), e);
+            }
+        }
+
+        @Override
+        public void onError(Throwable t)
+        {
+            if (Status.fromThrowable(t).getCode() == Status.Code.UNIMPLEMENTED)
+            {
+                LOG.warn("master does not support heartbeat stream, report heartbeat by unary call.");
+                unsupported = true;
+            }
+            else
+            {
+                LOG.warn("heartbeat stream to master is broken, reopen on next heartbeat. {}", Status.fromThrowable(t));
+            }
+            closed(this);
+        }
+
+        @Override
+        public void onCompleted()
+        {
+            LOG.info("master closed heartbeat stream, reopen on next heartbeat.");
+            closed(this);
+        }
+    }
+}
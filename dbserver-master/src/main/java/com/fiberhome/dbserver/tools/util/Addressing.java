@@ -2,6 +2,8 @@ package com.fiberhome.dbserver.tools.util;
 
 import java.net.InetAddress;
 import java.net.InetSocketAddress;
+import java.net.NetworkInterface;
+import java.net.SocketException;
 import java.net.UnknownHostException;
 
 /**
@@ -81,6 +83,26 @@ public class Addressing
         }
     }
 
+    /**
+     * 地址是否属于本机，包括回环地址与本机网卡地址
+     *
+     * @param hostname 主机名或ip
+     * @return 是否本机地址
+     */
+    public static boolean isLocalAddress(final String hostname)
+    {
+        try
+        {
+            InetAddress address = InetAddress.getByName(hostname);
+            return address.isAnyLocalAddress() || address.isLoopbackAddress()
+                    || NetworkInterface.getByInetAddress(address) != null;
+        }
+        catch (UnknownHostException | SocketException e)
+        {
+            return false;
+        }
+    }
+
     /** 获取主机名
      * @return host name
      */
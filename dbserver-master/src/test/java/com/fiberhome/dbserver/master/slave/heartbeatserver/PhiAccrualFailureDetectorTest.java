@@ -0,0 +1,79 @@
+package com.fiberhome.dbserver.master.slave.heartbeatserver;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class PhiAccrualFailureDetectorTest
+{
+    private final PhiAccrualFailureDetector detector = new PhiAccrualFailureDetector(100, 100L, 1000L);
+
+    @Test
+    public void phiGrowsWithIdleTime()
+    {
+        long last = beat(detector, 0L, 1000L, 50);
+        Assert.assertTrue(detector.phi(last + 500L) < 0.5d);
+        double previous = 0.0d;
+        for (long idle = 0L; idle <= 3000L; idle += 100L)
+        {
+            double phi = detector.phi(last + idle);
+            Assert.assertTrue(phi >= previous);
+            previous = phi;
+        }
+        Assert.assertTrue(detector.phi(last + 2000L) > 8.0d);
+    }
+
+    @Test
+    public void jitteryHistoryToleratesLongerPause()
+    {
+        beat(detector, 0L, 1000L, 50);
+        PhiAccrualFailureDetector jittery = new PhiAccrualFailureDetector(100, 100L, 1000L);
+        long now = 0L;
+        for (int i = 0; i <= 50; i++)
+        {
+            jittery.heartbeat(now);
+            now += i % 2 == 0 ? 400L : 1600L;
+        }
+        Assert.assertTrue(jittery.idleMillisAt(8.0d, 60000L) > detector.idleMillisAt(8.0d, 60000L));
+    }
+
+    @Test
+    public void idleMillisAtMatchesPhi()
+    {
+        long last = beat(detector, 0L, 1000L, 50);
+        long idle = detector.idleMillisAt(3.0d, 60000L);
+        Assert.assertTrue(detector.phi(last + idle) >= 3.0d);
+        Assert.assertTrue(detector.phi(last + idle - 1L) < 3.0d);
+        Assert.assertEquals(10L, detector.idleMillisAt(1000.0d, 10L));
+    }
+
+    @Test
+    public void windowIsBounded()
+    {
+        PhiAccrualFailureDetector bounded = new PhiAccrualFailureDetector(10, 1L, 1000L);
+        long last = beat(bounded, 0L, 5000L, 20);
+        beat(bounded, last + 100L, 100L, 10);
+        Assert.assertEquals(100.0d, bounded.mean(), 0.001d);
+        Assert.assertEquals(1.0d, bounded.stdDev(), 0.001d);
+    }
+
+    @Test
+    public void noSuspicionBeforeFirstHeartbeat()
+    {
+        Assert.assertEquals(0.0d, detector.phi(100000L), 0.0d);
+    }
+
+    /**
+     * 自start起按固定间隔上报intervals个间隔的心跳，返回最后一次心跳的时间
+     */
+    private static long beat(PhiAccrualFailureDetector detector, long start, long interval, int intervals)
+    {
+        long now = start;
+        detector.heartbeat(now);
+        for (int i = 0; i < intervals; i++)
+        {
+            now += interval;
+            detector.heartbeat(now);
+        }
+        return now;
+    }
+}
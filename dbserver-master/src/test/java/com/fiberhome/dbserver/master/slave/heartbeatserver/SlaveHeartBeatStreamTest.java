@@ -0,0 +1,168 @@
+package com.fiberhome.dbserver.master.slave.heartbeatserver;
+
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.fiberhome.dbserver.common.elements.server.ServerName;
+import com.fiberhome.dbserver.common.transport.protobuf.DBServerProtos.ServerNameProto;
+import com.fiberhome.dbserver.common.transport.protobuf.HeartBeatMangerServiceGrpc;
+import com.fiberhome.dbserver.common.transport.protobuf.MasterServerProtos.HeartBeatCommand;
+import com.fiberhome.dbserver.common.transport.protobuf.MasterServerProtos.HeartBeatCommandType;
+import com.fiberhome.dbserver.common.transport.protobuf.MasterServerProtos.HeartBeatRequest;
+import io.grpc.ManagedChannel;
+import io.grpc.Server;
+import io.grpc.inprocess.InProcessChannelBuilder;
+import io.grpc.inprocess.InProcessServerBuilder;
+import io.grpc.stub.ClientCallStreamObserver;
+import io.grpc.stub.ClientResponseObserver;
+import io.grpc.stub.StreamObserver;
+
+public class SlaveHeartBeatStreamTest
+{
+    private static final String SERVER_NAME = "heartbeat-stream-test";
+
+    private static final ServerNameProto SLAVE = ServerNameProto.newBuilder().setHostName("slave1")
+            .setIp("10.0.0.1").setPort(10060).setStartTime(1L).build();
+
+    private static final ServerName SLAVE_NAME = new ServerName("slave1", "10.0.0.1", 10060, 1L);
+
+    private final HeartBeatManager manager = HeartBeatManager.getInstance();
+
+    private final BlockingQueue<Object> received = new LinkedBlockingQueue<>();
+
+    private Server server;
+
+    private ManagedChannel channel;
+
+    private ClientCallStreamObserver<HeartBeatRequest> requests;
+
+    @Before
+    public void setUp() throws Exception
+    {
+        server = InProcessServerBuilder.forName(SERVER_NAME).addService(new HeartBeatRpcProcessor(manager))
+                .directExecutor().build().start();
+        channel = InProcessChannelBuilder.forName(SERVER_NAME).directExecutor().build();
+        requests = (ClientCallStreamObserver<HeartBeatRequest>) HeartBeatMangerServiceGrpc.newStub(channel)
+                .heartBeatStream(new StreamObserver<HeartBeatCommand>()
+                {
+                    @Override
+                    public void onNext(HeartBeatCommand command)
+                    {
+                        received.add(command.getType());
+                    }
+
+                    @Override
+                    public void onError(Throwable t)
+                    {
+                        received.add(t);
+                    }
+
+                    @Override
+                    public void onCompleted()
+                    {
+                        received.add("completed");
+                    }
+                });
+    }
+
+    @After
+    public void tearDown()
+    {
+        manager.stop();
+        channel.shutdownNow();
+        server.shutdownNow();
+    }
+
+    @Test
+    public void ackHeartBeatAndPushCommand() throws Exception
+    {
+        requests.onNext(HeartBeatRequest.newBuilder().setSlaveName(SLAVE).build());
+        Assert.assertEquals(HeartBeatCommandType.HEARTBEAT_ACK, received.poll(5, TimeUnit.SECONDS));
+        Assert.assertTrue(manager.isStreamConnected(SLAVE_NAME));
+
+        Assert.assertTrue(manager.sendCommand(SLAVE_NAME, HeartBeatCommand.newBuilder()
+                .setType(HeartBeatCommandType.REPORT_FULL_STATE).build()));
+        Assert.assertEquals(HeartBeatCommandType.REPORT_FULL_STATE, received.poll(5, TimeUnit.SECONDS));
+    }
+
+    @Test
+    public void collapseAcksForSlowSlave() throws Exception
+    {
+        BlockingQueue<HeartBeatCommand> commands = new LinkedBlockingQueue<>();
+        ClientCallStreamObserver<HeartBeatRequest>[] slow = new ClientCallStreamObserver[1];
+        HeartBeatMangerServiceGrpc.newStub(channel).heartBeatStream(
+                new ClientResponseObserver<HeartBeatRequest, HeartBeatCommand>()
+                {
+                    @Override
+                    public void beforeStart(ClientCallStreamObserver<HeartBeatRequest> requestStream)
+                    {
+                        // 只接收首条指令，之后Slave暂不接收
+                        requestStream.disableAutoInboundFlowControl();
+                        slow[0] = requestStream;
+                    }
+
+                    @Override
+                    public void onNext(HeartBeatCommand command)
+                    {
+                        commands.add(command);
+                    }
+
+                    @Override
+                    public void onError(Throwable t)
+                    {
+                    }
+
+                    @Override
+                    public void onCompleted()
+                    {
+                    }
+                });
+        for (long sequence = 1L; sequence <= 5L; sequence++)
+        {
+            slow[0].onNext(HeartBeatRequest.newBuilder().setSlaveName(SLAVE).setSequence(sequence).setFullState(true)
+                    .build());
+        }
+        Assert.assertEquals(1L, commands.poll(5, TimeUnit.SECONDS).getAckedSequence());
+        Assert.assertNull(commands.poll(200, TimeUnit.MILLISECONDS));
+
+        slow[0].request(10);
+        HeartBeatCommand ack = commands.poll(5, TimeUnit.SECONDS);
+        Assert.assertNotNull(ack);
+        Assert.assertEquals(HeartBeatCommandType.HEARTBEAT_ACK, ack.getType());
+        Assert.assertEquals(5L, ack.getAckedSequence());
+        Assert.assertNull(commands.poll(200, TimeUnit.MILLISECONDS));
+    }
+
+    @Test
+    public void detectBrokenStream() throws Exception
+    {
+        requests.onNext(HeartBeatRequest.newBuilder().setSlaveName(SLAVE).build());
+        Assert.assertEquals(HeartBeatCommandType.HEARTBEAT_ACK, received.poll(5, TimeUnit.SECONDS));
+
+        requests.cancel("slave crashed", null);
+        long deadline = System.currentTimeMillis() + 5000L;
+        while (manager.isStreamConnected(SLAVE_NAME) && System.currentTimeMillis() < deadline)
+        {
+            Thread.sleep(10L);
+        }
+        Assert.assertFalse(manager.isStreamConnected(SLAVE_NAME));
+        Assert.assertFalse(manager.sendCommand(SLAVE_NAME, HeartBeatCommand.getDefaultInstance()));
+    }
+
+    @Test
+    public void closeStreamsOnStop() throws Exception
+    {
+        requests.onNext(HeartBeatRequest.newBuilder().setSlaveName(SLAVE).build());
+        Assert.assertEquals(HeartBeatCommandType.HEARTBEAT_ACK, received.poll(5, TimeUnit.SECONDS));
+
+        manager.stop();
+        Assert.assertEquals("completed", received.poll(5, TimeUnit.SECONDS));
+        Assert.assertFalse(manager.isStreamConnected(SLAVE_NAME));
+    }
+}
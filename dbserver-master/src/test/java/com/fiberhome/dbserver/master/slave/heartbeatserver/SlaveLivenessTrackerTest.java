@@ -0,0 +1,108 @@
+package com.fiberhome.dbserver.master.slave.heartbeatserver;
+
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Test;
+
+import com.fiberhome.dbserver.common.elements.server.ServerName;
+import com.fiberhome.dbserver.common.transport.protobuf.DBServerProtos.SlaveStatusProto;
+
+public class SlaveLivenessTrackerTest
+{
+    private static final ServerName SLAVE = new ServerName("slave1", "10.0.0.1", 10060, 1L);
+
+    private static final ServerName OTHER = new ServerName("slave2", "10.0.0.2", 10060, 1L);
+
+    private final BlockingQueue<String> transitions = new LinkedBlockingQueue<>();
+
+    private final SlaveLivenessTracker tracker = new SlaveLivenessTracker(200L, 600L, 10L,
+            (slaveName, oldStatus, newStatus) -> transitions.add(oldStatus + "->" + newStatus));
+
+    @After
+    public void tearDown()
+    {
+        tracker.stop();
+    }
+
+    @Test
+    public void expireToDelayThenDead() throws Exception
+    {
+        tracker.heartbeat(SLAVE, SlaveStatusProto.SLAVE_ALIVE);
+        Assert.assertEquals("null->SLAVE_ALIVE", transitions.poll(1, TimeUnit.SECONDS));
+        Assert.assertEquals("SLAVE_ALIVE->SLAVE_DELAY", transitions.poll(2, TimeUnit.SECONDS));
+        Assert.assertEquals(SlaveStatusProto.SLAVE_DELAY, tracker.getStatus(SLAVE));
+        Assert.assertEquals("SLAVE_DELAY->SLAVE_DEAD", transitions.poll(2, TimeUnit.SECONDS));
+        Assert.assertNull(tracker.getStatus(SLAVE));
+
+        tracker.heartbeat(SLAVE, SlaveStatusProto.SLAVE_ALIVE);
+        Assert.assertEquals("null->SLAVE_ALIVE", transitions.poll(1, TimeUnit.SECONDS));
+    }
+
+    @Test
+    public void heartbeatsKeepSlaveAlive() throws Exception
+    {
+        long deadline = System.currentTimeMillis() + 800L;
+        while (System.currentTimeMillis() < deadline)
+        {
+            tracker.heartbeat(SLAVE, SlaveStatusProto.SLAVE_ALIVE);
+            Thread.sleep(20L);
+        }
+        Assert.assertEquals("null->SLAVE_ALIVE", transitions.poll());
+        Assert.assertNull(transitions.poll());
+        Assert.assertEquals(SlaveStatusProto.SLAVE_ALIVE, tracker.getStatus(SLAVE));
+        Assert.assertTrue(tracker.getIdleMillis(SLAVE) < 200L);
+    }
+
+    @Test
+    public void suspectAndRecover() throws Exception
+    {
+        tracker.heartbeat(SLAVE, SlaveStatusProto.SLAVE_ALIVE);
+        tracker.suspect(SLAVE);
+        tracker.heartbeat(SLAVE, SlaveStatusProto.SLAVE_ALIVE);
+        tracker.heartbeat(SLAVE, SlaveStatusProto.SLAVE_DRAINING);
+        Assert.assertEquals("null->SLAVE_ALIVE", transitions.poll());
+        Assert.assertEquals("SLAVE_ALIVE->SLAVE_DELAY", transitions.poll());
+        Assert.assertEquals("SLAVE_DELAY->SLAVE_ALIVE", transitions.poll());
+        Assert.assertEquals("SLAVE_ALIVE->SLAVE_DRAINING", transitions.poll());
+        Assert.assertEquals(1, tracker.getStatuses().size());
+    }
+
+    @Test
+    public void phiSuspectsBeforeFixedTimeout() throws Exception
+    {
+        BlockingQueue<SlaveStatusProto> suspicions = new LinkedBlockingQueue<>();
+        SlaveLivenessTracker phiTracker = new SlaveLivenessTracker(5000L, 10000L, 10L, 3.0d, 100, 50L, 20L,
+                (slaveName, oldStatus, newStatus) ->
+                {
+                    if (newStatus == SlaveStatusProto.SLAVE_DELAY)
+                    {
+                        suspicions.add(newStatus);
+                    }
+                });
+        try
+        {
+            for (int i = 0; i < 20; i++)
+            {
+                phiTracker.heartbeat(SLAVE, SlaveStatusProto.SLAVE_ALIVE);
+                Thread.sleep(20L);
+            }
+            Assert.assertNull(suspicions.poll());
+            Assert.assertTrue(phiTracker.getPhi(SLAVE) < 3.0d);
+
+            Assert.assertNotNull(suspicions.poll(2, TimeUnit.SECONDS));
+            // phi随未上报时间单调增长，转为SLAVE_DELAY后不低于阈值
+            Assert.assertTrue(phiTracker.getPhi(SLAVE) >= 3.0d);
+            Assert.assertEquals(SlaveStatusProto.SLAVE_DELAY, phiTracker.getStatus(SLAVE));
+            Assert.assertTrue(phiTracker.getIdleMillis(SLAVE) < 5000L);
+            Assert.assertEquals(-1.0d, phiTracker.getPhi(OTHER), 0.0d);
+        }
+        finally
+        {
+            phiTracker.stop();
+        }
+    }
+}
@@ -0,0 +1,53 @@
+package com.fiberhome.dbserver.master.slave.heartbeatserver;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import com.fiberhome.dbserver.common.transport.protobuf.DBServerProtos.RegionLoadProto;
+import com.fiberhome.dbserver.common.transport.protobuf.MasterServerProtos.HeartBeatRequest;
+
+public class SlaveLoadViewTest
+{
+    private final SlaveLoadView view = new SlaveLoadView();
+
+    @Test
+    public void rebuildFromFullAndDelta()
+    {
+        Assert.assertTrue(view.apply(HeartBeatRequest.newBuilder().setSequence(1L).setFullState(true)
+                .addRegionLoads(load("r1", 1)).addRegionLoads(load("r2", 1)).build()));
+        Assert.assertTrue(view.apply(HeartBeatRequest.newBuilder().setSequence(2L).setBaseSequence(1L)
+                .addRegionLoads(load("r2", 5)).addRegionLoads(load("r3", 1)).addRemovedRegions("r1").build()));
+        Assert.assertEquals(2L, view.getSequence());
+        Assert.assertEquals(2, view.getRegionLoads().size());
+        Assert.assertEquals(load("r2", 5), view.getRegionLoads().get("r2"));
+        Assert.assertFalse(view.getRegionLoads().containsKey("r1"));
+    }
+
+    @Test
+    public void rejectDeltaOnOtherBase()
+    {
+        Assert.assertFalse(view.apply(HeartBeatRequest.newBuilder().setSequence(3L).setBaseSequence(2L)
+                .addRegionLoads(load("r1", 1)).build()));
+        Assert.assertTrue(view.getRegionLoads().isEmpty());
+
+        view.apply(HeartBeatRequest.newBuilder().setSequence(4L).setFullState(true).addRegionLoads(load("r1", 1))
+                .build());
+        Assert.assertFalse(view.apply(HeartBeatRequest.newBuilder().setSequence(5L).setBaseSequence(3L)
+                .addRemovedRegions("r1").build()));
+        Assert.assertEquals(1, view.getRegionLoads().size());
+    }
+
+    @Test
+    public void legacyBeatReplacesState()
+    {
+        view.apply(HeartBeatRequest.newBuilder().addRegionLoads(load("r1", 1)).build());
+        view.apply(HeartBeatRequest.newBuilder().addRegionLoads(load("r2", 1)).build());
+        Assert.assertEquals(1, view.getRegionLoads().size());
+        Assert.assertTrue(view.getRegionLoads().containsKey("r2"));
+    }
+
+    private static RegionLoadProto load(String regionId, int readRequestCount)
+    {
+        return RegionLoadProto.newBuilder().setRegionID(regionId).setReadRequestCount(readRequestCount).build();
+    }
+}
@@ -0,0 +1,99 @@
+package com.fiberhome.dbserver.protocol.client;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.fiberhome.dbserver.common.transport.protobuf.HeartBeatMangerServiceGrpc;
+import com.fiberhome.dbserver.common.transport.protobuf.MasterServerProtos.HeartBeatCommand;
+import com.fiberhome.dbserver.common.transport.protobuf.MasterServerProtos.HeartBeatCommandType;
+import com.fiberhome.dbserver.common.transport.protobuf.MasterServerProtos.HeartBeatRequest;
+import com.fiberhome.dbserver.common.transport.protobuf.MasterServerProtos.HeartBeatResponse;
+import com.fiberhome.dbserver.protocol.client.ClientMetrics.MethodSnapshot;
+import io.grpc.ClientInterceptors;
+import io.grpc.ManagedChannel;
+import io.grpc.Server;
+import io.grpc.Status;
+import io.grpc.StatusRuntimeException;
+import io.grpc.inprocess.InProcessChannelBuilder;
+import io.grpc.inprocess.InProcessServerBuilder;
+import io.grpc.stub.StreamObserver;
+
+public class ClientMetricsTest
+{
+    private static final String SERVER_NAME = "client-metrics-test";
+
+    private static final String METHOD = HeartBeatMangerServiceGrpc.METHOD_REPORT_HEART_BEAT.getFullMethodName();
+
+    private static final HeartBeatResponse RESPONSE = HeartBeatResponse.newBuilder().setCommand(HeartBeatCommand
+            .newBuilder().setType(HeartBeatCommandType.HEARTBEAT_ACK).setAckedSequence(7L)).build();
+
+    private final ClientMetrics metrics = new ClientMetrics();
+
+    private Server server;
+
+    private ManagedChannel channel;
+
+    private HeartBeatMangerServiceGrpc.HeartBeatMangerServiceBlockingStub stub;
+
+    @Before
+    public void setUp() throws Exception
+    {
+        server = InProcessServerBuilder.forName(SERVER_NAME).directExecutor()
+                .addService(new HeartBeatMangerServiceGrpc.HeartBeatMangerServiceImplBase()
+                {
+                    @Override
+                    public void reportHeartBeat(HeartBeatRequest request,
+                            StreamObserver<HeartBeatResponse> responseObserver)
+                    {
+                        if (request.getReportTime() < 0)
+                        {
+                            responseObserver.onError(Status.UNAVAILABLE.asRuntimeException());
+                            return;
+                        }
+                        responseObserver.onNext(RESPONSE);
+                        responseObserver.onCompleted();
+                    }
+                }).build().start();
+        channel = InProcessChannelBuilder.forName(SERVER_NAME).directExecutor().build();
+        stub = HeartBeatMangerServiceGrpc.newBlockingStub(
+                ClientInterceptors.intercept(channel, new ClientMetricsInterceptor(metrics)));
+    }
+
+    @After
+    public void tearDown()
+    {
+        channel.shutdownNow();
+        server.shutdownNow();
+    }
+
+    @Test
+    public void recordLatencyBytesAndStatus()
+    {
+        HeartBeatRequest request = HeartBeatRequest.newBuilder().setReportTime(1L).build();
+        stub.reportHeartBeat(request);
+        stub.reportHeartBeat(request);
+        try
+        {
+            stub.reportHeartBeat(HeartBeatRequest.newBuilder().setReportTime(-1L).build());
+            Assert.fail();
+        }
+        catch (StatusRuntimeException e)
+        {
+            Assert.assertEquals(Status.Code.UNAVAILABLE, e.getStatus().getCode());
+        }
+
+        MethodSnapshot snapshot = metrics.snapshot().get(METHOD);
+        Assert.assertEquals(3L, snapshot.getLatency().getCount());
+        Assert.assertEquals(Long.valueOf(2L), snapshot.getStatusCounts().get(Status.Code.OK));
+        Assert.assertEquals(Long.valueOf(1L), snapshot.getStatusCounts().get(Status.Code.UNAVAILABLE));
+        Assert.assertEquals(1L, snapshot.getErrors());
+        Assert.assertEquals(0, snapshot.getInFlight());
+        Assert.assertEquals(2L * request.getSerializedSize()
+                + HeartBeatRequest.newBuilder().setReportTime(-1L).build().getSerializedSize(),
+                snapshot.getBytesSent());
+        Assert.assertTrue(RESPONSE.getSerializedSize() > 0);
+        Assert.assertEquals(2L * RESPONSE.getSerializedSize(), snapshot.getBytesReceived());
+    }
+}
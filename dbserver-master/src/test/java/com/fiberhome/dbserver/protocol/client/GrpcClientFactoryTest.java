@@ -0,0 +1,235 @@
+package com.fiberhome.dbserver.protocol.client;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.AfterClass;
+import org.junit.Assert;
+import org.junit.Assume;
+import org.junit.BeforeClass;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import com.fiberhome.dbserver.common.config.ClientCongfiguration;
+import com.fiberhome.dbserver.common.transport.protobuf.SlaveBlockletIndexServiceGrpc;
+import com.fiberhome.dbserver.common.transport.protobuf.SlaveServerProtos.IndexCountRequest;
+import com.fiberhome.dbserver.common.transport.protobuf.SlaveServerProtos.IndexCountResponse;
+import com.fiberhome.dbserver.protocol.common.DomainSockets;
+import com.fiberhome.dbserver.protocol.common.GrpcConstants;
+import com.fiberhome.dbserver.protocol.common.InProcessServers;
+import com.fiberhome.dbserver.protocol.common.NettyEventLoops;
+import com.google.common.util.concurrent.ListenableFuture;
+import io.grpc.Server;
+import io.grpc.StatusRuntimeException;
+import io.grpc.inprocess.InProcessServerBuilder;
+import io.grpc.netty.NettyServerBuilder;
+import io.grpc.stub.StreamObserver;
+import io.netty.channel.unix.DomainSocketAddress;
+
+public class GrpcClientFactoryTest
+{
+    private static final String CHANNEL_NUM_CONF = "dbserver.client.grpc.channel.num";
+
+    private static final String DOMAIN_SOCKET_DIR_CONF = "dbserver.client.grpc.domain.socket.dir";
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private static ClientCongfiguration conf;
+
+    @BeforeClass
+    public static void setUp()
+    {
+        conf = ClientCongfiguration.getClientConfiguration("../conf/dbclient-site.xml");
+    }
+
+    @AfterClass
+    public static void tearDown()
+    {
+        GrpcClientFactory.close();
+        NettyEventLoops.shutdown();
+    }
+
+    @Test
+    public void cacheByHostAndPort()
+    {
+        GrpcClient master = GrpcClientFactory.getGrpcClient("127.0.0.1", 10050);
+        GrpcClient heartbeat = GrpcClientFactory.getGrpcClient("127.0.0.1", 10051);
+        Assert.assertNotSame(master, heartbeat);
+        Assert.assertSame(master, GrpcClientFactory.getGrpcClient("127.0.0.1", 10050));
+        Assert.assertEquals(conf.getGrpcChannelCount(), master.getChannels().length);
+
+        GrpcClientFactory.close();
+        GrpcClient reopened = GrpcClientFactory.getGrpcClient("127.0.0.1", 10050);
+        Assert.assertNotSame(master, reopened);
+        Assert.assertTrue(master.getChannels()[0].isShutdown());
+        Assert.assertFalse(reopened.getChannels()[0].isShutdown());
+    }
+
+    @Test
+    public void completeOffloadCallbackAfterClose() throws Exception
+    {
+        GrpcClient client = GrpcClientFactory.getGrpcClient("127.0.0.1", 10076);
+        SlaveBlockletIndexServiceGrpc.SlaveBlockletIndexServiceFutureStub stub = client.getStub(
+                GrpcConstants.SLAVE_BLOCKINDEX_MANAGER_SERVICE, GrpcClient.ClientStubType.FUTURESTUB,
+                GrpcClient.CallbackExecutor.OFFLOAD);
+        GrpcClientFactory.close();
+
+        // 回调线程池已关闭，调用方仍持有的存根上的调用也应以失败结束
+        ListenableFuture<IndexCountResponse> future = stub.count(IndexCountRequest.getDefaultInstance());
+        try
+        {
+            future.get(5, TimeUnit.SECONDS);
+            Assert.fail();
+        }
+        catch (ExecutionException e)
+        {
+            Assert.assertTrue(e.getCause() instanceof StatusRuntimeException);
+        }
+    }
+
+    @Test
+    public void useInProcessTransportForLocalServer() throws IOException
+    {
+        IndexCountResponse response = IndexCountResponse.newBuilder().setRecodeSize(3).build();
+        String name = InProcessServers.name("127.0.0.1", 10070);
+        Server server = InProcessServerBuilder.forName(name).directExecutor()
+                .addService(new SlaveBlockletIndexServiceGrpc.SlaveBlockletIndexServiceImplBase()
+                {
+                    @Override
+                    public void count(IndexCountRequest request, StreamObserver<IndexCountResponse> observer)
+                    {
+                        observer.onNext(response);
+                        observer.onCompleted();
+                    }
+                }).build().start();
+        InProcessServers.register(name);
+        try
+        {
+            GrpcClient client = GrpcClientFactory.getGrpcClient("127.0.0.1", 10070);
+            Assert.assertEquals(1, client.getChannels().length);
+            SlaveBlockletIndexServiceGrpc.SlaveBlockletIndexServiceBlockingStub stub = client.getStub(
+                    GrpcConstants.SLAVE_BLOCKINDEX_MANAGER_SERVICE, GrpcClient.ClientStubType.BLOCKSTUB);
+            // 进程内传输不经过序列化，客户端拿到的就是服务端发送的对象
+            Assert.assertSame(response, stub.count(IndexCountRequest.getDefaultInstance()));
+        }
+        finally
+        {
+            InProcessServers.unregister(name);
+            server.shutdownNow();
+            GrpcClientFactory.close();
+        }
+        Assert.assertEquals(conf.getGrpcChannelCount(),
+                GrpcClientFactory.getGrpcClient("127.0.0.1", 10070).getChannels().length);
+    }
+
+    @Test
+    public void useDomainSocketForLocalServer() throws IOException
+    {
+        Assume.assumeTrue(NettyEventLoops.getInstance().isDomainSocketAvailable());
+        String origin = conf.get(DOMAIN_SOCKET_DIR_CONF);
+        conf.set(DOMAIN_SOCKET_DIR_CONF, folder.getRoot().getPath());
+        Assert.assertFalse(GrpcClientFactory.isDomainSocketPreferred(conf, "127.0.0.1", 10071));
+        // 10071端口上没有tcp监听，调用成功即说明经由域套接字
+        Server server = NettyEventLoops.getInstance().configureDomainSocket(NettyServerBuilder.forAddress(
+                new DomainSocketAddress(DomainSockets.path(folder.getRoot().getPath(), 10071))))
+                .addService(new SlaveBlockletIndexServiceGrpc.SlaveBlockletIndexServiceImplBase()
+                {
+                    @Override
+                    public void count(IndexCountRequest request, StreamObserver<IndexCountResponse> observer)
+                    {
+                        observer.onNext(IndexCountResponse.newBuilder().setRecodeSize(5).build());
+                        observer.onCompleted();
+                    }
+                }).build().start();
+        try
+        {
+            Assert.assertTrue(GrpcClientFactory.isDomainSocketPreferred(conf, "127.0.0.1", 10071));
+            Assert.assertFalse(GrpcClientFactory.isDomainSocketPreferred(conf, "127.0.0.1", 10072));
+            GrpcClient client = GrpcClientFactory.getGrpcClient("127.0.0.1", 10071);
+            SlaveBlockletIndexServiceGrpc.SlaveBlockletIndexServiceBlockingStub stub = client.getStub(
+                    GrpcConstants.SLAVE_BLOCKINDEX_MANAGER_SERVICE, GrpcClient.ClientStubType.BLOCKSTUB);
+            Assert.assertEquals(5, stub.withDeadlineAfter(5, TimeUnit.SECONDS)
+                    .count(IndexCountRequest.getDefaultInstance()).getRecodeSize());
+        }
+        finally
+        {
+            conf.set(DOMAIN_SOCKET_DIR_CONF, origin);
+            GrpcClientFactory.close();
+            server.shutdownNow();
+        }
+    }
+
+    @Test
+    public void fallBackToTcpWhenDomainSocketIsStale() throws Exception
+    {
+        Assume.assumeTrue(NettyEventLoops.getInstance().isDomainSocketAvailable());
+        String origin = conf.get(DOMAIN_SOCKET_DIR_CONF);
+        conf.set(DOMAIN_SOCKET_DIR_CONF, folder.getRoot().getPath());
+        // 残留的套接字文件没有进程监听，server只在tcp上提供服务
+        Assert.assertTrue(new File(DomainSockets.path(folder.getRoot().getPath(), 10073)).createNewFile());
+        Server server = NettyEventLoops.getInstance().configure(NettyServerBuilder.forAddress(
+                new InetSocketAddress("127.0.0.1", 10073)))
+                .addService(new SlaveBlockletIndexServiceGrpc.SlaveBlockletIndexServiceImplBase()
+                {
+                    @Override
+                    public void count(IndexCountRequest request, StreamObserver<IndexCountResponse> observer)
+                    {
+                        observer.onNext(IndexCountResponse.newBuilder().setRecodeSize(9).build());
+                        observer.onCompleted();
+                    }
+                }).build().start();
+        try
+        {
+            Assert.assertTrue(GrpcClientFactory.isDomainSocketPreferred(conf, "127.0.0.1", 10073));
+            GrpcClient client = GrpcClientFactory.getGrpcClient("127.0.0.1", 10073);
+            int recodeSize = -1;
+            long deadline = System.currentTimeMillis() + 5000L;
+            while (recodeSize < 0 && System.currentTimeMillis() < deadline)
+            {
+                try
+                {
+                    SlaveBlockletIndexServiceGrpc.SlaveBlockletIndexServiceBlockingStub stub = client.getStub(
+                            GrpcConstants.SLAVE_BLOCKINDEX_MANAGER_SERVICE, GrpcClient.ClientStubType.BLOCKSTUB);
+                    recodeSize = stub.withDeadlineAfter(1, TimeUnit.SECONDS)
+                            .count(IndexCountRequest.getDefaultInstance()).getRecodeSize();
+                }
+                catch (StatusRuntimeException e)
+                {
+                    // 回退前的调用经由域套接字失败
+                    Thread.sleep(10L);
+                }
+            }
+            Assert.assertEquals(9, recodeSize);
+        }
+        finally
+        {
+            conf.set(DOMAIN_SOCKET_DIR_CONF, origin);
+            GrpcClientFactory.close();
+            server.shutdownNow();
+        }
+    }
+
+    @Test
+    public void channelCountBounds()
+    {
+        String origin = conf.get(CHANNEL_NUM_CONF);
+        try
+        {
+            conf.set(CHANNEL_NUM_CONF, "0");
+            Assert.assertEquals(1, conf.getGrpcChannelCount());
+            conf.set(CHANNEL_NUM_CONF, "100");
+            Assert.assertEquals(GrpcConstants.MAX_CLIENT_CHANNEL_NUM, conf.getGrpcChannelCount());
+            conf.set(CHANNEL_NUM_CONF, "8");
+            Assert.assertEquals(8, conf.getGrpcChannelCount());
+        }
+        finally
+        {
+            conf.set(CHANNEL_NUM_CONF, origin);
+        }
+    }
+}
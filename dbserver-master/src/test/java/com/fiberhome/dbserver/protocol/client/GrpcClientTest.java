@@ -0,0 +1,207 @@
+package com.fiberhome.dbserver.protocol.client;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.junit.After;
+import org.junit.AfterClass;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import com.fiberhome.dbserver.common.config.ClientCongfiguration;
+import com.fiberhome.dbserver.common.transport.protobuf.HeartBeatMangerServiceGrpc;
+import com.fiberhome.dbserver.common.transport.protobuf.MasterServerProtos.HeartBeatRequest;
+import com.fiberhome.dbserver.common.transport.protobuf.MasterServerProtos.HeartBeatResponse;
+import com.fiberhome.dbserver.protocol.client.GrpcClient.CallbackExecutor;
+import com.fiberhome.dbserver.protocol.client.GrpcClient.ClientStubType;
+import com.fiberhome.dbserver.protocol.common.GrpcConstants;
+import com.google.common.util.concurrent.MoreExecutors;
+import io.grpc.ConnectivityState;
+import io.grpc.ManagedChannel;
+import io.grpc.Server;
+import io.grpc.inprocess.InProcessChannelBuilder;
+import io.grpc.inprocess.InProcessServerBuilder;
+import io.grpc.stub.AbstractStub;
+import io.grpc.stub.StreamObserver;
+
+public class GrpcClientTest
+{
+    private static final String SERVER_NAME = "grpc-client-test";
+
+    /*
+     * 服务端挂起的调用，测试中按需完成
+     */
+    private final List<StreamObserver<HeartBeatResponse>> pendingCalls = new CopyOnWriteArrayList<>();
+
+    private Server server;
+
+    private GrpcClient client;
+
+    @BeforeClass
+    public static void setUpClass()
+    {
+        ClientCongfiguration.getClientConfiguration("../conf/dbclient-site.xml");
+    }
+
+    @AfterClass
+    public static void tearDownClass()
+    {
+        GrpcClientFactory.close();
+    }
+
+    @Before
+    public void setUp() throws Exception
+    {
+        server = InProcessServerBuilder.forName(SERVER_NAME).directExecutor()
+                .addService(new HeartBeatMangerServiceGrpc.HeartBeatMangerServiceImplBase()
+                {
+                    @Override
+                    public void reportHeartBeat(HeartBeatRequest request,
+                            StreamObserver<HeartBeatResponse> responseObserver)
+                    {
+                        pendingCalls.add(responseObserver);
+                    }
+                }).build().start();
+        client = new GrpcClient(2, () -> InProcessChannelBuilder.forName(SERVER_NAME).directExecutor().build());
+    }
+
+    @After
+    public void tearDown()
+    {
+        client.shutdown();
+        server.shutdownNow();
+    }
+
+    @Test
+    public void selectLeastOutstandingChannel() throws Exception
+    {
+        PooledChannel first = client.selectChannel();
+        startCall(first);
+        waitOutstanding(first, 1);
+
+        PooledChannel second = client.selectChannel();
+        Assert.assertNotSame(first, second);
+        Assert.assertEquals(0, second.getOutstandingCalls());
+        startCall(second);
+        waitOutstanding(second, 1);
+
+        // 完成第一条链路上的调用后应重新选中该链路
+        pendingCalls.get(0).onNext(HeartBeatResponse.getDefaultInstance());
+        pendingCalls.get(0).onCompleted();
+        waitOutstanding(first, 0);
+        Assert.assertSame(first, client.selectChannel());
+    }
+
+    @Test
+    public void rebuildShutdownChannel()
+    {
+        ManagedChannel[] before = client.getChannels();
+        before[0].shutdownNow();
+        before[1].shutdownNow();
+
+        PooledChannel selected = client.selectChannel();
+        Assert.assertTrue(selected.isUsable());
+        Assert.assertNotSame(before[0], selected.getManagedChannel());
+        Assert.assertNotSame(before[1], selected.getManagedChannel());
+    }
+
+    @Test
+    public void noRebuildAfterShutdown()
+    {
+        client.shutdown();
+        Assert.assertFalse(client.selectChannel().isUsable());
+    }
+
+    @Test
+    public void prewarmAndReconnectIdleChannel() throws Exception
+    {
+        ManagedChannel channel = client.getChannels()[0];
+        waitState(channel, ConnectivityState.READY);
+
+        // 链路进入空闲后应在后台重新建立连接，无需等待下一次调用
+        channel.enterIdle();
+        waitState(channel, ConnectivityState.READY);
+    }
+
+    @Test
+    public void stubPerCallbackExecutor() throws Exception
+    {
+        HeartBeatMangerServiceGrpc.HeartBeatMangerServiceFutureStub direct = client.getStub(
+                GrpcConstants.HEARTBEAT_MANAGER_SERVICE, ClientStubType.FUTURESTUB, CallbackExecutor.DIRECT);
+        Assert.assertSame(MoreExecutors.directExecutor(), direct.getCallOptions().getExecutor());
+        Assert.assertNull(((AbstractStub<?>) client.getServiceFutureStub(GrpcConstants.HEARTBEAT_MANAGER_SERVICE))
+                .getCallOptions().getExecutor());
+
+        // 回调卸载到有界线程池中执行
+        HeartBeatMangerServiceGrpc.HeartBeatMangerServiceStub offload = client.getStub(
+                GrpcConstants.HEARTBEAT_MANAGER_SERVICE, ClientStubType.ASYNCSTUB, CallbackExecutor.OFFLOAD);
+        AtomicReference<String> callbackThread = new AtomicReference<>();
+        CountDownLatch done = new CountDownLatch(1);
+        offload.reportHeartBeat(HeartBeatRequest.getDefaultInstance(), new StreamObserver<HeartBeatResponse>()
+        {
+            @Override
+            public void onNext(HeartBeatResponse value)
+            {
+                callbackThread.set(Thread.currentThread().getName());
+            }
+
+            @Override
+            public void onError(Throwable t)
+            {
+                done.countDown();
+            }
+
+            @Override
+            public void onCompleted()
+            {
+                done.countDown();
+            }
+        });
+        waitPending(1);
+        pendingCalls.get(0).onNext(HeartBeatResponse.getDefaultInstance());
+        pendingCalls.get(0).onCompleted();
+        Assert.assertTrue(done.await(5, TimeUnit.SECONDS));
+        Assert.assertTrue(callbackThread.get().startsWith(GrpcConstants.GRPC_CLIENT_OFFLOAD_THREAD_PREFIX));
+    }
+
+    private void waitPending(int expected) throws InterruptedException
+    {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (pendingCalls.size() < expected && System.nanoTime() < deadline)
+        {
+            Thread.sleep(10);
+        }
+        Assert.assertEquals(expected, pendingCalls.size());
+    }
+
+    private static void waitState(ManagedChannel channel, ConnectivityState expected) throws InterruptedException
+    {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (channel.getState(false) != expected && System.nanoTime() < deadline)
+        {
+            Thread.sleep(10);
+        }
+        Assert.assertEquals(expected, channel.getState(false));
+    }
+
+    private void startCall(PooledChannel channel)
+    {
+        HeartBeatMangerServiceGrpc.newFutureStub(channel.getChannel())
+                .reportHeartBeat(HeartBeatRequest.getDefaultInstance());
+    }
+
+    private static void waitOutstanding(PooledChannel channel, int expected) throws InterruptedException
+    {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (channel.getOutstandingCalls() != expected && System.nanoTime() < deadline)
+        {
+            Thread.sleep(10);
+        }
+        Assert.assertEquals(expected, channel.getOutstandingCalls());
+    }
+}
@@ -0,0 +1,68 @@
+package com.fiberhome.dbserver.protocol.client;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.fiberhome.dbserver.common.transport.protobuf.HeartBeatMangerServiceGrpc;
+import com.fiberhome.dbserver.common.transport.protobuf.SlaveManagerServiceGrpc;
+import com.fiberhome.dbserver.protocol.client.GrpcClient.ClientStubType;
+import com.fiberhome.dbserver.protocol.common.GrpcConstants;
+import io.grpc.ManagedChannel;
+import io.grpc.inprocess.InProcessChannelBuilder;
+
+public class GrpcStubRegistryTest
+{
+    private ManagedChannel first;
+
+    private ManagedChannel second;
+
+    @Before
+    public void setUp()
+    {
+        first = InProcessChannelBuilder.forName("grpc-stub-registry-test").build();
+        second = InProcessChannelBuilder.forName("grpc-stub-registry-test").build();
+    }
+
+    @After
+    public void tearDown()
+    {
+        first.shutdownNow();
+        second.shutdownNow();
+    }
+
+    @Test
+    public void cacheStubPerChannel()
+    {
+        PooledChannel firstChannel = new PooledChannel(first);
+        PooledChannel secondChannel = new PooledChannel(second);
+
+        Object stub = firstChannel.getStub(GrpcConstants.HEARTBEAT_MANAGER_SERVICE, ClientStubType.FUTURESTUB);
+        Assert.assertTrue(stub instanceof HeartBeatMangerServiceGrpc.HeartBeatMangerServiceFutureStub);
+        Assert.assertSame(stub,
+                firstChannel.getStub(GrpcConstants.HEARTBEAT_MANAGER_SERVICE, ClientStubType.FUTURESTUB));
+        Assert.assertNotSame(stub,
+                secondChannel.getStub(GrpcConstants.HEARTBEAT_MANAGER_SERVICE, ClientStubType.FUTURESTUB));
+        Assert.assertTrue(firstChannel.getStub(GrpcConstants.HEARTBEAT_MANAGER_SERVICE,
+                ClientStubType.BLOCKSTUB) instanceof HeartBeatMangerServiceGrpc.HeartBeatMangerServiceBlockingStub);
+    }
+
+    @Test
+    public void resolveUnregisteredService()
+    {
+        String serviceName = SlaveManagerServiceGrpc.class.getName();
+        Assert.assertTrue(GrpcStubRegistry.newStub(serviceName, ClientStubType.ASYNCSTUB,
+                first) instanceof SlaveManagerServiceGrpc.SlaveManagerServiceStub);
+        Assert.assertTrue(GrpcStubRegistry.newStub(serviceName, ClientStubType.BLOCKSTUB,
+                first) instanceof SlaveManagerServiceGrpc.SlaveManagerServiceBlockingStub);
+        Assert.assertTrue(GrpcStubRegistry.newStub(serviceName, ClientStubType.FUTURESTUB,
+                first) instanceof SlaveManagerServiceGrpc.SlaveManagerServiceFutureStub);
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void resolveUnknownService()
+    {
+        GrpcStubRegistry.newStub("com.fiberhome.dbserver.UnknownServiceGrpc", ClientStubType.ASYNCSTUB, first);
+    }
+}
@@ -0,0 +1,223 @@
+package com.fiberhome.dbserver.protocol.client;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import com.fiberhome.dbserver.common.config.ClientCongfiguration;
+import com.fiberhome.dbserver.common.transport.protobuf.DBServerProtos.ServerNameProto;
+import com.fiberhome.dbserver.common.transport.protobuf.SlaveBlockletIndexServiceGrpc;
+import com.fiberhome.dbserver.common.transport.protobuf.SlaveCoordinateServiceGrpc;
+import com.fiberhome.dbserver.common.transport.protobuf.SlaveServerProtos.IndexCountRequest;
+import com.fiberhome.dbserver.common.transport.protobuf.SlaveServerProtos.IndexCountResponse;
+import io.grpc.ManagedChannel;
+import io.grpc.Server;
+import io.grpc.Status;
+import io.grpc.inprocess.InProcessChannelBuilder;
+import io.grpc.inprocess.InProcessServerBuilder;
+import io.grpc.stub.ServerCallStreamObserver;
+import io.grpc.stub.StreamObserver;
+
+public class HedgedIndexClientTest
+{
+    private static final String DEFAULT_DELAY_CONF = "dbserver.client.hedge.delay.default";
+
+    private static final ServerNameProto PRIMARY = ServerNameProto.newBuilder().setIp("127.0.0.1").setPort(1)
+            .build();
+
+    private static final ServerNameProto BACKUP = ServerNameProto.newBuilder().setIp("127.0.0.1").setPort(2)
+            .build();
+
+    private static ClientCongfiguration conf;
+
+    /*
+     * 首个副本的行为
+     */
+    private volatile boolean primaryFails;
+
+    private volatile boolean primaryHangs;
+
+    private final CountDownLatch primaryCancelled = new CountDownLatch(1);
+
+    private final AtomicInteger backupCalls = new AtomicInteger();
+
+    private Server primaryServer;
+
+    private Server backupServer;
+
+    private ManagedChannel primaryChannel;
+
+    private ManagedChannel backupChannel;
+
+    private Server coordinatorServer;
+
+    private ManagedChannel coordinatorChannel;
+
+    private ScheduledExecutorService scheduler;
+
+    @BeforeClass
+    public static void setUpClass()
+    {
+        conf = ClientCongfiguration.getClientConfiguration("../conf/dbclient-site.xml");
+    }
+
+    @Before
+    public void setUp() throws Exception
+    {
+        primaryServer = InProcessServerBuilder.forName("hedge-primary").directExecutor()
+                .addService(new SlaveBlockletIndexServiceGrpc.SlaveBlockletIndexServiceImplBase()
+                {
+                    @Override
+                    public void count(IndexCountRequest request, StreamObserver<IndexCountResponse> observer)
+                    {
+                        if (primaryFails)
+                        {
+                            observer.onError(Status.UNAVAILABLE.asRuntimeException());
+                        }
+                        else if (primaryHangs)
+                        {
+                            ((ServerCallStreamObserver<IndexCountResponse>) observer)
+                                    .setOnCancelHandler(primaryCancelled::countDown);
+                        }
+                        else
+                        {
+                            observer.onNext(IndexCountResponse.newBuilder().setRecodeSize(1).build());
+                            observer.onCompleted();
+                        }
+                    }
+                }).build().start();
+        backupServer = InProcessServerBuilder.forName("hedge-backup").directExecutor()
+                .addService(new SlaveBlockletIndexServiceGrpc.SlaveBlockletIndexServiceImplBase()
+                {
+                    @Override
+                    public void count(IndexCountRequest request, StreamObserver<IndexCountResponse> observer)
+                    {
+                        backupCalls.incrementAndGet();
+                        observer.onNext(IndexCountResponse.newBuilder().setRecodeSize(2).build());
+                        observer.onCompleted();
+                    }
+                }).build().start();
+        coordinatorServer = InProcessServerBuilder.forName("hedge-coordinator").directExecutor()
+                .addService(new SlaveCoordinateServiceGrpc.SlaveCoordinateServiceImplBase()
+                {
+                    @Override
+                    public void count(IndexCountRequest request, StreamObserver<IndexCountResponse> observer)
+                    {
+                        observer.onNext(IndexCountResponse.newBuilder().setRecodeSize(3).build());
+                        observer.onCompleted();
+                    }
+                }).build().start();
+        coordinatorChannel = InProcessChannelBuilder.forName("hedge-coordinator").directExecutor().build();
+        primaryChannel = InProcessChannelBuilder.forName("hedge-primary").directExecutor().build();
+        backupChannel = InProcessChannelBuilder.forName("hedge-backup").directExecutor().build();
+        scheduler = Executors.newSingleThreadScheduledExecutor();
+    }
+
+    @After
+    public void tearDown()
+    {
+        scheduler.shutdownNow();
+        primaryChannel.shutdownNow();
+        backupChannel.shutdownNow();
+        coordinatorChannel.shutdownNow();
+        primaryServer.shutdownNow();
+        backupServer.shutdownNow();
+        coordinatorServer.shutdownNow();
+    }
+
+    private HedgedIndexClient newClient()
+    {
+        return new HedgedIndexClient(conf, replica -> SlaveBlockletIndexServiceGrpc
+                .newFutureStub(replica.getPort() == PRIMARY.getPort() ? primaryChannel : backupChannel),
+                () -> SlaveCoordinateServiceGrpc.newFutureStub(coordinatorChannel), scheduler);
+    }
+
+    @Test
+    public void coordinateWithoutReplica() throws Exception
+    {
+        IndexCountResponse response = newClient().count(Collections.emptyList(),
+                IndexCountRequest.getDefaultInstance(), 5000).get(5, TimeUnit.SECONDS);
+        Assert.assertEquals(3, response.getRecodeSize());
+        Assert.assertEquals(0, backupCalls.get());
+    }
+
+    @Test
+    public void noHedgeWhenPrimaryAnswers() throws Exception
+    {
+        IndexCountResponse response = newClient().count(Arrays.asList(PRIMARY, BACKUP),
+                IndexCountRequest.getDefaultInstance(), 5000).get(5, TimeUnit.SECONDS);
+        Assert.assertEquals(1, response.getRecodeSize());
+        Assert.assertEquals(0, backupCalls.get());
+    }
+
+    @Test
+    public void hedgeSlowPrimaryAndCancelLoser() throws Exception
+    {
+        primaryHangs = true;
+        IndexCountResponse response = newClient().count(Arrays.asList(PRIMARY, BACKUP),
+                IndexCountRequest.getDefaultInstance(), 5000).get(5, TimeUnit.SECONDS);
+        Assert.assertEquals(2, response.getRecodeSize());
+        Assert.assertEquals(1, backupCalls.get());
+        Assert.assertTrue(primaryCancelled.await(5, TimeUnit.SECONDS));
+    }
+
+    @Test
+    public void hedgeImmediatelyOnPrimaryFailure() throws Exception
+    {
+        primaryFails = true;
+        String origin = conf.get(DEFAULT_DELAY_CONF);
+        conf.set(DEFAULT_DELAY_CONF, "60000");
+        try
+        {
+            IndexCountResponse response = newClient().count(Arrays.asList(PRIMARY, BACKUP),
+                    IndexCountRequest.getDefaultInstance(), 5000).get(5, TimeUnit.SECONDS);
+            Assert.assertEquals(2, response.getRecodeSize());
+        }
+        finally
+        {
+            conf.set(DEFAULT_DELAY_CONF, origin);
+        }
+    }
+
+    @Test
+    public void hedgeDelayFollowsPercentile()
+    {
+        HedgedIndexClient client = newClient();
+        Assert.assertEquals(TimeUnit.MILLISECONDS.toMicros(conf.getHedgeDefaultDelay()),
+                client.hedgeDelayMicros(PRIMARY));
+        LatencyWindow window = client.window(PRIMARY);
+        for (int i = 1; i <= 100; i++)
+        {
+            window.record(i * 1000L);
+        }
+        Assert.assertEquals(95000L, window.percentile(0.95D, 1));
+        Assert.assertEquals(TimeUnit.MILLISECONDS.toMicros(95), client.hedgeDelayMicros(PRIMARY));
+    }
+
+    @Test
+    public void latencyWindowKeepsRecentSamples()
+    {
+        LatencyWindow window = new LatencyWindow(16);
+        Assert.assertEquals(-1L, window.percentile(0.5D, 1));
+        List<Long> samples = Arrays.asList(1000L, 1L, 2L, 3L, 4L, 5L, 6L, 7L, 8L, 9L, 10L, 11L, 12L, 13L, 14L, 15L,
+                16L);
+        for (long sample : samples)
+        {
+            window.record(sample);
+        }
+        Assert.assertEquals(16, window.size());
+        // 最早的样本1000已被覆盖
+        Assert.assertEquals(16L, window.percentile(1D, 1));
+    }
+}
@@ -0,0 +1,136 @@
+package com.fiberhome.dbserver.protocol.client;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import com.fiberhome.dbserver.common.config.ClientCongfiguration;
+import com.fiberhome.dbserver.common.transport.protobuf.HeartBeatMangerServiceGrpc;
+import com.fiberhome.dbserver.common.transport.protobuf.MasterServerProtos.HeartBeatRequest;
+import com.fiberhome.dbserver.common.transport.protobuf.MasterServerProtos.HeartBeatResponse;
+import io.grpc.ManagedChannel;
+import io.grpc.Server;
+import io.grpc.Status;
+import io.grpc.StatusRuntimeException;
+import io.grpc.inprocess.InProcessChannelBuilder;
+import io.grpc.inprocess.InProcessServerBuilder;
+import io.grpc.stub.StreamObserver;
+
+public class RetryServiceConfigTest
+{
+    private static final String SERVER_NAME = "retry-test";
+
+    private static final String METHODS_CONF = "dbserver.client.grpc.retry.methods";
+
+    private static ClientCongfiguration conf;
+
+    /*
+     * 服务端在成功前返回UNAVAILABLE的次数
+     */
+    private final AtomicInteger failuresLeft = new AtomicInteger();
+
+    private final AtomicInteger calls = new AtomicInteger();
+
+    private Server server;
+
+    private ManagedChannel channel;
+
+    private String origin;
+
+    @BeforeClass
+    public static void setUpClass()
+    {
+        conf = ClientCongfiguration.getClientConfiguration("../conf/dbclient-site.xml");
+    }
+
+    @Before
+    public void setUp() throws Exception
+    {
+        origin = conf.get(METHODS_CONF);
+        server = InProcessServerBuilder.forName(SERVER_NAME).directExecutor()
+                .addService(new HeartBeatMangerServiceGrpc.HeartBeatMangerServiceImplBase()
+                {
+                    @Override
+                    public void reportHeartBeat(HeartBeatRequest request,
+                            StreamObserver<HeartBeatResponse> responseObserver)
+                    {
+                        calls.incrementAndGet();
+                        if (failuresLeft.getAndDecrement() > 0)
+                        {
+                            responseObserver.onError(Status.UNAVAILABLE.asRuntimeException());
+                            return;
+                        }
+                        responseObserver.onNext(HeartBeatResponse.getDefaultInstance());
+                        responseObserver.onCompleted();
+                    }
+                }).build().start();
+    }
+
+    @After
+    public void tearDown()
+    {
+        conf.set(METHODS_CONF, origin);
+        if (channel != null)
+        {
+            channel.shutdownNow();
+        }
+        server.shutdownNow();
+    }
+
+    @SuppressWarnings("unchecked")
+    @Test
+    public void buildPerServiceRetryPolicy()
+    {
+        Map<String, Object> serviceConfig = RetryServiceConfig.build(conf);
+        List<Object> methodConfigs = (List<Object>) serviceConfig.get("methodConfig");
+        Assert.assertEquals(3, methodConfigs.size());
+        Map<String, Object> policy = (Map<String, Object>) ((Map<String, Object>) methodConfigs.get(0))
+                .get("retryPolicy");
+        Assert.assertEquals(3D, policy.get("maxAttempts"));
+        Assert.assertEquals("0.100s", policy.get("initialBackoff"));
+        Assert.assertEquals(10D, ((Map<String, Object>) serviceConfig.get("retryThrottling")).get("maxTokens"));
+
+        conf.set(METHODS_CONF, "");
+        Assert.assertNull(RetryServiceConfig.build(conf));
+    }
+
+    @Test
+    public void retryConfiguredMethod()
+    {
+        conf.set(METHODS_CONF, "HeartBeatMangerService/*");
+        failuresLeft.set(2);
+        HeartBeatMangerServiceGrpc.newBlockingStub(newChannel()).reportHeartBeat(HeartBeatRequest.getDefaultInstance());
+        Assert.assertEquals(3, calls.get());
+    }
+
+    @Test
+    public void noRetryForOtherMethods()
+    {
+        conf.set(METHODS_CONF, "TableManagerService/getTableDescriptor");
+        failuresLeft.set(1);
+        try
+        {
+            HeartBeatMangerServiceGrpc.newBlockingStub(newChannel())
+                    .reportHeartBeat(HeartBeatRequest.getDefaultInstance());
+            Assert.fail();
+        }
+        catch (StatusRuntimeException e)
+        {
+            Assert.assertEquals(Status.Code.UNAVAILABLE, e.getStatus().getCode());
+        }
+        Assert.assertEquals(1, calls.get());
+    }
+
+    private ManagedChannel newChannel()
+    {
+        channel = InProcessChannelBuilder.forName(SERVER_NAME).directExecutor()
+                .defaultServiceConfig(RetryServiceConfig.build(conf)).enableRetry().build();
+        return channel;
+    }
+}
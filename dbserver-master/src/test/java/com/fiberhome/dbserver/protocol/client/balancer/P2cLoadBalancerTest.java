@@ -0,0 +1,103 @@
+package com.fiberhome.dbserver.protocol.client.balancer;
+
+import java.net.InetSocketAddress;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import com.fiberhome.dbserver.common.transport.protobuf.DBServerProtos.RegionLoadProto;
+import com.fiberhome.dbserver.common.transport.protobuf.DBServerProtos.ServerNameProto;
+import com.fiberhome.dbserver.common.transport.protobuf.DBServerProtos.SlaveLoadProto;
+import com.fiberhome.dbserver.common.transport.protobuf.DBServerProtos.SlaveStatusProto;
+import com.fiberhome.dbserver.common.transport.protobuf.MasterServerProtos.SlaveQueryResponse;
+import com.fiberhome.dbserver.common.transport.protobuf.MasterServerProtos.TableElementProto;
+import io.grpc.Attributes;
+import io.grpc.ClientStreamTracer;
+import io.grpc.EquivalentAddressGroup;
+import io.grpc.LoadBalancer;
+import io.grpc.Metadata;
+import io.grpc.NameResolverRegistry;
+
+public class P2cLoadBalancerTest
+{
+    @Test
+    public void pickLowerCost()
+    {
+        P2cLoadBalancer.SlaveSubchannel idle = newSlave(0L);
+        P2cLoadBalancer.SlaveSubchannel hot = newSlave(1000L);
+        P2cLoadBalancer.P2cPicker picker = new P2cLoadBalancer.P2cPicker(Arrays.asList(idle, hot));
+        for (int i = 0; i < 10; i++)
+        {
+            Assert.assertSame(idle, picker.select());
+        }
+
+        // 在途调用增加后代价超过读负载高的Slave
+        LoadBalancer.PickResult result = picker.pickSubchannel(null);
+        for (int i = 0; i < 3; i++)
+        {
+            result.getStreamTracerFactory().newClientStreamTracer(ClientStreamTracer.StreamInfo.newBuilder().build(),
+                    new Metadata());
+        }
+        Assert.assertSame(hot, picker.select());
+    }
+
+    @Test
+    public void keepDnsAsDefaultScheme()
+    {
+        SlaveBalancing.register();
+        // 注册后无scheme的目标地址仍按dns解析
+        Assert.assertEquals("dns", NameResolverRegistry.getDefaultRegistry().asFactory().getDefaultScheme());
+    }
+
+    @Test
+    public void resolveAliveSlaves()
+    {
+        SlaveQueryResponse response = SlaveQueryResponse.newBuilder()
+                .addTable(newElement("10.0.0.1", SlaveStatusProto.SLAVE_ALIVE, 3, 4))
+                .addTable(newElement("10.0.0.2", SlaveStatusProto.SLAVE_DEAD, 5))
+                .build();
+        List<EquivalentAddressGroup> addresses = SlaveNameResolver.toAddresses(response);
+        Assert.assertEquals(1, addresses.size());
+        InetSocketAddress address = (InetSocketAddress) addresses.get(0).getAddresses().get(0);
+        Assert.assertEquals("10.0.0.1", address.getHostString());
+        Assert.assertEquals(10060, address.getPort());
+        Assert.assertEquals(Long.valueOf(7L), addresses.get(0).getAttributes().get(SlaveBalancing.READ_REQUEST_COUNT));
+    }
+
+    private static TableElementProto newElement(String ip, SlaveStatusProto status, int... reads)
+    {
+        SlaveLoadProto.Builder load = SlaveLoadProto.newBuilder();
+        for (int read : reads)
+        {
+            load.addRegionLoads(RegionLoadProto.newBuilder().setReadRequestCount(read));
+        }
+        return TableElementProto.newBuilder().setSlaveStatus(status)
+                .setServerName(ServerNameProto.newBuilder().setIp(ip).setPort(10060)).setSlaveLoad(load).build();
+    }
+
+    private static P2cLoadBalancer.SlaveSubchannel newSlave(long reads)
+    {
+        P2cLoadBalancer.SlaveSubchannel slave = new P2cLoadBalancer.SlaveSubchannel(new LoadBalancer.Subchannel()
+        {
+            @Override
+            public void shutdown()
+            {
+            }
+
+            @Override
+            public void requestConnection()
+            {
+            }
+
+            @Override
+            public Attributes getAttributes()
+            {
+                return Attributes.EMPTY;
+            }
+        });
+        slave.setReadRequestCount(reads);
+        return slave;
+    }
+}
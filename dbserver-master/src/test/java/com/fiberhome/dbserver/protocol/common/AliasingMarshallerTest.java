@@ -0,0 +1,100 @@
+package com.fiberhome.dbserver.protocol.common;
+
+import java.io.ByteArrayInputStream;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.fiberhome.dbserver.common.transport.protobuf.DBServerProtos.InputFormatProto;
+import com.fiberhome.dbserver.common.transport.protobuf.SlaveRegionMangerServiceGrpc;
+import com.fiberhome.dbserver.common.transport.protobuf.SlaveServerProtos.RegionCreateRequest;
+import com.fiberhome.dbserver.common.transport.protobuf.SlaveServerProtos.RegionCreateResponse;
+import com.google.protobuf.ByteString;
+import com.google.protobuf.InvalidProtocolBufferException;
+import io.grpc.ManagedChannel;
+import io.grpc.MethodDescriptor;
+import io.grpc.Server;
+import io.grpc.ServerServiceDefinition;
+import io.grpc.inprocess.InProcessChannelBuilder;
+import io.grpc.inprocess.InProcessServerBuilder;
+import io.grpc.stub.StreamObserver;
+
+public class AliasingMarshallerTest
+{
+    private static final String SERVER_NAME = "aliasing-test";
+
+    /*
+     * 服务端解析出的嵌套对象
+     */
+    private final AtomicReference<InputFormatProto> nested = new AtomicReference<>();
+
+    private ServerServiceDefinition definition;
+
+    private Server server;
+
+    private ManagedChannel channel;
+
+    @Before
+    public void setUp() throws Exception
+    {
+        definition = AliasingMarshaller.wrap(new SlaveRegionMangerServiceGrpc.SlaveRegionMangerServiceImplBase()
+        {
+            @Override
+            public void createRegion(RegionCreateRequest request, StreamObserver<RegionCreateResponse> observer)
+            {
+                try
+                {
+                    nested.set(AliasingMarshaller.parseNested(request.getSerializedRequest(),
+                            InputFormatProto.parser()));
+                    observer.onNext(RegionCreateResponse.newBuilder().addErrorRegions(request.getName()).build());
+                    observer.onCompleted();
+                }
+                catch (InvalidProtocolBufferException e)
+                {
+                    observer.onError(e);
+                }
+            }
+        }.bindService());
+        server = InProcessServerBuilder.forName(SERVER_NAME).directExecutor().addService(definition).build().start();
+        channel = InProcessChannelBuilder.forName(SERVER_NAME).directExecutor().build();
+    }
+
+    @After
+    public void tearDown()
+    {
+        channel.shutdownNow();
+        server.shutdownNow();
+    }
+
+    @Test
+    public void parseNestedPayloadOnDemand()
+    {
+        InputFormatProto format = InputFormatProto.newBuilder().setName("orc")
+                .setSerializedInputFormat(ByteString.copyFrom(new byte[4096])).build();
+        RegionCreateResponse response = SlaveRegionMangerServiceGrpc.newBlockingStub(channel).createRegion(
+                RegionCreateRequest.newBuilder().setName("r1").setSerializedRequest(format.toByteString()).build());
+        Assert.assertEquals("r1", response.getErrorRegions(0));
+        Assert.assertEquals(format, nested.get());
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    public void bytesFieldsAliasTheRequestBuffer()
+    {
+        MethodDescriptor<RegionCreateRequest, RegionCreateResponse> method =
+                (MethodDescriptor<RegionCreateRequest, RegionCreateResponse>) definition
+                        .getMethod(SlaveRegionMangerServiceGrpc.METHOD_CREATE_REGION.getFullMethodName())
+                        .getMethodDescriptor();
+        Assert.assertTrue(method.getRequestMarshaller() instanceof AliasingMarshaller);
+
+        RegionCreateRequest request = RegionCreateRequest.newBuilder().setName("r1")
+                .setSerializedRequest(ByteString.copyFrom(new byte[] {1, 2, 3})).build();
+        RegionCreateRequest parsed = method.parseRequest(new ByteArrayInputStream(request.toByteArray()));
+        Assert.assertEquals(request, parsed);
+        // 别名解析得到的是引用原数组一段的ByteString，而不是复制出的新数组
+        Assert.assertEquals("BoundedByteString", parsed.getSerializedRequest().getClass().getSimpleName());
+    }
+}
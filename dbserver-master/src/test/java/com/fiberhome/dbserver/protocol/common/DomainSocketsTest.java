@@ -0,0 +1,62 @@
+package com.fiberhome.dbserver.protocol.common;
+
+import java.io.File;
+
+import org.junit.AfterClass;
+import org.junit.Assert;
+import org.junit.Assume;
+import org.junit.BeforeClass;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import com.fiberhome.dbserver.common.config.ClientCongfiguration;
+import io.grpc.Server;
+import io.grpc.netty.NettyServerBuilder;
+import io.netty.channel.unix.DomainSocketAddress;
+
+public class DomainSocketsTest
+{
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @BeforeClass
+    public static void setUp()
+    {
+        ClientCongfiguration.getClientConfiguration("../conf/dbclient-site.xml");
+    }
+
+    @AfterClass
+    public static void tearDown()
+    {
+        NettyEventLoops.shutdown();
+    }
+
+    @Test
+    public void detectLiveSocket() throws Exception
+    {
+        Assume.assumeTrue(NettyEventLoops.getInstance().isDomainSocketAvailable());
+        String path = DomainSockets.path(folder.getRoot().getPath(), 10074);
+        Assert.assertFalse(DomainSockets.isLive(path));
+
+        Server server = NettyEventLoops.getInstance().configureDomainSocket(NettyServerBuilder.forAddress(
+                new DomainSocketAddress(path))).build().start();
+        try
+        {
+            Assert.assertTrue(DomainSockets.isLive(path));
+        }
+        finally
+        {
+            server.shutdownNow().awaitTermination();
+        }
+    }
+
+    @Test
+    public void staleFileIsNotLive() throws Exception
+    {
+        Assume.assumeTrue(NettyEventLoops.getInstance().isDomainSocketAvailable());
+        File stale = new File(DomainSockets.path(folder.getRoot().getPath(), 10075));
+        Assert.assertTrue(stale.createNewFile());
+        Assert.assertFalse(DomainSockets.isLive(stale.getPath()));
+    }
+}
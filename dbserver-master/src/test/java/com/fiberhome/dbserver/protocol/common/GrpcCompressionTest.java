@@ -0,0 +1,76 @@
+package com.fiberhome.dbserver.protocol.common;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Arrays;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import com.fiberhome.dbserver.common.transport.protobuf.DBServerProtos.BaseResponseProto;
+import com.fiberhome.dbserver.common.transport.protobuf.SlaveServerProtos.IndexCountResponse;
+
+public class GrpcCompressionTest
+{
+    @Test
+    public void parsePolicy()
+    {
+        CompressionPolicy policy = CompressionPolicy.parse(new String[] {"SlaveBlockletIndexService/query:deflate",
+            "SlaveBlockletDataService/*:gzip", ""}, 16);
+        Assert.assertEquals(GrpcCompression.DEFLATE, policy.codecFor("SlaveBlockletIndexService/query"));
+        Assert.assertNull(policy.codecFor("SlaveBlockletIndexService/count"));
+        Assert.assertEquals(GrpcCompression.GZIP, policy.codecFor("SlaveBlockletDataService/getBlocklets"));
+        Assert.assertNull(policy.codecFor("HeartBeatMangerService/reportHeartBeat"));
+
+        Assert.assertFalse(policy.shouldCompress(IndexCountResponse.newBuilder().setRecodeSize(1).build()));
+        Assert.assertTrue(policy.shouldCompress(IndexCountResponse.newBuilder().setRecodeSize(1)
+                .setBaseResponse(BaseResponseProto.newBuilder().setErrorMessage("0123456789abcdef")).build()));
+        Assert.assertTrue(CompressionPolicy.parse(new String[0], 0).isEmpty());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectUnknownCodec()
+    {
+        CompressionPolicy.parse(new String[] {"SlaveBlockletIndexService/query:lz4"}, 0);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectMalformedEntry()
+    {
+        CompressionPolicy.parse(new String[] {"query:gzip"}, 0);
+    }
+
+    @Test
+    public void meteredCodecRoundTrip() throws Exception
+    {
+        GrpcCompression.MeteredCodec codec = GrpcCompression.getCodec(GrpcCompression.DEFLATE);
+        long messages = codec.getCompressedMessages();
+        long rawBytes = codec.getRawBytesOut();
+        byte[] raw = new byte[64 * 1024];
+        Arrays.fill(raw, (byte) 'x');
+
+        ByteArrayOutputStream compressed = new ByteArrayOutputStream();
+        try (OutputStream os = codec.compress(compressed))
+        {
+            os.write(raw);
+        }
+        Assert.assertEquals(messages + 1, codec.getCompressedMessages());
+        Assert.assertEquals(rawBytes + raw.length, codec.getRawBytesOut());
+        Assert.assertTrue(compressed.size() < raw.length / 10);
+
+        ByteArrayOutputStream restored = new ByteArrayOutputStream();
+        try (InputStream is = codec.decompress(new ByteArrayInputStream(compressed.toByteArray())))
+        {
+            byte[] buffer = new byte[4096];
+            int n;
+            while ((n = is.read(buffer)) > 0)
+            {
+                restored.write(buffer, 0, n);
+            }
+        }
+        Assert.assertArrayEquals(raw, restored.toByteArray());
+        Assert.assertTrue(GrpcCompression.getStats().contains("deflate[messages="));
+    }
+}
@@ -0,0 +1,42 @@
+package com.fiberhome.dbserver.protocol.common;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class LatencyHistogramTest
+{
+    @Test
+    public void bucketBounds()
+    {
+        for (long value : new long[] {0L, 1L, 15L, 16L, 31L, 32L, 33L, 1000L, 123456789L, Long.MAX_VALUE})
+        {
+            int bucket = LatencyHistogram.bucketOf(value);
+            long upper = LatencyHistogram.upperBoundOf(bucket);
+            Assert.assertTrue(value <= upper);
+            // 相对误差不超过1/16
+            Assert.assertTrue(upper - value <= Math.max(0L, value / 16));
+            if (bucket > 0)
+            {
+                Assert.assertTrue(value > LatencyHistogram.upperBoundOf(bucket - 1));
+            }
+        }
+    }
+
+    @Test
+    public void percentiles()
+    {
+        LatencyHistogram histogram = new LatencyHistogram();
+        Assert.assertEquals(0L, histogram.snapshot().getCount());
+        for (int i = 1; i <= 1000; i++)
+        {
+            histogram.record(i);
+        }
+        LatencyHistogram.Snapshot snapshot = histogram.snapshot();
+        Assert.assertEquals(1000L, snapshot.getCount());
+        Assert.assertEquals(500.5D, snapshot.getMean(), 0.001D);
+        Assert.assertEquals(1000L, snapshot.getMax());
+        Assert.assertTrue(Math.abs(snapshot.getP50() - 500) <= 500 / 16);
+        Assert.assertTrue(Math.abs(snapshot.getP99() - 990) <= 990 / 16);
+        Assert.assertTrue(snapshot.getP999() >= 999 && snapshot.getP999() <= 1000 + 1000 / 16);
+    }
+}
@@ -0,0 +1,117 @@
+package com.fiberhome.dbserver.protocol.common;
+
+import java.util.concurrent.TimeUnit;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.fiberhome.dbserver.common.transport.protobuf.SlaveBlockletIndexServiceGrpc;
+import com.fiberhome.dbserver.common.transport.protobuf.SlaveServerProtos.IndexCountRequest;
+import com.fiberhome.dbserver.common.transport.protobuf.SlaveServerProtos.IndexCountResponse;
+import io.grpc.ManagedChannel;
+import io.grpc.Server;
+import io.grpc.netty.NettyChannelBuilder;
+import io.grpc.netty.NettyServerBuilder;
+import io.grpc.stub.StreamObserver;
+
+public class NettyEventLoopsTest
+{
+    private static final NettyEventLoops.Settings SETTINGS = new NettyEventLoops.Settings(2, 1, true, true);
+
+    @Before
+    public void setUp()
+    {
+        NettyEventLoops.shutdown();
+    }
+
+    @After
+    public void tearDown()
+    {
+        NettyEventLoops.shutdown();
+    }
+
+    @Test
+    public void initOnceWithSameSettings()
+    {
+        Assert.assertNull(NettyEventLoops.getIfInitialized());
+        NettyEventLoops loops = NettyEventLoops.init(SETTINGS);
+        Assert.assertSame(loops, NettyEventLoops.init(new NettyEventLoops.Settings(2, 1, true, true)));
+        Assert.assertSame(loops, NettyEventLoops.getInstance());
+        Assert.assertSame(loops, NettyEventLoops.getIfInitialized());
+        // 每个worker线程一个直接内存arena
+        Assert.assertEquals(2, loops.getAllocatorMetric().numDirectArenas());
+
+        try
+        {
+            NettyEventLoops.init(new NettyEventLoops.Settings(4, 1, true, true));
+            Assert.fail();
+        }
+        catch (IllegalStateException e)
+        {
+            Assert.assertSame(loops, NettyEventLoops.getIfInitialized());
+        }
+    }
+
+    @Test
+    public void shutdownReleasesLoops()
+    {
+        NettyEventLoops loops = NettyEventLoops.init(SETTINGS);
+        NettyEventLoops.shutdown();
+        Assert.assertTrue(loops.isShutdown());
+        Assert.assertTrue(loops.getWorkerGroup().isShuttingDown());
+        Assert.assertNull(NettyEventLoops.getIfInitialized());
+
+        // 关闭后可按其他参数重新初始化
+        NettyEventLoops reopened = NettyEventLoops.init(new NettyEventLoops.Settings(1, 1, false, false));
+        Assert.assertNotSame(loops, reopened);
+        Assert.assertFalse(reopened.isShutdown());
+    }
+
+    @Test
+    public void rejectDomainSocketWithoutEpoll()
+    {
+        NettyEventLoops loops = NettyEventLoops.init(new NettyEventLoops.Settings(1, 1, false, false));
+        Assert.assertFalse(loops.isEpoll());
+        Assert.assertFalse(loops.isDomainSocketAvailable());
+        try
+        {
+            loops.configureDomainSocket(NettyChannelBuilder.forTarget("localhost"));
+            Assert.fail();
+        }
+        catch (IllegalStateException e)
+        {
+            Assert.assertTrue(e.getMessage().contains("epoll"));
+        }
+    }
+
+    @Test
+    public void serveOverSharedLoops() throws Exception
+    {
+        NettyEventLoops loops = NettyEventLoops.init(SETTINGS);
+        Server server = loops.configure(NettyServerBuilder.forPort(10077))
+                .addService(new SlaveBlockletIndexServiceGrpc.SlaveBlockletIndexServiceImplBase()
+                {
+                    @Override
+                    public void count(IndexCountRequest request, StreamObserver<IndexCountResponse> observer)
+                    {
+                        observer.onNext(IndexCountResponse.newBuilder().setRecodeSize(5).build());
+                        observer.onCompleted();
+                    }
+                }).build().start();
+        ManagedChannel channel = loops.configure(NettyChannelBuilder.forAddress("127.0.0.1", 10077))
+                .usePlaintext().build();
+        try
+        {
+            IndexCountResponse response = SlaveBlockletIndexServiceGrpc.newBlockingStub(channel)
+                    .count(IndexCountRequest.getDefaultInstance());
+            Assert.assertEquals(5, response.getRecodeSize());
+        }
+        finally
+        {
+            channel.shutdownNow().awaitTermination(5, TimeUnit.SECONDS);
+            server.shutdownNow().awaitTermination();
+        }
+    }
+}
@@ -0,0 +1,43 @@
+package com.fiberhome.dbserver.protocol.server;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class AdaptiveConcurrencyLimitTest
+{
+    @Test
+    public void reservedShare()
+    {
+        AdaptiveConcurrencyLimit limit = new AdaptiveConcurrencyLimit(10, 1, 100, 0.2D);
+        for (int i = 0; i < 8; i++)
+        {
+            Assert.assertEquals(i, limit.tryAcquire(false));
+        }
+        // 普通调用只能使用80%
+        Assert.assertEquals(-1, limit.tryAcquire(false));
+        Assert.assertEquals(8, limit.tryAcquire(true));
+        Assert.assertEquals(9, limit.tryAcquire(true));
+        Assert.assertEquals(-1, limit.tryAcquire(true));
+        Assert.assertEquals(10, limit.getInFlight());
+    }
+
+    @Test
+    public void shrinkWhenLatencyRises()
+    {
+        AdaptiveConcurrencyLimit limit = new AdaptiveConcurrencyLimit(100, 5, 100, 0D);
+        for (int i = 0; i < 100; i++)
+        {
+            limit.tryAcquire(false);
+            limit.release(1000L, 100);
+        }
+        Assert.assertEquals(100, limit.getLimit());
+        for (int i = 0; i < 100; i++)
+        {
+            limit.tryAcquire(false);
+            limit.release(20000L, 100);
+        }
+        Assert.assertTrue("limit " + limit.getLimit(), limit.getLimit() < 50);
+        Assert.assertTrue(limit.getLimit() >= 5);
+        Assert.assertEquals(0, limit.getInFlight());
+    }
+}
@@ -0,0 +1,251 @@
+package com.fiberhome.dbserver.protocol.server;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.fiberhome.dbserver.common.transport.protobuf.HeartBeatMangerServiceGrpc;
+import com.fiberhome.dbserver.common.transport.protobuf.MasterServerProtos.HeartBeatRequest;
+import com.fiberhome.dbserver.common.transport.protobuf.MasterServerProtos.HeartBeatResponse;
+import com.fiberhome.dbserver.common.transport.protobuf.SlaveBlockletIndexServiceGrpc;
+import com.fiberhome.dbserver.common.transport.protobuf.SlaveServerProtos.IndexCountRequest;
+import com.fiberhome.dbserver.common.transport.protobuf.SlaveServerProtos.IndexCountResponse;
+import com.google.common.util.concurrent.ListenableFuture;
+import io.grpc.Attributes;
+import io.grpc.ManagedChannel;
+import io.grpc.Metadata;
+import io.grpc.MethodDescriptor;
+import io.grpc.Server;
+import io.grpc.ServerCall;
+import io.grpc.ServerCallHandler;
+import io.grpc.ServerInterceptors;
+import io.grpc.Status;
+import io.grpc.StatusRuntimeException;
+import io.grpc.inprocess.InProcessChannelBuilder;
+import io.grpc.inprocess.InProcessServerBuilder;
+import io.grpc.protobuf.ProtoUtils;
+import io.grpc.stub.StreamObserver;
+
+public class AdmissionControlInterceptorTest
+{
+    private static final String SERVER_NAME = "admission-control-test";
+
+    private final CountDownLatch release = new CountDownLatch(1);
+
+    private final CountDownLatch started = new CountDownLatch(1);
+
+    private final ExecutorService executor = Executors.newCachedThreadPool();
+
+    private AdmissionControlInterceptor admission;
+
+    private Server server;
+
+    private ManagedChannel channel;
+
+    @Before
+    public void setUp() throws Exception
+    {
+        // 上限2，普通调用只能使用1个名额
+        admission = new AdmissionControlInterceptor(new AdaptiveConcurrencyLimit(2, 2, 2, 0.5D),
+                "HeartBeatMangerService");
+        server = InProcessServerBuilder.forName(SERVER_NAME).executor(executor)
+                .addService(ServerInterceptors.intercept(new SlaveBlockletIndexServiceGrpc
+                        .SlaveBlockletIndexServiceImplBase()
+                {
+                    @Override
+                    public void count(IndexCountRequest request, StreamObserver<IndexCountResponse> observer)
+                    {
+                        started.countDown();
+                        try
+                        {
+                            release.await(10, TimeUnit.SECONDS);
+                        }
+                        catch (InterruptedException e)
+                        {
+                            Thread.currentThread().interrupt();
+                        }
+                        observer.onNext(IndexCountResponse.newBuilder().setRecodeSize(1).build());
+                        observer.onCompleted();
+                    }
+                }, admission))
+                .addService(ServerInterceptors.intercept(new HeartBeatMangerServiceGrpc.HeartBeatMangerServiceImplBase()
+                {
+                    @Override
+                    public void reportHeartBeat(HeartBeatRequest request, StreamObserver<HeartBeatResponse> observer)
+                    {
+                        observer.onNext(HeartBeatResponse.newBuilder().build());
+                        observer.onCompleted();
+                    }
+                }, admission)).build().start();
+        channel = InProcessChannelBuilder.forName(SERVER_NAME).directExecutor().build();
+    }
+
+    @After
+    public void tearDown()
+    {
+        release.countDown();
+        channel.shutdownNow();
+        server.shutdownNow();
+        executor.shutdownNow();
+    }
+
+    @Test
+    public void shedExcessCallsAndKeepReservedShare() throws Exception
+    {
+        ListenableFuture<IndexCountResponse> running = SlaveBlockletIndexServiceGrpc.newFutureStub(channel)
+                .count(IndexCountRequest.getDefaultInstance());
+        Assert.assertTrue(started.await(5, TimeUnit.SECONDS));
+        Assert.assertEquals(1, admission.getInFlight());
+
+        try
+        {
+            SlaveBlockletIndexServiceGrpc.newBlockingStub(channel).withDeadlineAfter(5, TimeUnit.SECONDS)
+                    .count(IndexCountRequest.getDefaultInstance());
+            Assert.fail("call should be rejected");
+        }
+        catch (StatusRuntimeException e)
+        {
+            Assert.assertEquals(Status.Code.RESOURCE_EXHAUSTED, e.getStatus().getCode());
+        }
+        Assert.assertEquals(1, admission.getRejected());
+
+        // 心跳使用预留名额
+        Assert.assertNotNull(HeartBeatMangerServiceGrpc.newBlockingStub(channel)
+                .withDeadlineAfter(5, TimeUnit.SECONDS).reportHeartBeat(HeartBeatRequest.getDefaultInstance()));
+
+        release.countDown();
+        Assert.assertEquals(1, running.get(5, TimeUnit.SECONDS).getRecodeSize());
+        Assert.assertEquals(0, admission.getInFlight());
+    }
+
+    @Test
+    public void exemptStreamingCalls()
+    {
+        AdmissionControlInterceptor interceptor = new AdmissionControlInterceptor(
+                new AdaptiveConcurrencyLimit(1, 1, 1, 0D));
+        List<ServerCall<IndexCountRequest, IndexCountResponse>> open = new ArrayList<>();
+        for (MethodDescriptor.MethodType type : new MethodDescriptor.MethodType[] {
+            MethodDescriptor.MethodType.SERVER_STREAMING, MethodDescriptor.MethodType.CLIENT_STREAMING,
+            MethodDescriptor.MethodType.BIDI_STREAMING})
+        {
+            interceptor.interceptCall(new TestCall(type), new Metadata(), holdOpen(open));
+        }
+        Assert.assertEquals(3, open.size());
+        Assert.assertEquals(0, interceptor.getInFlight());
+
+        // 一元调用仍受上限约束
+        interceptor.interceptCall(new TestCall(MethodDescriptor.MethodType.UNARY), new Metadata(), holdOpen(open));
+        TestCall rejected = new TestCall(MethodDescriptor.MethodType.UNARY);
+        interceptor.interceptCall(rejected, new Metadata(), holdOpen(open));
+        Assert.assertEquals(1, interceptor.getInFlight());
+        Assert.assertEquals(Status.Code.RESOURCE_EXHAUSTED, rejected.status.getCode());
+    }
+
+    @Test
+    public void growWhenLatencyIsStable() throws Exception
+    {
+        AdmissionControlInterceptor interceptor = new AdmissionControlInterceptor(
+                new AdaptiveConcurrencyLimit(20, 1, 100, 0D));
+        List<ServerCall<IndexCountRequest, IndexCountResponse>> open = new ArrayList<>();
+        for (int round = 0; round < 200 && interceptor.getLimit() < 100; round++)
+        {
+            // 每轮打满当前上限，调用耗时稳定
+            int limit = interceptor.getLimit();
+            for (int i = 0; i < limit; i++)
+            {
+                interceptor.interceptCall(new TestCall(MethodDescriptor.MethodType.UNARY), new Metadata(),
+                        holdOpen(open));
+            }
+            Assert.assertEquals(limit, interceptor.getInFlight());
+            Thread.sleep(1L);
+            for (ServerCall<IndexCountRequest, IndexCountResponse> call : open)
+            {
+                call.close(Status.OK, new Metadata());
+            }
+            open.clear();
+        }
+        Assert.assertEquals(100, interceptor.getLimit());
+        Assert.assertEquals(0, interceptor.getInFlight());
+        Assert.assertEquals(0, interceptor.getRejected());
+    }
+
+    /**
+     * 保持调用打开，由测试关闭
+     */
+    private static ServerCallHandler<IndexCountRequest, IndexCountResponse> holdOpen(
+            List<ServerCall<IndexCountRequest, IndexCountResponse>> open)
+    {
+        return (call, headers) ->
+        {
+            open.add(call);
+            return new ServerCall.Listener<IndexCountRequest>()
+            {
+            };
+        };
+    }
+
+    /**
+     * 只记录关闭状态的调用
+     */
+    private static final class TestCall extends ServerCall<IndexCountRequest, IndexCountResponse>
+    {
+        private final MethodDescriptor<IndexCountRequest, IndexCountResponse> method;
+
+        private Status status;
+
+        TestCall(MethodDescriptor.MethodType type)
+        {
+            this.method = MethodDescriptor.<IndexCountRequest, IndexCountResponse>newBuilder().setType(type)
+                    .setFullMethodName(MethodDescriptor.generateFullMethodName("AdmissionTest", type.name()))
+                    .setRequestMarshaller(ProtoUtils.marshaller(IndexCountRequest.getDefaultInstance()))
+                    .setResponseMarshaller(ProtoUtils.marshaller(IndexCountResponse.getDefaultInstance())).build();
+        }
+
+        @Override
+        public void request(int numMessages)
+        {
+        }
+
+        @Override
+        public void sendHeaders(Metadata headers)
+        {
+        }
+
+        @Override
+        public void sendMessage(IndexCountResponse message)
+        {
+        }
+
+        @Override
+        public void close(Status closeStatus, Metadata trailers)
+        {
+            status = closeStatus;
+        }
+
+        @Override
+        public boolean isCancelled()
+        {
+            return false;
+        }
+
+        @Override
+        public Attributes getAttributes()
+        {
+            return Attributes.EMPTY;
+        }
+
+        @Override
+        public MethodDescriptor<IndexCountRequest, IndexCountResponse> getMethodDescriptor()
+        {
+            return method;
+        }
+    }
+}
@@ -0,0 +1,132 @@
+package com.fiberhome.dbserver.protocol.server;
+
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.fiberhome.dbserver.common.transport.protobuf.DBServerProtos.CKValueProto;
+import com.fiberhome.dbserver.common.transport.protobuf.SlaveBlockletIndexServiceGrpc;
+import com.fiberhome.dbserver.common.transport.protobuf.SlaveServerProtos.IndexCountRequest;
+import com.fiberhome.dbserver.common.transport.protobuf.SlaveServerProtos.IndexCountResponse;
+import com.fiberhome.dbserver.common.transport.protobuf.SlaveServerProtos.IndexSearchRequest;
+import com.fiberhome.dbserver.common.transport.protobuf.SlaveServerProtos.IndexSearchResponse;
+import com.fiberhome.dbserver.common.transport.protobuf.SlaveServerProtos.ListCKValues;
+import com.fiberhome.dbserver.protocol.common.CompressionPolicy;
+import com.fiberhome.dbserver.protocol.common.GrpcCompression;
+import io.grpc.CallOptions;
+import io.grpc.Channel;
+import io.grpc.ClientCall;
+import io.grpc.ClientInterceptor;
+import io.grpc.ClientInterceptors;
+import io.grpc.ForwardingClientCall.SimpleForwardingClientCall;
+import io.grpc.ForwardingClientCallListener.SimpleForwardingClientCallListener;
+import io.grpc.ManagedChannel;
+import io.grpc.Metadata;
+import io.grpc.MethodDescriptor;
+import io.grpc.Server;
+import io.grpc.ServerInterceptors;
+import io.grpc.inprocess.InProcessChannelBuilder;
+import io.grpc.inprocess.InProcessServerBuilder;
+import io.grpc.stub.StreamObserver;
+
+public class CompressionServerInterceptorTest
+{
+    private static final String SERVER_NAME = "compression-test";
+
+    private static final Metadata.Key<String> ENCODING = Metadata.Key.of("grpc-encoding",
+            Metadata.ASCII_STRING_MARSHALLER);
+
+    /*
+     * 最近一次响应头中的编码
+     */
+    private final AtomicReference<String> responseEncoding = new AtomicReference<>();
+
+    private Server server;
+
+    private ManagedChannel channel;
+
+    private SlaveBlockletIndexServiceGrpc.SlaveBlockletIndexServiceBlockingStub stub;
+
+    @Before
+    public void setUp() throws Exception
+    {
+        CompressionPolicy policy = CompressionPolicy.parse(
+                new String[] {"SlaveBlockletIndexService/query:" + GrpcCompression.DEFLATE}, 1024);
+        server = GrpcCompression.configure(InProcessServerBuilder.forName(SERVER_NAME).directExecutor())
+                .addService(ServerInterceptors.intercept(new SlaveBlockletIndexServiceGrpc
+                        .SlaveBlockletIndexServiceImplBase()
+                {
+                    @Override
+                    public void query(IndexSearchRequest request, StreamObserver<IndexSearchResponse> observer)
+                    {
+                        ListCKValues.Builder values = ListCKValues.newBuilder();
+                        for (int i = 0; i < request.getLimit(); i++)
+                        {
+                            values.addListCKValues(CKValueProto.newBuilder().setSubid(i).setValue("ck-" + i));
+                        }
+                        observer.onNext(IndexSearchResponse.newBuilder().putPartitionCKValues("p0", values.build())
+                                .build());
+                        observer.onCompleted();
+                    }
+
+                    @Override
+                    public void count(IndexCountRequest request, StreamObserver<IndexCountResponse> observer)
+                    {
+                        observer.onNext(IndexCountResponse.newBuilder().setRecodeSize(1).build());
+                        observer.onCompleted();
+                    }
+                }, new CompressionServerInterceptor(policy))).build().start();
+        channel = GrpcCompression.configure(InProcessChannelBuilder.forName(SERVER_NAME).directExecutor()).build();
+        stub = SlaveBlockletIndexServiceGrpc.newBlockingStub(ClientInterceptors.intercept(channel,
+                new ClientInterceptor()
+                {
+                    @Override
+                    public <ReqT, RespT> ClientCall<ReqT, RespT> interceptCall(MethodDescriptor<ReqT, RespT> method,
+                            CallOptions callOptions, Channel next)
+                    {
+                        return new SimpleForwardingClientCall<ReqT, RespT>(next.newCall(method, callOptions))
+                        {
+                            @Override
+                            public void start(Listener<RespT> listener, Metadata headers)
+                            {
+                                super.start(new SimpleForwardingClientCallListener<RespT>(listener)
+                                {
+                                    @Override
+                                    public void onHeaders(Metadata responseHeaders)
+                                    {
+                                        responseEncoding.set(responseHeaders.get(ENCODING));
+                                        super.onHeaders(responseHeaders);
+                                    }
+                                }, headers);
+                            }
+                        };
+                    }
+                }));
+    }
+
+    @After
+    public void tearDown()
+    {
+        channel.shutdownNow();
+        server.shutdownNow();
+    }
+
+    @Test
+    public void compressConfiguredMethod()
+    {
+        IndexSearchResponse response = stub.query(IndexSearchRequest.newBuilder().setLimit(10000).build());
+        Assert.assertEquals(10000, response.getPartitionCKValuesMap().get("p0").getListCKValuesCount());
+        Assert.assertEquals(GrpcCompression.DEFLATE, responseEncoding.get());
+        Assert.assertTrue(GrpcCompression.getStats().contains("deflate[messages="));
+    }
+
+    @Test
+    public void skipUnconfiguredMethod()
+    {
+        Assert.assertEquals(1, stub.count(IndexCountRequest.getDefaultInstance()).getRecodeSize());
+        Assert.assertNotEquals(GrpcCompression.DEFLATE, responseEncoding.get());
+    }
+}
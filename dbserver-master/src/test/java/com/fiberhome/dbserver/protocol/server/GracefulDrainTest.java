@@ -0,0 +1,170 @@
+package com.fiberhome.dbserver.protocol.server;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.fiberhome.dbserver.common.services.MonitoredTaskImpl;
+import com.fiberhome.dbserver.common.transport.protobuf.SlaveBlockletIndexServiceGrpc;
+import com.fiberhome.dbserver.common.transport.protobuf.SlaveServerProtos.IndexCountRequest;
+import com.fiberhome.dbserver.common.transport.protobuf.SlaveServerProtos.IndexCountResponse;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.util.concurrent.ListenableFuture;
+import io.grpc.ManagedChannel;
+import io.grpc.Server;
+import io.grpc.ServerInterceptors;
+import io.grpc.Status;
+import io.grpc.StatusRuntimeException;
+import io.grpc.inprocess.InProcessChannelBuilder;
+import io.grpc.inprocess.InProcessServerBuilder;
+import io.grpc.stub.StreamObserver;
+
+public class GracefulDrainTest
+{
+    private static final String SERVER_NAME = "graceful-drain-test";
+
+    private final CountDownLatch started = new CountDownLatch(1);
+
+    private final CountDownLatch release = new CountDownLatch(1);
+
+    private final List<String> statuses = new CopyOnWriteArrayList<>();
+
+    private final MonitoredTaskImpl task = new MonitoredTaskImpl()
+    {
+        @Override
+        public void setStatus(String status)
+        {
+            statuses.add(status);
+            super.setStatus(status);
+        }
+    };
+
+    private ThreadPoolExecutor pool;
+
+    private Map<String, ThreadPoolExecutor> pools;
+
+    private Server server;
+
+    private ManagedChannel channel;
+
+    @Before
+    public void setUp() throws Exception
+    {
+        pool = new ThreadPoolExecutor(1, 1, 0L, TimeUnit.MILLISECONDS, new ArrayBlockingQueue<>(10));
+        pools = ImmutableMap.of("index", pool);
+        server = InProcessServerBuilder.forName(SERVER_NAME).directExecutor()
+                .addService(ServerInterceptors.intercept(new SlaveBlockletIndexServiceGrpc
+                        .SlaveBlockletIndexServiceImplBase()
+                {
+                    @Override
+                    public void count(IndexCountRequest request, StreamObserver<IndexCountResponse> observer)
+                    {
+                        started.countDown();
+                        try
+                        {
+                            release.await();
+                        }
+                        catch (InterruptedException e)
+                        {
+                            Thread.currentThread().interrupt();
+                            observer.onError(Status.CANCELLED.asRuntimeException());
+                            return;
+                        }
+                        observer.onNext(IndexCountResponse.newBuilder().setRecodeSize(1).build());
+                        observer.onCompleted();
+                    }
+                }, new ServiceExecutorInterceptor("index", pool)))
+                .build().start();
+        channel = InProcessChannelBuilder.forName(SERVER_NAME).directExecutor().build();
+    }
+
+    @After
+    public void tearDown()
+    {
+        release.countDown();
+        channel.shutdownNow();
+        server.shutdownNow();
+        pool.shutdownNow();
+    }
+
+    @Test
+    public void waitForInFlightCalls() throws Exception
+    {
+        ListenableFuture<IndexCountResponse> inFlight = SlaveBlockletIndexServiceGrpc.newFutureStub(channel)
+                .count(IndexCountRequest.getDefaultInstance());
+        Assert.assertTrue(started.await(5, TimeUnit.SECONDS));
+
+        Thread releaser = new Thread(() ->
+        {
+            // 等待至少一次在途调用汇报后再放行
+            long deadline = System.currentTimeMillis() + 5000L;
+            while (statuses.isEmpty() && System.currentTimeMillis() < deadline)
+            {
+                Thread.yield();
+            }
+            release.countDown();
+        });
+        releaser.start();
+        Assert.assertTrue(GracefulDrain.drain(server, pools, 10000L, task));
+        releaser.join();
+
+        Assert.assertEquals(1, inFlight.get(5, TimeUnit.SECONDS).getRecodeSize());
+        Assert.assertTrue(statuses.get(0).contains("index=1"));
+        Assert.assertEquals("grpc server drained.", task.getStatus());
+        Assert.assertTrue(server.isTerminated());
+        Assert.assertTrue(pool.awaitTermination(5, TimeUnit.SECONDS));
+    }
+
+    @Test
+    public void rejectNewCallsWhileDraining() throws Exception
+    {
+        ListenableFuture<IndexCountResponse> inFlight = SlaveBlockletIndexServiceGrpc.newFutureStub(channel)
+                .count(IndexCountRequest.getDefaultInstance());
+        Assert.assertTrue(started.await(5, TimeUnit.SECONDS));
+        server.shutdown();
+        try
+        {
+            SlaveBlockletIndexServiceGrpc.newBlockingStub(channel).count(IndexCountRequest.getDefaultInstance());
+            Assert.fail("new call accepted while draining");
+        }
+        catch (StatusRuntimeException e)
+        {
+            Assert.assertEquals(Status.Code.UNAVAILABLE, e.getStatus().getCode());
+        }
+        release.countDown();
+        Assert.assertTrue(GracefulDrain.drain(server, pools, 5000L, null));
+        Assert.assertEquals(1, inFlight.get(5, TimeUnit.SECONDS).getRecodeSize());
+    }
+
+    @Test
+    public void forceShutdownAfterTimeout() throws Exception
+    {
+        ListenableFuture<IndexCountResponse> inFlight = SlaveBlockletIndexServiceGrpc.newFutureStub(channel)
+                .count(IndexCountRequest.getDefaultInstance());
+        Assert.assertTrue(started.await(5, TimeUnit.SECONDS));
+
+        Assert.assertFalse(GracefulDrain.drain(server, pools, 200L, task));
+        Assert.assertEquals("grpc server drain timeout, forced shutdown.", task.getStatus());
+        // 超时后中断业务线程，客户端收到取消
+        try
+        {
+            inFlight.get(5, TimeUnit.SECONDS);
+            Assert.fail("in flight call should be cancelled");
+        }
+        catch (ExecutionException e)
+        {
+            Assert.assertTrue(e.getCause() instanceof StatusRuntimeException);
+        }
+        Assert.assertTrue(pool.awaitTermination(5, TimeUnit.SECONDS));
+    }
+}
@@ -0,0 +1,90 @@
+package com.fiberhome.dbserver.protocol.server;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Test;
+
+import io.grpc.BindableService;
+import io.grpc.ServerServiceDefinition;
+
+public class GrpcServiceRegistryTest
+{
+    private final GrpcServiceRegistry registry = GrpcServiceRegistry.getInstance();
+
+    private final Map<String, GrpcServiceRegistry.ExecutorConf> notified = new ConcurrentHashMap<>();
+
+    private GrpcServiceRegistry.RegistrationListener listener;
+
+    @After
+    public void tearDown()
+    {
+        registry.removeListener(listener);
+    }
+
+    @Test
+    public void replayRegisteredServicesWithExecutorConf()
+    {
+        registry.registryRpcService("registry-test-replay", service("replay"), "registry.test.pool.size", 3);
+        listener = (serviceName, service, executorConf) -> notified.put(serviceName,
+                executorConf == null ? new GrpcServiceRegistry.ExecutorConf("", -1) : executorConf);
+        registry.addListener(listener);
+        Assert.assertEquals(3, notified.get("registry-test-replay").getDefaultPoolSize());
+
+        Assert.assertFalse(registry.registryRpcServiceIfAbsent("registry-test-replay", service("replay")));
+        registry.registryRpcService("registry-test-later", service("later"));
+        Assert.assertEquals(-1, notified.get("registry-test-later").getDefaultPoolSize());
+    }
+
+    @Test
+    public void listenerRunsOutsideRegistryLock() throws Exception
+    {
+        Object serverLock = new Object();
+        CountDownLatch entered = new CountDownLatch(1);
+        listener = (serviceName, service, executorConf) ->
+        {
+            if (!"registry-test-a".equals(serviceName))
+            {
+                return;
+            }
+            entered.countDown();
+            synchronized (serverLock)
+            {
+                notified.put(serviceName, executorConf);
+            }
+        };
+        registry.addListener(listener);
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        try
+        {
+            Future<?> registering;
+            synchronized (serverLock)
+            {
+                registering = executor.submit(() -> registry.registryRpcService("registry-test-a", service("a"),
+                        "registry.test.pool.size", 1));
+                Assert.assertTrue(entered.await(5, TimeUnit.SECONDS));
+                // 监听器等待serverLock时，持有serverLock的线程仍可访问注册表
+                Assert.assertTrue(registry.registryRpcServiceIfAbsent("registry-test-b", service("b")));
+                Assert.assertTrue(registry.getRpcService().containsKey("registry-test-a"));
+            }
+            registering.get(5, TimeUnit.SECONDS);
+            Assert.assertTrue(notified.containsKey("registry-test-a"));
+        }
+        finally
+        {
+            executor.shutdownNow();
+        }
+    }
+
+    private static BindableService service(String name)
+    {
+        return () -> ServerServiceDefinition.builder("registry.test." + name).build();
+    }
+}
@@ -0,0 +1,255 @@
+package com.fiberhome.dbserver.protocol.server;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.fiberhome.dbserver.common.transport.protobuf.DBServerProtos.CKValueProto;
+import com.fiberhome.dbserver.common.transport.protobuf.SlaveBlockletIndexServiceGrpc;
+import com.fiberhome.dbserver.common.transport.protobuf.SlaveServerProtos.IndexSearchChunk;
+import com.fiberhome.dbserver.common.transport.protobuf.SlaveServerProtos.IndexSearchRequest;
+import io.grpc.ManagedChannel;
+import io.grpc.Server;
+import io.grpc.inprocess.InProcessChannelBuilder;
+import io.grpc.inprocess.InProcessServerBuilder;
+import io.grpc.stub.ServerCallStreamObserver;
+import io.grpc.stub.StreamObserver;
+
+public class IndexSearchStreamWriterTest
+{
+    private static final String SERVER_NAME = "index-stream-test";
+
+    /*
+     * 已关闭的迭代器数
+     */
+    private final AtomicInteger closed = new AtomicInteger();
+
+    private Server server;
+
+    private ManagedChannel channel;
+
+    @Before
+    public void setUp() throws Exception
+    {
+        server = InProcessServerBuilder.forName(SERVER_NAME).directExecutor()
+                .addService(new SlaveBlockletIndexServiceGrpc.SlaveBlockletIndexServiceImplBase()
+                {
+                    @Override
+                    public void queryStream(IndexSearchRequest request, StreamObserver<IndexSearchChunk> observer)
+                    {
+                        new IndexSearchStreamWriter((ServerCallStreamObserver<IndexSearchChunk>) observer,
+                                partitions(3, 2500), request.getLimit(), 1000).start();
+                    }
+                }).build().start();
+        channel = InProcessChannelBuilder.forName(SERVER_NAME).directExecutor().build();
+    }
+
+    @After
+    public void tearDown()
+    {
+        channel.shutdownNow();
+        server.shutdownNow();
+    }
+
+    @Test
+    public void streamAllPartitionsInChunks()
+    {
+        List<IndexSearchChunk> chunks = new ArrayList<>();
+        SlaveBlockletIndexServiceGrpc.newBlockingStub(channel).queryStream(IndexSearchRequest.getDefaultInstance())
+                .forEachRemaining(chunks::add);
+        // 每个分区2500条，分为1000、1000、500三片
+        Assert.assertEquals(9, chunks.size());
+        int total = 0;
+        for (int i = 0; i < chunks.size(); i++)
+        {
+            IndexSearchChunk chunk = chunks.get(i);
+            Assert.assertEquals("p" + i / 3, chunk.getPartition());
+            Assert.assertEquals(i % 3 == 2, chunk.getPartitionEnd());
+            Assert.assertTrue(chunk.getCkValuesCount() <= 1000);
+            total += chunk.getCkValuesCount();
+        }
+        Assert.assertEquals(7500, total);
+        Assert.assertEquals(3, closed.get());
+    }
+
+    @Test
+    public void stopAtLimit()
+    {
+        List<IndexSearchChunk> chunks = new ArrayList<>();
+        SlaveBlockletIndexServiceGrpc.newBlockingStub(channel)
+                .queryStream(IndexSearchRequest.newBuilder().setLimit(3200).build()).forEachRemaining(chunks::add);
+        int total = 0;
+        for (IndexSearchChunk chunk : chunks)
+        {
+            total += chunk.getCkValuesCount();
+        }
+        Assert.assertEquals(3200, total);
+        Assert.assertEquals("p1", chunks.get(chunks.size() - 1).getPartition());
+        Assert.assertFalse(chunks.get(chunks.size() - 1).getPartitionEnd());
+        // 未读完的分区与未读取的分区都被关闭
+        Assert.assertEquals(3, closed.get());
+    }
+
+    @Test
+    public void pauseWhenNotReady()
+    {
+        FakeObserver observer = new FakeObserver();
+        new IndexSearchStreamWriter(observer, partitions(1, 5000), 0, 1000).start();
+        Assert.assertEquals(2, observer.chunks.size());
+
+        observer.ready = 3;
+        observer.onReadyHandler.run();
+        Assert.assertEquals(5, observer.chunks.size());
+        Assert.assertFalse(observer.completed);
+
+        observer.ready = 10;
+        observer.onReadyHandler.run();
+        Assert.assertTrue(observer.completed);
+        Assert.assertEquals(1, closed.get());
+    }
+
+    @Test
+    public void stopWhenCancelled()
+    {
+        FakeObserver observer = new FakeObserver();
+        new IndexSearchStreamWriter(observer, partitions(2, 5000), 0, 1000).start();
+        Assert.assertEquals(2, observer.chunks.size());
+
+        observer.onCancelHandler.run();
+        observer.ready = 10;
+        observer.onReadyHandler.run();
+        Assert.assertEquals(2, observer.chunks.size());
+        Assert.assertFalse(observer.completed);
+        Assert.assertEquals(2, closed.get());
+    }
+
+    private Map<String, Iterator<CKValueProto>> partitions(int count, int size)
+    {
+        Map<String, Iterator<CKValueProto>> partitions = new LinkedHashMap<>();
+        for (int i = 0; i < count; i++)
+        {
+            partitions.put("p" + i, new CloseableIterator(size));
+        }
+        return partitions;
+    }
+
+    /**
+     * 按需生成数据的可关闭迭代器
+     */
+    private final class CloseableIterator implements Iterator<CKValueProto>, AutoCloseable
+    {
+        private final int size;
+
+        private int next;
+
+        CloseableIterator(int size)
+        {
+            this.size = size;
+        }
+
+        @Override
+        public boolean hasNext()
+        {
+            return next < size;
+        }
+
+        @Override
+        public CKValueProto next()
+        {
+            return CKValueProto.newBuilder().setSubid(next++).setValue("ck").build();
+        }
+
+        @Override
+        public void close()
+        {
+            closed.incrementAndGet();
+        }
+    }
+
+    /**
+     * 可控制就绪状态的响应流，ready为还能写出的片数
+     */
+    private static final class FakeObserver extends ServerCallStreamObserver<IndexSearchChunk>
+    {
+        private final List<IndexSearchChunk> chunks = new ArrayList<>();
+
+        private int ready = 2;
+
+        private boolean completed;
+
+        private Runnable onReadyHandler;
+
+        private Runnable onCancelHandler;
+
+        @Override
+        public boolean isReady()
+        {
+            return ready > 0;
+        }
+
+        @Override
+        public void onNext(IndexSearchChunk value)
+        {
+            ready--;
+            chunks.add(value);
+        }
+
+        @Override
+        public void onError(Throwable t)
+        {
+            throw new AssertionError(t);
+        }
+
+        @Override
+        public void onCompleted()
+        {
+            completed = true;
+        }
+
+        @Override
+        public void setOnReadyHandler(Runnable onReadyHandler)
+        {
+            this.onReadyHandler = onReadyHandler;
+        }
+
+        @Override
+        public void setOnCancelHandler(Runnable onCancelHandler)
+        {
+            this.onCancelHandler = onCancelHandler;
+        }
+
+        @Override
+        public boolean isCancelled()
+        {
+            return false;
+        }
+
+        @Override
+        public void setCompression(String compression)
+        {
+        }
+
+        @Override
+        public void disableAutoInboundFlowControl()
+        {
+        }
+
+        @Override
+        public void request(int count)
+        {
+        }
+
+        @Override
+        public void setMessageCompression(boolean enable)
+        {
+        }
+    }
+}
@@ -0,0 +1,93 @@
+package com.fiberhome.dbserver.protocol.server;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.fiberhome.dbserver.common.transport.protobuf.HeartBeatMangerServiceGrpc;
+import com.fiberhome.dbserver.common.transport.protobuf.MasterServerProtos.DatabaseNamesGetRequest;
+import com.fiberhome.dbserver.common.transport.protobuf.MasterServerProtos.DatabaseNamesGetResponse;
+import com.fiberhome.dbserver.common.transport.protobuf.MasterServerProtos.HeartBeatRequest;
+import com.fiberhome.dbserver.common.transport.protobuf.TableManagerServiceGrpc;
+import io.grpc.ManagedChannel;
+import io.grpc.Server;
+import io.grpc.Status;
+import io.grpc.StatusRuntimeException;
+import io.grpc.inprocess.InProcessChannelBuilder;
+import io.grpc.inprocess.InProcessServerBuilder;
+import io.grpc.stub.StreamObserver;
+
+public class LazyHandlerRegistryTest
+{
+    private static final String SERVER_NAME = "lazy-registry-test";
+
+    private final LazyHandlerRegistry registry = new LazyHandlerRegistry(500);
+
+    private Server server;
+
+    private ManagedChannel channel;
+
+    @Before
+    public void setUp() throws Exception
+    {
+        server = InProcessServerBuilder.forName(SERVER_NAME).fallbackHandlerRegistry(registry).directExecutor()
+                .build().start();
+        channel = InProcessChannelBuilder.forName(SERVER_NAME).directExecutor().build();
+    }
+
+    @After
+    public void tearDown()
+    {
+        channel.shutdownNow();
+        server.shutdownNow();
+    }
+
+    @Test
+    public void unavailableWithPushbackWhileStarting()
+    {
+        try
+        {
+            TableManagerServiceGrpc.newBlockingStub(channel).getDatabaseNames(
+                    DatabaseNamesGetRequest.getDefaultInstance());
+            Assert.fail("service is not registered yet");
+        }
+        catch (StatusRuntimeException e)
+        {
+            Assert.assertEquals(Status.Code.UNAVAILABLE, e.getStatus().getCode());
+            Assert.assertEquals("500", e.getTrailers().get(LazyHandlerRegistry.RETRY_PUSHBACK_KEY));
+        }
+    }
+
+    @Test
+    public void registeredServiceIsServedAfterBind()
+    {
+        registry.addService(new TableManagerServiceGrpc.TableManagerServiceImplBase()
+        {
+            @Override
+            public void getDatabaseNames(DatabaseNamesGetRequest request,
+                    StreamObserver<DatabaseNamesGetResponse> observer)
+            {
+                observer.onNext(DatabaseNamesGetResponse.newBuilder().addDataBaseNames("db1").build());
+                observer.onCompleted();
+            }
+        }.bindService());
+        Assert.assertEquals("db1", TableManagerServiceGrpc.newBlockingStub(channel)
+                .getDatabaseNames(DatabaseNamesGetRequest.getDefaultInstance()).getDataBaseNames(0));
+    }
+
+    @Test
+    public void unimplementedAfterStartup()
+    {
+        registry.finishStartup();
+        try
+        {
+            HeartBeatMangerServiceGrpc.newBlockingStub(channel).reportHeartBeat(HeartBeatRequest.getDefaultInstance());
+            Assert.fail("service is never registered");
+        }
+        catch (StatusRuntimeException e)
+        {
+            Assert.assertEquals(Status.Code.UNIMPLEMENTED, e.getStatus().getCode());
+        }
+    }
+}
@@ -0,0 +1,293 @@
+package com.fiberhome.dbserver.protocol.server;
+
+import java.util.Collections;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.fiberhome.dbserver.common.transport.protobuf.DBServerProtos.BaseRequestProto;
+import com.fiberhome.dbserver.common.transport.protobuf.DBServerProtos.BaseResponseProto;
+import com.fiberhome.dbserver.common.transport.protobuf.DBServerProtos.ResponseCode;
+import com.fiberhome.dbserver.common.transport.protobuf.DBServerProtos.TableDescriptorProto;
+import com.fiberhome.dbserver.common.transport.protobuf.DBServerProtos.TableIdentifierProto;
+import com.fiberhome.dbserver.common.transport.protobuf.MasterServerProtos.DatabaseCreateRequest;
+import com.fiberhome.dbserver.common.transport.protobuf.MasterServerProtos.DatabaseCreateResponse;
+import com.fiberhome.dbserver.common.transport.protobuf.MasterServerProtos.DatabaseNamesGetRequest;
+import com.fiberhome.dbserver.common.transport.protobuf.MasterServerProtos.DatabaseNamesGetResponse;
+import com.fiberhome.dbserver.common.transport.protobuf.MasterServerProtos.PartitionCreateReponse;
+import com.fiberhome.dbserver.common.transport.protobuf.MasterServerProtos.PartitionCreateRequest;
+import com.fiberhome.dbserver.common.transport.protobuf.MasterServerProtos.TableCreateReponse;
+import com.fiberhome.dbserver.common.transport.protobuf.MasterServerProtos.TableCreateRequest;
+import com.fiberhome.dbserver.common.transport.protobuf.MasterServerProtos.TableDescriptorGetRequest;
+import com.fiberhome.dbserver.common.transport.protobuf.MasterServerProtos.TableDescriptorGetResponse;
+import com.fiberhome.dbserver.common.transport.protobuf.MasterServerProtos.TableDropReponse;
+import com.fiberhome.dbserver.common.transport.protobuf.MasterServerProtos.TableDropRequest;
+import com.fiberhome.dbserver.common.transport.protobuf.MasterServerProtos.TableIdentifiersGetRequest;
+import com.fiberhome.dbserver.common.transport.protobuf.MasterServerProtos.TableIdentifiersGetResponse;
+import com.fiberhome.dbserver.common.transport.protobuf.TableManagerServiceGrpc;
+import io.grpc.ManagedChannel;
+import io.grpc.Server;
+import io.grpc.ServerInterceptors;
+import io.grpc.inprocess.InProcessChannelBuilder;
+import io.grpc.inprocess.InProcessServerBuilder;
+import io.grpc.stub.StreamObserver;
+
+public class MetadataCacheInterceptorTest
+{
+    private static final String SERVER_NAME = "metadata-cache-test";
+
+    private static final String PLAIN_SERVER_NAME = "metadata-cache-plain-test";
+
+    private static final TableIdentifierProto TABLE_A = table("db1", "a");
+
+    private static final TableIdentifierProto TABLE_B = table("db1", "b");
+
+    private final MetadataResponseCache cache = new MetadataResponseCache(100, 0);
+
+    private final AtomicInteger descriptorCalls = new AtomicInteger();
+
+    private final AtomicInteger identifierCalls = new AtomicInteger();
+
+    private final AtomicInteger databaseCalls = new AtomicInteger();
+
+    private volatile ResponseCode descriptorCode = ResponseCode.QUERY_SUCCESS;
+
+    private Server server;
+
+    private Server plainServer;
+
+    private ManagedChannel channel;
+
+    private ManagedChannel plainChannel;
+
+    private TableManagerServiceGrpc.TableManagerServiceBlockingStub stub;
+
+    /*
+     * 未经wrap改写的服务，同进程内传输
+     */
+    private TableManagerServiceGrpc.TableManagerServiceBlockingStub plainStub;
+
+    @Before
+    public void setUp() throws Exception
+    {
+        TableManagerServiceGrpc.TableManagerServiceImplBase service = new TableManagerServiceGrpc
+                .TableManagerServiceImplBase()
+        {
+            @Override
+            public void getTableDescriptor(TableDescriptorGetRequest request,
+                    StreamObserver<TableDescriptorGetResponse> observer)
+            {
+                int version = descriptorCalls.incrementAndGet();
+                TableDescriptorGetResponse.Builder response = TableDescriptorGetResponse.newBuilder()
+                        .setBaseResponse(BaseResponseProto.newBuilder().setResponseCode(descriptorCode));
+                for (TableIdentifierProto table : request.getTableIdentifierList())
+                {
+                    response.addTableDescriptors(TableDescriptorProto.newBuilder().setTableIdentifier(table)
+                            .setVersion(version));
+                }
+                observer.onNext(response.build());
+                observer.onCompleted();
+            }
+
+            @Override
+            public void getTableIdentifiers(TableIdentifiersGetRequest request,
+                    StreamObserver<TableIdentifiersGetResponse> observer)
+            {
+                identifierCalls.incrementAndGet();
+                observer.onNext(TableIdentifiersGetResponse.getDefaultInstance());
+                observer.onCompleted();
+            }
+
+            @Override
+            public void getDatabaseNames(DatabaseNamesGetRequest request,
+                    StreamObserver<DatabaseNamesGetResponse> observer)
+            {
+                databaseCalls.incrementAndGet();
+                observer.onNext(DatabaseNamesGetResponse.newBuilder().addDataBaseNames("db1").build());
+                observer.onCompleted();
+            }
+
+            @Override
+            public void createTable(TableCreateRequest request, StreamObserver<TableCreateReponse> observer)
+            {
+                observer.onNext(TableCreateReponse.getDefaultInstance());
+                observer.onCompleted();
+            }
+
+            @Override
+            public void dropTable(TableDropRequest request, StreamObserver<TableDropReponse> observer)
+            {
+                observer.onNext(TableDropReponse.getDefaultInstance());
+                observer.onCompleted();
+            }
+
+            @Override
+            public void createPartition(PartitionCreateRequest request,
+                    StreamObserver<PartitionCreateReponse> observer)
+            {
+                observer.onNext(PartitionCreateReponse.getDefaultInstance());
+                observer.onCompleted();
+            }
+
+            @Override
+            public void createDataBase(DatabaseCreateRequest request, StreamObserver<DatabaseCreateResponse> observer)
+            {
+                observer.onNext(DatabaseCreateResponse.getDefaultInstance());
+                observer.onCompleted();
+            }
+        };
+        server = InProcessServerBuilder.forName(SERVER_NAME).directExecutor()
+                .addService(ServerInterceptors.intercept(MetadataCacheInterceptor.wrap(service.bindService(),
+                        MetadataCacheInterceptor.DEFAULT_READ_METHODS), new MetadataCacheInterceptor(cache,
+                        MetadataCacheInterceptor.DEFAULT_READ_METHODS)))
+                .build().start();
+        channel = InProcessChannelBuilder.forName(SERVER_NAME).directExecutor().build();
+        stub = TableManagerServiceGrpc.newBlockingStub(channel);
+        plainServer = InProcessServerBuilder.forName(PLAIN_SERVER_NAME).directExecutor()
+                .addService(ServerInterceptors.intercept(service.bindService(), new MetadataCacheInterceptor(cache,
+                        MetadataCacheInterceptor.DEFAULT_READ_METHODS)))
+                .build().start();
+        plainChannel = InProcessChannelBuilder.forName(PLAIN_SERVER_NAME).directExecutor().build();
+        plainStub = TableManagerServiceGrpc.newBlockingStub(plainChannel);
+    }
+
+    @After
+    public void tearDown()
+    {
+        channel.shutdownNow();
+        server.shutdownNow();
+        plainChannel.shutdownNow();
+        plainServer.shutdownNow();
+    }
+
+    @Test
+    public void hitIgnoresBaseRequest()
+    {
+        TableDescriptorGetResponse first = stub.getTableDescriptor(describe("r1", TABLE_A));
+        TableDescriptorGetResponse second = stub.getTableDescriptor(describe("r2", TABLE_A));
+        Assert.assertEquals(first, second);
+        Assert.assertEquals(1, descriptorCalls.get());
+        Assert.assertEquals(1, cache.getHits());
+        Assert.assertEquals(1, cache.getMisses());
+        Assert.assertEquals(1, cache.size());
+    }
+
+    @Test
+    public void invalidateOnlyTouchedTable()
+    {
+        stub.getTableDescriptor(describe("r1", TABLE_A));
+        stub.getTableDescriptor(describe("r1", TABLE_B));
+        Assert.assertEquals(2, descriptorCalls.get());
+
+        stub.createPartition(PartitionCreateRequest.newBuilder().setTableIdentifier(TABLE_A).build());
+        Assert.assertEquals(3, stub.getTableDescriptor(describe("r2", TABLE_A)).getTableDescriptors(0).getVersion());
+        Assert.assertEquals(2, stub.getTableDescriptor(describe("r2", TABLE_B)).getTableDescriptors(0).getVersion());
+        Assert.assertEquals(3, descriptorCalls.get());
+    }
+
+    @Test
+    public void createTableInvalidatesDatabaseListing()
+    {
+        TableIdentifiersGetRequest listDb1 = TableIdentifiersGetRequest.newBuilder().setDataBaseName("db1").build();
+        TableIdentifiersGetRequest listDb2 = TableIdentifiersGetRequest.newBuilder().setDataBaseName("db2").build();
+        stub.getTableIdentifiers(listDb1);
+        stub.getTableIdentifiers(listDb2);
+        stub.getTableIdentifiers(listDb1);
+        stub.getTableIdentifiers(listDb2);
+        Assert.assertEquals(2, identifierCalls.get());
+
+        stub.createTable(TableCreateRequest.newBuilder().setTableDescriptor(TableDescriptorProto.newBuilder()
+                .setTableIdentifier(table("db1", "c"))).build());
+        stub.getTableIdentifiers(listDb1);
+        stub.getTableIdentifiers(listDb2);
+        Assert.assertEquals(3, identifierCalls.get());
+    }
+
+    @Test
+    public void mutationWithoutTableInvalidatesAll()
+    {
+        stub.getDatabaseNames(DatabaseNamesGetRequest.getDefaultInstance());
+        stub.getTableDescriptor(describe("r1", TABLE_A));
+        stub.createDataBase(DatabaseCreateRequest.newBuilder().setDatabaseName("db2").build());
+        stub.getDatabaseNames(DatabaseNamesGetRequest.getDefaultInstance());
+        stub.getTableDescriptor(describe("r1", TABLE_A));
+        Assert.assertEquals(2, databaseCalls.get());
+        Assert.assertEquals(2, descriptorCalls.get());
+        Assert.assertEquals(0, cache.getHits());
+    }
+
+    @Test
+    public void failedResponseIsNotCached()
+    {
+        descriptorCode = ResponseCode.QUERY_FAILED;
+        stub.getTableDescriptor(describe("r1", TABLE_A));
+        descriptorCode = ResponseCode.QUERY_SUCCESS;
+        Assert.assertEquals(ResponseCode.QUERY_SUCCESS, stub.getTableDescriptor(describe("r1", TABLE_A))
+                .getBaseResponse().getResponseCode());
+        Assert.assertEquals(2, descriptorCalls.get());
+    }
+
+    @Test
+    public void dropTableRetiresScope()
+    {
+        stub.getTableDescriptor(describe("r1", TABLE_A));
+        stub.getTableDescriptor(describe("r1", TABLE_B));
+        int scopes = cache.scopeCount();
+
+        stub.dropTable(TableDropRequest.newBuilder().setTableIdentifier(TABLE_A).build());
+        // 表、库与目录范围均被移出
+        Assert.assertEquals(scopes - 1, cache.scopeCount());
+        Assert.assertEquals(3, stub.getTableDescriptor(describe("r2", TABLE_A)).getTableDescriptors(0).getVersion());
+        Assert.assertEquals(2, stub.getTableDescriptor(describe("r2", TABLE_B)).getTableDescriptors(0).getVersion());
+    }
+
+    @Test
+    public void scopesAreBounded()
+    {
+        MetadataResponseCache bounded = new MetadataResponseCache(4, 0);
+        MetadataResponseCache.Key key = new MetadataResponseCache.Key("getTableDescriptor",
+                describe("r1", TABLE_A).toByteString());
+        MetadataResponseCache.Stamp stamp = bounded.stamp(Collections.singletonList(
+                MetadataResponseCache.tableScope(TABLE_A)));
+        bounded.put(key, stamp, new byte[0]);
+        Assert.assertNotNull(bounded.get(key));
+        for (int i = 0; i < 100; i++)
+        {
+            bounded.stamp(Collections.singletonList(MetadataResponseCache.tableScope(table("db1", "t" + i))));
+        }
+        Assert.assertTrue(bounded.scopeCount() <= 17);
+        // 版本号全部作废后，原缓存项失效
+        Assert.assertNull(bounded.get(key));
+    }
+
+    @Test
+    public void plainServiceBypassesCache()
+    {
+        TableDescriptorGetResponse first = plainStub.getTableDescriptor(describe("r1", TABLE_A));
+        plainStub.getTableDescriptor(describe("r1", TABLE_A));
+        Assert.assertEquals(2, descriptorCalls.get());
+        Assert.assertEquals(0, cache.getMisses());
+        Assert.assertEquals(0, cache.size());
+        Assert.assertEquals(TABLE_A, first.getTableDescriptors(0).getTableIdentifier());
+
+        // 未改写服务上的修改仍使网络服务的缓存失效
+        stub.getTableDescriptor(describe("r1", TABLE_A));
+        plainStub.createPartition(PartitionCreateRequest.newBuilder().setTableIdentifier(TABLE_A).build());
+        Assert.assertEquals(4, stub.getTableDescriptor(describe("r2", TABLE_A)).getTableDescriptors(0).getVersion());
+    }
+
+    private static TableIdentifierProto table(String database, String name)
+    {
+        return TableIdentifierProto.newBuilder().setDatabaseName(database).setTableName(name).build();
+    }
+
+    private static TableDescriptorGetRequest describe(String requestId, TableIdentifierProto table)
+    {
+        return TableDescriptorGetRequest.newBuilder().addTableIdentifier(table)
+                .setBaseRequest(BaseRequestProto.newBuilder().setRequestID(requestId)
+                        .setTimestamp(System.nanoTime())).build();
+    }
+}
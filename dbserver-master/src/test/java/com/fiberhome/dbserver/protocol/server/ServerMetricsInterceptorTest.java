@@ -0,0 +1,140 @@
+package com.fiberhome.dbserver.protocol.server;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.fiberhome.dbserver.common.services.Threads;
+import com.fiberhome.dbserver.common.transport.protobuf.DBServerProtos.MethodMetricsProto;
+import com.fiberhome.dbserver.common.transport.protobuf.DBServerProtos.ServerMetricsRequest;
+import com.fiberhome.dbserver.common.transport.protobuf.DBServerProtos.ServerMetricsResponse;
+import com.fiberhome.dbserver.common.transport.protobuf.ServerAdminServiceGrpc;
+import com.fiberhome.dbserver.common.transport.protobuf.SlaveBlockletIndexServiceGrpc;
+import com.fiberhome.dbserver.common.transport.protobuf.SlaveServerProtos.IndexCountRequest;
+import com.fiberhome.dbserver.common.transport.protobuf.SlaveServerProtos.IndexCountResponse;
+import com.fiberhome.dbserver.protocol.server.ServerMetrics.MethodSnapshot;
+import com.google.common.util.concurrent.ListenableFuture;
+import io.grpc.ManagedChannel;
+import io.grpc.Server;
+import io.grpc.ServerInterceptors;
+import io.grpc.Status;
+import io.grpc.inprocess.InProcessChannelBuilder;
+import io.grpc.inprocess.InProcessServerBuilder;
+import io.grpc.stub.StreamObserver;
+
+public class ServerMetricsInterceptorTest
+{
+    private static final String SERVER_NAME = "server-metrics-test";
+
+    private static final String COUNT_METHOD = SlaveBlockletIndexServiceGrpc.METHOD_COUNT.getFullMethodName();
+
+    private final ServerMetrics metrics = new ServerMetrics();
+
+    private ThreadPoolExecutor pool;
+
+    private Server server;
+
+    private ManagedChannel channel;
+
+    @Before
+    public void setUp() throws Exception
+    {
+        pool = new ThreadPoolExecutor(1, 1, 0L, TimeUnit.MILLISECONDS, new ArrayBlockingQueue<>(10));
+        metrics.registerExecutor("index", pool);
+        ServerMetricsInterceptor metricsInterceptor = new ServerMetricsInterceptor(metrics);
+        server = InProcessServerBuilder.forName(SERVER_NAME).directExecutor()
+                .addService(ServerInterceptors.intercept(new SlaveBlockletIndexServiceGrpc
+                        .SlaveBlockletIndexServiceImplBase()
+                {
+                    @Override
+                    public void count(IndexCountRequest request, StreamObserver<IndexCountResponse> observer)
+                    {
+                        Threads.sleep(50);
+                        observer.onNext(IndexCountResponse.newBuilder().setRecodeSize(7).build());
+                        observer.onCompleted();
+                    }
+                }, metricsInterceptor, new ServiceExecutorInterceptor("index", pool)))
+                .addService(ServerInterceptors.intercept(new ServerAdminRpcProcessor(metrics), metricsInterceptor))
+                .build().start();
+        channel = InProcessChannelBuilder.forName(SERVER_NAME).directExecutor().build();
+    }
+
+    @After
+    public void tearDown()
+    {
+        channel.shutdownNow();
+        server.shutdownNow();
+        pool.shutdownNow();
+    }
+
+    @Test
+    public void separateQueueWaitFromHandlerTime() throws Exception
+    {
+        SlaveBlockletIndexServiceGrpc.SlaveBlockletIndexServiceFutureStub stub = SlaveBlockletIndexServiceGrpc
+                .newFutureStub(channel);
+        ListenableFuture<IndexCountResponse> first = stub.count(IndexCountRequest.getDefaultInstance());
+        ListenableFuture<IndexCountResponse> second = stub.count(IndexCountRequest.getDefaultInstance());
+        first.get(5, TimeUnit.SECONDS);
+        second.get(5, TimeUnit.SECONDS);
+
+        // 业务回调返回后才记录，可能晚于客户端收到响应
+        MethodSnapshot snapshot = awaitCalls(2);
+        Assert.assertEquals(2, snapshot.getHandler().getCount());
+        Assert.assertEquals(2, snapshot.getQueueWait().getCount());
+        // 单线程池中第二个调用需等待第一个调用处理完成
+        Assert.assertTrue(snapshot.getHandler().getP50() >= 45000);
+        Assert.assertTrue(snapshot.getQueueWait().getMax() >= 40000);
+        Assert.assertTrue(snapshot.getTotal().getMax() >= snapshot.getQueueWait().getMax());
+        Assert.assertEquals(0, snapshot.getInFlight());
+        Assert.assertEquals(Long.valueOf(2), snapshot.getStatusCounts().get(Status.Code.OK));
+        Assert.assertEquals(2 * IndexCountResponse.newBuilder().setRecodeSize(7).build().getSerializedSize(),
+                snapshot.getBytesSent());
+    }
+
+    @Test
+    public void queryThroughAdminService()
+    {
+        SlaveBlockletIndexServiceGrpc.newBlockingStub(channel).count(IndexCountRequest.getDefaultInstance());
+        awaitCalls(1);
+
+        ServerMetricsResponse response = ServerAdminServiceGrpc.newBlockingStub(channel).getServerMetrics(
+                ServerMetricsRequest.newBuilder().setMethodPrefix("SlaveBlockletIndexService/").build());
+        Assert.assertEquals(1, response.getMethodsCount());
+        MethodMetricsProto method = response.getMethods(0);
+        Assert.assertEquals(COUNT_METHOD, method.getMethod());
+        Assert.assertEquals(1, method.getHandler().getCount());
+        Assert.assertEquals(1L, method.getStatusCountsOrThrow("OK"));
+        Assert.assertEquals(1, response.getExecutorsCount());
+        Assert.assertEquals("index", response.getExecutors(0).getService());
+        Assert.assertEquals(10, response.getExecutors(0).getQueueRemaining());
+    }
+
+    private MethodSnapshot awaitCalls(long calls)
+    {
+        long deadline = System.currentTimeMillis() + 5000L;
+        MethodSnapshot snapshot = metrics.snapshot().get(COUNT_METHOD);
+        // 快照不是原子的，状态码与耗时都记录完成后再返回
+        while ((snapshot.getHandler().getCount() < calls || closedCalls(snapshot) < calls)
+                && System.currentTimeMillis() < deadline)
+        {
+            Threads.sleep(5);
+            snapshot = metrics.snapshot().get(COUNT_METHOD);
+        }
+        return snapshot;
+    }
+
+    private static long closedCalls(MethodSnapshot snapshot)
+    {
+        long closed = 0L;
+        for (long count : snapshot.getStatusCounts().values())
+        {
+            closed += count;
+        }
+        return closed;
+    }
+}
@@ -0,0 +1,177 @@
+package com.fiberhome.dbserver.protocol.server;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.fiberhome.dbserver.common.transport.protobuf.HeartBeatMangerServiceGrpc;
+import com.fiberhome.dbserver.common.transport.protobuf.MasterServerProtos.HeartBeatRequest;
+import com.fiberhome.dbserver.common.transport.protobuf.MasterServerProtos.HeartBeatResponse;
+import com.fiberhome.dbserver.common.transport.protobuf.SlaveBlockletIndexServiceGrpc;
+import com.fiberhome.dbserver.common.transport.protobuf.SlaveServerProtos.IndexCountRequest;
+import com.fiberhome.dbserver.common.transport.protobuf.SlaveServerProtos.IndexCountResponse;
+import com.google.common.util.concurrent.ListenableFuture;
+import io.grpc.ForwardingServerCallListener.SimpleForwardingServerCallListener;
+import io.grpc.ManagedChannel;
+import io.grpc.Metadata;
+import io.grpc.Server;
+import io.grpc.ServerCall;
+import io.grpc.ServerCallHandler;
+import io.grpc.ServerInterceptor;
+import io.grpc.ServerInterceptors;
+import io.grpc.Status;
+import io.grpc.StatusRuntimeException;
+import io.grpc.inprocess.InProcessChannelBuilder;
+import io.grpc.inprocess.InProcessServerBuilder;
+import io.grpc.stub.StreamObserver;
+
+public class ServiceExecutorInterceptorTest
+{
+    private static final String SERVER_NAME = "service-executor-test";
+
+    private final CountDownLatch release = new CountDownLatch(1);
+
+    private final CountDownLatch started = new CountDownLatch(1);
+
+    /*
+     * 索引服务调用收到的结束回调
+     */
+    private final BlockingQueue<String> terminated = new LinkedBlockingQueue<>();
+
+    private ThreadPoolExecutor indexPool;
+
+    private ThreadPoolExecutor heartbeatPool;
+
+    private Server server;
+
+    private ManagedChannel channel;
+
+    @Before
+    public void setUp() throws Exception
+    {
+        indexPool = new ThreadPoolExecutor(1, 1, 0L, TimeUnit.MILLISECONDS, new ArrayBlockingQueue<>(1));
+        heartbeatPool = new ThreadPoolExecutor(1, 1, 0L, TimeUnit.MILLISECONDS, new ArrayBlockingQueue<>(1));
+        server = InProcessServerBuilder.forName(SERVER_NAME).directExecutor()
+                .addService(ServerInterceptors.intercept(new SlaveBlockletIndexServiceGrpc
+                        .SlaveBlockletIndexServiceImplBase()
+                {
+                    @Override
+                    public void count(IndexCountRequest request, StreamObserver<IndexCountResponse> observer)
+                    {
+                        started.countDown();
+                        try
+                        {
+                            release.await(10, TimeUnit.SECONDS);
+                        }
+                        catch (InterruptedException e)
+                        {
+                            Thread.currentThread().interrupt();
+                        }
+                        observer.onNext(IndexCountResponse.newBuilder().setRecodeSize(1).build());
+                        observer.onCompleted();
+                    }
+                }, recordTermination(), new ServiceExecutorInterceptor("index", indexPool)))
+                .addService(ServerInterceptors.intercept(new HeartBeatMangerServiceGrpc.HeartBeatMangerServiceImplBase()
+                {
+                    @Override
+                    public void reportHeartBeat(HeartBeatRequest request, StreamObserver<HeartBeatResponse> observer)
+                    {
+                        observer.onNext(HeartBeatResponse.newBuilder().build());
+                        observer.onCompleted();
+                    }
+                }, new ServiceExecutorInterceptor("heartbeat", heartbeatPool))).build().start();
+        channel = InProcessChannelBuilder.forName(SERVER_NAME).directExecutor().build();
+    }
+
+    @After
+    public void tearDown()
+    {
+        release.countDown();
+        channel.shutdownNow();
+        server.shutdownNow();
+        indexPool.shutdownNow();
+        heartbeatPool.shutdownNow();
+    }
+
+    @Test
+    public void slowServiceDoesNotBlockOthers() throws Exception
+    {
+        SlaveBlockletIndexServiceGrpc.SlaveBlockletIndexServiceFutureStub indexStub = SlaveBlockletIndexServiceGrpc
+                .newFutureStub(channel);
+        ListenableFuture<IndexCountResponse> running = indexStub.count(IndexCountRequest.getDefaultInstance());
+        Assert.assertTrue(started.await(5, TimeUnit.SECONDS));
+
+        // 索引服务线程已被占满，心跳服务仍在自己的线程池中执行
+        HeartBeatResponse response = HeartBeatMangerServiceGrpc.newBlockingStub(channel)
+                .withDeadlineAfter(5, TimeUnit.SECONDS).reportHeartBeat(HeartBeatRequest.getDefaultInstance());
+        Assert.assertNotNull(response);
+
+        release.countDown();
+        Assert.assertEquals(1, running.get(5, TimeUnit.SECONDS).getRecodeSize());
+    }
+
+    @Test
+    public void rejectWhenQueueIsFull() throws Exception
+    {
+        SlaveBlockletIndexServiceGrpc.SlaveBlockletIndexServiceFutureStub indexStub = SlaveBlockletIndexServiceGrpc
+                .newFutureStub(channel);
+        ListenableFuture<IndexCountResponse> running = indexStub.count(IndexCountRequest.getDefaultInstance());
+        Assert.assertTrue(started.await(5, TimeUnit.SECONDS));
+        // 占满队列
+        indexPool.execute(() ->
+        {
+        });
+
+        try
+        {
+            SlaveBlockletIndexServiceGrpc.newBlockingStub(channel).withDeadlineAfter(5, TimeUnit.SECONDS)
+                    .count(IndexCountRequest.getDefaultInstance());
+            Assert.fail("call should be rejected");
+        }
+        catch (StatusRuntimeException e)
+        {
+            Assert.assertEquals(Status.Code.RESOURCE_EXHAUSTED, e.getStatus().getCode());
+        }
+        // 被拒绝的调用仍通知下游监听器结束
+        Assert.assertNotNull(terminated.poll(5, TimeUnit.SECONDS));
+
+        release.countDown();
+        Assert.assertEquals(1, running.get(5, TimeUnit.SECONDS).getRecodeSize());
+    }
+
+    private ServerInterceptor recordTermination()
+    {
+        return new ServerInterceptor()
+        {
+            @Override
+            public <ReqT, RespT> ServerCall.Listener<ReqT> interceptCall(ServerCall<ReqT, RespT> call,
+                    Metadata headers, ServerCallHandler<ReqT, RespT> next)
+            {
+                return new SimpleForwardingServerCallListener<ReqT>(next.startCall(call, headers))
+                {
+                    @Override
+                    public void onCancel()
+                    {
+                        terminated.add("cancel");
+                        super.onCancel();
+                    }
+
+                    @Override
+                    public void onComplete()
+                    {
+                        terminated.add("complete");
+                        super.onComplete();
+                    }
+                };
+            }
+        };
+    }
+}
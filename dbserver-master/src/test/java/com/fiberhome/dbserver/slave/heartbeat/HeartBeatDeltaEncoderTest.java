@@ -0,0 +1,95 @@
+package com.fiberhome.dbserver.slave.heartbeat;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import com.fiberhome.dbserver.common.transport.protobuf.DBServerProtos.RegionLoadProto;
+import com.fiberhome.dbserver.common.transport.protobuf.MasterServerProtos.HeartBeatRequest;
+
+public class HeartBeatDeltaEncoderTest
+{
+    private final HeartBeatDeltaEncoder encoder = new HeartBeatDeltaEncoder(5);
+
+    @Test
+    public void firstBeatIsFull()
+    {
+        HeartBeatRequest request = encode(Arrays.asList(load("r1", 1), load("r2", 1)));
+        Assert.assertTrue(request.getFullState());
+        Assert.assertEquals(1L, request.getSequence());
+        Assert.assertEquals(2, request.getRegionLoadsCount());
+    }
+
+    @Test
+    public void deltaCarriesChangesSinceAckedBeat()
+    {
+        HeartBeatRequest full = encode(Arrays.asList(load("r1", 1), load("r2", 1), load("r3", 1)));
+        encoder.onAck(full.getSequence());
+
+        HeartBeatRequest delta = encode(Arrays.asList(load("r1", 1), load("r2", 2), load("r4", 1)));
+        Assert.assertFalse(delta.getFullState());
+        Assert.assertEquals(full.getSequence(), delta.getBaseSequence());
+        Assert.assertEquals(Arrays.asList(load("r2", 2), load("r4", 1)), sorted(delta.getRegionLoadsList()));
+        Assert.assertEquals(Collections.singletonList("r3"), delta.getRemovedRegionsList());
+
+        // 未确认时仍以最近确认的心跳为基准
+        HeartBeatRequest unacked = encode(Arrays.asList(load("r1", 1), load("r2", 2), load("r4", 1)));
+        Assert.assertEquals(full.getSequence(), unacked.getBaseSequence());
+        Assert.assertEquals(2, unacked.getRegionLoadsCount());
+
+        encoder.onAck(unacked.getSequence());
+        HeartBeatRequest idle = encode(Arrays.asList(load("r1", 1), load("r2", 2), load("r4", 1)));
+        Assert.assertEquals(unacked.getSequence(), idle.getBaseSequence());
+        Assert.assertEquals(0, idle.getRegionLoadsCount());
+        Assert.assertEquals(0, idle.getRemovedRegionsCount());
+    }
+
+    @Test
+    public void fullBeatPeriodicallyAndOnRequest()
+    {
+        List<RegionLoadProto> loads = Collections.singletonList(load("r1", 1));
+        for (int i = 0; i < 5; i++)
+        {
+            HeartBeatRequest request = encode(loads);
+            Assert.assertEquals(i == 0, request.getFullState());
+            encoder.onAck(request.getSequence());
+        }
+        Assert.assertTrue(encode(loads).getFullState());
+
+        encoder.requestFullState();
+        Assert.assertTrue(encode(loads).getFullState());
+        Assert.assertFalse(encode(loads).getFullState());
+    }
+
+    @Test
+    public void ignoreStaleAck()
+    {
+        HeartBeatRequest first = encode(Collections.singletonList(load("r1", 1)));
+        HeartBeatRequest second = encode(Collections.singletonList(load("r1", 2)));
+        encoder.onAck(second.getSequence());
+        encoder.onAck(first.getSequence());
+        Assert.assertEquals(second.getSequence(), encoder.getAckedSequence());
+    }
+
+    private HeartBeatRequest encode(List<RegionLoadProto> loads)
+    {
+        HeartBeatRequest.Builder request = HeartBeatRequest.newBuilder();
+        encoder.encode(request, loads, null, null);
+        return request.build();
+    }
+
+    private static List<RegionLoadProto> sorted(List<RegionLoadProto> loads)
+    {
+        RegionLoadProto[] array = loads.toArray(new RegionLoadProto[0]);
+        Arrays.sort(array, (a, b) -> a.getRegionID().compareTo(b.getRegionID()));
+        return Arrays.asList(array);
+    }
+
+    private static RegionLoadProto load(String regionId, int readRequestCount)
+    {
+        return RegionLoadProto.newBuilder().setRegionID(regionId).setReadRequestCount(readRequestCount).build();
+    }
+}
@@ -0,0 +1,135 @@
+package com.fiberhome.dbserver.slave.heartbeat;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import com.fiberhome.dbserver.common.transport.protobuf.MasterServerProtos.HeartBeatCommand;
+import com.fiberhome.dbserver.common.transport.protobuf.MasterServerProtos.HeartBeatCommandType;
+import com.fiberhome.dbserver.common.transport.protobuf.MasterServerProtos.HeartBeatRequest;
+import com.fiberhome.dbserver.common.transport.protobuf.MasterServerProtos.HeartBeatResponse;
+import com.google.common.util.concurrent.SettableFuture;
+import io.grpc.Status;
+
+public class HeartBeatSenderTest
+{
+    private final AtomicLong sequence = new AtomicLong();
+
+    private final AtomicBoolean streamAvailable = new AtomicBoolean();
+
+    private final List<HeartBeatRequest> streamed = new ArrayList<>();
+
+    private final List<HeartBeatRequest> reported = new ArrayList<>();
+
+    private final List<SettableFuture<HeartBeatResponse>> responses = new ArrayList<>();
+
+    private final List<HeartBeatCommand> commands = new ArrayList<>();
+
+    private HeartBeatSender sender(long jitterMillis)
+    {
+        return new HeartBeatSender(() -> HeartBeatRequest.newBuilder().setSequence(sequence.incrementAndGet()).build(),
+                request -> streamAvailable.get() && streamed.add(request),
+                request ->
+                {
+                    reported.add(request);
+                    SettableFuture<HeartBeatResponse> response = SettableFuture.create();
+                    responses.add(response);
+                    return response;
+                }, commands::add, jitterMillis);
+    }
+
+    @Test
+    public void coalesceWhileOutstanding()
+    {
+        HeartBeatSender sender = sender(0L);
+        Assert.assertTrue(sender.send());
+        Assert.assertFalse(sender.send());
+        Assert.assertFalse(sender.send());
+        Assert.assertTrue(sender.isOutstanding());
+        Assert.assertEquals(1, reported.size());
+
+        responses.get(0).set(HeartBeatResponse.newBuilder().setCommand(HeartBeatCommand.newBuilder()
+                .setType(HeartBeatCommandType.HEARTBEAT_ACK).setAckedSequence(1L)).build());
+        Assert.assertEquals(1, commands.size());
+        // 合并的心跳在完成后补发一次，并重新构建请求
+        Assert.assertEquals(2, reported.size());
+        Assert.assertEquals(2L, reported.get(1).getSequence());
+
+        responses.get(1).set(HeartBeatResponse.getDefaultInstance());
+        Assert.assertFalse(sender.isOutstanding());
+        Assert.assertEquals(2, reported.size());
+    }
+
+    @Test
+    public void reportIsNotCoalesced() throws Exception
+    {
+        HeartBeatSender sender = sender(0L);
+        streamAvailable.set(true);
+        sender.send();
+        streamAvailable.set(false);
+        sender.send();
+        Assert.assertTrue(sender.isOutstanding());
+
+        // 下线心跳即使有未完成的上报也立即单次上报，并可等待Master确认
+        Future<HeartBeatResponse> drained = sender.report();
+        Assert.assertEquals(2, reported.size());
+        Assert.assertFalse(drained.isDone());
+        responses.get(1).set(HeartBeatResponse.newBuilder().setCommand(HeartBeatCommand.newBuilder()
+                .setType(HeartBeatCommandType.HEARTBEAT_ACK).setAckedSequence(3L)).build());
+        Assert.assertEquals(3L, drained.get().getCommand().getAckedSequence());
+        Assert.assertEquals(1, commands.size());
+        Assert.assertTrue(sender.isOutstanding());
+    }
+
+    @Test
+    public void failureReleasesOutstanding()
+    {
+        HeartBeatSender sender = sender(0L);
+        sender.send();
+        responses.get(0).setException(Status.DEADLINE_EXCEEDED.asRuntimeException());
+        Assert.assertFalse(sender.isOutstanding());
+        Assert.assertTrue(sender.send());
+        Assert.assertEquals(2, reported.size());
+    }
+
+    @Test
+    public void preferStream()
+    {
+        HeartBeatSender sender = sender(0L);
+        streamAvailable.set(true);
+        Assert.assertTrue(sender.send());
+        Assert.assertTrue(sender.send());
+        Assert.assertEquals(2, streamed.size());
+        Assert.assertTrue(reported.isEmpty());
+        Assert.assertFalse(sender.isOutstanding());
+    }
+
+    @Test
+    public void scheduleWithJitter() throws Exception
+    {
+        ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor();
+        try
+        {
+            streamAvailable.set(true);
+            sender(0L).schedule(scheduler);
+            Assert.assertEquals(1, streamed.size());
+
+            sender(50L).schedule(scheduler);
+            scheduler.shutdown();
+            Assert.assertTrue(scheduler.awaitTermination(1L, TimeUnit.SECONDS));
+            Assert.assertEquals(2, streamed.size());
+        }
+        finally
+        {
+            scheduler.shutdownNow();
+        }
+    }
+}
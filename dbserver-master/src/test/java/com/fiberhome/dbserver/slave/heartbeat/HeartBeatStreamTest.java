@@ -0,0 +1,113 @@
+package com.fiberhome.dbserver.slave.heartbeat;
+
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Test;
+
+import com.fiberhome.dbserver.common.transport.protobuf.HeartBeatMangerServiceGrpc;
+import com.fiberhome.dbserver.common.transport.protobuf.MasterServerProtos.HeartBeatCommand;
+import com.fiberhome.dbserver.common.transport.protobuf.MasterServerProtos.HeartBeatCommandType;
+import com.fiberhome.dbserver.common.transport.protobuf.MasterServerProtos.HeartBeatRequest;
+import io.grpc.ManagedChannel;
+import io.grpc.Server;
+import io.grpc.inprocess.InProcessChannelBuilder;
+import io.grpc.inprocess.InProcessServerBuilder;
+import io.grpc.stub.StreamObserver;
+
+public class HeartBeatStreamTest
+{
+    private static final String SERVER_NAME = "slave-heartbeat-stream-test";
+
+    private final BlockingQueue<HeartBeatCommandType> commands = new LinkedBlockingQueue<>();
+
+    private final AtomicInteger streams = new AtomicInteger();
+
+    private final AtomicInteger beats = new AtomicInteger();
+
+    private Server server;
+
+    private ManagedChannel channel;
+
+    @After
+    public void tearDown()
+    {
+        channel.shutdownNow();
+        server.shutdownNow();
+    }
+
+    @Test
+    public void reuseStreamAndReceiveCommands() throws Exception
+    {
+        HeartBeatStream stream = start(new HeartBeatMangerServiceGrpc.HeartBeatMangerServiceImplBase()
+        {
+            @Override
+            public StreamObserver<HeartBeatRequest> heartBeatStream(StreamObserver<HeartBeatCommand> observer)
+            {
+                streams.incrementAndGet();
+                return new StreamObserver<HeartBeatRequest>()
+                {
+                    @Override
+                    public void onNext(HeartBeatRequest request)
+                    {
+                        beats.incrementAndGet();
+                        observer.onNext(HeartBeatCommand.newBuilder().setType(HeartBeatCommandType.HEARTBEAT_ACK)
+                                .build());
+                    }
+
+                    @Override
+                    public void onError(Throwable t)
+                    {
+                    }
+
+                    @Override
+                    public void onCompleted()
+                    {
+                        observer.onCompleted();
+                    }
+                };
+            }
+        });
+        for (int i = 0; i < 3; i++)
+        {
+            Assert.assertTrue(stream.send(HeartBeatRequest.getDefaultInstance()));
+            Assert.assertEquals(HeartBeatCommandType.HEARTBEAT_ACK, commands.poll(5, TimeUnit.SECONDS));
+        }
+        Assert.assertEquals(1, streams.get());
+        Assert.assertEquals(3, beats.get());
+
+        stream.close();
+        Assert.assertFalse(stream.isOpen());
+        Assert.assertTrue(stream.send(HeartBeatRequest.getDefaultInstance()));
+        Assert.assertEquals(HeartBeatCommandType.HEARTBEAT_ACK, commands.poll(5, TimeUnit.SECONDS));
+        Assert.assertEquals(2, streams.get());
+    }
+
+    @Test
+    public void fallBackWhenMasterDoesNotSupportStream() throws Exception
+    {
+        HeartBeatStream stream = start(new HeartBeatMangerServiceGrpc.HeartBeatMangerServiceImplBase()
+        {
+        });
+        stream.send(HeartBeatRequest.getDefaultInstance());
+        long deadline = System.currentTimeMillis() + 5000L;
+        while (!stream.isUnsupported() && System.currentTimeMillis() < deadline)
+        {
+            Thread.sleep(10L);
+        }
+        Assert.assertTrue(stream.isUnsupported());
+        Assert.assertFalse(stream.send(HeartBeatRequest.getDefaultInstance()));
+    }
+
+    private HeartBeatStream start(HeartBeatMangerServiceGrpc.HeartBeatMangerServiceImplBase master) throws Exception
+    {
+        server = InProcessServerBuilder.forName(SERVER_NAME).addService(master).directExecutor().build().start();
+        channel = InProcessChannelBuilder.forName(SERVER_NAME).directExecutor().build();
+        return new HeartBeatStream(HeartBeatMangerServiceGrpc.newStub(channel),
+                command -> commands.add(command.getType()));
+    }
+}